@@ -19,15 +19,27 @@
 package com.exactprosystems.webchannels.channel;
 
 import com.exactprosystems.webchannels.enums.ChannelStatus;
+import com.exactprosystems.webchannels.exceptions.EncodingException;
+import com.exactprosystems.webchannels.exceptions.OverflowException;
+import com.exactprosystems.webchannels.exceptions.RecoverException;
 import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.AdminMessage;
+import com.exactprosystems.webchannels.messages.ConflatableMessage;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+import com.exactprosystems.webchannels.messages.SequenceReset;
+import com.exactprosystems.webchannels.messages.TestRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpSession;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 
@@ -40,16 +52,56 @@ public abstract class AbstractChannel {
 
 	protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 	
+	private static final int OUTPUT_MESSAGE_EVENT = 0;
+	
+	private static final int INPUT_MESSAGE_EVENT = 1;
+	
+	private static final int CLOSE_CHANNEL_EVENT = 2;
+	
+	private static final int CREATE_CHANNEL_EVENT = 3;
+	
+	private static final int BIND_CONTEXT_EVENT = 4;
+	
+	private static final int UNBIND_CONTEXT_EVENT = 5;
+	
+	private static final int POLL_EVENT = 6;
+	
+	private static final int FLUSH_EVENT = 7;
+	
+	private static final int ADMIN_MESSAGE_EVENT = 8;
+	
+	private static final int SEQUENCED_MESSAGE_EVENT = 9;
+	
+	private static final int TOPIC_EVENT = 10;
+	
+	private static final int RESTORE_EVENT = 11;
+	
+	private static final int WRITE_COMPLETE_EVENT = 12;
+	
+	private static final int WRAPPER_POOL_SIZE = 64;
+	
+	private static final int MAX_BATCH_MULTIPLIER = 16;
+	
 	private final String channelId;
 	
 	private final IChannelHandler handler;
 	
-	private final Queue<Object> taskQueue;
+	private final ChannelTaskQueue taskQueue;
+	
+	private final ChannelTaskQueue adminQueue;
 	
 	private final ChannelSettings settings;
 	
 	private final Executor executor;
 	
+	private final ShardedChannelsExecutor.Shard shard;
+	
+	private final ExecutionTask executionTask;
+	
+	private final ArrayDeque<WithSeqnumWrapper> wrapperPool;
+	
+	private final TopicSubscriptions topics;
+	
 	private final AtomicBoolean processing;
 	
 	private final AbstractMessageFactory messageFactory;
@@ -59,104 +111,713 @@ public abstract class AbstractChannel {
 	private final HttpSession httpSession;
 	
 	private volatile ChannelStatus status;
+	
+	private final AtomicLong armedDeadline;
+	
+	private final AtomicLong rejected;
+	
+	private volatile HashedWheelScheduler scheduler;
+	
+	private long lastPollTime;
+	
+	private boolean flushPending;
+	
+	private volatile int batchSize;
+	
+	private volatile long drainTime;
+	
+	private volatile boolean outputBlocked;
+	
+	private volatile ChannelJournal.Handle journal;
+	
+	private final MessageCompressor compressor;
+	
+	private final OutputMessagesBuffer outputMessageQueue;
+	
+	private final SentMessagesBuffer sentMessageQueue;
+	
+	private final List<WithSeqnumWrapper> sendBatch;
+	
+	private long inputSeqnum;
+	
+	private long outputSeqnum;
 
 	public AbstractChannel(IChannelHandler handler, String channelId, ChannelSettings settings,
 						   AbstractMessageFactory messageFactory, Executor executor, HttpSession httpSession) {
 		this.handler = handler;
 		this.settings = settings;
-		this.taskQueue = new ConcurrentLinkedQueue<Object>();
+		this.taskQueue = new ChannelTaskQueue();
+		this.adminQueue = new ChannelTaskQueue();
 		this.channelId = channelId;
 		this.executor = executor;
+		this.shard = executor instanceof ShardedChannelsExecutor ? 
+				((ShardedChannelsExecutor) executor).getShard(channelId) : null;
+		this.executionTask = new ExecutionTask(this, executor);
+		this.wrapperPool = new ArrayDeque<WithSeqnumWrapper>(WRAPPER_POOL_SIZE);
+		this.topics = new TopicSubscriptions(settings.getResendBufferSize());
 		this.messageFactory = messageFactory;
 		this.statCollector = StatCollector.getInstance();
 		this.processing = new AtomicBoolean(false);
 		this.status = ChannelStatus.CREATED;
 		this.httpSession = httpSession;
+		this.armedDeadline = new AtomicLong(Long.MAX_VALUE);
+		this.rejected = new AtomicLong(0L);
+		this.lastPollTime = 0L;
+		this.flushPending = false;
+		this.batchSize = settings.getExecutorBatchSize();
+		this.drainTime = 0L;
+		this.outputBlocked = false;
+		this.compressor = new MessageCompressor(settings);
+		this.outputMessageQueue = new OutputMessagesBuffer(settings.getMaxOutputMessages(), 
+				settings.getMaxOutputBytes(), OutputMemoryBudget.getInstance(), settings.isConflationEnabled());
+		this.sentMessageQueue = SentMessagesBuffer.create(settings, messageFactory);
+		this.sendBatch = new ArrayList<WithSeqnumWrapper>(settings.getMaxCountToSend());
+		this.inputSeqnum = 0;
+		this.outputSeqnum = 1;
 	}
 	
 	public void initHandler() {
-		taskQueue.offer(CreateChannelEvent.getInstance());
+		taskQueue.offer(CREATE_CHANNEL_EVENT, null);
 		trySubmitExecutionTask();
 	}
 	
 	public void schedule() {
-		taskQueue.offer(PollEvent.getInstance());
+		taskQueue.offer(POLL_EVENT, null);
 		trySubmitExecutionTask();
 	}
 	
 	public void bind(Object context) {
-		taskQueue.offer(new BindContextEvent(context));
+		taskQueue.offer(BIND_CONTEXT_EVENT, context);
 		trySubmitExecutionTask();
 	}
 	
 	public void unbind(Object context) {
-		taskQueue.offer(new UnbindContextEvent(context));
+		taskQueue.offer(UNBIND_CONTEXT_EVENT, context);
 		trySubmitExecutionTask();
 	}
 
+	/**
+	 * Heartbeats and resend requests are handled in priority lane, but their 
+	 * seqnums are still tracked in order with business messages. CloseChannel 
+	 * is handled after business messages received before it.
+	 */
 	public void handleRequest(WithSeqnumWrapper message) {
-		taskQueue.offer(new InputMessageEvent(message));
+		AbstractMessage content = message.getMessage();
+		if (content instanceof HeartBeat || content instanceof TestRequest || content instanceof ResendRequest) {
+			adminQueue.offer(ADMIN_MESSAGE_EVENT, content);
+			taskQueue.offer(SEQUENCED_MESSAGE_EVENT, message);
+		} else {
+			taskQueue.offer(INPUT_MESSAGE_EVENT, message);
+		}
 		trySubmitExecutionTask();
 	}
 
 	public void close() {
-		taskQueue.offer(CloseChannelEvent.getInstance());
+		adminQueue.offer(CLOSE_CHANNEL_EVENT, null);
 		trySubmitExecutionTask();
 	}
 
+	/**
+	 * Queues message for sending. Message rejected because output buffer is full
+	 * is logged and counted in channel statistics, use {@link #offerMessage(AbstractMessage)}
+	 * to handle rejection.
+	 */
 	public void sendMessage(AbstractMessage message) {
-		taskQueue.offer(new OutputMessageEvent(message));
+		if (!offerMessage(message)) {
+			logger.warn("Output buffer is full, message {} is rejected on {}", message, this);
+		}
+	}
+	
+	/**
+	 * Same as {@link #sendMessage(AbstractMessage)}, but signals rejection.
+	 * 
+	 * @return false if business message is rejected because output buffer is full
+	 */
+	public boolean offerMessage(AbstractMessage message) {
+		// Broadcast admin message comes encoded, it still takes priority lane
+		if (EncodedMessage.unwrap(message) instanceof AdminMessage) {
+			adminQueue.offer(OUTPUT_MESSAGE_EVENT, message);
+		} else {
+			if (outputBlocked) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			taskQueue.offer(OUTPUT_MESSAGE_EVENT, settings.isEncodeOnEnqueue() ? encode(message) : message);
+		}
+		trySubmitExecutionTask();
+		return true;
+	}
+	
+	/**
+	 * Subscribes channel to topic. Topic messages are read from shared log 
+	 * when channel flushes its output.
+	 */
+	public TopicCursor subscribe(TopicLog topic) {
+		return topic.subscribe(this);
+	}
+	
+	/**
+	 * Restores seqnums and sent messages saved before server restart.
+	 */
+	public void restore(ChannelJournal.State state) {
+		adminQueue.offer(RESTORE_EVENT, state);
+		trySubmitExecutionTask();
+	}
+	
+	/**
+	 * Passes result of asynchronous write back to channel processing, 
+	 * may be called from any thread.
+	 */
+	protected void completeWrite(Object write) {
+		adminQueue.offer(WRITE_COMPLETE_EVENT, write);
 		trySubmitExecutionTask();
 	}
 	
+	void setJournal(ChannelJournal.Handle journal) {
+		this.journal = journal;
+	}
+	
+	void onTopicUpdate(TopicCursor cursor) {
+		taskQueue.offer(TOPIC_EVENT, cursor);
+		trySubmitExecutionTask();
+	}
+	
+	/**
+	 * Serializes message on sending thread, so channel flushes and resends 
+	 * write cached bytes. Message which cannot be encoded is queued as is.
+	 */
+	private AbstractMessage encode(AbstractMessage message) {
+		try {
+			return messageFactory.preEncodeMessage(message);
+		} catch (EncodingException e) {
+			logger.error("Cannot encode message " + message + " for " + this, e);
+			return message;
+		}
+	}
+	
+	/**
+	 * Requests sending of pending output messages. Must be called from channel
+	 * processing only. Several requests before flush are coalesced into one.
+	 */
+	protected void requestFlush() {
+		if (!flushPending) {
+			flushPending = true;
+			taskQueue.offer(FLUSH_EVENT, null);
+			trySubmitExecutionTask();
+		}
+	}
+	
 	private void trySubmitExecutionTask() {
-		if (this.tryProcessing()) {
-			executor.execute(new ExecutionTask(this, executor));
+		if (shard != null) {
+			// Shard counts signals itself, processing flag is not used
+			shard.schedule(executionTask);
+		} else if (this.tryProcessing()) {
+			executor.execute(executionTask);
+		}
+	}
+	
+	/**
+	 * Processes next batch of events from the task queue.
+	 * 
+	 * @return true if events remain in the queue
+	 */
+	boolean drainTaskQueue() {
+		
+		int count = 0;
+		int limit = batchSize;
+		boolean processed = true;
+		long start = System.nanoTime();
+		
+		while (processed && count < limit) {
+			count++;
+			try {
+				processed = processTaskQueue();
+			} catch (Throwable e) {
+				logger.error("Error during process channel task queue", e);
+			}
 		}
+		
+		drainTime = System.nanoTime() - start;
+		
+		return !isTaskQueueEmpty();
+		
 	}
 	
-	protected void processTaskQueue() {
-		Object message = taskQueue.poll();
-		if (message != null) {
-			if (message instanceof OutputMessageEvent) {
-				OutputMessageEvent event = (OutputMessageEvent) message;
-				processOutputMessage(event.getMessage());
-			} else if (message instanceof InputMessageEvent) {
-				InputMessageEvent event = (InputMessageEvent) message;
-				processInputMessage(event.getMessage());
-			} else if (message instanceof CloseChannelEvent) {
+	/**
+	 * Adapts batch size after batch which left events in the queue. Hot channel 
+	 * doubles its batch while nobody else waits for executor, and halves it 
+	 * back to configured size when others do.
+	 */
+	void adaptBatchSize(boolean othersWaiting) {
+		int minSize = settings.getExecutorBatchSize();
+		int current = batchSize;
+		if (othersWaiting) {
+			batchSize = Math.max(current >> 1, minSize);
+		} else if (getTaskQueueSize() > current) {
+			batchSize = Math.min(current << 1, minSize * MAX_BATCH_MULTIPLIER);
+		}
+	}
+	
+	/**
+	 * Processes first event of the task queue. Events of admin lane are
+	 * always processed before business ones.
+	 * 
+	 * @return false if there was no event to process or channel is closed
+	 */
+	protected boolean processTaskQueue() {
+		
+		ChannelTaskQueue queue = adminQueue.isEmpty() ? taskQueue : adminQueue;
+		
+		int kind = queue.peekKind();
+		if (kind == ChannelTaskQueue.EMPTY || this.getStatus() == ChannelStatus.CLOSED) {
+			return false;
+		}
+		
+		Object payload = queue.peekPayload();
+		queue.remove();
+		
+		switch (kind) {
+			case OUTPUT_MESSAGE_EVENT:
+				processOutputMessage((AbstractMessage) payload);
+				break;
+			case INPUT_MESSAGE_EVENT:
+				processInputMessage((WithSeqnumWrapper) payload);
+				break;
+			case CLOSE_CHANNEL_EVENT:
 				onClose();
-				ChannelStats stats = getChannelStats();
-				statCollector.pubStatistics(this, stats);
-			} else if (message instanceof CreateChannelEvent) {
+				statCollector.pubStatistics(this, getChannelStats());
+				break;
+			case CREATE_CHANNEL_EVENT:
 				onCreate();
-				ChannelStats stats = getChannelStats();
-				statCollector.pubStatistics(this, stats);
-			} else if (message instanceof BindContextEvent) {
-				BindContextEvent bindMessage = (BindContextEvent) message;
-				onBind(bindMessage.getContext());
-			} else if (message instanceof UnbindContextEvent) {
-				UnbindContextEvent unbindMessage = (UnbindContextEvent) message;
-				onUnbind(unbindMessage.getContext());
-			} else if (message instanceof PollEvent) {
+				statCollector.pubStatistics(this, getChannelStats());
+				break;
+			case BIND_CONTEXT_EVENT:
+				onBind(payload);
+				break;
+			case UNBIND_CONTEXT_EVENT:
+				onUnbind(payload);
+				break;
+			case POLL_EVENT:
+				lastPollTime = System.currentTimeMillis();
 				onPoll();
-				ChannelStats stats = getChannelStats();
-				statCollector.pubStatistics(this, stats);
+				statCollector.pubStatistics(this, getChannelStats());
+				break;
+			case FLUSH_EVENT:
+				flushPending = false;
+				onFlush();
+				break;
+			case ADMIN_MESSAGE_EVENT:
+				processAdminMessage((AdminMessage) payload);
+				break;
+			case SEQUENCED_MESSAGE_EVENT:
+				processSequencedMessage((WithSeqnumWrapper) payload);
+				break;
+			case TOPIC_EVENT:
+				topics.attach((TopicCursor) payload);
+				requestFlush();
+				break;
+			case RESTORE_EVENT:
+				onRestore((ChannelJournal.State) payload);
+				break;
+			case WRITE_COMPLETE_EVENT:
+				onWriteComplete(payload);
+				break;
+			default:
+				throw new RuntimeException("Unexpected event kind: " + kind);
+		}
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Returns wrapper for output message, reusing recycled one if possible.
+	 * Must be called from channel processing only.
+	 */
+	protected WithSeqnumWrapper wrap(long seqnum, AbstractMessage message) {
+		WithSeqnumWrapper wrapper = wrapperPool.poll();
+		if (wrapper == null) {
+			return new WithSeqnumWrapper(seqnum, message);
+		}
+		wrapper.reset(seqnum, message);
+		return wrapper;
+	}
+	
+	/**
+	 * Returns wrapper evicted from resend buffer to pool. Wrapper still waiting
+	 * in output queue is left to garbage collector.
+	 */
+	protected void recycle(WithSeqnumWrapper wrapper) {
+		if (wrapper != null && !wrapper.isQueued() && wrapperPool.size() < WRAPPER_POOL_SIZE) {
+			wrapper.reset(0L, null);
+			wrapperPool.offer(wrapper);
+		}
+	}
+	
+	protected TopicSubscriptions getTopics() {
+		return topics;
+	}
+	
+	/**
+	 * Applies seqnums and sent messages saved before restart.
+	 */
+	protected void onRestore(ChannelJournal.State state) {
+		
+		logger.info("Restore {} on {}", state, this);
+		
+		inputSeqnum = state.getInputSeqnum();
+		outputSeqnum = Math.max(outputSeqnum, state.getOutputSeqnum());
+		
+		for (WithSeqnumWrapper wrapper : state.getSentMessages()) {
+			outputSeqnum = Math.max(outputSeqnum, wrapper.getSeqnum() + 1);
+			recycle(sentMessageQueue.add(wrapper));
+			journalOutput(wrapper.getSeqnum(), wrapper.getMessage());
+		}
+		
+		journalProgress();
+		
+	}
+	
+	/**
+	 * Handles asynchronous write passed to {@link #completeWrite(Object)}.
+	 */
+	protected void onWriteComplete(Object write) {
+		logger.warn("Unexpected write {} completed on {}", write, this);
+	}
+	
+	protected void journalOutput(long seqnum, AbstractMessage message) {
+		ChannelJournal.Handle handle = journal;
+		if (handle != null) {
+			handle.output(seqnum, message);
+		}
+	}
+	
+	protected void journalProgress() {
+		ChannelJournal.Handle handle = journal;
+		if (handle != null) {
+			handle.progress(inputSeqnum, outputSeqnum);
+		}
+	}
+	
+	protected void journalClose() {
+		ChannelJournal.Handle handle = journal;
+		if (handle != null) {
+			journal = null;
+			handle.close();
+		}
+	}
+	
+	/**
+	 * Applies overflow policy when output buffer has no room for business message.
+	 * 
+	 * @return true if message should be queued anyway
+	 */
+	protected boolean handleOverflow(AbstractMessage message, int size) {
+		switch (settings.getOverflowPolicy()) {
+			case DROP_OLDEST:
+				WithSeqnumWrapper dropped;
+				while (!outputMessageQueue.hasRoom(size) && (dropped = outputMessageQueue.dropOldest()) != null) {
+					long seqnum = dropped.getSeqnum();
+					logger.debug("Drop output message with seqnum {} on {}", seqnum, this);
+					// Client requesting dropped message again gets gap fill too
+					SequenceReset gapFill = new SequenceReset(seqnum);
+					recycle(sentMessageQueue.add(wrap(seqnum, gapFill)));
+					journalOutput(seqnum, gapFill);
+				}
+				return true;
+			case CLOSE:
+				logger.error("Output buffer overflow, close {}", this);
+				onClose();
+				return false;
+			case REJECT:
+			default:
+				logger.warn("Output buffer overflow, reject {} on {}", message, this);
+				outputBlocked = true;
+				rejected.incrementAndGet();
+				handler.onException(new OverflowException("Output buffer overflow, message rejected: " + message));
+				return false;
+		}
+	}
+	
+	/**
+	 * Accepts business messages again once output buffer has room.
+	 */
+	protected void checkOutputRoom() {
+		if (outputBlocked && outputMessageQueue.hasRoom(0)) {
+			outputBlocked = false;
+		}
+	}
+	
+	/**
+	 * Arms next wake up of the channel in deadline scheduler. Channel is polled
+	 * not more often than once per its polling interval. Closed channel is
+	 * woken up immediately to be removed from processor.
+	 */
+	protected void updateDeadline() {
+		HashedWheelScheduler scheduler = this.scheduler;
+		if (scheduler != null) {
+			long deadline;
+			if (this.getStatus() == ChannelStatus.CLOSED) {
+				deadline = System.currentTimeMillis();
 			} else {
-				throw new RuntimeException("Unexpected message: " + message);
+				deadline = Math.max(getNextPollTime(), lastPollTime + settings.getPollingInterval());
+			}
+			scheduler.schedule(this, deadline);
+		}
+	}
+	
+	void setScheduler(HashedWheelScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
+	boolean armDeadline(long deadline) {
+		while (true) {
+			long current = armedDeadline.get();
+			if (deadline >= current) {
+				return false;
+			}
+			if (armedDeadline.compareAndSet(current, deadline)) {
+				return true;
 			}
 		}
 	}
 	
+	boolean disarmDeadline(long deadline) {
+		return armedDeadline.compareAndSet(deadline, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * @return time in milliseconds when next heartbeat, test request or disconnect check is due
+	 */
+	protected abstract long getNextPollTime();
+	
 	protected abstract ChannelStats getChannelStats();
 
 	protected abstract void onUnbind(Object context);
 
 	protected abstract void onPoll();
+	
+	protected abstract void onFlush();
 
-	protected abstract void processOutputMessage(AbstractMessage message);
+	/**
+	 * Writes batch of output messages to bound context.
+	 */
+	protected abstract void writeBatch(List<WithSeqnumWrapper> messages) throws EncodingException, IOException;
 
-	protected abstract void processInputMessage(WithSeqnumWrapper message);
+	/**
+	 * Assigns seqnum to output message and queues it, admin message overtakes 
+	 * queued backlog.
+	 */
+	protected void processOutputMessage(AbstractMessage message) {
+		
+		WithSeqnumWrapper wrapper;
+		AbstractMessage original = EncodedMessage.unwrap(message);
+		int size = messageFactory.estimateSize(message);
+		
+		if (original instanceof AdminMessage && !outputMessageQueue.isEmpty()) {
+			// Overtake backlog, client handles admin messages regardless of seqnum
+			wrapper = wrap(WithSeqnumWrapper.OUT_OF_SEQUENCE, message);
+			wrapper.setSize(size);
+			outputMessageQueue.offerUrgent(wrapper);
+		} else {
+			if (original instanceof ConflatableMessage) {
+				// Newer value replaces queued one, client gets it with the old seqnum
+				WithSeqnumWrapper queued = outputMessageQueue.getConflated((ConflatableMessage) original);
+				if (queued != null) {
+					wrapper = wrap(queued.getSeqnum(), message);
+					wrapper.setSize(size);
+					outputMessageQueue.replace(queued, wrapper);
+					// Resend buffer gets the same value, replaced wrapper is evicted
+					recycle(sentMessageQueue.add(wrapper));
+					journalOutput(wrapper.getSeqnum(), message);
+					handler.onSend(original, wrapper.getSeqnum());
+					return;
+				}
+			}
+			if (!(original instanceof AdminMessage) && !outputMessageQueue.hasRoom(size) 
+					&& !handleOverflow(message, size)) {
+				return;
+			}
+			wrapper = wrap(outputSeqnum++, message);
+			wrapper.setSize(size);
+			outputMessageQueue.offer(wrapper);
+			recycle(sentMessageQueue.add(wrapper));
+			journalOutput(wrapper.getSeqnum(), message);
+		}
+		
+		handler.onSend(original, wrapper.getSeqnum());
+		
+	}
+	
+	/**
+	 * Drains output queue and topic messages into send batch and writes it with 
+	 * {@link #writeBatch(List)}. Batch which failed is returned to output queue.
+	 * 
+	 * @return true if batch is written
+	 */
+	protected boolean flushOutput() {
+		
+		List<WithSeqnumWrapper> messages = sendBatch;
+		int topicStart = 0;
+		
+		long sendStart = System.currentTimeMillis();
+		
+		try {
+			
+			logger.trace("Start sending messages for {}", this);
+			
+			int maxCount = settings.getMaxCountToSend();
+			topicStart = outputMessageQueue.drainTo(messages, maxCount);
+			checkOutputRoom();
+			
+			if (outputMessageQueue.isEmpty()) {
+				// Topic messages follow queued ones to keep seqnums in order
+				outputSeqnum += topics.drainTo(messages, outputSeqnum, maxCount - topicStart);
+			}
+			
+			writeBatch(messages);
+			
+			logger.debug("Sent {} messages through {}", messages.size(), this);
+			
+			for (int i = topicStart; i < messages.size(); i++) {
+				WithSeqnumWrapper wrapper = messages.get(i);
+				handler.onSend(EncodedMessage.unwrap(wrapper.getMessage()), wrapper.getSeqnum());
+			}
+			topics.release(messages, topicStart);
+			journalProgress();
+			
+			long sendDuration = System.currentTimeMillis() - sendStart;
+			
+			if (sendDuration > 200L) {
+				logger.warn("Send messages via {} took {} ms", this, sendDuration);
+			} else {
+				logger.trace("Send messages via {} took {} ms", this, sendDuration);
+			}
+			
+			return true;
+			
+		} catch (Exception e) {
+			
+			outputSeqnum -= topics.rollback(messages, topicStart);
+			outputMessageQueue.unread(messages);
+			
+			logger.error("Exception while processing queue for " + this, e);
+			handler.onException(e);
+			
+			Throwable[] suppressed = e.getSuppressed();
+			for (Throwable throwable : suppressed) {
+				logger.error("Suppressed exception during encoding in " + this, throwable);
+				handler.onException(throwable);
+			}
+			
+			return false;
+			
+		} finally {
+			messages.clear();
+		}
+		
+	}
+	
+	/**
+	 * Queues sent messages requested by client again, closes channel if they 
+	 * are not available anymore.
+	 */
+	protected void handleResendRequest(ResendRequest resendRequest) {
+		try {
+			List<WithSeqnumWrapper> messages = topics.recover(sentMessageQueue, 
+					resendRequest.getFrom(), resendRequest.getTo());
+			for (WithSeqnumWrapper old : messages) {
+				logger.info("Resend message with seqnum {} on {}", old.getSeqnum(), this);
+				outputMessageQueue.offer(old);
+			}
+		} catch (RecoverException e) {
+			logger.error("Failed to handle ResendRequest", e);
+			onClose();
+		}
+	}
+	
+	/**
+	 * Queues again sent messages with seqnums in range [from, to) which delivery 
+	 * is not confirmed. Messages which are not buffered any more are left to 
+	 * resend requests of client.
+	 */
+	protected void requeueSent(long from, long to) {
+		List<WithSeqnumWrapper> messages = new ArrayList<WithSeqnumWrapper>();
+		topics.collect(sentMessageQueue, from, to, messages);
+		logger.info("Requeue {} messages from {} to {} on {}", messages.size(), from, to, this);
+		outputMessageQueue.offerFirst(messages);
+	}
+	
+	/**
+	 * @return true if output queue or subscribed topics have messages to send
+	 */
+	protected boolean hasPendingOutput() {
+		return !outputMessageQueue.isEmpty() || topics.hasPending();
+	}
+	
+	/**
+	 * Drops queued, sent and topic messages of closed channel.
+	 */
+	protected void clearOutput() {
+		outputMessageQueue.clear();
+		sentMessageQueue.release();
+		topics.clear();
+	}
+	
+	/**
+	 * Moves input seqnum forward after message is handled or stashed.
+	 */
+	protected void updateInputSeqnum(long seqnum) {
+		if (seqnum > inputSeqnum) {
+			inputSeqnum = seqnum;
+			journalProgress();
+		}
+	}
+	
+	protected long getInputSeqnum() {
+		return inputSeqnum;
+	}
+	
+	/**
+	 * @return builder of statistics with values tracked by all channels
+	 */
+	protected ChannelStats.Builder getStatsBuilder() {
+		return ChannelStats.builder()
+				.setChannelId(channelId)
+				.setStatus(getStatus())
+				.setSent(outputSeqnum)
+				.setReceived(inputSeqnum)
+				.setQueueDepth(getTaskQueueSize())
+				.setBatchSize(batchSize)
+				.setDrainTime(drainTime)
+				.setConflated(outputMessageQueue.getConflatedCount())
+				.setDropped(outputMessageQueue.getDroppedCount())
+				.setRejected(rejected.get())
+				.setCompressedFlushes(compressor.getFlushes())
+				.setUncompressedBytes(compressor.getUncompressedBytes())
+				.setCompressedBytes(compressor.getCompressedBytes())
+				.setCompressionTime(compressor.getCompressionTime());
+	}
+
+	/**
+	 * Handles admin message and tracks its seqnum as one step.
+	 */
+	protected void processInputMessage(WithSeqnumWrapper message) {
+		if (message.getMessage() instanceof AdminMessage) {
+			processAdminMessage((AdminMessage) message.getMessage());
+		}
+		processSequencedMessage(message);
+	}
+	
+	/**
+	 * Reacts to admin message, called out of seqnum order.
+	 */
+	protected abstract void processAdminMessage(AdminMessage message);
+	
+	/**
+	 * Tracks input seqnum and delivers business message to handler.
+	 */
+	protected abstract void processSequencedMessage(WithSeqnumWrapper message);
 
 	protected abstract void onClose();
 
@@ -165,7 +826,8 @@ public abstract class AbstractChannel {
 	protected abstract void onBind(Object context);
 	
 	protected boolean tryProcessing() {
-		return processing.compareAndSet(false, true);
+		// Plain read first to avoid CAS while channel is already scheduled
+		return !processing.get() && processing.compareAndSet(false, true);
 	}
 
 	protected void finishProcessing() {
@@ -181,11 +843,30 @@ public abstract class AbstractChannel {
 	}
 
 	public void clearQueue() {
+		adminQueue.clear();
 		taskQueue.clear();
 	}
 	
 	public boolean isTaskQueueEmpty() {
-		return this.getStatus() == ChannelStatus.CLOSED || taskQueue.isEmpty();
+		return this.getStatus() == ChannelStatus.CLOSED || (adminQueue.isEmpty() && taskQueue.isEmpty());
+	}
+	
+	public int getTaskQueueSize() {
+		return adminQueue.size() + taskQueue.size();
+	}
+	
+	/**
+	 * @return current number of events processed in one execution task
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * @return duration of last processed batch in nanoseconds
+	 */
+	public long getDrainTime() {
+		return drainTime;
 	}
 
 	public void setStatus(ChannelStatus status) {
@@ -202,6 +883,13 @@ public abstract class AbstractChannel {
 		return settings;
 	}
 	
+	/**
+	 * @return compressor of output batches, used if compression is enabled
+	 */
+	protected MessageCompressor getCompressor() {
+		return compressor;
+	}
+	
 	public AbstractMessageFactory getMessageFactory() {
 		return messageFactory;
 	}
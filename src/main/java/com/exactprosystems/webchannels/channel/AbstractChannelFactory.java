@@ -30,17 +30,39 @@ public abstract class AbstractChannelFactory {
 	
 	private final AbstractMessageFactory messageFactory;
 	
+	private final AbstractMessageFactory binaryMessageFactory;
+	
 	private final AbstractHandlerFactory handlerFactory;
 	
 	public AbstractChannelFactory(AbstractMessageFactory messageFactory,
                                   AbstractHandlerFactory handlerFactory) {
+		this(messageFactory, null, handlerFactory);
+	}
+	
+	public AbstractChannelFactory(AbstractMessageFactory messageFactory, AbstractMessageFactory binaryMessageFactory,
+                                  AbstractHandlerFactory handlerFactory) {
 		this.messageFactory = messageFactory;
+		this.binaryMessageFactory = binaryMessageFactory;
 		this.handlerFactory = handlerFactory;
 	}
 	
 	public AbstractMessageFactory getMessageFactory() {
 		return messageFactory;
 	}
+	
+	public AbstractMessageFactory getBinaryMessageFactory() {
+		return binaryMessageFactory;
+	}
+	
+	/**
+	 * @return factory for output messages of channel, binary one if it is negotiated
+	 */
+	public AbstractMessageFactory getMessageFactory(ChannelSettings settings) {
+		if (settings.isBinaryEnabled() && binaryMessageFactory != null) {
+			return binaryMessageFactory;
+		}
+		return messageFactory;
+	}
 
 	public AbstractHandlerFactory getHandlerFactory() {
 		return handlerFactory;
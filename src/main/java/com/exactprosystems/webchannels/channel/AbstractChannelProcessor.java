@@ -19,25 +19,34 @@
 package com.exactprosystems.webchannels.channel;
 
 import com.exactprosystems.webchannels.enums.ChannelStatus;
+import com.exactprosystems.webchannels.exceptions.EncodingException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.http.HttpSessionEvent;
 import javax.servlet.http.HttpSessionListener;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 
 public abstract class AbstractChannelProcessor implements HttpSessionListener {
 
+	private static final long SCHEDULER_TICK_DURATION = 100L;
+	
+	private static final int SCHEDULER_WHEEL_SIZE = 512;
+
 	protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	protected final ConcurrentMap<String, AbstractChannel> channels;
 	
+	protected final ConcurrentMap<String, TopicLog> topics;
+	
 	protected final AbstractHandlerFactory handlerFactory;
 	
 	protected final AbstractChannelFactory channelFactory;
@@ -48,23 +57,29 @@ public abstract class AbstractChannelProcessor implements HttpSessionListener {
 	
 	protected final Executor executor;
 	
-	protected final IdleChannelsMonitor idleChannelsMonitor;
-
-	private final Thread idleChannelsMonitorThread;
+	protected final HashedWheelScheduler scheduler;
+	
+	private volatile ChannelJournal journal;
+	
+	private final List<CompressionDictionary> dictionaries;
+	
+	private volatile DictionaryTrainer dictionaryTrainer;
 	
 	public AbstractChannelProcessor(AbstractHandlerFactory handlerFactory, AbstractMessageFactory messageFactory,
 			ChannelSettings settings, AbstractChannelFactory channelFactory, Executor executor) {
 		
 		this.channels = new ConcurrentHashMap<String, AbstractChannel>();
+		this.topics = new ConcurrentHashMap<String, TopicLog>();
 		this.settings = settings;
 		this.handlerFactory = handlerFactory;
 		this.messageFactory = messageFactory;
 		this.channelFactory = channelFactory;
 		this.executor = executor;
+		this.dictionaries = new CopyOnWriteArrayList<CompressionDictionary>();
 		
-		this.idleChannelsMonitor = new IdleChannelsMonitor();
-		this.idleChannelsMonitorThread = new Thread(idleChannelsMonitor, this.getClass().getSimpleName() + "-IdleChannelsMonitor");
-		this.idleChannelsMonitorThread.start();
+		this.scheduler = new HashedWheelScheduler(this.getClass().getSimpleName() + "-DeadlineScheduler",
+				new ChannelDeadlineHandler(), Math.min(SCHEDULER_TICK_DURATION, settings.getPollingInterval()), SCHEDULER_WHEEL_SIZE);
+		this.scheduler.start();
 		
 		logger.info("Create processor {}", this);
 		
@@ -106,84 +121,181 @@ public abstract class AbstractChannelProcessor implements HttpSessionListener {
 		SessionContrtoller.getInstance().destroySessionChannels(session);
 	}
 	
+	/**
+	 * Enables journal of channels, so clients can resume their channels after restart.
+	 * Journal is started here and stopped on {@link #destroy()}.
+	 */
+	public void setJournal(ChannelJournal journal) {
+		this.journal = journal;
+		journal.start();
+	}
+	
+	public ChannelJournal getJournal() {
+		return journal;
+	}
+	
+	/**
+	 * Adds preset dictionary for compression. New channels use the latest 
+	 * added dictionary of those which their client has.
+	 */
+	public void addCompressionDictionary(CompressionDictionary dictionary) {
+		for (CompressionDictionary added : dictionaries) {
+			if (added.getVersion().equals(dictionary.getVersion())) {
+				throw new IllegalArgumentException("Dictionary version " + dictionary.getVersion() + " is already added");
+			}
+		}
+		dictionaries.add(dictionary);
+	}
+	
+	/**
+	 * @return dictionaries to be passed to clients
+	 */
+	public List<CompressionDictionary> getCompressionDictionaries() {
+		return Collections.unmodifiableList(dictionaries);
+	}
+	
+	/**
+	 * Enables sampling of compressed output of new channels.
+	 */
+	public void setDictionaryTrainer(DictionaryTrainer dictionaryTrainer) {
+		this.dictionaryTrainer = dictionaryTrainer;
+	}
+	
+	public DictionaryTrainer getDictionaryTrainer() {
+		return dictionaryTrainer;
+	}
+	
+	/**
+	 * @param versions comma separated versions of dictionaries known by client
+	 * @return latest added dictionary known by client or null
+	 */
+	protected CompressionDictionary getCompressionDictionary(String versions) {
+		if (versions == null || versions.isEmpty()) {
+			return null;
+		}
+		List<String> known = Arrays.asList(versions.split(","));
+		for (int i = dictionaries.size() - 1; i >= 0; i--) {
+			CompressionDictionary dictionary = dictionaries.get(i);
+			if (known.contains(dictionary.getVersion())) {
+				return dictionary;
+			}
+		}
+		return null;
+	}
+	
+	protected void initChannel(AbstractChannel channel, HttpSession httpSession) {
+		channel.setScheduler(scheduler);
+		channel.getCompressor().setTrainer(dictionaryTrainer);
+		ChannelJournal journal = this.journal;
+		if (journal != null) {
+			ChannelJournal.State state = journal.restore(channel.getID());
+			channel.setJournal(journal.attach(channel.getID()));
+			if (state != null) {
+				logger.info("Resume {} from journal", channel);
+				channel.restore(state);
+			}
+		}
+		channel.initHandler();
+		SessionContrtoller.getInstance().registerChannel(channel, httpSession);
+	}
+	
+	/**
+	 * Sends message to all channels of processor. Message is serialized once per wire format.
+	 */
+	public void broadcast(AbstractMessage message) throws EncodingException {
+		broadcast(message, channels.keySet());
+	}
+	
+	/**
+	 * Sends message to given channels of processor. Message is serialized once per wire format,
+	 * unknown channel ids are ignored.
+	 */
+	public void broadcast(AbstractMessage message, Iterable<String> channelIds) throws EncodingException {
+		AbstractMessage encoded = messageFactory.preEncodeMessage(message);
+		for (String channelId : channelIds) {
+			AbstractChannel channel = channels.get(channelId);
+			if (channel != null) {
+				channel.sendMessage(encoded);
+			}
+		}
+	}
+	
+	/**
+	 * @return log of topic, created on first use with capacity of resend buffer
+	 */
+	public TopicLog getTopic(String name) {
+		TopicLog topic = topics.get(name);
+		if (topic == null) {
+			TopicLog created = new TopicLog(name, settings.getResendBufferSize());
+			topic = topics.putIfAbsent(name, created);
+			if (topic == null) {
+				topic = created;
+			}
+		}
+		return topic;
+	}
+	
+	/**
+	 * Appends message to topic log shared by subscribed channels. Message is serialized once per wire format.
+	 * 
+	 * @return topic seqnum of message
+	 */
+	public long publish(String topic, AbstractMessage message) throws EncodingException {
+		return getTopic(topic).append(messageFactory.preEncodeMessage(message));
+	}
+	
+	/**
+	 * Subscribes channel to topic.
+	 * 
+	 * @return cursor of channel or null if there is no channel with given id
+	 */
+	public TopicCursor subscribe(String channelId, String topic) {
+		AbstractChannel channel = channels.get(channelId);
+		if (channel == null) {
+			return null;
+		}
+		return channel.subscribe(getTopic(topic));
+	}
+	
 	public void close(HttpSession session) {
 		SessionContrtoller.getInstance().destroySessionChannels(session);
 	}
 	
 	public void destroy() {
 		
+		ChannelJournal journal = this.journal;
+		if (journal != null) {
+			// Channels closed by shutdown can be resumed after restart
+			this.journal = null;
+			journal.stop();
+		}
+		
 		for (AbstractChannel channel : channels.values()) {
 			channel.close();
 		}
 		
 		channels.clear();
 		
-		idleChannelsMonitor.stop();
-		try {
-			idleChannelsMonitorThread.join();
-		} catch (InterruptedException e) {
-			logger.error(e.getMessage(), e);
-		}
+		scheduler.stop();
 		
 		logger.info("Destroy processor {}", this);
 		
 	}
 
-	private class IdleChannelsMonitor implements Runnable {
+	private class ChannelDeadlineHandler implements IDeadlineHandler {
 
-		private volatile boolean running = true;
-
-		public void stop() {
-			running = false;
-		}
-		
 		@Override
-		public void run() {
-			
-			while (running && !Thread.currentThread().isInterrupted()) {
-				
-				try {
-					
-					List<AbstractChannel> toDelete = new ArrayList<AbstractChannel>();
-					
-					for (Entry<String, AbstractChannel> entry : channels.entrySet()) {
-						AbstractChannel channel = entry.getValue();
-						if (channel.getStatus() != ChannelStatus.CLOSED) {
-							channel.schedule();
-						} else {
-							toDelete.add(channel);
-						}
-					}
-					
-					for (AbstractChannel channel : toDelete) {
-						channels.remove(channel.getID());
-						SessionContrtoller.getInstance().unregisterChannel(channel);
-					}
-				
-				} catch (Throwable e) {
-					
-					logger.error(e.getMessage(), e);
-					
-				}
-					
-				try {
-					Thread.sleep(settings.getPollingInterval());
-				} catch (InterruptedException e) {
-					logger.error(e.getMessage(), e);
-					running = false;
-				}
-				
+		public void onDeadline(AbstractChannel channel) {
+			if (channel.getStatus() != ChannelStatus.CLOSED) {
+				channel.schedule();
+			} else if (channels.remove(channel.getID(), channel)) {
+				SessionContrtoller.getInstance().unregisterChannel(channel);
 			}
-			
 		}
 
 		@Override
 		public String toString() {
-			StringBuilder builder = new StringBuilder();
-			builder.append("IdleChannelsMonitor [running=");
-			builder.append(running);
-			builder.append("]");
-			return builder.toString();
+			return "ChannelDeadlineHandler[]";
 		}
 		
 	}
@@ -34,15 +34,67 @@ import com.exactprosystems.webchannels.messages.AbstractMessage;
  *
  */
 public abstract class AbstractMessageFactory {
+	
+	private static final int DEFAULT_MESSAGE_SIZE = 128;
 
 	public abstract List<WithSeqnumWrapper> decodeMessage(InputStream stream) throws DecodingException;
 
 	public abstract List<WithSeqnumWrapper> decodeMessage(Reader reader) throws DecodingException;
 
+	/**
+	 * Passes each message to consumer as soon as it is decoded, so batch is not 
+	 * held in memory. Messages decoded before an error are already consumed.
+	 */
+	public void decodeMessage(InputStream stream, MessageConsumer consumer) throws DecodingException {
+		List<WithSeqnumWrapper> list = decodeMessage(stream);
+		if (list != null) {
+			for (WithSeqnumWrapper message : list) {
+				consumer.accept(message);
+			}
+		}
+	}
+	
+	/**
+	 * @see #decodeMessage(InputStream, MessageConsumer)
+	 */
+	public void decodeMessage(Reader reader, MessageConsumer consumer) throws DecodingException {
+		List<WithSeqnumWrapper> list = decodeMessage(reader);
+		if (list != null) {
+			for (WithSeqnumWrapper message : list) {
+				consumer.accept(message);
+			}
+		}
+	}
+
 	public abstract OutputStream encodeMessage(List<WithSeqnumWrapper> message, OutputStream stream) throws EncodingException;
 
 	public abstract Writer encodeMessage(List<WithSeqnumWrapper> message, Writer writer) throws EncodingException;
 
 	public abstract String getContentType();
 	
+	/**
+	 * Serializes message body once, so it can be sent to many channels without 
+	 * repeated encoding. Factory without such support returns message as is.
+	 */
+	public AbstractMessage preEncodeMessage(AbstractMessage message) throws EncodingException {
+		return message;
+	}
+	
+	/**
+	 * @return true if messages are encoded in binary form, which can be written to stream only
+	 */
+	public boolean isBinary() {
+		return false;
+	}
+	
+	/**
+	 * @return estimated size of encoded message in bytes, used for output buffer limits
+	 */
+	public int estimateSize(AbstractMessage message) {
+		if (message instanceof EncodedMessage) {
+			return ((EncodedMessage) message).getSize();
+		}
+		return DEFAULT_MESSAGE_SIZE;
+	}
+	
 }
@@ -0,0 +1,228 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+import com.exactprosystems.webchannels.exceptions.DecodingException;
+import com.exactprosystems.webchannels.exceptions.EncodingException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+
+/**
+ * 
+ * Encodes messages as CBOR, same structure as JSON in binary form. 
+ * Pre-encoded messages are kept as JSON, so they can be shared with 
+ * text channels and stored for resend. Their CBOR form is cached on first write.
+ *
+ */
+public class CborMessageFactory extends AbstractMessageFactory {
+	
+	private static final TypeReference<List<WithSeqnumWrapper>> type = new TypeReference<List<WithSeqnumWrapper>>() {};
+	
+	private final ObjectMapper mapper;
+	
+	private final ObjectWriter writer;
+	
+	private final ObjectReader reader;
+	
+	private final ObjectReader wrapperReader;
+	
+	private final JsonMessageFactory textFactory;
+	
+	public CborMessageFactory() {
+		this(null);
+	}
+	
+	/**
+	 * @param configurator registry of message type ids, class names are used if null
+	 */
+	public CborMessageFactory(MessageFactoryConfigurator configurator) {
+		this.textFactory = new JsonMessageFactory(configurator);
+		CBORFactory factory = new CBORFactory();
+		this.mapper = new ObjectMapper(factory);
+		this.mapper.disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS);
+		this.mapper.disable(DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS);
+		this.mapper.findAndRegisterModules();
+		this.mapper.registerModule(new SimpleModule("EncodedMessage").addSerializer(EncodedMessage.class, new EncodedMessageConverter(factory)));
+		if (configurator != null) {
+			configurator.configure(mapper);
+		}
+		this.writer = mapper.writerFor(type);
+		this.reader = mapper.readerFor(type);
+		this.wrapperReader = mapper.readerFor(WithSeqnumWrapper.class);
+	}
+	
+	@Override
+	public List<WithSeqnumWrapper> decodeMessage(InputStream stream) throws DecodingException {
+		
+		try {
+			return reader.readValue(stream);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode cbor message", e);
+		}
+		
+	}
+
+	@Override
+	public void decodeMessage(InputStream stream, MessageConsumer consumer) throws DecodingException {
+		
+		try (JsonParser parser = mapper.getFactory().createParser(stream)) {
+			JsonMessageFactory.readMessages(parser, wrapperReader, consumer);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode cbor message", e);
+		}
+		
+	}
+
+	@Override
+	public List<WithSeqnumWrapper> decodeMessage(Reader reader) throws DecodingException {
+		throw new DecodingException("Cbor message cannot be read as text");
+	}
+
+	@Override
+	public OutputStream encodeMessage(List<WithSeqnumWrapper> messages, OutputStream stream) throws EncodingException {
+		
+		try {
+			writer.writeValue(stream, messages);
+		} catch (Exception e) {
+			throw new EncodingException("Cannot encode cbor message", e);
+		}
+		
+		return stream;
+		
+	}
+
+	@Override
+	public Writer encodeMessage(List<WithSeqnumWrapper> messages, Writer writer) throws EncodingException {
+		throw new EncodingException("Cbor message cannot be written as text");
+	}
+	
+	@Override
+	public AbstractMessage preEncodeMessage(AbstractMessage message) throws EncodingException {
+		return textFactory.preEncodeMessage(message);
+	}
+	
+	@Override
+	public boolean isBinary() {
+		return true;
+	}
+
+	@Override
+	public String getContentType() {
+		return "application/cbor";
+	}
+	
+	/**
+	 * 
+	 * Writes original message of pre-encoded one. Messages restored from 
+	 * resend storage have only JSON form, which is converted. Typed form 
+	 * written into batches is cached in message and copied by next channels.
+	 *
+	 */
+	private static class EncodedMessageConverter extends StdSerializer<EncodedMessage> {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final transient CBORFactory factory;
+		
+		private final ObjectReader treeReader;
+
+		private EncodedMessageConverter(CBORFactory factory) {
+			super(EncodedMessage.class);
+			this.factory = factory;
+			this.treeReader = new ObjectMapper().reader();
+		}
+
+		@Override
+		public void serialize(EncodedMessage value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			AbstractMessage message = value.getMessage();
+			if (message != null) {
+				provider.findValueSerializer(message.getClass()).serialize(message, generator, provider);
+			} else {
+				writeTree(value, generator, provider);
+			}
+		}
+		
+		@Override
+		public void serializeWithType(EncodedMessage value, JsonGenerator generator, SerializerProvider provider, 
+				TypeSerializer typeSerializer) throws IOException {
+			
+			if (!(generator instanceof CBORGenerator)) {
+				writeTyped(value, generator, provider, typeSerializer);
+				return;
+			}
+			
+			byte[] bytes = value.getBinary(this);
+			if (bytes == null) {
+				ByteArrayOutputStream output = new ByteArrayOutputStream(value.getSize());
+				try (JsonGenerator binaryGenerator = factory.createGenerator(output)) {
+					writeTyped(value, binaryGenerator, provider, typeSerializer);
+				}
+				bytes = output.toByteArray();
+				value.setBinary(this, bytes);
+			}
+			
+			// Generator checks structure by its context, raw bytes bypass it
+			((JsonWriteContext) generator.getOutputContext()).writeValue();
+			((CBORGenerator) generator).writeBytes(bytes, 0, bytes.length);
+			
+		}
+		
+		private void writeTyped(EncodedMessage value, JsonGenerator generator, SerializerProvider provider, 
+				TypeSerializer typeSerializer) throws IOException {
+			AbstractMessage message = value.getMessage();
+			if (message != null) {
+				provider.findValueSerializer(message.getClass()).serializeWithType(message, generator, provider, typeSerializer);
+			} else {
+				// Type id is already written into encoded form
+				writeTree(value, generator, provider);
+			}
+		}
+		
+		private void writeTree(EncodedMessage value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			JsonNode tree = treeReader.readTree(value.getEncoded().getValue());
+			tree.serialize(generator, provider);
+		}
+		
+	}
+
+}
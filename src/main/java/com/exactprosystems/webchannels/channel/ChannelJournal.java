@@ -0,0 +1,543 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.exactprosystems.webchannels.exceptions.EncodingException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+/**
+ * 
+ * Append-only journal of channel seqnums and sent messages, which allows clients
+ * to resume their channels after server restart. Records are written in batches
+ * by journal thread. Channel state is restored lazily when client reconnects 
+ * with its channelId, missed messages are recovered by usual ResendRequest.
+ * 
+ * Journal is kept in two files, current one is rotated when it exceeds size limit.
+ * Records not yet written are lost on crash, {@link #stop()} writes all of them.
+ *
+ */
+public class ChannelJournal {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ChannelJournal.class);
+	
+	private static final byte PROGRESS_RECORD = 1;
+	
+	private static final byte OUTPUT_RECORD = 2;
+	
+	private static final byte CLOSE_RECORD = 3;
+	
+	private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50L);
+	
+	private final File file;
+	
+	private final File oldFile;
+	
+	private final AbstractMessageFactory messageFactory;
+	
+	private final int tailSize;
+	
+	private final long maxFileSize;
+	
+	private final long retention;
+	
+	private final ConcurrentMap<String, State> states;
+	
+	private final ConcurrentMap<String, Handle> handles;
+	
+	private final Queue<Object> records;
+	
+	private final Worker worker;
+	
+	private final Thread workerThread;
+	
+	/**
+	 * @param directory directory of journal files
+	 * @param tailSize number of last sent messages kept for each channel
+	 * @param maxFileSize size of journal file which triggers rotation
+	 * @param retention time in milliseconds after which inactive channel can not be resumed
+	 */
+	public ChannelJournal(File directory, AbstractMessageFactory messageFactory, int tailSize, 
+			long maxFileSize, long retention) throws IOException {
+		
+		this.file = new File(directory, "channels.journal");
+		this.oldFile = new File(directory, "channels.journal.old");
+		this.messageFactory = messageFactory;
+		this.tailSize = tailSize;
+		this.maxFileSize = maxFileSize;
+		this.retention = retention;
+		this.states = new ConcurrentHashMap<String, State>();
+		this.handles = new ConcurrentHashMap<String, Handle>();
+		this.records = new ConcurrentLinkedQueue<Object>();
+		
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create journal directory " + directory);
+		}
+		
+		Map<String, State> loaded = new HashMap<String, State>();
+		load(oldFile, loaded);
+		load(file, loaded);
+		
+		long now = System.currentTimeMillis();
+		for (State state : loaded.values()) {
+			if (now - state.lastActivity <= retention) {
+				states.put(state.channelId, state);
+			}
+		}
+		
+		this.worker = new Worker();
+		this.workerThread = new Thread(worker, "ChannelJournal");
+		this.workerThread.setDaemon(true);
+		
+		// Loaded states are kept in the new file only
+		worker.rotate();
+		
+		logger.info("Load {} channels from {}", states.size(), file);
+		
+	}
+	
+	public void start() {
+		workerThread.start();
+	}
+	
+	/**
+	 * Stops journal thread after all queued records are written.
+	 */
+	public void stop() {
+		worker.stop();
+		LockSupport.unpark(workerThread);
+		try {
+			workerThread.join();
+		} catch (InterruptedException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Starts journaling of channel.
+	 */
+	public Handle attach(String channelId) {
+		Handle handle = new Handle(channelId);
+		handles.put(channelId, handle);
+		handle.progress(0L, 1L);
+		return handle;
+	}
+	
+	/**
+	 * @return state of channel saved before restart or null, state is returned once
+	 */
+	public State restore(String channelId) {
+		State state = states.remove(channelId);
+		if (state == null || System.currentTimeMillis() - state.lastActivity > retention) {
+			return null;
+		}
+		return state;
+	}
+	
+	/**
+	 * @return number of saved channels which are not resumed yet
+	 */
+	public int getRestorableCount() {
+		return states.size();
+	}
+	
+	private void load(File source, Map<String, State> loaded) {
+		
+		if (!source.exists()) {
+			return;
+		}
+		
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+			while (true) {
+				byte type = input.readByte();
+				long timestamp = input.readLong();
+				String channelId = input.readUTF();
+				State state = loaded.get(channelId);
+				if (state == null && type != CLOSE_RECORD) {
+					state = new State(channelId);
+					loaded.put(channelId, state);
+				}
+				switch (type) {
+					case PROGRESS_RECORD:
+						state.inputSeqnum = Math.max(state.inputSeqnum, input.readLong());
+						state.outputSeqnum = Math.max(state.outputSeqnum, input.readLong());
+						break;
+					case OUTPUT_RECORD:
+						long seqnum = input.readLong();
+						byte[] bytes = new byte[input.readInt()];
+						input.readFully(bytes);
+						state.addSent(seqnum, bytes, tailSize);
+						break;
+					case CLOSE_RECORD:
+						loaded.remove(channelId);
+						continue;
+					default:
+						throw new IOException("Unknown record type " + type + " in " + source);
+				}
+				state.lastActivity = Math.max(state.lastActivity, timestamp);
+			}
+		} catch (EOFException e) {
+			// Last record may be incomplete after crash
+		} catch (IOException e) {
+			logger.error("Cannot read journal " + source, e);
+		}
+		
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("ChannelJournal[file=");
+		builder.append(file);
+		builder.append(",channels=");
+		builder.append(handles.size());
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	/**
+	 * 
+	 * Journal of single channel. Methods are called by channel processing.
+	 *
+	 */
+	public final class Handle {
+		
+		private final String channelId;
+		
+		private final AtomicBoolean queued;
+		
+		// Last sent messages, rewritten on rotation, accessed by journal thread only
+		private final State tail;
+		
+		private volatile long inputSeqnum;
+		
+		private volatile long outputSeqnum;
+		
+		private Handle(String channelId) {
+			this.channelId = channelId;
+			this.queued = new AtomicBoolean(false);
+			this.tail = new State(channelId);
+		}
+		
+		/**
+		 * Saves seqnums. Updates are coalesced until journal thread writes them.
+		 * 
+		 * @param outputSeqnum seqnum of the next output message
+		 */
+		public void progress(long inputSeqnum, long outputSeqnum) {
+			this.inputSeqnum = inputSeqnum;
+			this.outputSeqnum = outputSeqnum;
+			if (!queued.get() && queued.compareAndSet(false, true)) {
+				records.offer(this);
+			}
+		}
+		
+		/**
+		 * Saves message sent with given seqnum. Message is encoded by journal thread.
+		 */
+		public void output(long seqnum, AbstractMessage message) {
+			records.offer(new Record(this, OUTPUT_RECORD, seqnum, message));
+		}
+		
+		public void close() {
+			handles.remove(channelId, this);
+			records.offer(new Record(this, CLOSE_RECORD, 0L, null));
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * Channel state saved before restart.
+	 *
+	 */
+	public static final class State {
+		
+		private final String channelId;
+		
+		private final ArrayDeque<Sent> sent;
+		
+		private long inputSeqnum;
+		
+		private long outputSeqnum;
+		
+		private long lastActivity;
+		
+		private State(String channelId) {
+			this.channelId = channelId;
+			this.sent = new ArrayDeque<Sent>();
+			this.inputSeqnum = 0L;
+			this.outputSeqnum = 1L;
+			this.lastActivity = 0L;
+		}
+		
+		private void addSent(long seqnum, byte[] bytes, int limit) {
+			if (!sent.isEmpty() && sent.peekLast().seqnum >= seqnum) {
+				// Conflated message replaces saved one
+				Iterator<Sent> iterator = sent.descendingIterator();
+				while (iterator.hasNext()) {
+					Sent message = iterator.next();
+					if (message.seqnum == seqnum) {
+						message.bytes = bytes;
+						return;
+					}
+				}
+				return;
+			}
+			sent.offerLast(new Sent(seqnum, bytes));
+			if (sent.size() > limit) {
+				sent.pollFirst();
+			}
+			outputSeqnum = Math.max(outputSeqnum, seqnum + 1);
+		}
+		
+		public String getChannelId() {
+			return channelId;
+		}
+		
+		public long getInputSeqnum() {
+			return inputSeqnum;
+		}
+		
+		/**
+		 * @return seqnum of the next output message
+		 */
+		public long getOutputSeqnum() {
+			return outputSeqnum;
+		}
+		
+		/**
+		 * @return last sent messages as {@link EncodedMessage}
+		 */
+		public List<WithSeqnumWrapper> getSentMessages() {
+			List<WithSeqnumWrapper> messages = new ArrayList<WithSeqnumWrapper>(sent.size());
+			for (Sent message : sent) {
+				messages.add(new WithSeqnumWrapper(message.seqnum, 
+						new EncodedMessage(null, new String(message.bytes, StandardCharsets.UTF_8))));
+			}
+			return messages;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("State[channelId=");
+			builder.append(channelId);
+			builder.append(",inputSeqnum=");
+			builder.append(inputSeqnum);
+			builder.append(",outputSeqnum=");
+			builder.append(outputSeqnum);
+			builder.append(",sent=");
+			builder.append(sent.size());
+			builder.append("]");
+			return builder.toString();
+		}
+		
+	}
+	
+	private static final class Sent {
+		
+		private final long seqnum;
+		
+		private byte[] bytes;
+		
+		private Sent(long seqnum, byte[] bytes) {
+			this.seqnum = seqnum;
+			this.bytes = bytes;
+		}
+		
+	}
+	
+	private static final class Record {
+		
+		private final Handle handle;
+		
+		private final byte type;
+		
+		private final long seqnum;
+		
+		private final AbstractMessage message;
+		
+		private Record(Handle handle, byte type, long seqnum, AbstractMessage message) {
+			this.handle = handle;
+			this.type = type;
+			this.seqnum = seqnum;
+			this.message = message;
+		}
+		
+	}
+	
+	private class Worker implements Runnable {
+		
+		private volatile boolean running = true;
+		
+		private DataOutputStream output;
+		
+		private long written;
+		
+		public void stop() {
+			running = false;
+		}
+		
+		@Override
+		public void run() {
+			
+			while (running || !records.isEmpty()) {
+				
+				try {
+					
+					Object record = records.poll();
+					if (record == null) {
+						output.flush();
+						LockSupport.parkNanos(FLUSH_INTERVAL);
+						continue;
+					}
+					
+					if (record instanceof Handle) {
+						Handle handle = (Handle) record;
+						handle.queued.set(false);
+						writeProgress(handle.channelId, handle.inputSeqnum, handle.outputSeqnum);
+					} else {
+						Record entry = (Record) record;
+						if (entry.type == OUTPUT_RECORD) {
+							byte[] bytes = encode(entry.message);
+							if (bytes != null) {
+								entry.handle.tail.addSent(entry.seqnum, bytes, tailSize);
+							}
+							writeOutput(entry.handle.channelId, entry.seqnum, bytes);
+						} else {
+							writeHeader(CLOSE_RECORD, entry.handle.channelId);
+						}
+					}
+					
+					if (written > maxFileSize) {
+						rotate();
+					}
+					
+				} catch (Throwable e) {
+					logger.error("Cannot write journal " + file, e);
+				}
+				
+			}
+			
+			try {
+				output.close();
+			} catch (IOException e) {
+				logger.error("Cannot close journal " + file, e);
+			}
+			
+		}
+		
+		/**
+		 * Moves current file to old one and starts new file with seqnums and last sent 
+		 * messages of known channels, so old file is not needed after next rotation.
+		 */
+		private void rotate() throws IOException {
+			
+			if (output != null) {
+				output.close();
+			}
+			
+			if (file.exists() && !file.renameTo(oldFile)) {
+				if (!oldFile.delete() || !file.renameTo(oldFile)) {
+					throw new IOException("Cannot rotate journal " + file);
+				}
+			}
+			
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			written = 0L;
+			
+			for (State state : states.values()) {
+				for (Sent message : state.sent) {
+					writeOutput(state.channelId, message.seqnum, message.bytes);
+				}
+				writeProgress(state.channelId, state.inputSeqnum, state.outputSeqnum);
+			}
+			for (Handle handle : handles.values()) {
+				for (Sent message : handle.tail.sent) {
+					writeOutput(handle.channelId, message.seqnum, message.bytes);
+				}
+				writeProgress(handle.channelId, handle.inputSeqnum, handle.outputSeqnum);
+			}
+			
+		}
+		
+		private byte[] encode(AbstractMessage message) throws EncodingException {
+			AbstractMessage encoded = messageFactory.preEncodeMessage(message);
+			if (encoded instanceof EncodedMessage) {
+				return ((EncodedMessage) encoded).getEncoded().asUnquotedUTF8();
+			}
+			return null;
+		}
+		
+		private void writeHeader(byte type, String channelId) throws IOException {
+			output.writeByte(type);
+			output.writeLong(System.currentTimeMillis());
+			output.writeUTF(channelId);
+			written += 11 + channelId.length();
+		}
+		
+		private void writeProgress(String channelId, long inputSeqnum, long outputSeqnum) throws IOException {
+			writeHeader(PROGRESS_RECORD, channelId);
+			output.writeLong(inputSeqnum);
+			output.writeLong(outputSeqnum);
+			written += 16;
+		}
+		
+		private void writeOutput(String channelId, long seqnum, byte[] bytes) throws IOException {
+			if (bytes == null) {
+				return;
+			}
+			writeHeader(OUTPUT_RECORD, channelId);
+			output.writeLong(seqnum);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+			written += 12 + bytes.length;
+		}
+		
+	}
+
+}
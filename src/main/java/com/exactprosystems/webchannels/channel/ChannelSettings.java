@@ -18,7 +18,14 @@
 
 package com.exactprosystems.webchannels.channel;
 
+import java.util.zip.Deflater;
+
+import com.exactprosystems.webchannels.enums.OverflowPolicy;
+import com.exactprosystems.webchannels.enums.ResendBufferType;
+
 public class ChannelSettings {
+	
+	public static final long DEFAULT_RESEND_JOURNAL_SIZE = 64L * 1024 * 1024;
 
 	private final long pollingInterval;
 	private final long heartBeatInterval;
@@ -27,27 +34,103 @@ public class ChannelSettings {
 	private final int executorBatchSize;
 	private final int resendBufferSize;
 	private final boolean compressionEnabled;
+	private final int maxOutputMessages;
+	private final long maxOutputBytes;
+	private final OverflowPolicy overflowPolicy;
+	private final boolean conflationEnabled;
+	private final boolean encodeOnEnqueue;
+	private final int maxRecoveryWindow;
+	private final ResendBufferType resendBufferType;
+	private final long resendJournalSize;
+	private final boolean binaryEnabled;
+	private final int compressionLevel;
+	private final int compressionStrategy;
+	private final int compressionThreshold;
+	private final CompressionDictionary compressionDictionary;
+	private final boolean asyncSendEnabled;
+	private final int maxInFlightSends;
+	private final long sendTimeout;
 	
 	public ChannelSettings() {
-		this.pollingInterval = 1000;
-		this.heartBeatInterval = 5000;
-		this.maxCountToSend = 250;
-		this.executorBatchSize = 10;
-		this.disconnectTimeout = 10000;
-		this.resendBufferSize = 1024;
-		this.compressionEnabled = false;
+		this(new Builder());
 	}
 	
 	public ChannelSettings(long pollingInterval, long heartBeatInterval, 
 			int maxCountToSend, int executorBatchSize, long disconnectTimeout,
 			int resendBufferSize, boolean compressionEnabled) {
-		this.pollingInterval = pollingInterval;
-		this.heartBeatInterval = heartBeatInterval;
-		this.maxCountToSend = maxCountToSend;
-		this.executorBatchSize = executorBatchSize;
-		this.disconnectTimeout = disconnectTimeout;
-		this.resendBufferSize = resendBufferSize;
-		this.compressionEnabled = compressionEnabled;
+		this(new Builder()
+				.setPollingInterval(pollingInterval)
+				.setHeartBeatInterval(heartBeatInterval)
+				.setMaxCountToSend(maxCountToSend)
+				.setExecutorBatchSize(executorBatchSize)
+				.setDisconnectTimeout(disconnectTimeout)
+				.setResendBufferSize(resendBufferSize)
+				.setCompressionEnabled(compressionEnabled)
+				.setSendTimeout(disconnectTimeout));
+	}
+	
+	private ChannelSettings(Builder builder) {
+		this.pollingInterval = builder.pollingInterval;
+		this.heartBeatInterval = builder.heartBeatInterval;
+		this.maxCountToSend = builder.maxCountToSend;
+		this.executorBatchSize = builder.executorBatchSize;
+		this.disconnectTimeout = builder.disconnectTimeout;
+		this.resendBufferSize = builder.resendBufferSize;
+		this.compressionEnabled = builder.compressionEnabled;
+		this.maxOutputMessages = builder.maxOutputMessages;
+		this.maxOutputBytes = builder.maxOutputBytes;
+		this.overflowPolicy = builder.overflowPolicy;
+		this.conflationEnabled = builder.conflationEnabled;
+		this.encodeOnEnqueue = builder.encodeOnEnqueue;
+		this.maxRecoveryWindow = builder.maxRecoveryWindow;
+		this.resendBufferType = builder.resendBufferType;
+		this.resendJournalSize = builder.resendJournalSize;
+		this.binaryEnabled = builder.binaryEnabled;
+		this.compressionLevel = builder.compressionLevel;
+		this.compressionStrategy = builder.compressionStrategy;
+		this.compressionThreshold = builder.compressionThreshold;
+		this.compressionDictionary = builder.compressionDictionary;
+		this.asyncSendEnabled = builder.asyncSendEnabled;
+		this.maxInFlightSends = builder.maxInFlightSends;
+		this.sendTimeout = builder.sendTimeout;
+	}
+	
+	/**
+	 * @return builder with default settings
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * @return builder with values of these settings, e.g. to override some of them for one channel
+	 */
+	public Builder toBuilder() {
+		Builder builder = new Builder();
+		builder.pollingInterval = pollingInterval;
+		builder.heartBeatInterval = heartBeatInterval;
+		builder.maxCountToSend = maxCountToSend;
+		builder.executorBatchSize = executorBatchSize;
+		builder.disconnectTimeout = disconnectTimeout;
+		builder.resendBufferSize = resendBufferSize;
+		builder.compressionEnabled = compressionEnabled;
+		builder.maxOutputMessages = maxOutputMessages;
+		builder.maxOutputBytes = maxOutputBytes;
+		builder.overflowPolicy = overflowPolicy;
+		builder.conflationEnabled = conflationEnabled;
+		builder.encodeOnEnqueue = encodeOnEnqueue;
+		builder.maxRecoveryWindow = maxRecoveryWindow;
+		builder.resendBufferType = resendBufferType;
+		builder.resendJournalSize = resendJournalSize;
+		builder.binaryEnabled = binaryEnabled;
+		builder.compressionLevel = compressionLevel;
+		builder.compressionStrategy = compressionStrategy;
+		builder.compressionThreshold = compressionThreshold;
+		builder.compressionDictionary = compressionDictionary;
+		builder.asyncSendEnabled = asyncSendEnabled;
+		builder.maxInFlightSends = maxInFlightSends;
+		builder.sendTimeout = sendTimeout;
+		return builder;
 	}
 
 	public long getPollingInterval() {
@@ -78,6 +161,73 @@ public class ChannelSettings {
 		return compressionEnabled;
 	}
 
+	public int getMaxOutputMessages() {
+		return maxOutputMessages;
+	}
+
+	public long getMaxOutputBytes() {
+		return maxOutputBytes;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public boolean isConflationEnabled() {
+		return conflationEnabled;
+	}
+
+	public boolean isEncodeOnEnqueue() {
+		return encodeOnEnqueue;
+	}
+
+	public int getMaxRecoveryWindow() {
+		return maxRecoveryWindow;
+	}
+
+	public ResendBufferType getResendBufferType() {
+		return resendBufferType;
+	}
+
+	public long getResendJournalSize() {
+		return resendJournalSize;
+	}
+
+	public boolean isBinaryEnabled() {
+		return binaryEnabled;
+	}
+	
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+	
+	public int getCompressionStrategy() {
+		return compressionStrategy;
+	}
+	
+	/**
+	 * @return size in bytes of smallest output batch which is compressed
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+	
+	public CompressionDictionary getCompressionDictionary() {
+		return compressionDictionary;
+	}
+	
+	public boolean isAsyncSendEnabled() {
+		return asyncSendEnabled;
+	}
+	
+	public int getMaxInFlightSends() {
+		return maxInFlightSends;
+	}
+	
+	public long getSendTimeout() {
+		return sendTimeout;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -93,10 +243,267 @@ public class ChannelSettings {
 		builder.append(disconnectTimeout);
 		builder.append(", resendBufferSize=");
 		builder.append(resendBufferSize);
+		builder.append(", maxOutputMessages=");
+		builder.append(maxOutputMessages);
+		builder.append(", maxOutputBytes=");
+		builder.append(maxOutputBytes);
+		builder.append(", overflowPolicy=");
+		builder.append(overflowPolicy);
+		builder.append(", conflationEnabled=");
+		builder.append(conflationEnabled);
+		builder.append(", encodeOnEnqueue=");
+		builder.append(encodeOnEnqueue);
+		builder.append(", maxRecoveryWindow=");
+		builder.append(maxRecoveryWindow);
+		builder.append(", resendBufferType=");
+		builder.append(resendBufferType);
+		builder.append(", resendJournalSize=");
+		builder.append(resendJournalSize);
+		builder.append(", binaryEnabled=");
+		builder.append(binaryEnabled);
+		builder.append(", compressionLevel=");
+		builder.append(compressionLevel);
+		builder.append(", compressionStrategy=");
+		builder.append(compressionStrategy);
+		builder.append(", compressionThreshold=");
+		builder.append(compressionThreshold);
+		builder.append(", compressionDictionary=");
+		builder.append(compressionDictionary);
+		builder.append(", asyncSendEnabled=");
+		builder.append(asyncSendEnabled);
+		builder.append(", maxInFlightSends=");
+		builder.append(maxInFlightSends);
+		builder.append(", sendTimeout=");
+		builder.append(sendTimeout);
 		builder.append("]");
 		return builder.toString();
 	}
 
-	
+	/**
+	 * Builder of {@link ChannelSettings}, settings which are not set keep default values.
+	 */
+	public static class Builder {
+		
+		private long pollingInterval = 1000;
+		
+		private long heartBeatInterval = 5000;
+		
+		private int maxCountToSend = 250;
+		
+		private int executorBatchSize = 10;
+		
+		private long disconnectTimeout = 10000;
+		
+		private int resendBufferSize = 1024;
+		
+		private boolean compressionEnabled = false;
+		
+		private int maxOutputMessages = 0;
+		
+		private long maxOutputBytes = 0L;
+		
+		private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+		
+		private boolean conflationEnabled = false;
+		
+		private boolean encodeOnEnqueue = false;
+		
+		private int maxRecoveryWindow = InputMessagesBuffer.DEFAULT_MAX_WINDOW;
+		
+		private ResendBufferType resendBufferType = ResendBufferType.HEAP;
+		
+		private long resendJournalSize = DEFAULT_RESEND_JOURNAL_SIZE;
+		
+		private boolean binaryEnabled = false;
+		
+		private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+		
+		private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+		
+		private int compressionThreshold = 0;
+		
+		private CompressionDictionary compressionDictionary = null;
+		
+		private boolean asyncSendEnabled = false;
+		
+		private int maxInFlightSends = 1;
+		
+		private long sendTimeout = 10000;
+		
+		private Builder() {
+			
+		}
+		
+		public Builder setPollingInterval(long pollingInterval) {
+			this.pollingInterval = pollingInterval;
+			return this;
+		}
+		
+		public Builder setHeartBeatInterval(long heartBeatInterval) {
+			this.heartBeatInterval = heartBeatInterval;
+			return this;
+		}
+		
+		public Builder setMaxCountToSend(int maxCountToSend) {
+			this.maxCountToSend = maxCountToSend;
+			return this;
+		}
+		
+		public Builder setExecutorBatchSize(int executorBatchSize) {
+			this.executorBatchSize = executorBatchSize;
+			return this;
+		}
+		
+		public Builder setDisconnectTimeout(long disconnectTimeout) {
+			this.disconnectTimeout = disconnectTimeout;
+			return this;
+		}
+		
+		public Builder setResendBufferSize(int resendBufferSize) {
+			this.resendBufferSize = resendBufferSize;
+			return this;
+		}
+		
+		public Builder setCompressionEnabled(boolean compressionEnabled) {
+			this.compressionEnabled = compressionEnabled;
+			return this;
+		}
+		
+		/**
+		 * @param maxOutputMessages limit of messages waiting for sending, zero means unlimited
+		 */
+		public Builder setMaxOutputMessages(int maxOutputMessages) {
+			this.maxOutputMessages = maxOutputMessages;
+			return this;
+		}
+		
+		/**
+		 * @param maxOutputBytes limit of estimated bytes waiting for sending, zero means unlimited
+		 */
+		public Builder setMaxOutputBytes(long maxOutputBytes) {
+			this.maxOutputBytes = maxOutputBytes;
+			return this;
+		}
+		
+		/**
+		 * @param overflowPolicy behavior when any of output limits is exceeded
+		 */
+		public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+			return this;
+		}
+		
+		/**
+		 * @param conflationEnabled whether queued conflatable messages are replaced by newer ones
+		 */
+		public Builder setConflationEnabled(boolean conflationEnabled) {
+			this.conflationEnabled = conflationEnabled;
+			return this;
+		}
+		
+		/**
+		 * @param encodeOnEnqueue whether business messages are serialized by sending thread, 
+		 * so flushes and resends write cached bytes
+		 */
+		public Builder setEncodeOnEnqueue(boolean encodeOnEnqueue) {
+			this.encodeOnEnqueue = encodeOnEnqueue;
+			return this;
+		}
+		
+		/**
+		 * @param maxRecoveryWindow maximum number of input messages stashed while missed ones are resent, 
+		 * channel with larger gap is closed
+		 */
+		public Builder setMaxRecoveryWindow(int maxRecoveryWindow) {
+			this.maxRecoveryWindow = maxRecoveryWindow;
+			return this;
+		}
+		
+		/**
+		 * @param resendBufferType storage of messages kept for resend
+		 */
+		public Builder setResendBufferType(ResendBufferType resendBufferType) {
+			this.resendBufferType = resendBufferType;
+			return this;
+		}
+		
+		/**
+		 * @param resendJournalSize size in bytes of encoded messages storage for off-heap resend buffer
+		 */
+		public Builder setResendJournalSize(long resendJournalSize) {
+			this.resendJournalSize = resendJournalSize;
+			return this;
+		}
+		
+		/**
+		 * @param binaryEnabled output messages are encoded by binary message factory if client supports it
+		 */
+		public Builder setBinaryEnabled(boolean binaryEnabled) {
+			this.binaryEnabled = binaryEnabled;
+			return this;
+		}
+		
+		/**
+		 * @param compressionLevel {@link Deflater} level of output compression
+		 */
+		public Builder setCompressionLevel(int compressionLevel) {
+			this.compressionLevel = compressionLevel;
+			return this;
+		}
+		
+		/**
+		 * @param compressionStrategy {@link Deflater} strategy of output compression
+		 */
+		public Builder setCompressionStrategy(int compressionStrategy) {
+			this.compressionStrategy = compressionStrategy;
+			return this;
+		}
+		
+		/**
+		 * @param compressionThreshold output batches smaller than this number of bytes are sent 
+		 * uncompressed, clients detect compressed batches by zlib header
+		 */
+		public Builder setCompressionThreshold(int compressionThreshold) {
+			this.compressionThreshold = compressionThreshold;
+			return this;
+		}
+		
+		/**
+		 * @param compressionDictionary preset dictionary of output compression negotiated with client, may be null
+		 */
+		public Builder setCompressionDictionary(CompressionDictionary compressionDictionary) {
+			this.compressionDictionary = compressionDictionary;
+			return this;
+		}
+		
+		/**
+		 * @param asyncSendEnabled whether WebSocket output is written without blocking executor thread
+		 */
+		public Builder setAsyncSendEnabled(boolean asyncSendEnabled) {
+			this.asyncSendEnabled = asyncSendEnabled;
+			return this;
+		}
+		
+		/**
+		 * @param maxInFlightSends number of asynchronous writes which may be incomplete at the same time
+		 */
+		public Builder setMaxInFlightSends(int maxInFlightSends) {
+			this.maxInFlightSends = maxInFlightSends;
+			return this;
+		}
+		
+		/**
+		 * @param sendTimeout milliseconds to wait for asynchronous write before context is unbound
+		 */
+		public Builder setSendTimeout(long sendTimeout) {
+			this.sendTimeout = sendTimeout;
+			return this;
+		}
+		
+		public ChannelSettings build() {
+			return new ChannelSettings(this);
+		}
+		
+	}
 	
 }
@@ -37,18 +37,69 @@ public class ChannelStats {
 	private final long lastSend;
 	
 	private final long lastReceive;
+	
+	private final int queueDepth;
+	
+	private final int batchSize;
+	
+	private final long drainTime;
+	
+	private final long conflated;
+	
+	private final long dropped;
+	
+	private final long rejected;
+	
+	private final long gaps;
+	
+	private final long missing;
+	
+	private final long compressedFlushes;
+	
+	private final long uncompressedBytes;
+	
+	private final long compressedBytes;
+	
+	private final long compressionTime;
 
 	public ChannelStats(String channelId, ChannelStatus status, long created,
 			long closed, long sent, long received, long lastSend, long lastReceive) {
-		super();
-		this.channelId = channelId;
-		this.status = status;
-		this.created = created;
-		this.closed = closed;
-		this.sent = sent;
-		this.received = received;
-		this.lastSend = lastSend;
-		this.lastReceive = lastReceive;
+		this(new Builder()
+				.setChannelId(channelId)
+				.setStatus(status)
+				.setCreated(created)
+				.setClosed(closed)
+				.setSent(sent)
+				.setReceived(received)
+				.setLastSend(lastSend)
+				.setLastReceive(lastReceive));
+	}
+	
+	private ChannelStats(Builder builder) {
+		this.channelId = builder.channelId;
+		this.status = builder.status;
+		this.created = builder.created;
+		this.closed = builder.closed;
+		this.sent = builder.sent;
+		this.received = builder.received;
+		this.lastSend = builder.lastSend;
+		this.lastReceive = builder.lastReceive;
+		this.queueDepth = builder.queueDepth;
+		this.batchSize = builder.batchSize;
+		this.drainTime = builder.drainTime;
+		this.conflated = builder.conflated;
+		this.dropped = builder.dropped;
+		this.rejected = builder.rejected;
+		this.gaps = builder.gaps;
+		this.missing = builder.missing;
+		this.compressedFlushes = builder.compressedFlushes;
+		this.uncompressedBytes = builder.uncompressedBytes;
+		this.compressedBytes = builder.compressedBytes;
+		this.compressionTime = builder.compressionTime;
+	}
+	
+	public static Builder builder() {
+		return new Builder();
 	}
 
 	public long getSent() {
@@ -82,6 +133,91 @@ public class ChannelStats {
 	public long getClosed() {
 		return closed;
 	}
+	
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+	
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * @return duration of last processed batch in nanoseconds
+	 */
+	public long getDrainTime() {
+		return drainTime;
+	}
+	
+	/**
+	 * @return number of output messages replaced by newer ones before sending
+	 */
+	public long getConflated() {
+		return conflated;
+	}
+	
+	/**
+	 * @return number of output messages replaced by gap fill on overflow
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * @return number of business messages rejected because output buffer was full
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+	
+	public long getGaps() {
+		return gaps;
+	}
+	
+	public long getMissing() {
+		return missing;
+	}
+	
+	public long getCompressedFlushes() {
+		return compressedFlushes;
+	}
+	
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+	
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+	
+	/**
+	 * @return CPU time in nanoseconds spent in compression
+	 */
+	public long getCompressionTime() {
+		return compressionTime;
+	}
+	
+	/**
+	 * @return compressed size relative to original one, zero if nothing was compressed
+	 */
+	public double getCompressionRatio() {
+		return uncompressedBytes == 0 ? 0.0 : (double) compressedBytes / uncompressedBytes;
+	}
+	
+	/**
+	 * @return average CPU time in nanoseconds spent in compression of one batch
+	 */
+	public long getCompressionTimePerFlush() {
+		return compressedFlushes == 0 ? 0L : compressionTime / compressedFlushes;
+	}
+	
+	/**
+	 * @return share of output messages which were conflated
+	 */
+	public double getConflationRatio() {
+		long total = sent + conflated;
+		return total == 0 ? 0.0 : (double) conflated / total;
+	}
 
 	@Override
 	public String toString() {
@@ -102,8 +238,215 @@ public class ChannelStats {
 		builder.append(lastSend);
 		builder.append(", lastReceive=");
 		builder.append(lastReceive);
+		builder.append(", queueDepth=");
+		builder.append(queueDepth);
+		builder.append(", batchSize=");
+		builder.append(batchSize);
+		builder.append(", drainTime=");
+		builder.append(drainTime);
+		builder.append(", conflated=");
+		builder.append(conflated);
+		builder.append(", dropped=");
+		builder.append(dropped);
+		builder.append(", rejected=");
+		builder.append(rejected);
+		builder.append(", gaps=");
+		builder.append(gaps);
+		builder.append(", missing=");
+		builder.append(missing);
+		builder.append(", compressedFlushes=");
+		builder.append(compressedFlushes);
+		builder.append(", compressionRatio=");
+		builder.append(getCompressionRatio());
+		builder.append(", compressionTimePerFlush=");
+		builder.append(getCompressionTimePerFlush());
 		builder.append("]");
 		return builder.toString();
 	}
+
+	/**
+	 * Builder of {@link ChannelStats}, values which are not set are zero.
+	 */
+	public static class Builder {
+		
+		private String channelId;
+		
+		private ChannelStatus status;
+		
+		private long created;
+		
+		private long closed;
+		
+		private long sent;
+		
+		private long received;
+		
+		private long lastSend;
+		
+		private long lastReceive;
+		
+		private int queueDepth;
+		
+		private int batchSize;
+		
+		private long drainTime;
+		
+		private long conflated;
+		
+		private long dropped;
+		
+		private long rejected;
+		
+		private long gaps;
+		
+		private long missing;
+		
+		private long compressedFlushes;
+		
+		private long uncompressedBytes;
+		
+		private long compressedBytes;
+		
+		private long compressionTime;
+		
+		private Builder() {
+			
+		}
+		
+		public Builder setChannelId(String channelId) {
+			this.channelId = channelId;
+			return this;
+		}
+		
+		public Builder setStatus(ChannelStatus status) {
+			this.status = status;
+			return this;
+		}
+		
+		public Builder setCreated(long created) {
+			this.created = created;
+			return this;
+		}
+		
+		public Builder setClosed(long closed) {
+			this.closed = closed;
+			return this;
+		}
+		
+		public Builder setSent(long sent) {
+			this.sent = sent;
+			return this;
+		}
+		
+		public Builder setReceived(long received) {
+			this.received = received;
+			return this;
+		}
+		
+		public Builder setLastSend(long lastSend) {
+			this.lastSend = lastSend;
+			return this;
+		}
+		
+		public Builder setLastReceive(long lastReceive) {
+			this.lastReceive = lastReceive;
+			return this;
+		}
+		
+		public Builder setQueueDepth(int queueDepth) {
+			this.queueDepth = queueDepth;
+			return this;
+		}
+		
+		public Builder setBatchSize(int batchSize) {
+			this.batchSize = batchSize;
+			return this;
+		}
+		
+		/**
+		 * @param drainTime duration of last processed batch in nanoseconds
+		 */
+		public Builder setDrainTime(long drainTime) {
+			this.drainTime = drainTime;
+			return this;
+		}
+		
+		/**
+		 * @param conflated number of output messages replaced by newer ones before sending
+		 */
+		public Builder setConflated(long conflated) {
+			this.conflated = conflated;
+			return this;
+		}
+		
+		/**
+		 * @param dropped number of output messages replaced by gap fill on overflow
+		 */
+		public Builder setDropped(long dropped) {
+			this.dropped = dropped;
+			return this;
+		}
+		
+		/**
+		 * @param rejected number of business messages rejected because output buffer was full
+		 */
+		public Builder setRejected(long rejected) {
+			this.rejected = rejected;
+			return this;
+		}
+		
+		/**
+		 * @param gaps number of gaps in input seqnums detected by channel
+		 */
+		public Builder setGaps(long gaps) {
+			this.gaps = gaps;
+			return this;
+		}
+		
+		/**
+		 * @param missing number of input messages which are still being recovered
+		 */
+		public Builder setMissing(long missing) {
+			this.missing = missing;
+			return this;
+		}
+		
+		/**
+		 * @param compressedFlushes number of compressed output batches
+		 */
+		public Builder setCompressedFlushes(long compressedFlushes) {
+			this.compressedFlushes = compressedFlushes;
+			return this;
+		}
+		
+		/**
+		 * @param uncompressedBytes size of compressed batches before compression
+		 */
+		public Builder setUncompressedBytes(long uncompressedBytes) {
+			this.uncompressedBytes = uncompressedBytes;
+			return this;
+		}
+		
+		/**
+		 * @param compressedBytes size of compressed batches after compression
+		 */
+		public Builder setCompressedBytes(long compressedBytes) {
+			this.compressedBytes = compressedBytes;
+			return this;
+		}
+		
+		/**
+		 * @param compressionTime CPU time in nanoseconds spent in compression
+		 */
+		public Builder setCompressionTime(long compressionTime) {
+			this.compressionTime = compressionTime;
+			return this;
+		}
+		
+		public ChannelStats build() {
+			return new ChannelStats(this);
+		}
+		
+	}
 	
 }
@@ -0,0 +1,231 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+package com.exactprosystems.webchannels.channel;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 
+ * Multi-producer single-consumer queue of channel events. Event is stored as 
+ * integer kind and payload in parallel arrays, so offer does not allocate 
+ * until queue has to grow. Producers claim slots by CAS on producer index 
+ * and publish them by ordered write of kind, consumer never blocks. 
+ * Full buffer is not copied: producer links new buffer of double size and 
+ * leaves jump mark in the old one, consumer follows it after reading the 
+ * old buffer. Offer is lock-free only while buffer has free slots, other 
+ * producers wait while one of them links new buffer, so growth is blocking 
+ * and stalls them if linking thread is descheduled. Methods peekKind, peekPayload, remove and clear must be called 
+ * by channel processing thread only.
+ *
+ */
+public class ChannelTaskQueue {
+	
+	public static final int EMPTY = -1;
+	
+	private static final int JUMP = -2;
+	
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	private static final AtomicLongFieldUpdater<ChannelTaskQueue> PRODUCER_INDEX = 
+			AtomicLongFieldUpdater.newUpdater(ChannelTaskQueue.class, "producerIndex");
+	
+	private static final AtomicLongFieldUpdater<ChannelTaskQueue> CONSUMER_INDEX = 
+			AtomicLongFieldUpdater.newUpdater(ChannelTaskQueue.class, "consumerIndex");
+	
+	/**
+	 * Doubled position of the next slot, odd while producer links new buffer.
+	 */
+	private volatile long producerIndex;
+	
+	private volatile Buffer producerBuffer;
+	
+	private volatile long consumerIndex;
+	
+	private Buffer consumerBuffer;
+	
+	public ChannelTaskQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public ChannelTaskQueue(int initialCapacity) {
+		if (initialCapacity <= 0) {
+			throw new IllegalArgumentException("initialCapacity must be positive: " + initialCapacity);
+		}
+		// One slot is kept free for jump mark
+		this.producerBuffer = new Buffer(roundToPowerOfTwo(Math.max(initialCapacity, 2)));
+		this.consumerBuffer = producerBuffer;
+		this.producerIndex = 0L;
+		this.consumerIndex = 0L;
+	}
+	
+	public void offer(int kind, Object payload) {
+		while (true) {
+			long index = producerIndex;
+			if ((index & 1L) != 0L) {
+				// Other producer links new buffer, wait until it is published
+				Thread.yield();
+				continue;
+			}
+			// Buffer is read after index, so it is not older than the index
+			Buffer buffer = producerBuffer;
+			long position = index >> 1;
+			if (position - consumerIndex < buffer.mask) {
+				if (PRODUCER_INDEX.compareAndSet(this, index, index + 2L)) {
+					buffer.put(position, kind, payload);
+					return;
+				}
+			} else {
+				// Allocated before index is marked, so failed allocation does not block producers
+				Buffer next = new Buffer(buffer.payloads.length << 1);
+				if (PRODUCER_INDEX.compareAndSet(this, index, index + 1L)) {
+					link(buffer, next, position, kind, payload);
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return kind of the first event or {@link #EMPTY}
+	 */
+	public int peekKind() {
+		long index = consumerIndex;
+		Buffer current = consumerBuffer;
+		int kind = current.kinds.get(current.offset(index));
+		if (kind == JUMP) {
+			// New buffer has the same position, it is never marked twice
+			current = current.next;
+			consumerBuffer = current;
+			kind = current.kinds.get(current.offset(index));
+		}
+		return kind;
+	}
+	
+	public Object peekPayload() {
+		if (peekKind() == EMPTY) {
+			return null;
+		}
+		Buffer current = consumerBuffer;
+		return current.payloads[current.offset(consumerIndex)];
+	}
+	
+	public void remove() {
+		if (peekKind() != EMPTY) {
+			long index = consumerIndex;
+			Buffer current = consumerBuffer;
+			int offset = current.offset(index);
+			current.payloads[offset] = null;
+			current.kinds.lazySet(offset, EMPTY);
+			// Slot is released to producers after it is cleared
+			CONSUMER_INDEX.lazySet(this, index + 1L);
+		}
+	}
+	
+	public void clear() {
+		while (peekKind() != EMPTY) {
+			remove();
+		}
+	}
+	
+	/**
+	 * @return true if no event is offered, event claimed by producer but not 
+	 * yet published makes queue not empty
+	 */
+	public boolean isEmpty() {
+		long index = consumerIndex;
+		return (producerIndex >> 1) == index;
+	}
+	
+	/**
+	 * @return number of events in queue, may be stale under concurrent access
+	 */
+	public int size() {
+		long index = consumerIndex;
+		return (int) ((producerIndex >> 1) - index);
+	}
+	
+	public int capacity() {
+		return producerBuffer.payloads.length;
+	}
+	
+	private void link(Buffer current, Buffer next, long position, int kind, Object payload) {
+		
+		next.put(position, kind, payload);
+		current.next = next;
+		producerBuffer = next;
+		
+		// Slot of position is free, since one slot of full buffer is kept for the mark
+		current.kinds.lazySet(current.offset(position), JUMP);
+		PRODUCER_INDEX.set(this, (position + 1L) << 1);
+		
+	}
+	
+	private static int roundToPowerOfTwo(int value) {
+		int result = 1;
+		while (result < value) {
+			result <<= 1;
+		}
+		return result;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("ChannelTaskQueue[size=");
+		builder.append(size());
+		builder.append(", capacity=");
+		builder.append(capacity());
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	private static final class Buffer {
+		
+		private final AtomicIntegerArray kinds;
+		
+		private final Object[] payloads;
+		
+		private final int mask;
+		
+		private volatile Buffer next;
+		
+		private Buffer(int capacity) {
+			this.kinds = new AtomicIntegerArray(capacity);
+			this.payloads = new Object[capacity];
+			this.mask = capacity - 1;
+			for (int i = 0; i < capacity; i++) {
+				kinds.lazySet(i, EMPTY);
+			}
+		}
+		
+		private int offset(long position) {
+			return (int) position & mask;
+		}
+		
+		private void put(long position, int kind, Object payload) {
+			int offset = offset(position);
+			payloads[offset] = payload;
+			// Publishes slot to consumer
+			kinds.lazySet(offset, kind);
+		}
+		
+	}
+
+}
@@ -18,11 +18,14 @@
 
 package com.exactprosystems.webchannels.channel;
 
+import com.exactprosystems.webchannels.enums.ExecutionMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class ChannelsExecutor {
 
@@ -36,7 +39,88 @@ public class ChannelsExecutor {
 	};
 
 	public static Executor create(int threadCount) {
-		return new ForkJoinPool(threadCount, ForkJoinPool.defaultForkJoinWorkerThreadFactory, handler, false);
+		return create(ExecutionMode.FORK_JOIN, threadCount);
+	}
+
+	/**
+	 * Creates executor for channels.
+	 * 
+	 * @param mode threading model
+	 * @param threadCount worker count for {@link ExecutionMode#FORK_JOIN} and 
+	 * shard count for {@link ExecutionMode#THREAD_PER_CORE}, 
+	 * zero or negative value means number of available processors
+	 * @return executor to pass to channel processors
+	 */
+	public static Executor create(ExecutionMode mode, int threadCount) {
+		
+		if (threadCount <= 0) {
+			threadCount = Runtime.getRuntime().availableProcessors();
+		}
+		
+		switch (mode) {
+			case VIRTUAL_THREADS:
+				Executor executor = createVirtualThreadExecutor();
+				if (executor != null) {
+					logger.info("Use virtual thread per task executor for channels");
+					return executor;
+				}
+				logger.warn("Virtual threads are not supported by java {}, fall back to {}", 
+						System.getProperty("java.version"), ExecutionMode.FORK_JOIN);
+				return createForkJoinPool(threadCount);
+			case THREAD_PER_CORE:
+				return new ShardedChannelsExecutor(threadCount, handler);
+			case FORK_JOIN:
+			default:
+				return createForkJoinPool(threadCount);
+		}
+		
+	}
+	
+	/**
+	 * @return true if executor has tasks waiting for free worker, 
+	 * false if it is unknown for given executor
+	 */
+	public static boolean hasWaitingTasks(Executor executor) {
+		if (executor instanceof ForkJoinPool) {
+			ForkJoinPool pool = (ForkJoinPool) executor;
+			return pool.hasQueuedSubmissions() || pool.getQueuedTaskCount() > 0;
+		} else if (executor instanceof ThreadPoolExecutor) {
+			return !((ThreadPoolExecutor) executor).getQueue().isEmpty();
+		}
+		return false;
+	}
+	
+	public static boolean isVirtualThreadsSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Pool runs {@link ExecutionTask} without wrapper. Remaining allocations of 
+	 * channel processing are deadline of {@link HashedWheelScheduler}, armed once 
+	 * per polling interval, and growth of pool and channel queues.
+	 */
+	private static Executor createForkJoinPool(int threadCount) {
+		// Async mode keeps resubmitted channel behind waiting ones
+		return new ForkJoinPool(threadCount, ForkJoinPool.defaultForkJoinWorkerThreadFactory, handler, true);
+	}
+	
+	private static Executor createVirtualThreadExecutor() {
+		if (!isVirtualThreadsSupported()) {
+			return null;
+		}
+		try {
+			// Resolved reflectively to keep compatibility with old JVMs
+			Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (Executor) method.invoke(null);
+		} catch (Exception e) {
+			logger.warn("Cannot create virtual thread executor", e);
+			return null;
+		}
 	}
 
 }
@@ -0,0 +1,105 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
+import com.fasterxml.jackson.core.Base64Variants;
+
+/**
+ * 
+ * Preset dictionary for deflate of output batches. Version is negotiated with 
+ * client on channel creation, compressed batch refers to dictionary by its 
+ * Adler-32 id in zlib header.
+ *
+ */
+public class CompressionDictionary {
+	
+	/** Deflate uses only last 32K of dictionary */
+	public static final int MAX_SIZE = 32 * 1024;
+	
+	private final String version;
+	
+	private final byte[] bytes;
+	
+	private final int id;
+	
+	public CompressionDictionary(String version, byte[] bytes) {
+		if (version == null || version.isEmpty() || version.indexOf(',') != -1) {
+			throw new IllegalArgumentException("Invalid dictionary version " + version);
+		}
+		if (bytes.length == 0 || bytes.length > MAX_SIZE) {
+			throw new IllegalArgumentException("Dictionary size should be from 1 to " + MAX_SIZE);
+		}
+		this.version = version;
+		this.bytes = Arrays.copyOf(bytes, bytes.length);
+		Adler32 adler = new Adler32();
+		adler.update(bytes, 0, bytes.length);
+		this.id = (int) adler.getValue();
+	}
+	
+	public String getVersion() {
+		return version;
+	}
+	
+	byte[] getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * @return copy of dictionary, so it can be stored and loaded later
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(bytes, bytes.length);
+	}
+	
+	/**
+	 * @return dictionary in Base64, form in which client receives it
+	 */
+	public String toBase64() {
+		return Base64Variants.MIME_NO_LINEFEEDS.encode(bytes);
+	}
+	
+	/**
+	 * @return Adler-32 checksum of dictionary written to zlib header
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	public int getSize() {
+		return bytes.length;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("CompressionDictionary[version=");
+		builder.append(version);
+		builder.append(", size=");
+		builder.append(bytes.length);
+		builder.append(", id=");
+		builder.append(Integer.toHexString(id));
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,253 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+/**
+ * 
+ * Builds {@link CompressionDictionary} from JSON fragments of message types 
+ * and from output batches sampled by channels. Sampled batches are split into 
+ * segments, segments found in most batches are placed closer to the end of 
+ * dictionary, where deflate references are shorter. Type fragments go last.
+ *
+ */
+public class DictionaryTrainer {
+	
+	/** Dictionary size which covers usual envelope and type ids */
+	public static final int DEFAULT_DICTIONARY_SIZE = 4096;
+	
+	private static final int SEGMENT_LENGTH = 16;
+	
+	private static final String ENVELOPE = "[{\"seqnum\":,\"message\":{\"messageType\":\"";
+	
+	private static final int MAX_CANDIDATES = 50000;
+	
+	/** Bytes are mapped to chars one to one */
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final int dictionarySize;
+	
+	private final int sampleRate;
+	
+	private final int maxSampleBytes;
+	
+	private final AtomicLong offered;
+	
+	private final List<String> samples;
+	
+	private final Set<String> fragments;
+	
+	private final ObjectMapper mapper;
+	
+	private int sampleBytes;
+	
+	public DictionaryTrainer() {
+		this(DEFAULT_DICTIONARY_SIZE, 16, 1024 * 1024);
+	}
+	
+	/**
+	 * @param dictionarySize maximum size of built dictionary
+	 * @param sampleRate every sampleRate-th batch is kept
+	 * @param maxSampleBytes total size of kept batches, next ones are dropped
+	 */
+	public DictionaryTrainer(int dictionarySize, int sampleRate, int maxSampleBytes) {
+		if (dictionarySize <= 0 || dictionarySize > CompressionDictionary.MAX_SIZE) {
+			throw new IllegalArgumentException("Dictionary size should be from 1 to " + CompressionDictionary.MAX_SIZE);
+		}
+		this.dictionarySize = dictionarySize;
+		this.sampleRate = Math.max(1, sampleRate);
+		this.maxSampleBytes = maxSampleBytes;
+		this.offered = new AtomicLong();
+		this.samples = new ArrayList<String>();
+		this.fragments = new LinkedHashSet<String>();
+		this.mapper = new ObjectMapper();
+	}
+	
+	/**
+	 * Adds fragments of registered message types with their ids.
+	 */
+	public void addTypes(MessageFactoryConfigurator configurator) {
+		List<Class<?>> classes = configurator.getClasses();
+		for (int i = 0; i < classes.size(); i++) {
+			addType(Integer.toString(i), classes.get(i));
+		}
+	}
+	
+	/**
+	 * Adds fragments of message type identified by class name.
+	 */
+	public void addType(Class<? extends AbstractMessage> type) {
+		addType(type.getName(), type);
+	}
+	
+	private void addType(String id, Class<?> type) {
+		
+		StringBuilder fragment = new StringBuilder();
+		fragment.append("\"messageType\":\"").append(id).append('"');
+		
+		BeanDescription description = mapper.getSerializationConfig().introspect(mapper.constructType(type));
+		for (BeanPropertyDefinition property : description.findProperties()) {
+			if (property.couldSerialize()) {
+				fragment.append(",\"").append(property.getName()).append("\":");
+			}
+		}
+		
+		synchronized (this) {
+			fragments.add(ENVELOPE);
+			fragments.add(new String(fragment.toString().getBytes(UTF8), LATIN1));
+		}
+		
+	}
+	
+	/**
+	 * Offers encoded output batch, it is called by channels for every compressed batch.
+	 */
+	public void sample(byte[] buffer, int offset, int length) {
+		
+		if (offered.incrementAndGet() % sampleRate != 0) {
+			return;
+		}
+		
+		synchronized (this) {
+			if (sampleBytes + length <= maxSampleBytes) {
+				samples.add(new String(buffer, offset, length, LATIN1));
+				sampleBytes += length;
+			}
+		}
+		
+	}
+	
+	public synchronized int getSampleCount() {
+		return samples.size();
+	}
+	
+	public synchronized CompressionDictionary build(String version) {
+		
+		StringBuilder tail = new StringBuilder();
+		for (String fragment : fragments) {
+			if (tail.length() + fragment.length() > dictionarySize) {
+				break;
+			}
+			tail.append(fragment);
+		}
+		
+		List<String> selected = selectSegments(dictionarySize - tail.length(), tail);
+		
+		StringBuilder dictionary = new StringBuilder(dictionarySize);
+		for (int i = selected.size() - 1; i >= 0; i--) {
+			dictionary.append(selected.get(i));
+		}
+		dictionary.append(tail);
+		
+		if (dictionary.length() == 0) {
+			throw new IllegalStateException("Neither types nor samples are added");
+		}
+		
+		return new CompressionDictionary(version, dictionary.toString().getBytes(LATIN1));
+		
+	}
+	
+	/**
+	 * @return segments which occur in at least two samples, most frequent first
+	 */
+	private List<String> selectSegments(int size, CharSequence tail) {
+		
+		final Map<String, int[]> counts = new HashMap<String, int[]>();
+		Set<String> seen = new HashSet<String>();
+		
+		for (String sample : samples) {
+			seen.clear();
+			for (int i = 0; i + SEGMENT_LENGTH <= sample.length(); i++) {
+				String segment = sample.substring(i, i + SEGMENT_LENGTH);
+				if (seen.add(segment)) {
+					int[] count = counts.get(segment);
+					if (count == null) {
+						counts.put(segment, new int[] {1});
+					} else {
+						count[0]++;
+					}
+				}
+			}
+		}
+		
+		List<String> candidates = new ArrayList<String>();
+		for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+			if (entry.getValue()[0] > 1) {
+				candidates.add(entry.getKey());
+			}
+		}
+		Collections.sort(candidates, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				return Integer.compare(counts.get(o2)[0], counts.get(o1)[0]);
+			}
+		});
+		
+		// Segments shifted by few bytes repeat each other, such are skipped
+		StringBuilder covered = new StringBuilder(tail);
+		List<String> selected = new ArrayList<String>();
+		int length = 0;
+		int half = SEGMENT_LENGTH / 2;
+		for (int i = 0; i < candidates.size() && i < MAX_CANDIDATES && length + SEGMENT_LENGTH <= size; i++) {
+			String candidate = candidates.get(i);
+			if (covered.indexOf(candidate.substring(0, half)) == -1
+					&& covered.indexOf(candidate.substring(half)) == -1) {
+				selected.add(candidate);
+				covered.append(candidate);
+				length += SEGMENT_LENGTH;
+			}
+		}
+		
+		return selected;
+		
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("DictionaryTrainer[dictionarySize=");
+		builder.append(dictionarySize);
+		builder.append(", sampleRate=");
+		builder.append(sampleRate);
+		builder.append(", maxSampleBytes=");
+		builder.append(maxSampleBytes);
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * 
+ * Message body serialized once and shared between channels. Encoded form
+ * already contains message type, so only seqnum envelope is written per channel.
+ * Binary form is kept next to JSON one when binary channels write message.
+ *
+ */
+public final class EncodedMessage implements AbstractMessage {
+	
+	private final AbstractMessage message;
+	
+	private final SerializedString encoded;
+	
+	private final int size;
+	
+	private volatile BinaryForm binary;
+	
+	public EncodedMessage(AbstractMessage message, String encoded) {
+		this.message = message;
+		this.encoded = new SerializedString(encoded);
+		this.size = this.encoded.asUnquotedUTF8().length;
+	}
+	
+	/**
+	 * @return original message
+	 */
+	public AbstractMessage getMessage() {
+		return message;
+	}
+	
+	/**
+	 * @return original message if given one is encoded, otherwise message itself
+	 */
+	public static AbstractMessage unwrap(AbstractMessage message) {
+		if (message instanceof EncodedMessage) {
+			return ((EncodedMessage) message).getMessage();
+		}
+		return message;
+	}
+	
+	public SerializedString getEncoded() {
+		return encoded;
+	}
+	
+	/**
+	 * @return size of encoded message in bytes
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * @return binary form written by given encoder or null if it is not cached
+	 */
+	byte[] getBinary(Object encoder) {
+		BinaryForm binary = this.binary;
+		if (binary == null || binary.encoder != encoder) {
+			return null;
+		}
+		return binary.bytes;
+	}
+	
+	/**
+	 * Caches binary form of message, only form of the first encoder is kept.
+	 */
+	void setBinary(Object encoder, byte[] bytes) {
+		if (binary == null) {
+			binary = new BinaryForm(encoder, bytes);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("EncodedMessage[message=");
+		builder.append(message);
+		builder.append(",size=");
+		builder.append(size);
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	private static final class BinaryForm {
+		
+		private final Object encoder;
+		
+		private final byte[] bytes;
+		
+		private BinaryForm(Object encoder, byte[] bytes) {
+			this.encoder = encoder;
+			this.bytes = bytes;
+		}
+		
+	}
+
+}
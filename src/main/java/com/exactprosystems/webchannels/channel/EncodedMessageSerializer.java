@@ -0,0 +1,54 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * 
+ * Writes pre-encoded message as is.
+ *
+ */
+public class EncodedMessageSerializer extends StdSerializer<EncodedMessage> {
+
+	private static final long serialVersionUID = 1L;
+
+	public EncodedMessageSerializer() {
+		super(EncodedMessage.class);
+	}
+
+	@Override
+	public void serialize(EncodedMessage value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+		generator.writeRawValue(value.getEncoded());
+	}
+	
+	@Override
+	public void serializeWithType(EncodedMessage value, JsonGenerator generator, SerializerProvider provider, 
+			TypeSerializer typeSerializer) throws IOException {
+		// Type id is already written into encoded form
+		serialize(value, generator, provider);
+	}
+
+}
@@ -18,50 +18,141 @@
 
 package com.exactprosystems.webchannels.channel;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executor;
-
-public class ExecutionTask implements Runnable {
+/**
+ * 
+ * Processing task of one channel. It is ForkJoinTask, so fork join pool runs 
+ * it without wrapper and worker resubmits it to own queue. Task never 
+ * completes, the same instance is executed again every time channel has events.
+ *
+ */
+public class ExecutionTask extends ForkJoinTask<Void> implements Runnable {
 
+	private static final long serialVersionUID = 1L;
+	
 	private static final Logger logger = LoggerFactory.getLogger(ExecutionTask.class);
 	
+	private static final AtomicIntegerFieldUpdater<ExecutionTask> SIGNALS = 
+			AtomicIntegerFieldUpdater.newUpdater(ExecutionTask.class, "signals");
+
 	private final AbstractChannel channel;
 	
-	private final Executor executor;
+	private final transient Executor executor;
+	
+	/**
+	 * Number of events signalled since shard took the task, zero if it is released.
+	 */
+	private transient volatile int signals;
+	
+	/**
+	 * Next task in run queue of shard.
+	 */
+	private transient volatile ExecutionTask next;
 	
 	public ExecutionTask(AbstractChannel channel, Executor executor) {
 		this.channel = channel;
 		this.executor = executor;
 	}
 	
+	public AbstractChannel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * @return true if task was released and has to be scheduled
+	 */
+	boolean signal() {
+		return SIGNALS.getAndIncrement(this) == 0;
+	}
+	
+	int getSignals() {
+		return signals;
+	}
+	
+	/**
+	 * Releases task after drain which handled given number of signals.
+	 * 
+	 * @return true if new signals came, so task is still scheduled
+	 */
+	boolean release(int handled) {
+		return SIGNALS.addAndGet(this, -handled) != 0;
+	}
+	
+	ExecutionTask getNext() {
+		return next;
+	}
+	
+	void setNext(ExecutionTask next) {
+		this.next = next;
+	}
+	
 	@Override
 	public void run() {
 	
-		int count = 0;
-		
-		while (!channel.isTaskQueueEmpty() && count < channel.getChannelSettings().getExecutorBatchSize()) {
-			count++;
-			try {
-				channel.processTaskQueue();
-			} catch (Throwable e) {
-				logger.error("Error during process channel task queue", e);
+		// Only one task per channel is in flight, so it is safe to resubmit itself
+		if (channel.drainTaskQueue()) {
+			channel.adaptBatchSize(ChannelsExecutor.hasWaitingTasks(executor));
+			resubmit();
+		} else {
+			channel.updateDeadline();
+			channel.finishProcessing();
+			// Event could be offered after emptiness check but before flag reset
+			if (!channel.isTaskQueueEmpty() && channel.tryProcessing()) {
+				resubmit();
 			}
 		}
 		
-		if (!channel.isTaskQueueEmpty()) {
-			executor.execute(new ExecutionTask(channel, executor));
+	}
+	
+	private void resubmit() {
+		Thread thread = Thread.currentThread();
+		if (thread instanceof ForkJoinWorkerThread 
+				&& ((ForkJoinWorkerThread) thread).getPool() == executor) {
+			// Pool is in async mode, so forked task is queued after waiting ones
+			fork();
 		} else {
-			channel.finishProcessing();
+			executor.execute(this);
 		}
+	}
+	
+	/**
+	 * Runs task and leaves it incomplete, so it can be executed again.
+	 */
+	@Override
+	protected boolean exec() {
+		try {
+			run();
+		} catch (Throwable e) {
+			// Exceptional completion would make pool skip further executions
+			logger.error("Error during execution of " + this, e);
+		}
+		return false;
+	}
+	
+	@Override
+	public Void getRawResult() {
+		return null;
+	}
+	
+	@Override
+	protected void setRawResult(Void value) {
 		
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
-		builder.append("ExecutionTask[]");
+		builder.append("ExecutionTask[channel=");
+		builder.append(channel != null ? channel.getID() : null);
+		builder.append("]");
 		return builder.toString();
 	}
 
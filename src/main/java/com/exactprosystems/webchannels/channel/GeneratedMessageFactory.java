@@ -0,0 +1,356 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.exactprosystems.webchannels.exceptions.DecodingException;
+import com.exactprosystems.webchannels.exceptions.EncodingException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 
+ * JSON message factory which encodes and decodes messages by codecs generated 
+ * at compile time, see {@link MessageCodec}. Messages without codec are 
+ * processed by Jackson. Type ids are the same as of {@link JsonMessageFactory}.
+ *
+ */
+public class GeneratedMessageFactory extends JsonMessageFactory {
+	
+	private static final String TYPE_PROPERTY = "messageType";
+	
+	private static final Object NO_CODEC = new Object();
+	
+	private final JsonFactory factory;
+	
+	private final ObjectWriter fallbackWriter;
+	
+	private final ObjectReader fallbackReader;
+	
+	private final MessageTypeIdResolver resolver;
+	
+	private final ConcurrentMap<Class<?>, Object> codecs;
+	
+	private final ConcurrentMap<String, Object> codecsById;
+	
+	public GeneratedMessageFactory() {
+		this(null);
+	}
+	
+	/**
+	 * @param configurator registry of message type ids, class names are used if null
+	 */
+	public GeneratedMessageFactory(MessageFactoryConfigurator configurator) {
+		super(configurator);
+		ObjectMapper mapper = getMapper();
+		this.factory = mapper.getFactory();
+		this.fallbackWriter = mapper.writerFor(AbstractMessage.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.fallbackReader = mapper.readerFor(AbstractMessage.class);
+		this.resolver = configurator != null ? new MessageTypeIdResolver(configurator.getClasses()) : null;
+		this.codecs = new ConcurrentHashMap<Class<?>, Object>();
+		this.codecsById = new ConcurrentHashMap<String, Object>();
+	}
+	
+	@Override
+	public List<WithSeqnumWrapper> decodeMessage(InputStream stream) throws DecodingException {
+		
+		try (JsonParser parser = factory.createParser(stream)) {
+			return read(parser);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode json message", e);
+		}
+		
+	}
+	
+	@Override
+	public List<WithSeqnumWrapper> decodeMessage(Reader reader) throws DecodingException {
+		
+		try (JsonParser parser = factory.createParser(reader)) {
+			return read(parser);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode json message", e);
+		}
+		
+	}
+	
+	@Override
+	public void decodeMessage(InputStream stream, MessageConsumer consumer) throws DecodingException {
+		
+		try (JsonParser parser = factory.createParser(stream)) {
+			read(parser, consumer);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode json message", e);
+		}
+		
+	}
+	
+	@Override
+	public void decodeMessage(Reader reader, MessageConsumer consumer) throws DecodingException {
+		
+		try (JsonParser parser = factory.createParser(reader)) {
+			read(parser, consumer);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode json message", e);
+		}
+		
+	}
+	
+	@Override
+	public OutputStream encodeMessage(List<WithSeqnumWrapper> messages, OutputStream stream) throws EncodingException {
+		
+		try (JsonGenerator generator = factory.createGenerator(stream)) {
+			write(messages, generator);
+		} catch (Exception e) {
+			throw new EncodingException("Cannot encode json message", e);
+		}
+		
+		return stream;
+		
+	}
+	
+	@Override
+	public Writer encodeMessage(List<WithSeqnumWrapper> messages, Writer writer) throws EncodingException {
+		
+		try (JsonGenerator generator = factory.createGenerator(writer)) {
+			write(messages, generator);
+		} catch (Exception e) {
+			throw new EncodingException("Cannot encode json message", e);
+		}
+		
+		return writer;
+		
+	}
+	
+	@Override
+	public AbstractMessage preEncodeMessage(AbstractMessage message) throws EncodingException {
+		
+		if (message instanceof EncodedMessage) {
+			return message;
+		}
+		
+		StringWriter writer = new StringWriter();
+		try (JsonGenerator generator = factory.createGenerator(writer)) {
+			writeMessage(message, generator);
+		} catch (Exception e) {
+			throw new EncodingException("Cannot encode json message", e);
+		}
+		
+		return new EncodedMessage(message, writer.toString());
+		
+	}
+	
+	private void write(List<WithSeqnumWrapper> messages, JsonGenerator generator) throws IOException {
+		generator.writeStartArray();
+		for (int i = 0; i < messages.size(); i++) {
+			WithSeqnumWrapper wrapper = messages.get(i);
+			generator.writeStartObject();
+			generator.writeNumberField("seqnum", wrapper.getSeqnum());
+			generator.writeFieldName("message");
+			writeMessage(wrapper.getMessage(), generator);
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void writeMessage(AbstractMessage message, JsonGenerator generator) throws IOException {
+		
+		if (message == null) {
+			generator.writeNull();
+			return;
+		}
+		
+		if (message instanceof EncodedMessage) {
+			generator.writeRawValue(((EncodedMessage) message).getEncoded());
+			return;
+		}
+		
+		MessageCodec<AbstractMessage> codec = (MessageCodec<AbstractMessage>) findCodec(message.getClass());
+		if (codec == null) {
+			fallbackWriter.writeValue(generator, message);
+			return;
+		}
+		
+		generator.writeStartObject();
+		generator.writeStringField(TYPE_PROPERTY, typeId(message.getClass()));
+		codec.write(message, generator);
+		generator.writeEndObject();
+		
+	}
+	
+	private List<WithSeqnumWrapper> read(JsonParser parser) throws IOException {
+		
+		final List<WithSeqnumWrapper> messages = new ArrayList<WithSeqnumWrapper>();
+		
+		read(parser, new MessageConsumer() {
+			@Override
+			public void accept(WithSeqnumWrapper message) {
+				messages.add(message);
+			}
+		});
+		
+		return messages;
+		
+	}
+	
+	private void read(JsonParser parser, MessageConsumer consumer) throws IOException {
+		
+		if (parser.nextToken() != JsonToken.START_ARRAY) {
+			throw new JsonParseException(parser, "Array of messages expected");
+		}
+		
+		JsonToken token;
+		while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+			long seqnum = 0L;
+			AbstractMessage message = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (name.equals("seqnum")) {
+					seqnum = parser.getValueAsLong();
+				} else if (name.equals("message")) {
+					message = value == JsonToken.VALUE_NULL ? null : readMessage(parser);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			consumer.accept(new WithSeqnumWrapper(seqnum, message));
+		}
+		
+		if (token != JsonToken.END_ARRAY) {
+			throw new JsonParseException(parser, "Message object expected");
+		}
+		
+	}
+	
+	private AbstractMessage readMessage(JsonParser parser) throws IOException {
+		
+		JsonToken token = parser.nextToken();
+		ObjectNode tree = getMapper().createObjectNode();
+		
+		if (token == JsonToken.FIELD_NAME && TYPE_PROPERTY.equals(parser.getCurrentName())) {
+			parser.nextToken();
+			String id = parser.getText();
+			MessageCodec<?> codec = findCodec(id);
+			if (codec != null && codec.isReadable()) {
+				return codec.read(parser);
+			}
+			tree.put(TYPE_PROPERTY, id);
+			token = parser.nextToken();
+		}
+		
+		// Message without codec or with type id in the middle
+		while (token == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			tree.set(name, getMapper().<JsonNode>readTree(parser));
+			token = parser.nextToken();
+		}
+		
+		return fallbackReader.readValue(tree);
+		
+	}
+	
+	private String typeId(Class<?> type) {
+		return resolver != null ? resolver.idFromValueAndType(null, type) : type.getName();
+	}
+	
+	/**
+	 * @return codec of message type with given id, unknown ids are left to Jackson
+	 */
+	private MessageCodec<?> findCodec(String id) {
+		
+		Object codec = codecsById.get(id);
+		if (codec == null) {
+			Class<?> type = null;
+			if (resolver != null) {
+				JavaType javaType = resolver.typeFromId(null, id);
+				type = javaType != null ? javaType.getRawClass() : null;
+			} else {
+				try {
+					type = Class.forName(id, false, GeneratedMessageFactory.class.getClassLoader());
+				} catch (ClassNotFoundException | LinkageError e) {
+					type = null;
+				}
+			}
+			if (type == null || !AbstractMessage.class.isAssignableFrom(type)) {
+				return null;
+			}
+			MessageCodec<?> found = findCodec(type);
+			codec = found != null ? found : NO_CODEC;
+			codecsById.put(id, codec);
+		}
+		
+		return codec != NO_CODEC ? (MessageCodec<?>) codec : null;
+		
+	}
+	
+	/**
+	 * @return codec generated for message type or null
+	 */
+	private MessageCodec<?> findCodec(Class<?> type) {
+		
+		Object codec = codecs.get(type);
+		if (codec == null) {
+			codec = loadCodec(type);
+			codecs.put(type, codec);
+		}
+		
+		return codec != NO_CODEC ? (MessageCodec<?>) codec : null;
+		
+	}
+	
+	private Object loadCodec(Class<?> type) {
+		try {
+			Class<?> codecClass = Class.forName(type.getName().replace('$', '_') + "Codec", true, type.getClassLoader());
+			if (MessageCodec.class.isAssignableFrom(codecClass)) {
+				MessageCodec<?> codec = (MessageCodec<?>) codecClass.newInstance();
+				if (codec.getMessageClass() == type) {
+					return codec;
+				}
+			}
+		} catch (ClassNotFoundException | LinkageError | InstantiationException | IllegalAccessException e) {
+			// Message is encoded by Jackson
+		}
+		return NO_CODEC;
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 
+ * Hashed timing wheel which wakes up channels only when their next
+ * heartbeat, test request or disconnect deadline is due.
+ * 
+ * Each channel has at most one armed deadline. Rescheduling to a later time
+ * is lazy: the earlier entry fires, channel polls and arms the next deadline.
+ *
+ */
+public class HashedWheelScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(HashedWheelScheduler.class);
+	
+	private final IDeadlineHandler handler;
+	
+	private final long tickDuration;
+	
+	private final Deadline[] wheel;
+	
+	private final int mask;
+	
+	private final Queue<Deadline> pendingDeadlines;
+	
+	private final Worker worker;
+	
+	private final Thread workerThread;
+	
+	public HashedWheelScheduler(String name, IDeadlineHandler handler, long tickDuration, int ticksPerWheel) {
+		
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+		}
+		
+		int wheelSize = 1;
+		while (wheelSize < ticksPerWheel) {
+			wheelSize <<= 1;
+		}
+		
+		this.handler = handler;
+		this.tickDuration = tickDuration;
+		this.wheel = new Deadline[wheelSize];
+		this.mask = wheelSize - 1;
+		this.pendingDeadlines = new ConcurrentLinkedQueue<Deadline>();
+		this.worker = new Worker();
+		this.workerThread = new Thread(worker, name);
+		this.workerThread.setDaemon(true);
+		
+	}
+	
+	public void start() {
+		workerThread.start();
+	}
+	
+	public void stop() {
+		worker.stop();
+		workerThread.interrupt();
+		try {
+			workerThread.join();
+		} catch (InterruptedException e) {
+			logger.error(e.getMessage(), e);
+		}
+		pendingDeadlines.clear();
+	}
+	
+	/**
+	 * Arms channel deadline. Does nothing if channel already has earlier or equal deadline.
+	 * 
+	 * @param channel channel to wake up
+	 * @param deadline time in milliseconds
+	 */
+	public void schedule(AbstractChannel channel, long deadline) {
+		if (channel.armDeadline(deadline)) {
+			pendingDeadlines.offer(new Deadline(channel, deadline));
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("HashedWheelScheduler[tickDuration=");
+		builder.append(tickDuration);
+		builder.append(",wheelSize=");
+		builder.append(wheel.length);
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	private static final class Deadline {
+		
+		private final AbstractChannel channel;
+		
+		private final long deadline;
+		
+		private long remainingRounds;
+		
+		private Deadline next;
+		
+		private Deadline(AbstractChannel channel, long deadline) {
+			this.channel = channel;
+			this.deadline = deadline;
+		}
+		
+	}
+	
+	private class Worker implements Runnable {
+
+		private volatile boolean running = true;
+		
+		private long startTime;
+		
+		private long tick;
+		
+		public void stop() {
+			running = false;
+		}
+		
+		@Override
+		public void run() {
+			
+			startTime = System.currentTimeMillis();
+			tick = 0;
+			
+			while (running) {
+				
+				if (!waitForNextTick()) {
+					break;
+				}
+				
+				try {
+					transferPendingDeadlines();
+					expireDeadlines((int) (tick & mask));
+				} catch (Throwable e) {
+					logger.error(e.getMessage(), e);
+				}
+				
+				tick++;
+				
+			}
+			
+		}
+		
+		private boolean waitForNextTick() {
+			long tickTime = startTime + (tick + 1) * tickDuration;
+			long sleepTime = tickTime - System.currentTimeMillis();
+			while (sleepTime > 0) {
+				try {
+					Thread.sleep(sleepTime);
+				} catch (InterruptedException e) {
+					return false;
+				}
+				sleepTime = tickTime - System.currentTimeMillis();
+			}
+			return true;
+		}
+		
+		private void transferPendingDeadlines() {
+			Deadline deadline;
+			while ((deadline = pendingDeadlines.poll()) != null) {
+				long deadlineTick = (deadline.deadline - startTime + tickDuration - 1) / tickDuration;
+				if (deadlineTick < tick) {
+					deadlineTick = tick;
+				}
+				deadline.remainingRounds = (deadlineTick - tick) / wheel.length;
+				int index = (int) (deadlineTick & mask);
+				deadline.next = wheel[index];
+				wheel[index] = deadline;
+			}
+		}
+		
+		private void expireDeadlines(int index) {
+			Deadline deadline = wheel[index];
+			Deadline remaining = null;
+			while (deadline != null) {
+				Deadline next = deadline.next;
+				if (deadline.remainingRounds > 0) {
+					deadline.remainingRounds--;
+					deadline.next = remaining;
+					remaining = deadline;
+				} else {
+					deadline.next = null;
+					fire(deadline);
+				}
+				deadline = next;
+			}
+			wheel[index] = remaining;
+		}
+		
+		private void fire(Deadline deadline) {
+			AbstractChannel channel = deadline.channel;
+			if (channel.disarmDeadline(deadline.deadline)) {
+				try {
+					handler.onDeadline(channel);
+				} catch (Throwable e) {
+					logger.error("Error during deadline of " + channel, e);
+				}
+			}
+		}
+		
+	}
+	
+}
@@ -19,6 +19,7 @@
 package com.exactprosystems.webchannels.channel;
 
 import com.exactprosystems.webchannels.enums.ChannelStatus;
+import com.exactprosystems.webchannels.exceptions.EncodingException;
 import com.exactprosystems.webchannels.exceptions.RecoverException;
 import com.exactprosystems.webchannels.messages.AbstractMessage;
 import com.exactprosystems.webchannels.messages.AdminMessage;
@@ -30,22 +31,18 @@ import com.exactprosystems.webchannels.messages.TestRequest;
 import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.zip.DeflaterOutputStream;
 
 public class HttpChannel extends AbstractChannel {
 	
-	private OutputMessagesBuffer outputMessageQueue;
-	
 	private InputMessagesBuffer inputMessageQueue;
 	
-	private SentMessagesBuffer sentMessageQueue;
-	
 	private long created;
 	
 	private long closed;
@@ -58,10 +55,6 @@ public class HttpChannel extends AbstractChannel {
 	
 	private AsyncContext pollingContext;
 	
-	private long inputSeqnum;
-	
-	private long outputSeqnum;
-	
 	private SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss.SSS");
 
 	private long lastResendRequestTime;
@@ -71,11 +64,7 @@ public class HttpChannel extends AbstractChannel {
 				
 		super(handler, id, settings, messageFactory, executor, httpSession);
 		
-		outputMessageQueue = new OutputMessagesBuffer();
-		inputMessageQueue = new InputMessagesBuffer();
-		sentMessageQueue = new SentMessagesBuffer(settings.getResendBufferSize());
-		inputSeqnum = 0;
-		outputSeqnum = 1;
+		inputMessageQueue = new InputMessagesBuffer(settings.getMaxRecoveryWindow());
 		pollingContext = null;
 		lastSendTime = System.currentTimeMillis();
 		lastReceiveTime = lastSendTime;
@@ -94,7 +83,40 @@ public class HttpChannel extends AbstractChannel {
 	
 	@Override
 	protected ChannelStats getChannelStats() {
-		return new ChannelStats(getID(), getStatus(), created, closed, outputSeqnum, inputSeqnum, lastSendTime, lastReceiveTime);
+		return getStatsBuilder()
+				.setCreated(created)
+				.setClosed(closed)
+				.setLastSend(lastSendTime)
+				.setLastReceive(lastReceiveTime)
+				.setGaps(inputMessageQueue.getGapCount())
+				.setMissing(inputMessageQueue.getMissingCount())
+				.build();
+	}
+	
+	@Override
+	protected long getNextPollTime() {
+		
+		long heartBeatInterval = this.getChannelSettings().getHeartBeatInterval();
+		long disconnectTimeout = this.getChannelSettings().getDisconnectTimeout();
+		
+		long nextPollTime = lastReceiveTime + disconnectTimeout + 1;
+		
+		if (!awaitHeartbeat) {
+			nextPollTime = Math.min(nextPollTime, lastReceiveTime + heartBeatInterval * 2 + 1);
+		}
+		
+		if (pollingContext != null) {
+			if (!hasPendingOutput()) {
+				nextPollTime = Math.min(nextPollTime, lastSendTime + heartBeatInterval + 1);
+			} else {
+				nextPollTime = 0L;
+			}
+		} else {
+			nextPollTime = Math.min(nextPollTime, lastSendTime + disconnectTimeout + 1);
+		}
+		
+		return nextPollTime;
+		
 	}
 	
 	@Override
@@ -155,40 +177,39 @@ public class HttpChannel extends AbstractChannel {
 	}
 	
 	@Override
-	protected void processInputMessage(WithSeqnumWrapper wrapper) {
+	protected void processSequencedMessage(WithSeqnumWrapper wrapper) {
 
 		AbstractMessage message = wrapper.getMessage();
 		long seqnum = wrapper.getSeqnum();
-		long expectedSeqnum = inputSeqnum + 1;
-		
-		if (message instanceof AdminMessage) {
-			
-			handleAdminMessage((AdminMessage) message, expectedSeqnum);
-			
-		}
+		long expectedSeqnum = getInputSeqnum() + 1;
 		
 		if (seqnum == expectedSeqnum) {
 		
 			if (inputMessageQueue.isRecovered()) {
-				//if (message instanceof BusinessMessage) {
-					handleBusinessMessage(message, seqnum);
-				//}
-			} else {
-				logger.info("Stash message with seqnum {} on {}", seqnum, this);
-				inputMessageQueue.add(wrapper);
+				handleBusinessMessage(message, seqnum);
+			} else if (!stash(wrapper)) {
+				return;
 			}
 			
 		} else	if (seqnum > expectedSeqnum) {
 				
 			logger.error("Missed messages from {} to {} on {}", expectedSeqnum, seqnum, this);
-			this.sendMessage(new ResendRequest("Resend", expectedSeqnum, seqnum));
-			this.lastResendRequestTime = System.currentTimeMillis();
 			
 			logger.info("Init recover on {}", this);
-			inputMessageQueue.recover(expectedSeqnum, seqnum);
+			try {
+				inputMessageQueue.recover(expectedSeqnum, seqnum);
+			} catch (RecoverException e) {
+				logger.error("Failed to recover messages on " + this, e);
+				onClose();
+				return;
+			}
+			
+			this.sendMessage(new ResendRequest("Resend", expectedSeqnum, seqnum));
+			this.lastResendRequestTime = System.currentTimeMillis();
 			
-			logger.info("Stash message with seqnum {} on {}", seqnum, this);
-			inputMessageQueue.add(wrapper);
+			if (!stash(wrapper)) {
+				return;
+			}
 		
 		} else if (seqnum < expectedSeqnum) {
 			
@@ -198,14 +219,13 @@ public class HttpChannel extends AbstractChannel {
 				
 			} else {
 				
-				logger.info("Stash message with seqnum {} on {}", seqnum, this);
-				inputMessageQueue.add(wrapper);
+				if (!stash(wrapper)) {
+					return;
+				}
 				
 				List<WithSeqnumWrapper> messages = inputMessageQueue.tryRecover();
 				for (WithSeqnumWrapper restored : messages) {
-					//if (restored.getMessage() instanceof BusinessMessage) {
-						handleBusinessMessage(restored.getMessage(), restored.getSeqnum());
-					//}
+					handleBusinessMessage(restored.getMessage(), restored.getSeqnum());
 				}
 				
 				if (inputMessageQueue.isRecovered()) {
@@ -216,9 +236,7 @@ public class HttpChannel extends AbstractChannel {
 			
 		}
 		
-		if (seqnum > inputSeqnum) {
-			inputSeqnum = seqnum;
-		}
+		updateInputSeqnum(seqnum);
 		
 		if (inputMessageQueue.isRecovered()) {
 			lastReceiveTime = System.currentTimeMillis();
@@ -232,6 +250,23 @@ public class HttpChannel extends AbstractChannel {
 		
 	}
 	
+	/**
+	 * Stashes message received during recovery, channel is closed if message 
+	 * does not fit into recovery window.
+	 * 
+	 * @return false if channel is closed
+	 */
+	private boolean stash(WithSeqnumWrapper wrapper) {
+		logger.info("Stash message with seqnum {} on {}", wrapper.getSeqnum(), this);
+		if (!inputMessageQueue.add(wrapper)) {
+			logger.error("Message with seqnum {} exceeds recovery window {} from {} on {}", 
+					wrapper.getSeqnum(), inputMessageQueue.getMaxWindow(), inputMessageQueue.getFrom(), this);
+			onClose();
+			return false;
+		}
+		return true;
+	}
+	
 	private void handleBusinessMessage(AbstractMessage message, long seqnum) {
 		AbstractMessage response = this.getHandler().onReceive(message, seqnum);
 		if (response != null) {
@@ -239,7 +274,8 @@ public class HttpChannel extends AbstractChannel {
 		}
 	}
 	
-	private void handleAdminMessage(AdminMessage message, long seqnum) {
+	@Override
+	protected void processAdminMessage(AdminMessage message) {
 		// Handle admin message
     	if (message instanceof TestRequest) {
 			logger.warn("TestRequest received on {}", this);
@@ -251,17 +287,7 @@ public class HttpChannel extends AbstractChannel {
 			}
 		} else if (message instanceof ResendRequest) {
 			logger.error("ResendRequest {} received on {}", message, this);
-			ResendRequest resendRequest = (ResendRequest) message;
-            try {
-                List<WithSeqnumWrapper> messages = sentMessageQueue.get(resendRequest.getFrom(), resendRequest.getTo());
-                for (WithSeqnumWrapper old : messages) {
-                	logger.info("Resend message with seqnum {} on {}", old.getSeqnum(), this);
-                    outputMessageQueue.offer(old);
-                }
-            } catch (RecoverException e) {
-            	logger.error("Failed to handle ResendRequest", e);
-            	onClose();
-            }
+			handleResendRequest((ResendRequest) message);
         } else if (message instanceof CloseChannel) {
         	logger.debug("CloseChannel received on {}", this);
         	onClose();
@@ -270,19 +296,11 @@ public class HttpChannel extends AbstractChannel {
         }
 	}
 	
-	@Override
-	protected void processOutputMessage(AbstractMessage message) {
-		
-		WithSeqnumWrapper wrapper = new WithSeqnumWrapper(outputSeqnum++, message);
-		outputMessageQueue.offer(wrapper);
-		sentMessageQueue.add(wrapper);
-		this.getHandler().onSend(wrapper.getMessage(), wrapper.getSeqnum());
-		
-	}
-	
 	@Override
 	protected void onPoll() {		
 		
+		checkOutputRoom();
+		
 		long currentTime = System.currentTimeMillis();
 		
 		if (currentTime - lastReceiveTime > this.getChannelSettings().getDisconnectTimeout()) {
@@ -299,70 +317,9 @@ public class HttpChannel extends AbstractChannel {
 		
 		if (pollingContext != null) {
 			
-			if (!outputMessageQueue.isEmpty()) {
-					
-				List<WithSeqnumWrapper> messages = null;
-				
-				long sendStart = System.currentTimeMillis();
-				
-				try {
+			if (hasPendingOutput()) {
 				
-					logger.trace("Start sending messages for {}", this);
-					
-					messages = outputMessageQueue.poll(this.getChannelSettings().getMaxCountToSend());
-					
-					if (getChannelSettings().isCompressionEnabled()) {
-						try (OutputStream output = pollingContext.getResponse().getOutputStream();
-								OutputStream gzipOutput = new DeflaterOutputStream(output)) {
-							this.getMessageFactory().encodeMessage(messages, gzipOutput);
-						}
-					} else {
-						try (Writer output = pollingContext.getResponse().getWriter()) {
-							this.getMessageFactory().encodeMessage(messages, output);
-						}
-					}
-					
-					lastSendTime = currentTime;
-					
-					logger.debug("Sent {} messages through {}", messages.size(), this);
-					
-					long sendDuration = System.currentTimeMillis() - sendStart;
-					
-					if (sendDuration > 200L) {
-						logger.warn("Send messages via {} took {} ms", this, sendDuration);
-					} else {
-						logger.trace("Send messages via {} took {} ms", this, sendDuration);
-					}
-					
-				} catch (Exception e) {
-					
-					if (messages != null) {
-						outputMessageQueue.offerFirst(messages);
-					}
-					
-					logger.error("Exception while processing queue for " + this, e);
-					this.getHandler().onException(e);
-					
-					Throwable[] suppressed = e.getSuppressed();
-					for (Throwable throwable : suppressed) {
-						logger.error("Suppressed exception during encoding in " + this, throwable);
-						this.getHandler().onException(throwable);
-					}
-					
-				} finally {
-					
-					try {
-						completeRequest(pollingContext);
-					} catch (Exception e) {
-						logger.error("Exception while closing context " + pollingContext, e);
-						this.getHandler().onException(e);
-					} finally {
-						logger.trace("Unbind context {} for {}", pollingContext, this);
-						this.setStatus(ChannelStatus.WAITING);
-						this.pollingContext = null;
-					}
-					
-				}
+				this.requestFlush();
 			
 			} else {
 				
@@ -397,14 +354,63 @@ public class HttpChannel extends AbstractChannel {
 		
 	}
 
+	@Override
+	protected void onFlush() {
+		
+		if (pollingContext == null || !hasPendingOutput()) {
+			return;
+		}
+		
+		long currentTime = System.currentTimeMillis();
+		
+		try {
+			
+			if (flushOutput()) {
+				lastSendTime = currentTime;
+			}
+			
+		} finally {
+			
+			try {
+				completeRequest(pollingContext);
+			} catch (Exception e) {
+				logger.error("Exception while closing context " + pollingContext, e);
+				this.getHandler().onException(e);
+			} finally {
+				logger.trace("Unbind context {} for {}", pollingContext, this);
+				this.setStatus(ChannelStatus.WAITING);
+				this.pollingContext = null;
+			}
+			
+		}
+		
+	}
+	
+	@Override
+	protected void writeBatch(List<WithSeqnumWrapper> messages) throws EncodingException, IOException {
+		if (getChannelSettings().isCompressionEnabled()) {
+			try (OutputStream output = pollingContext.getResponse().getOutputStream()) {
+				getCompressor().encodeMessage(this.getMessageFactory(), messages, output);
+			}
+		} else if (this.getMessageFactory().isBinary()) {
+			try (OutputStream output = pollingContext.getResponse().getOutputStream()) {
+				this.getMessageFactory().encodeMessage(messages, output);
+			}
+		} else {
+			try (Writer output = pollingContext.getResponse().getWriter()) {
+				this.getMessageFactory().encodeMessage(messages, output);
+			}
+		}
+	}
+	
 	@Override
 	protected void onClose() {
 		
 		logger.info("Close {}", this);
 		
+		journalClose();
 		this.closed = System.currentTimeMillis();
-		this.outputMessageQueue.clear();
-		this.sentMessageQueue.clear();
+		this.clearOutput();
 		this.inputMessageQueue.clear();
 		this.setStatus(ChannelStatus.CLOSED);
 		this.getHandler().onClose();
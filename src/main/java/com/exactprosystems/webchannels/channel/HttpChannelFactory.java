@@ -27,9 +27,14 @@ public class HttpChannelFactory extends AbstractChannelFactory {
 		super(messageFactory, handlerFactory);
 	}
 	
+	public HttpChannelFactory(AbstractMessageFactory messageFactory, AbstractMessageFactory binaryMessageFactory, 
+			AbstractHandlerFactory handlerFactory) {
+		super(messageFactory, binaryMessageFactory, handlerFactory);
+	}
+	
 	@Override
 	public AbstractChannel createChannel(String channelId, ChannelSettings settings, Executor executor, HttpSession httpSession) {
-		return new HttpChannel(getHandlerFactory().createHandler(), channelId, settings, getMessageFactory(), executor, httpSession);
+		return new HttpChannel(getHandlerFactory().createHandler(), channelId, settings, getMessageFactory(settings), executor, httpSession);
 	}
 
 }
@@ -27,9 +27,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import java.io.InputStream;
 import java.io.Reader;
-import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.zip.InflaterInputStream;
 
 public class HttpChannelProcessor extends AbstractChannelProcessor{
 	
@@ -42,6 +40,19 @@ public class HttpChannelProcessor extends AbstractChannelProcessor{
 		
 	}
 	
+	/**
+	 * @param binaryMessageFactory factory for output messages of clients which support binary encoding
+	 */
+	public HttpChannelProcessor(AbstractHandlerFactory handlerFactory,
+								AbstractMessageFactory messageFactory,
+								AbstractMessageFactory binaryMessageFactory,
+								ChannelSettings settings, Executor executorService) {
+		
+		super(handlerFactory, messageFactory, settings,
+				new HttpChannelFactory(messageFactory, binaryMessageFactory, handlerFactory), executorService);
+		
+	}
+	
 	public void processAsyncContext(AsyncContext context) {
 		
 		String channelId = context.getRequest().getParameter("channelId");
@@ -60,22 +71,23 @@ public class HttpChannelProcessor extends AbstractChannelProcessor{
 			if (prev != null) {
 				channel = prev;
 			} else {
-				channel.initHandler();
-				SessionContrtoller.getInstance().registerChannel(channel, httpSession);
+				initChannel(channel, httpSession);
 			}
 		}
 		
-		List<WithSeqnumWrapper> list = null;
+		logger.trace("Process AsyncContext {} for {}", context, channel);
+		
+		RequestDispatcher dispatcher = new RequestDispatcher(channel);
 		
 		try {
 			if (channel.getChannelSettings().isCompressionEnabled()) {
 				try (InputStream input = context.getRequest().getInputStream();
-						InputStream gzipInput = new InflaterInputStream(input)) {
-					list = messageFactory.decodeMessage(gzipInput);
+						InputStream gzipInput = MessageCompressor.inflate(input)) {
+					messageFactory.decodeMessage(gzipInput, dispatcher);
 				}
 			} else {
 				try (Reader input = context.getRequest().getReader()) {
-					list = messageFactory.decodeMessage(input);
+					messageFactory.decodeMessage(input, dispatcher);
 				}
 			}
 		} catch (Exception e) {
@@ -85,22 +97,59 @@ public class HttpChannelProcessor extends AbstractChannelProcessor{
 				logger.error("Suppressed exception during decoding in channel " + channel, throwable);
 			}
 			context.complete();
+			return;
 		}
 		
+		if (dispatcher.isPolling()) {
+			channel.bind(context);
+		} else {
+			context.complete();
+		}
 		
-		logger.trace("Process AsyncContext {} for {}", context, channel);
+	}
+	
+	/**
+	 * Passes messages to channel while request is decoded. Polling request 
+	 * is held back, context is bound if it is the only message.
+	 */
+	private class RequestDispatcher implements MessageConsumer {
 		
-		if (list != null) {
-			if (list.size() == 1 && list.get(0).getMessage() instanceof PollingRequest) {
-				channel.bind(context);
-			} else {
-				for (WithSeqnumWrapper wrapper : list) {
-					logger.trace("Processor {} onMessage() {} for {}", this, wrapper, channel);
-					channel.handleRequest(wrapper);
-				}
-				context.complete();
+		private final AbstractChannel channel;
+		
+		private WithSeqnumWrapper polling;
+		
+		private int count;
+		
+		public RequestDispatcher(AbstractChannel channel) {
+			this.channel = channel;
+		}
+		
+		@Override
+		public void accept(WithSeqnumWrapper message) {
+			
+			count++;
+			
+			if (count == 1 && message.getMessage() instanceof PollingRequest) {
+				polling = message;
+				return;
 			}
+			
+			if (polling != null) {
+				dispatch(polling);
+				polling = null;
+			}
+			
+			dispatch(message);
+			
+		}
+		
+		private void dispatch(WithSeqnumWrapper message) {
+			logger.trace("Processor {} onMessage() {} for {}", HttpChannelProcessor.this, message, channel);
+			channel.handleRequest(message);
+		}
 		
+		public boolean isPolling() {
+			return polling != null;
 		}
 		
 	}
@@ -133,14 +182,16 @@ public class HttpChannelProcessor extends AbstractChannelProcessor{
 	public ChannelSettings getSettings(HttpSession session, ServletRequest request) {
 		Boolean compressionEnabled = getSaveValue((Boolean) session.getAttribute(SessionConfig.COMPRESSION_ENABLED), settings.isCompressionEnabled());
 		Boolean compressionSupported = getSaveValue(Boolean.valueOf(request.getParameter(RequestConfig.COMPRESSION_SUPPORTED)), Boolean.FALSE);
-		return new ChannelSettings(
-				getSaveValue((Long) session.getAttribute(SessionConfig.POLLING_INTERVAL), settings.getPollingInterval()),
-				getSaveValue((Long) session.getAttribute(SessionConfig.HEARTBEAT_INTERVAL), settings.getHeartBeatInterval()),
-				settings.getMaxCountToSend(),
-				settings.getExecutorBatchSize(),
-				getSaveValue((Long) session.getAttribute(SessionConfig.CONNECTION_TIMEOUT), settings.getDisconnectTimeout()),
-				settings.getResendBufferSize(),
-				compressionEnabled && compressionSupported);
+		Boolean binaryEnabled = getSaveValue((Boolean) session.getAttribute(SessionConfig.BINARY_ENABLED), settings.isBinaryEnabled());
+		Boolean binarySupported = Boolean.valueOf(request.getParameter(RequestConfig.BINARY_SUPPORTED));
+		return settings.toBuilder()
+				.setPollingInterval(getSaveValue((Long) session.getAttribute(SessionConfig.POLLING_INTERVAL), settings.getPollingInterval()))
+				.setHeartBeatInterval(getSaveValue((Long) session.getAttribute(SessionConfig.HEARTBEAT_INTERVAL), settings.getHeartBeatInterval()))
+				.setDisconnectTimeout(getSaveValue((Long) session.getAttribute(SessionConfig.CONNECTION_TIMEOUT), settings.getDisconnectTimeout()))
+				.setCompressionEnabled(compressionEnabled && compressionSupported)
+				.setBinaryEnabled(binaryEnabled && binarySupported)
+				.setCompressionDictionary(getCompressionDictionary(request.getParameter(RequestConfig.COMPRESSION_DICTIONARIES)))
+				.build();
 	}
 	
 	@Override
@@ -16,17 +16,16 @@
  * ****************************************************************************
  */
 
-package com.exactprosystems.webchannels.channel;
 
-public class InputMessageEvent {
+package com.exactprosystems.webchannels.channel;
 
-    private final WithSeqnumWrapper message;
+/**
+ * 
+ * Callback invoked by {@link HashedWheelScheduler} when channel deadline fires.
+ *
+ */
+public interface IDeadlineHandler {
 
-    public InputMessageEvent(WithSeqnumWrapper message) {
-        this.message = message;
-    }
+	void onDeadline(AbstractChannel channel);
 
-    public WithSeqnumWrapper getMessage() {
-        return message;
-    }
 }
@@ -21,90 +21,164 @@ package com.exactprosystems.webchannels.channel;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+
+/**
+ * 
+ * Messages received ahead of a gap, kept until missed ones are resent. Messages
+ * are stored in a ring starting from the first missed seqnum, presence of each
+ * slot is tracked in a bitset, so holes are filled and drained without copying.
+ *
+ */
 public class InputMessagesBuffer {
 	
+	public static final int DEFAULT_MAX_WINDOW = 65536;
+	
+	private static final int MIN_CAPACITY = 64;
+	
+	private final int maxWindow;
+	
 	private WithSeqnumWrapper[] messages;
 	
+	private long[] present;
+	
+	private int head;
+	
+	private int stashed;
+	
 	private long from;
 	
 	private long to;
 	
+	private long last;
+	
 	private boolean recovered;
 	
+	private long gaps;
+	
 	public InputMessagesBuffer() {
-		messages = null;
-		from = 0;
-		to = 0;
-		recovered = true;
+		this(DEFAULT_MAX_WINDOW);
+	}
+	
+	/**
+	 * @param maxWindow maximum distance between first missed and last stashed seqnum
+	 */
+	public InputMessagesBuffer(int maxWindow) {
+		this.maxWindow = Math.max(maxWindow, 1);
+		this.messages = null;
+		this.present = null;
+		this.head = 0;
+		this.stashed = 0;
+		this.from = 0;
+		this.to = 0;
+		this.last = 0;
+		this.recovered = true;
+		this.gaps = 0;
 	}
 	
 	public boolean isRecovered() {
 		return recovered;
 	}
 
-	public void add(WithSeqnumWrapper wrapper) {
+	/**
+	 * Stashes message received during recovery. Message which is already 
+	 * delivered or out of recovery window is ignored.
+	 * 
+	 * @return false if message is out of recovery window
+	 */
+	public boolean add(WithSeqnumWrapper wrapper) {
 		if (recovered) {
 			throw new RuntimeException("Buffer not in recover state");
-		} else {
-			int position = (int) (wrapper.getSeqnum() - from);
-			if (position >= 0) {
-				if (position >= messages.length) {
-					WithSeqnumWrapper[] tmp = new WithSeqnumWrapper[position + 1];
-					System.arraycopy(messages, 0, tmp, 0, messages.length);
-					messages = tmp;
-				}
-				messages[position] = wrapper;
-			}
 		}
+		long position = wrapper.getSeqnum() - from;
+		if (position < 0) {
+			return true;
+		}
+		if (position >= maxWindow) {
+			return false;
+		}
+		ensureCapacity((int) position + 1);
+		int slot = (head + (int) position) & (messages.length - 1);
+		if (!isPresent(slot)) {
+			present[slot >>> 6] |= 1L << slot;
+			stashed++;
+		}
+		messages[slot] = wrapper;
+		last = Math.max(last, wrapper.getSeqnum());
+		return true;
 	}
 
-	public void recover(long expectedSeqnum, long seqnum) {
+	/**
+	 * Starts recovery of messages from expectedSeqnum to seqnum or extends current one.
+	 * 
+	 * @throws RecoverException if gap does not fit into recovery window
+	 */
+	public void recover(long expectedSeqnum, long seqnum) throws RecoverException {
 		if (seqnum <= expectedSeqnum) {
 			throw new RuntimeException();
 		}
+		long start = recovered ? expectedSeqnum : Math.min(from, expectedSeqnum);
+		if (seqnum - start >= maxWindow) {
+			throw new RecoverException("Gap from " + start + " to " + seqnum 
+					+ " exceeds recovery window " + maxWindow);
+		}
 		if (recovered) {
 			recovered = false;
 			from = expectedSeqnum;
 			to = seqnum;
-			messages = new WithSeqnumWrapper[(int) (to - from)];
+			last = 0;
+			head = 0;
+			stashed = 0;
+			ensureCapacity((int) (to - from) + 1);
 		} else {
 			if (expectedSeqnum < from) {
+				relocate(messages.length, (int) (from - expectedSeqnum));
 				from = expectedSeqnum;
 			}
 			if (seqnum > to) {
 				to = seqnum;
 			}
-			WithSeqnumWrapper[] tmp = new WithSeqnumWrapper[(int) (to - from)];
-			System.arraycopy(messages, 0, tmp, 0, messages.length);
-			messages = tmp;
 		}
+		gaps++;
 	}
 
 	public List<WithSeqnumWrapper> tryRecover() {
 		List<WithSeqnumWrapper> result = new ArrayList<WithSeqnumWrapper>();
-		int i = 0;
-		for (; i < messages.length; i++) {
-			WithSeqnumWrapper message = messages[i];
-			if (message != null) {
-				result.add(message);
-			} else {
-				break;
-			}
+		drainTo(result);
+		return result;
+	}
+	
+	/**
+	 * Moves contiguous prefix of stashed messages to list.
+	 * 
+	 * @return number of messages moved
+	 */
+	public int drainTo(List<WithSeqnumWrapper> list) {
+		int count = 0;
+		int mask = messages.length - 1;
+		while (isPresent(head)) {
+			list.add(messages[head]);
+			messages[head] = null;
+			present[head >>> 6] &= ~(1L << head);
+			head = (head + 1) & mask;
+			count++;
 		}
-		WithSeqnumWrapper[] tmp = new WithSeqnumWrapper[messages.length - i];
-		System.arraycopy(messages, i, tmp, 0, messages.length - i);
-		messages = tmp;
-		from = from + i;
-		if (messages.length == 0) {
+		from += count;
+		stashed -= count;
+		if (stashed == 0) {
 			recovered = true;
 		}
-		return result;
+		return count;
 	}
 
 	public void clear() {
 		messages = null;
+		present = null;
+		head = 0;
+		stashed = 0;
 		from = 0;
 		to = 0;
+		last = 0;
 		recovered = true;
 	}
 
@@ -115,5 +189,81 @@ public class InputMessagesBuffer {
 	public long getTo() {
 		return to;
 	}
+	
+	/**
+	 * @return number of messages which are still missed during recovery
+	 */
+	public long getMissingCount() {
+		if (recovered) {
+			return 0;
+		}
+		return Math.max(to, last + 1) - from - stashed;
+	}
+	
+	/**
+	 * @return number of gaps detected by channel
+	 */
+	public long getGapCount() {
+		return gaps;
+	}
+	
+	public int getMaxWindow() {
+		return maxWindow;
+	}
+	
+	private boolean isPresent(int slot) {
+		return (present[slot >>> 6] & (1L << slot)) != 0;
+	}
+	
+	private void ensureCapacity(int size) {
+		int capacity = messages == null ? 0 : messages.length;
+		if (size <= capacity) {
+			return;
+		}
+		int newCapacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(size - 1) << 1);
+		if (messages == null) {
+			messages = new WithSeqnumWrapper[newCapacity];
+			present = new long[newCapacity >>> 6];
+		} else {
+			relocate(newCapacity, 0);
+		}
+	}
+	
+	/**
+	 * Copies ring into new arrays starting from given offset.
+	 */
+	private void relocate(int capacity, int offset) {
+		int newCapacity = capacity;
+		while (newCapacity < messages.length + offset) {
+			newCapacity <<= 1;
+		}
+		WithSeqnumWrapper[] newMessages = new WithSeqnumWrapper[newCapacity];
+		long[] newPresent = new long[newCapacity >>> 6];
+		int mask = messages.length - 1;
+		for (int i = 0; i < messages.length; i++) {
+			int slot = (head + i) & mask;
+			if (isPresent(slot)) {
+				int target = i + offset;
+				newMessages[target] = messages[slot];
+				newPresent[target >>> 6] |= 1L << target;
+			}
+		}
+		messages = newMessages;
+		present = newPresent;
+		head = 0;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("InputMessagesBuffer[from=");
+		builder.append(from);
+		builder.append(",to=");
+		builder.append(to);
+		builder.append(",stashed=");
+		builder.append(stashed);
+		builder.append("]");
+		return builder.toString();
+	}
 
 }
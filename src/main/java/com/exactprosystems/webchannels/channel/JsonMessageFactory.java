@@ -18,6 +18,7 @@
 
 package com.exactprosystems.webchannels.channel;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
@@ -26,11 +27,18 @@ import java.util.List;
 
 import com.exactprosystems.webchannels.exceptions.DecodingException;
 import com.exactprosystems.webchannels.exceptions.EncodingException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 
 public class JsonMessageFactory extends AbstractMessageFactory {
 	
@@ -40,13 +48,30 @@ public class JsonMessageFactory extends AbstractMessageFactory {
 
 	private final ObjectMapper mapper;
 	
+	private final ObjectWriter messageWriter;
+	
+	private final ObjectReader wrapperReader;
+	
 	public JsonMessageFactory() {
+		this(null);
+	}
+	
+	/**
+	 * @param configurator registry of message type ids, class names are used if null
+	 */
+	public JsonMessageFactory(MessageFactoryConfigurator configurator) {
 		this.factory = new JsonFactory();
 		this.mapper = new ObjectMapper(factory);
 		this.mapper.disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS);
 		this.mapper.disable(DeserializationFeature.READ_DATE_TIMESTAMPS_AS_NANOSECONDS);
 		//this.mapper.enableDefaultTypingAsProperty(ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT, "messageType");
 		this.mapper.findAndRegisterModules();
+		this.mapper.registerModule(new SimpleModule("EncodedMessage").addSerializer(EncodedMessage.class, new EncodedMessageSerializer()));
+		if (configurator != null) {
+			configurator.configure(mapper);
+		}
+		this.messageWriter = mapper.writerFor(AbstractMessage.class);
+		this.wrapperReader = mapper.readerFor(WithSeqnumWrapper.class);
 	}
 	
 	@Override
@@ -94,6 +119,68 @@ public class JsonMessageFactory extends AbstractMessageFactory {
 		}
 	}
 
+	@Override
+	public void decodeMessage(InputStream stream, MessageConsumer consumer) throws DecodingException {
+		
+		try (JsonParser parser = factory.createParser(stream)) {
+			readMessages(parser, wrapperReader, consumer);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode json message", e);
+		}
+		
+	}
+	
+	@Override
+	public void decodeMessage(Reader reader, MessageConsumer consumer) throws DecodingException {
+		
+		try (JsonParser parser = factory.createParser(reader)) {
+			readMessages(parser, wrapperReader, consumer);
+		} catch (Exception e) {
+			throw new DecodingException("Cannot decode json message", e);
+		}
+		
+	}
+	
+	/**
+	 * Reads array of messages element by element.
+	 */
+	static void readMessages(JsonParser parser, ObjectReader wrapperReader, MessageConsumer consumer) throws IOException {
+		
+		if (parser.nextToken() != JsonToken.START_ARRAY) {
+			throw new JsonParseException(parser, "Array of messages expected");
+		}
+		
+		JsonToken token;
+		while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+			WithSeqnumWrapper message = wrapperReader.readValue(parser);
+			consumer.accept(message);
+		}
+		
+		if (token != JsonToken.END_ARRAY) {
+			throw new JsonParseException(parser, "Message object expected");
+		}
+		
+	}
+
+	@Override
+	public AbstractMessage preEncodeMessage(AbstractMessage message) throws EncodingException {
+		
+		if (message instanceof EncodedMessage) {
+			return message;
+		}
+		
+		try {
+			return new EncodedMessage(message, messageWriter.writeValueAsString(message));
+		} catch (Exception e) {
+			throw new EncodingException("Cannot encode json message", e);
+		}
+		
+	}
+
+	protected ObjectMapper getMapper() {
+		return mapper;
+	}
+
 	@Override
 	public String getContentType() {
 		return "application/json";
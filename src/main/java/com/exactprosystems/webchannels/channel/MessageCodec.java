@@ -0,0 +1,54 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.io.IOException;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * 
+ * Streaming encoder and decoder of message type. Implementations are generated
+ * by {@link com.exactprosystems.webchannels.processor.MessageCodecProcessor} 
+ * and named after message class with Codec suffix.
+ *
+ */
+public interface MessageCodec<T extends AbstractMessage> {
+	
+	Class<T> getMessageClass();
+	
+	/**
+	 * Writes properties of message, object start, end and type id are written by caller.
+	 */
+	void write(T message, JsonGenerator generator) throws IOException;
+	
+	/**
+	 * @return false if message cannot be created from properties, it is decoded by Jackson then
+	 */
+	boolean isReadable();
+	
+	/**
+	 * Reads properties of message up to the end of object.
+	 */
+	T read(JsonParser parser) throws IOException;
+
+}
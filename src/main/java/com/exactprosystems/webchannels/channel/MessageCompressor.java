@@ -0,0 +1,303 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.exactprosystems.webchannels.exceptions.EncodingException;
+
+/**
+ * 
+ * Compresses output batches of channel in zlib format. Native {@link Deflater} 
+ * and {@link Inflater} are reused through bounded pools shared by all threads, 
+ * so virtual thread per task does not leave native memory behind each carrier 
+ * of task, surplus ones are ended on return. Batches smaller than 
+ * threshold are written as is, receivers tell them apart by zlib header.
+ * Collects compression ratio and CPU time spent in deflate.
+ *
+ */
+public class MessageCompressor {
+	
+	private static final int CHUNK_SIZE = 8192;
+	
+	/** Encoded batch buffer larger than this is not kept in pool */
+	private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+	
+	private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+	
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	
+	private static final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+	
+	private static final BlockingQueue<Buffers> buffersPool = new ArrayBlockingQueue<>(POOL_SIZE);
+	
+	private static final BlockingQueue<Inflater> inflatersPool = new ArrayBlockingQueue<>(POOL_SIZE);
+	
+	private final int level;
+	
+	private final int strategy;
+	
+	private final int threshold;
+	
+	private final CompressionDictionary dictionary;
+	
+	private volatile DictionaryTrainer trainer;
+	
+	private volatile long flushes;
+	
+	private volatile long uncompressedBytes;
+	
+	private volatile long compressedBytes;
+	
+	private volatile long compressionTime;
+	
+	public MessageCompressor(int level, int strategy, int threshold) {
+		this(level, strategy, threshold, null);
+	}
+	
+	/**
+	 * @param dictionary preset dictionary, null if batches are compressed without it
+	 */
+	public MessageCompressor(int level, int strategy, int threshold, CompressionDictionary dictionary) {
+		this.level = level;
+		this.strategy = strategy;
+		this.threshold = threshold;
+		this.dictionary = dictionary;
+	}
+	
+	public MessageCompressor(ChannelSettings settings) {
+		this(settings.getCompressionLevel(), settings.getCompressionStrategy(), 
+				settings.getCompressionThreshold(), settings.getCompressionDictionary());
+	}
+	
+	/**
+	 * @param trainer receives compressed batches for building of next dictionary
+	 */
+	public void setTrainer(DictionaryTrainer trainer) {
+		this.trainer = trainer;
+	}
+	
+	public CompressionDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	/**
+	 * Encodes messages and writes them to output compressed if batch is not 
+	 * smaller than threshold. Metrics are updated by single thread of channel.
+	 */
+	public void encodeMessage(AbstractMessageFactory messageFactory, List<WithSeqnumWrapper> messages, 
+			OutputStream output) throws EncodingException, IOException {
+		
+		Buffers local = buffersPool.poll();
+		if (local == null) {
+			local = new Buffers();
+		}
+		EncodedBatch batch = local.batch;
+		batch.reset();
+		
+		try {
+			
+			messageFactory.encodeMessage(messages, batch);
+			int size = batch.size();
+			
+			if (size < threshold) {
+				output.write(batch.buffer(), 0, size);
+				return;
+			}
+			
+			DictionaryTrainer trainer = this.trainer;
+			if (trainer != null) {
+				trainer.sample(batch.buffer(), 0, size);
+			}
+			
+			long start = currentTime();
+			
+			Deflater deflater = local.deflater;
+			deflater.reset();
+			deflater.setLevel(level);
+			deflater.setStrategy(strategy);
+			if (dictionary != null) {
+				byte[] bytes = dictionary.getBytes();
+				deflater.setDictionary(bytes, 0, bytes.length);
+			}
+			deflater.setInput(batch.buffer(), 0, size);
+			deflater.finish();
+			
+			byte[] chunk = local.chunk;
+			while (!deflater.finished()) {
+				int length = deflater.deflate(chunk);
+				output.write(chunk, 0, length);
+			}
+			
+			compressionTime += currentTime() - start;
+			uncompressedBytes += size;
+			compressedBytes += deflater.getBytesWritten();
+			flushes++;
+			
+		} finally {
+			if (batch.buffer().length > MAX_RETAINED_SIZE) {
+				local.batch = new EncodedBatch();
+			}
+			if (!buffersPool.offer(local)) {
+				local.deflater.end();
+			}
+		}
+		
+	}
+	
+	/**
+	 * @return stream which inflates input if it starts with zlib header, 
+	 * it takes inflater from pool and returns it on close
+	 */
+	public static InputStream inflate(InputStream input) throws IOException {
+		
+		PushbackInputStream pushback = new PushbackInputStream(input, 2);
+		byte[] header = new byte[2];
+		int length = 0;
+		while (length < header.length) {
+			int read = pushback.read(header, length, header.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		pushback.unread(header, 0, length);
+		
+		if (length < header.length || !isCompressed(header[0], header[1])) {
+			return pushback;
+		}
+		
+		Inflater inflater = inflatersPool.poll();
+		if (inflater == null) {
+			inflater = new Inflater();
+		}
+		return new PooledInflaterInputStream(pushback, inflater);
+		
+	}
+	
+	/**
+	 * Checks zlib header written by {@link Deflater} with default window, 
+	 * neither JSON nor CBOR batch starts with it.
+	 */
+	static boolean isCompressed(byte first, byte second) {
+		return first == 0x78 && (((first & 0xFF) << 8) | (second & 0xFF)) % 31 == 0;
+	}
+	
+	private static long currentTime() {
+		return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+	
+	/**
+	 * @return number of compressed batches
+	 */
+	public long getFlushes() {
+		return flushes;
+	}
+	
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+	
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+	
+	/**
+	 * @return CPU time in nanoseconds spent in compression
+	 */
+	public long getCompressionTime() {
+		return compressionTime;
+	}
+	
+	private static class Buffers {
+		
+		private final Deflater deflater = new Deflater();
+		
+		private final byte[] chunk = new byte[CHUNK_SIZE];
+		
+		private EncodedBatch batch = new EncodedBatch();
+		
+	}
+	
+	private static class PooledInflaterInputStream extends InflaterInputStream {
+		
+		private boolean released;
+		
+		public PooledInflaterInputStream(InputStream input, Inflater inflater) {
+			super(input, inflater, CHUNK_SIZE);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!released) {
+					released = true;
+					inf.reset();
+					if (!inflatersPool.offer(inf)) {
+						inf.end();
+					}
+				}
+			}
+		}
+		
+	}
+	
+	private static class EncodedBatch extends ByteArrayOutputStream {
+		
+		public EncodedBatch() {
+			super(CHUNK_SIZE);
+		}
+		
+		public byte[] buffer() {
+			return buf;
+		}
+		
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MessageCompressor[level=");
+		builder.append(level);
+		builder.append(", strategy=");
+		builder.append(strategy);
+		builder.append(", threshold=");
+		builder.append(threshold);
+		builder.append(", dictionary=");
+		builder.append(dictionary);
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
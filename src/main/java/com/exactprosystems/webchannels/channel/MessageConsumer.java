@@ -16,23 +16,17 @@
  * ****************************************************************************
  */
 
-package com.exactprosystems.webchannels.channel;
 
-public class CloseChannelEvent {
+package com.exactprosystems.webchannels.channel;
 
-	private static final CloseChannelEvent instance = new CloseChannelEvent();
-	
-	private CloseChannelEvent() {
-		// TODO Auto-generated constructor stub
-	}
-	
-	public static CloseChannelEvent getInstance() {
-		return instance;
-	}
+/**
+ * 
+ * Receives decoded messages one by one, see 
+ * {@link AbstractMessageFactory#decodeMessage(java.io.Reader, MessageConsumer)}.
+ *
+ */
+public interface MessageConsumer {
 	
-	@Override
-	public String toString() {
-		return "CloseChannelMessage[]";
-	}
+	void accept(WithSeqnumWrapper message);
 
 }
@@ -19,26 +19,196 @@
 package com.exactprosystems.webchannels.channel;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.CloseChannel;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.PollingRequest;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+import com.exactprosystems.webchannels.messages.SequenceReset;
+import com.exactprosystems.webchannels.messages.TestRequest;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.ObjectIdGenerator;
+import com.fasterxml.jackson.annotation.ObjectIdResolver;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.annotation.JsonTypeIdResolver;
+import com.fasterxml.jackson.databind.cfg.HandlerInstantiator;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.deser.ValueInstantiator;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import com.fasterxml.jackson.databind.ser.VirtualBeanPropertyWriter;
+import com.fasterxml.jackson.databind.util.Converter;
 
-@Deprecated
+/**
+ * 
+ * Registry of message types. Registered types are sent with short numeric 
+ * ids instead of class names, messages of other types are decoded only if 
+ * their class name is registered. Admin messages are registered by default.
+ * 
+ * Ids depend on registration order and must be the same on client, 
+ * see {@link #getTypeIds()}.
+ *
+ */
 public class MessageFactoryConfigurator {
 
 	private final List<Class<?>> classes;
 	
 	public MessageFactoryConfigurator() {
 		this.classes = new ArrayList<Class<?>>();
+		registerMessage(HeartBeat.class);
+		registerMessage(TestRequest.class);
+		registerMessage(ResendRequest.class);
+		registerMessage(CloseChannel.class);
+		registerMessage(PollingRequest.class);
+		registerMessage(SequenceReset.class);
 	}
 
+	/**
+	 * Registers message type with the next id. 
+	 */
 	public void registerMessage(Class<? extends AbstractMessage> clazz) {
+		if (classes.contains(clazz)) {
+			throw new IllegalArgumentException("Message type " + clazz.getName() + " is already registered");
+		}
 		classes.add(clazz);
 	}
 
 	public List<Class<?>> getClasses() {
-		return classes;
+		return Collections.unmodifiableList(classes);
+	}
+	
+	/**
+	 * @return class names by type ids, to be passed to client as 
+	 * {@code messageTypes} setting of channel
+	 */
+	public Map<String, String> getTypeIds() {
+		Map<String, String> ids = new LinkedHashMap<String, String>();
+		for (int i = 0; i < classes.size(); i++) {
+			ids.put(Integer.toString(i), classes.get(i).getName());
+		}
+		return ids;
+	}
+	
+	/**
+	 * Replaces class names of registered messages with type ids in given mapper.
+	 * Types registered later are not used by this mapper. Handler instantiator 
+	 * set to mapper before is still used for other handlers.
+	 */
+	public void configure(ObjectMapper mapper) {
+		MessageTypeIdResolver resolver = new MessageTypeIdResolver(classes);
+		mapper.addMixIn(AbstractMessage.class, RegisteredMessage.class);
+		HandlerInstantiator configured = mapper.getDeserializationConfig().getHandlerInstantiator();
+		mapper.setHandlerInstantiator(new RegisteredTypesInstantiator(resolver, configured));
+	}
+	
+	@JsonTypeInfo(use=JsonTypeInfo.Id.CUSTOM, include=JsonTypeInfo.As.PROPERTY, property="messageType")
+	@JsonTypeIdResolver(MessageTypeIdResolver.class)
+	private interface RegisteredMessage {
+		
+	}
+	
+	/**
+	 * Provides type id resolver of registered messages, other handlers are 
+	 * created by instantiator configured before, if any.
+	 */
+	private static class RegisteredTypesInstantiator extends HandlerInstantiator {
+		
+		private final MessageTypeIdResolver resolver;
+		
+		private final HandlerInstantiator delegate;
+		
+		public RegisteredTypesInstantiator(MessageTypeIdResolver resolver, HandlerInstantiator delegate) {
+			this.resolver = resolver;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public JsonDeserializer<?> deserializerInstance(DeserializationConfig config, Annotated annotated,
+				Class<?> deserClass) {
+			return delegate != null ? delegate.deserializerInstance(config, annotated, deserClass) : null;
+		}
+
+		@Override
+		public KeyDeserializer keyDeserializerInstance(DeserializationConfig config, Annotated annotated,
+				Class<?> keyDeserClass) {
+			return delegate != null ? delegate.keyDeserializerInstance(config, annotated, keyDeserClass) : null;
+		}
+
+		@Override
+		public JsonSerializer<?> serializerInstance(SerializationConfig config, Annotated annotated,
+				Class<?> serClass) {
+			return delegate != null ? delegate.serializerInstance(config, annotated, serClass) : null;
+		}
+
+		@Override
+		public TypeResolverBuilder<?> typeResolverBuilderInstance(MapperConfig<?> config, Annotated annotated,
+				Class<?> builderClass) {
+			return delegate != null ? delegate.typeResolverBuilderInstance(config, annotated, builderClass) : null;
+		}
+
+		@Override
+		public TypeIdResolver typeIdResolverInstance(MapperConfig<?> config, Annotated annotated,
+				Class<?> resolverClass) {
+			if (resolverClass == MessageTypeIdResolver.class) {
+				return resolver;
+			}
+			return delegate != null ? delegate.typeIdResolverInstance(config, annotated, resolverClass) : null;
+		}
+		
+		@Override
+		public ValueInstantiator valueInstantiatorInstance(MapperConfig<?> config, Annotated annotated,
+				Class<?> instClass) {
+			return delegate != null ? delegate.valueInstantiatorInstance(config, annotated, instClass) : null;
+		}
+		
+		@Override
+		public ObjectIdGenerator<?> objectIdGeneratorInstance(MapperConfig<?> config, Annotated annotated,
+				Class<?> implClass) {
+			return delegate != null ? delegate.objectIdGeneratorInstance(config, annotated, implClass) : null;
+		}
+		
+		@Override
+		public ObjectIdResolver resolverIdGeneratorInstance(MapperConfig<?> config, Annotated annotated,
+				Class<?> implClass) {
+			return delegate != null ? delegate.resolverIdGeneratorInstance(config, annotated, implClass) : null;
+		}
+		
+		@Override
+		public PropertyNamingStrategy namingStrategyInstance(MapperConfig<?> config, Annotated annotated,
+				Class<?> implClass) {
+			return delegate != null ? delegate.namingStrategyInstance(config, annotated, implClass) : null;
+		}
+		
+		@Override
+		public Converter<?, ?> converterInstance(MapperConfig<?> config, Annotated annotated,
+				Class<?> implClass) {
+			return delegate != null ? delegate.converterInstance(config, annotated, implClass) : null;
+		}
+		
+		@Override
+		public VirtualBeanPropertyWriter virtualPropertyWriterInstance(MapperConfig<?> config, Class<?> implClass) {
+			return delegate != null ? delegate.virtualPropertyWriterInstance(config, implClass) : null;
+		}
+		
+		@Override
+		public Object includeFilterInstance(SerializationConfig config, BeanPropertyDefinition forProperty,
+				Class<?> filterClass) {
+			return delegate != null ? delegate.includeFilterInstance(config, forProperty, filterClass) : null;
+		}
+		
 	}
 	
 }
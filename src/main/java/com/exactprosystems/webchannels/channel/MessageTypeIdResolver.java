@@ -0,0 +1,108 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.jsontype.impl.TypeIdResolverBase;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * 
+ * Resolves numeric ids of registered message types by array lookup. 
+ * Unregistered types are written with class name, unknown ids are rejected 
+ * without class loading.
+ *
+ */
+public class MessageTypeIdResolver extends TypeIdResolverBase {
+	
+	private final JavaType[] types;
+	
+	private final Map<Class<?>, String> ids;
+	
+	private final Map<String, JavaType> names;
+	
+	public MessageTypeIdResolver(List<Class<?>> classes) {
+		
+		super(null, TypeFactory.defaultInstance());
+		
+		this.types = new JavaType[classes.size()];
+		this.ids = new IdentityHashMap<Class<?>, String>();
+		this.names = new HashMap<String, JavaType>();
+		
+		for (int i = 0; i < types.length; i++) {
+			Class<?> clazz = classes.get(i);
+			types[i] = _typeFactory.constructType(clazz);
+			ids.put(clazz, Integer.toString(i));
+			names.put(clazz.getName(), types[i]);
+		}
+		
+	}
+
+	@Override
+	public String idFromValue(Object value) {
+		return idFromValueAndType(value, value.getClass());
+	}
+
+	@Override
+	public String idFromValueAndType(Object value, Class<?> suggestedType) {
+		String id = ids.get(suggestedType);
+		return id != null ? id : suggestedType.getName();
+	}
+	
+	@Override
+	public JavaType typeFromId(DatabindContext context, String id) {
+		
+		int length = id.length();
+		if (length == 0 || length > 9) {
+			return names.get(id);
+		}
+		
+		int index = 0;
+		for (int i = 0; i < length; i++) {
+			int digit = id.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				// Class names of registered types are accepted as well
+				return names.get(id);
+			}
+			index = index * 10 + digit;
+		}
+		
+		return index < types.length ? types[index] : null;
+		
+	}
+	
+	@Override
+	public String getDescForKnownTypeIds() {
+		return names.keySet().toString();
+	}
+
+	@Override
+	public JsonTypeInfo.Id getMechanism() {
+		return JsonTypeInfo.Id.CUSTOM;
+	}
+
+}
@@ -0,0 +1,363 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+package com.exactprosystems.webchannels.channel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.exactprosystems.webchannels.exceptions.EncodingException;
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+/**
+ * 
+ * Resend buffer which keeps encoded messages out of heap, in direct or 
+ * memory-mapped segments written as a ring. Heap holds only seqnum to 
+ * position index, so large resend windows do not increase GC work. 
+ * Segments are allocated when the ring reaches them and dropped on release, 
+ * so idle channels do not hold whole journal. 
+ * Messages are decoded back to {@link EncodedMessage} on resend.
+ *
+ */
+public class OffHeapSentMessagesBuffer extends SentMessagesBuffer {
+	
+	private static final Logger logger = LoggerFactory.getLogger(OffHeapSentMessagesBuffer.class);
+	
+	private static final int HEADER_SIZE = 12;
+	
+	private static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+	
+	private final AbstractMessageFactory messageFactory;
+	
+	private final long[] positions;
+	
+	private final int capacity;
+	
+	private final ByteBuffer[] segments;
+	
+	private final int segmentSize;
+	
+	private final long journalSize;
+	
+	private FileChannel journal;
+	
+	private long writePosition;
+	
+	private long lastSeqnum;
+	
+	private int size;
+	
+	private int allocated;
+	
+	private boolean released;
+	
+	/**
+	 * @param capacity number of messages available for resend
+	 * @param journalBytes size of encoded messages storage
+	 * @param directory directory of memory-mapped segment files or null for direct buffers 
+	 */
+	public OffHeapSentMessagesBuffer(int capacity, long journalBytes, File directory, 
+			AbstractMessageFactory messageFactory) throws IOException {
+		
+		this.messageFactory = messageFactory;
+		this.capacity = capacity;
+		this.positions = new long[capacity];
+		Arrays.fill(positions, -1L);
+		
+		int count = (int) Math.max(1L, (journalBytes + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+		this.segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, Math.max(journalBytes, HEADER_SIZE));
+		this.segments = new ByteBuffer[count];
+		this.journalSize = (long) segmentSize * count;
+		
+		if (directory != null) {
+			File file = File.createTempFile("resend", ".journal", directory);
+			this.journal = new RandomAccessFile(file, "rw").getChannel();
+			// Segments mapped later remain valid after file is removed
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+		
+		this.writePosition = 0L;
+		this.lastSeqnum = 0L;
+		this.size = 0;
+		this.allocated = 0;
+		this.released = false;
+		
+	}
+	
+	/**
+	 * Creates buffer of given type, falls back to direct buffers if segment files can not be mapped.
+	 */
+	public static SentMessagesBuffer create(int capacity, long journalBytes, boolean mapped, 
+			AbstractMessageFactory messageFactory) {
+		if (mapped) {
+			try {
+				return new OffHeapSentMessagesBuffer(capacity, journalBytes, 
+						new File(System.getProperty("java.io.tmpdir")), messageFactory);
+			} catch (IOException e) {
+				logger.error("Cannot map resend journal, direct buffers are used", e);
+			}
+		}
+		try {
+			return new OffHeapSentMessagesBuffer(capacity, journalBytes, null, messageFactory);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Stores encoded message, wrapper itself is not retained.
+	 * 
+	 * @return always null
+	 */
+	@Override
+	public WithSeqnumWrapper add(WithSeqnumWrapper message) {
+		
+		long seqnum = message.getSeqnum();
+		if (released || seqnum <= lastSeqnum - capacity) {
+			return null;
+		}
+		
+		// Slots of skipped seqnums fall out of window
+		for (long skipped = Math.max(lastSeqnum + 1, seqnum - capacity + 1); skipped < seqnum; skipped++) {
+			remove(slot(skipped));
+		}
+		lastSeqnum = Math.max(lastSeqnum, seqnum);
+		
+		int slot = slot(seqnum);
+		byte[] bytes = encode(message.getMessage());
+		if (bytes == null || bytes.length + HEADER_SIZE > segmentSize) {
+			if (bytes != null) {
+				logger.warn("Message {} of {} bytes exceeds resend journal segment", seqnum, bytes.length);
+			}
+			// Previous message in slot is not valid for this seqnum
+			remove(slot);
+			return null;
+		}
+		
+		int offset = (int) (writePosition % segmentSize);
+		if (offset + HEADER_SIZE + bytes.length > segmentSize) {
+			// Entries do not cross segment boundary
+			writePosition += segmentSize - offset;
+			offset = 0;
+		}
+		
+		ByteBuffer segment;
+		try {
+			segment = allocate(writePosition);
+		} catch (IOException e) {
+			logger.error("Cannot map resend journal segment, message " + seqnum + " is not stored", e);
+			remove(slot);
+			return null;
+		}
+		segment.putLong(offset, seqnum);
+		segment.putInt(offset + 8, bytes.length);
+		segment.position(offset + HEADER_SIZE);
+		segment.put(bytes);
+		
+		if (positions[slot] < 0) {
+			size++;
+		}
+		positions[slot] = writePosition;
+		writePosition += HEADER_SIZE + bytes.length;
+		
+		return null;
+		
+	}
+	
+	@Override
+	public List<WithSeqnumWrapper> get(long from, long to) throws RecoverException {
+		long firstSeqnum = lastSeqnum - capacity + 1;
+		if (from < firstSeqnum || to > lastSeqnum) {
+			throw new RecoverException("Failed to resend messages from " + from + " to " + to);
+		}
+		List<WithSeqnumWrapper> list = new ArrayList<WithSeqnumWrapper>((int) Math.max(0L, to - from));
+		for (long seqnum = from; seqnum < to; seqnum++) {
+			WithSeqnumWrapper wrapper = read(seqnum);
+			if (wrapper == null) {
+				throw new RecoverException("Failed to resend messages from " + from + " to " + to 
+						+ ", message " + seqnum + " is not buffered");
+			}
+			list.add(wrapper);
+		}
+		return list;
+	}
+	
+	@Override
+	public void collect(long from, long to, List<WithSeqnumWrapper> list) {
+		long end = Math.min(to, lastSeqnum + 1);
+		for (long seqnum = Math.max(from, lastSeqnum - capacity + 1); seqnum < end; seqnum++) {
+			WithSeqnumWrapper wrapper = read(seqnum);
+			if (wrapper != null) {
+				list.add(wrapper);
+			}
+		}
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(positions, -1L);
+		size = 0;
+		lastSeqnum = 0L;
+	}
+	
+	/**
+	 * Drops segments, direct and mapped memory is reclaimed with them. 
+	 * Messages added later are not stored.
+	 */
+	@Override
+	public void release() {
+		clear();
+		released = true;
+		Arrays.fill(segments, null);
+		allocated = 0;
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				logger.error("Cannot close resend journal", e);
+			}
+			journal = null;
+		}
+	}
+	
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	@Override
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * @return size of encoded messages storage in bytes
+	 */
+	public long getJournalSize() {
+		return journalSize;
+	}
+	
+	/**
+	 * @return size of segments allocated so far in bytes
+	 */
+	public long getAllocatedSize() {
+		return (long) segmentSize * allocated;
+	}
+	
+	private WithSeqnumWrapper read(long seqnum) {
+		
+		if (seqnum <= 0) {
+			return null;
+		}
+		
+		long position = positions[slot(seqnum)];
+		if (position < 0 || position + journalSize < writePosition) {
+			return null;
+		}
+		
+		ByteBuffer segment = segment(position);
+		int offset = (int) (position % segmentSize);
+		if (segment == null || segment.getLong(offset) != seqnum) {
+			return null;
+		}
+		
+		byte[] bytes = new byte[segment.getInt(offset + 8)];
+		segment.position(offset + HEADER_SIZE);
+		segment.get(bytes);
+		
+		return new WithSeqnumWrapper(seqnum, new EncodedMessage(null, new String(bytes, StandardCharsets.UTF_8)));
+		
+	}
+	
+	private void remove(int slot) {
+		if (positions[slot] >= 0) {
+			positions[slot] = -1L;
+			size--;
+		}
+	}
+	
+	private byte[] encode(AbstractMessage message) {
+		AbstractMessage encoded = message;
+		if (!(encoded instanceof EncodedMessage)) {
+			try {
+				encoded = messageFactory.preEncodeMessage(message);
+			} catch (EncodingException e) {
+				logger.error("Cannot store message " + message + " for resend", e);
+				return null;
+			}
+		}
+		if (encoded instanceof EncodedMessage) {
+			return ((EncodedMessage) encoded).getEncoded().asUnquotedUTF8();
+		}
+		return null;
+	}
+	
+	private ByteBuffer allocate(long position) throws IOException {
+		int index = index(position);
+		ByteBuffer segment = segments[index];
+		if (segment == null) {
+			if (journal == null) {
+				segment = ByteBuffer.allocateDirect(segmentSize);
+			} else {
+				segment = journal.map(FileChannel.MapMode.READ_WRITE, (long) segmentSize * index, segmentSize);
+			}
+			segments[index] = segment;
+			allocated++;
+		}
+		return segment;
+	}
+	
+	private ByteBuffer segment(long position) {
+		return segments[index(position)];
+	}
+	
+	private int index(long position) {
+		return (int) ((position / segmentSize) % segments.length);
+	}
+	
+	private int slot(long seqnum) {
+		return (int) (seqnum % capacity);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("OffHeapSentMessagesBuffer[size=");
+		builder.append(size);
+		builder.append(",journalSize=");
+		builder.append(journalSize);
+		builder.append(",allocatedSize=");
+		builder.append(getAllocatedSize());
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
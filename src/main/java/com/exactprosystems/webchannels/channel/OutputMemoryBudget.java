@@ -0,0 +1,101 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Process-wide limit of estimated bytes queued in output buffers of all 
+ * channels. Channel which does not fit into the budget applies its overflow policy.
+ * Budget is disabled until {@link #configure(long)} is called, channels 
+ * created after that share it.
+ *
+ */
+public class OutputMemoryBudget {
+	
+	private static volatile OutputMemoryBudget budget;
+	
+	private final AtomicLong used;
+	
+	private volatile long limit;
+	
+	OutputMemoryBudget(long limit) {
+		this.used = new AtomicLong(0L);
+		this.limit = limit;
+	}
+	
+	/**
+	 * @return configured budget or null if it is disabled
+	 */
+	public static OutputMemoryBudget getInstance() {
+		return budget;
+	}
+	
+	/**
+	 * Enables process-wide budget or changes its limit.
+	 * 
+	 * @param limit estimated bytes of all output buffers
+	 */
+	public static synchronized OutputMemoryBudget configure(long limit) {
+		if (budget == null) {
+			budget = new OutputMemoryBudget(limit);
+		} else {
+			budget.setLimit(limit);
+		}
+		return budget;
+	}
+	
+	public boolean hasRoom(long size) {
+		return used.get() + size <= limit;
+	}
+	
+	public void reserve(long size) {
+		used.addAndGet(size);
+	}
+	
+	public void release(long size) {
+		used.addAndGet(-size);
+	}
+	
+	public long getUsed() {
+		return used.get();
+	}
+	
+	public long getLimit() {
+		return limit;
+	}
+	
+	public void setLimit(long limit) {
+		this.limit = limit;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("OutputMemoryBudget[used=");
+		builder.append(used.get());
+		builder.append(", limit=");
+		builder.append(limit);
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -18,45 +18,417 @@
 
 package com.exactprosystems.webchannels.channel;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.ConflatableMessage;
+import com.exactprosystems.webchannels.messages.SequenceReset;
 
 public class OutputMessagesBuffer {
+	
+	private static final int GAP_FILL_SIZE = 64;
+	
+	private static final int INITIAL_CAPACITY = 16;
 
-	private final LinkedList<WithSeqnumWrapper> outputMessageQueue;
+	private WithSeqnumWrapper[] outputMessageQueue;
+	
+	private int head;
+	
+	private int count;
+	
+	private long headPosition;
+	
+	private final ArrayDeque<WithSeqnumWrapper> urgentMessageQueue;
+	
+	private final int maxMessages;
+	
+	private final long maxBytes;
+	
+	private final OutputMemoryBudget budget;
+	
+	private final Map<Object, WithSeqnumWrapper> conflationIndex;
+	
+	private long bytes;
+	
+	private long dropped;
+	
+	private long conflated;
+	
+	private int drained;
+	
+	private int drainedUrgent;
+	
+	private long drainedBytes;
 
 	public OutputMessagesBuffer() {
-		outputMessageQueue = new LinkedList<WithSeqnumWrapper>();
+		this(0, 0L, null);
+	}
+	
+	/**
+	 * @param maxMessages limit of queued messages, zero means unlimited
+	 * @param maxBytes limit of estimated queued bytes, zero means unlimited
+	 * @param budget process-wide budget or null
+	 */
+	public OutputMessagesBuffer(int maxMessages, long maxBytes, OutputMemoryBudget budget) {
+		this(maxMessages, maxBytes, budget, false);
+	}
+	
+	/**
+	 * @param conflationEnabled whether queued {@link ConflatableMessage} can be replaced by newer one
+	 */
+	public OutputMessagesBuffer(int maxMessages, long maxBytes, OutputMemoryBudget budget, boolean conflationEnabled) {
+		this.conflationIndex = conflationEnabled ? new HashMap<Object, WithSeqnumWrapper>() : null;
+		this.outputMessageQueue = new WithSeqnumWrapper[INITIAL_CAPACITY];
+		this.head = 0;
+		this.count = 0;
+		this.headPosition = 0L;
+		this.urgentMessageQueue = new ArrayDeque<WithSeqnumWrapper>();
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+		this.budget = budget;
+		this.bytes = 0L;
+		this.dropped = 0L;
+		this.conflated = 0L;
+		this.drained = 0;
+		this.drainedUrgent = 0;
+		this.drainedBytes = 0L;
 	}
 	
 	public void offer(WithSeqnumWrapper wrapper) {
-		outputMessageQueue.offer(wrapper);
+		reserve(wrapper);
+		index(wrapper, true);
+		offerLast(wrapper);
+	}
+	
+	/**
+	 * @return queued message with the same conflation key or null if there is no such message
+	 */
+	public WithSeqnumWrapper getConflated(ConflatableMessage message) {
+		if (conflationIndex == null) {
+			return null;
+		}
+		return conflationIndex.get(message.getConflationKey());
+	}
+	
+	/**
+	 * Puts replacement to position of queued message returned by 
+	 * {@link #getConflated(ConflatableMessage)}. Replacement must have the same 
+	 * seqnum, queued wrapper itself is not changed.
+	 */
+	public void replace(WithSeqnumWrapper queued, WithSeqnumWrapper replacement) {
+		int index = (head + (int) (queued.getPosition() - headPosition)) & (outputMessageQueue.length - 1);
+		if (outputMessageQueue[index] != queued) {
+			throw new IllegalArgumentException("Message is not queued: " + queued);
+		}
+		release(queued);
+		unindex(queued);
+		reserve(replacement);
+		index(replacement, true);
+		replacement.setPosition(queued.getPosition());
+		outputMessageQueue[index] = replacement;
+		conflated++;
+	}
+	
+	/**
+	 * Adds message which is polled before all regular messages.
+	 */
+	public void offerUrgent(WithSeqnumWrapper wrapper) {
+		reserve(wrapper);
+		urgentMessageQueue.offer(wrapper);
 	}
 
 	public void offerFirst(List<WithSeqnumWrapper> messages) {
 		for (int i = messages.size() - 1; i >= 0; i--) {
-			outputMessageQueue.offerFirst(messages.get(i));
+			WithSeqnumWrapper wrapper = messages.get(i);
+			reserve(wrapper);
+			// Newer message with the same key may be queued already
+			index(wrapper, false);
+			offerFirst(wrapper);
 		}
 	}
 	
 	public boolean isEmpty() {
-		return outputMessageQueue.isEmpty();
+		return count == 0 && urgentMessageQueue.isEmpty();
+	}
+	
+	/**
+	 * @return true if message of given estimated size fits into channel limits and process-wide budget
+	 */
+	public boolean hasRoom(int size) {
+		if (maxMessages > 0 && count + urgentMessageQueue.size() >= maxMessages) {
+			return false;
+		}
+		if (maxBytes > 0 && bytes + size > maxBytes) {
+			return false;
+		}
+		return budget == null || budget.hasRoom(size);
+	}
+	
+	/**
+	 * Drops oldest regular message. Dropped messages are replaced by single 
+	 * {@link SequenceReset}, so client does not request them again.
+	 * 
+	 * @return dropped message or null if there is nothing to drop
+	 */
+	public WithSeqnumWrapper dropOldest() {
+		
+		WithSeqnumWrapper oldest = pollFirst();
+		if (oldest == null) {
+			return null;
+		}
+		
+		WithSeqnumWrapper skipped;
+		SequenceReset sequenceReset;
+		if (oldest.getMessage() instanceof SequenceReset) {
+			WithSeqnumWrapper next = peekFirst();
+			// Only consecutive seqnums can be skipped
+			if (next == null || next.getSeqnum() != oldest.getSeqnum() + 1) {
+				offerFirst(oldest);
+				return null;
+			}
+			skipped = pollFirst();
+			// Gap fill may be kept in resend buffer, so it is replaced instead of changed
+			release(oldest);
+			sequenceReset = (SequenceReset) oldest.getMessage();
+		} else {
+			skipped = oldest;
+			sequenceReset = new SequenceReset(oldest.getSeqnum());
+		}
+		
+		release(skipped);
+		unindex(skipped);
+		WithSeqnumWrapper gapFill = new WithSeqnumWrapper(skipped.getSeqnum(), sequenceReset);
+		gapFill.setSize(GAP_FILL_SIZE);
+		reserve(gapFill);
+		offerFirst(gapFill);
+		
+		dropped++;
+		return skipped;
+		
 	}
 
 	public List<WithSeqnumWrapper> poll(int size) {
-		List<WithSeqnumWrapper> messages = new ArrayList<WithSeqnumWrapper>();
-		int count = 0;
-		while (!outputMessageQueue.isEmpty() && count < size) {
-			WithSeqnumWrapper wrapper = outputMessageQueue.poll();
-			messages.add(wrapper);
-			++count;
-		}
+		List<WithSeqnumWrapper> messages = new ArrayList<WithSeqnumWrapper>(Math.min(size, size()));
+		drainTo(messages, size);
 		return messages;
 	}
+	
+	/**
+	 * Moves up to max messages to batch, urgent ones first. Drained messages 
+	 * can be returned by {@link #unread(List)} until messages are dropped or 
+	 * buffer is cleared, messages offered after drain stay behind them.
+	 * 
+	 * @return number of messages added to batch
+	 */
+	public int drainTo(List<WithSeqnumWrapper> batch, int max) {
+		
+		commit();
+		
+		while (drainedUrgent < max && !urgentMessageQueue.isEmpty()) {
+			WithSeqnumWrapper wrapper = urgentMessageQueue.poll();
+			release(wrapper);
+			batch.add(wrapper);
+			drainedUrgent++;
+		}
+		
+		int mask = outputMessageQueue.length - 1;
+		int limit = Math.min(max - drainedUrgent, count);
+		for (int i = 0; i < limit; i++) {
+			int index = (head + i) & mask;
+			WithSeqnumWrapper wrapper = outputMessageQueue[index];
+			outputMessageQueue[index] = null;
+			wrapper.setQueued(false);
+			drainedBytes += wrapper.getSize();
+			unindex(wrapper);
+			batch.add(wrapper);
+		}
+		head = (head + limit) & mask;
+		headPosition += limit;
+		count -= limit;
+		drained = limit;
+		
+		bytes -= drainedBytes;
+		if (budget != null) {
+			budget.release(drainedBytes);
+		}
+		
+		return drainedUrgent + drained;
+		
+	}
+	
+	/**
+	 * Returns messages of the last {@link #drainTo(List, int)} to the head of 
+	 * buffer, e.g. when they could not be sent. Batch must not be changed
+	 * except removing messages added after drain.
+	 */
+	public void unread(List<WithSeqnumWrapper> batch) {
+		
+		for (int i = drainedUrgent + drained - 1; i >= drainedUrgent; i--) {
+			WithSeqnumWrapper wrapper = batch.get(i);
+			wrapper.setQueued(true);
+			// Newer message with the same key may be queued already
+			index(wrapper, false);
+			insertFirst(wrapper);
+		}
+		
+		bytes += drainedBytes;
+		if (budget != null) {
+			budget.reserve(drainedBytes);
+		}
+		
+		for (int i = drainedUrgent - 1; i >= 0; i--) {
+			WithSeqnumWrapper wrapper = batch.get(i);
+			reserve(wrapper);
+			urgentMessageQueue.offerFirst(wrapper);
+		}
+		
+		drained = 0;
+		drainedUrgent = 0;
+		drainedBytes = 0L;
+		
+	}
 
 	public void clear() {
-		outputMessageQueue.clear();
+		commit();
+		for (int i = 0; i < count; i++) {
+			outputMessageQueue[(head + i) & (outputMessageQueue.length - 1)].setQueued(false);
+		}
+		for (WithSeqnumWrapper wrapper : urgentMessageQueue) {
+			wrapper.setQueued(false);
+		}
+		Arrays.fill(outputMessageQueue, null);
+		head = 0;
+		count = 0;
+		urgentMessageQueue.clear();
+		if (conflationIndex != null) {
+			conflationIndex.clear();
+		}
+		if (budget != null) {
+			budget.release(bytes);
+		}
+		bytes = 0L;
+	}
+	
+	public int size() {
+		return count + urgentMessageQueue.size();
+	}
+	
+	/**
+	 * @return estimated size of queued messages in bytes
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+	
+	public long getDroppedCount() {
+		return dropped;
+	}
+	
+	/**
+	 * @return number of messages replaced by newer ones before sending
+	 */
+	public long getConflatedCount() {
+		return conflated;
+	}
+	
+	/**
+	 * Forgets the last drain, messages can not be unread after buffer is changed.
+	 */
+	private void commit() {
+		drained = 0;
+		drainedUrgent = 0;
+		drainedBytes = 0L;
+	}
+	
+	private WithSeqnumWrapper peekFirst() {
+		return count == 0 ? null : outputMessageQueue[head];
+	}
+	
+	private WithSeqnumWrapper pollFirst() {
+		commit();
+		if (count == 0) {
+			return null;
+		}
+		WithSeqnumWrapper wrapper = outputMessageQueue[head];
+		outputMessageQueue[head] = null;
+		head = (head + 1) & (outputMessageQueue.length - 1);
+		headPosition++;
+		count--;
+		return wrapper;
+	}
+	
+	private void offerFirst(WithSeqnumWrapper wrapper) {
+		commit();
+		insertFirst(wrapper);
+	}
+	
+	private void insertFirst(WithSeqnumWrapper wrapper) {
+		ensureCapacity();
+		head = (head - 1) & (outputMessageQueue.length - 1);
+		headPosition--;
+		wrapper.setPosition(headPosition);
+		outputMessageQueue[head] = wrapper;
+		count++;
+	}
+	
+	private void offerLast(WithSeqnumWrapper wrapper) {
+		ensureCapacity();
+		wrapper.setPosition(headPosition + count);
+		outputMessageQueue[(head + count) & (outputMessageQueue.length - 1)] = wrapper;
+		count++;
+	}
+	
+	private void ensureCapacity() {
+		int capacity = outputMessageQueue.length;
+		if (count < capacity) {
+			return;
+		}
+		WithSeqnumWrapper[] queue = new WithSeqnumWrapper[capacity << 1];
+		System.arraycopy(outputMessageQueue, head, queue, 0, capacity - head);
+		System.arraycopy(outputMessageQueue, 0, queue, capacity - head, head);
+		outputMessageQueue = queue;
+		head = 0;
+	}
+	
+	private void index(WithSeqnumWrapper wrapper, boolean replace) {
+		AbstractMessage message = EncodedMessage.unwrap(wrapper.getMessage());
+		if (conflationIndex != null && message instanceof ConflatableMessage) {
+			Object key = ((ConflatableMessage) message).getConflationKey();
+			if (replace || !conflationIndex.containsKey(key)) {
+				conflationIndex.put(key, wrapper);
+			}
+		}
+	}
+	
+	private void unindex(WithSeqnumWrapper wrapper) {
+		AbstractMessage message = EncodedMessage.unwrap(wrapper.getMessage());
+		if (conflationIndex != null && message instanceof ConflatableMessage) {
+			Object key = ((ConflatableMessage) message).getConflationKey();
+			if (conflationIndex.get(key) == wrapper) {
+				conflationIndex.remove(key);
+			}
+		}
+	}
+	
+	private void reserve(WithSeqnumWrapper wrapper) {
+		wrapper.setQueued(true);
+		bytes += wrapper.getSize();
+		if (budget != null) {
+			budget.reserve(wrapper.getSize());
+		}
+	}
+	
+	private void release(WithSeqnumWrapper wrapper) {
+		wrapper.setQueued(false);
+		bytes -= wrapper.getSize();
+		if (budget != null) {
+			budget.release(wrapper.getSize());
+		}
 	}
 	
 }
@@ -22,4 +22,8 @@ public class RequestConfig {
 
 	public static final String COMPRESSION_SUPPORTED = "compressionSupported";
 
+	public static final String BINARY_SUPPORTED = "binarySupported";
+
+	public static final String COMPRESSION_DICTIONARIES = "compressionDictionaries";
+
 }
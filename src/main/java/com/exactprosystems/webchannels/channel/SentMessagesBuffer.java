@@ -18,58 +18,191 @@
 
 package com.exactprosystems.webchannels.channel;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
-import org.apache.commons.collections.buffer.CircularFifoBuffer;
-
+import com.exactprosystems.webchannels.enums.ResendBufferType;
 import com.exactprosystems.webchannels.exceptions.RecoverException;
 
+/**
+ * 
+ * Ring of sent messages indexed by seqnum. Message with seqnum N is kept
+ * in slot N % capacity, so range lookup does not scan the buffer.
+ *
+ */
 public class SentMessagesBuffer {
 
-	private final CircularFifoBuffer messageQueue;
+	private final WithSeqnumWrapper[] messages;
+	
+	private final long[] seqnums;
 	
 	private final int capacity;
 	
 	private long lastSeqnum;
 	
+	private int size;
+	
 	public SentMessagesBuffer(int capacity) {
 		this.lastSeqnum = 0;
 		this.capacity = capacity;
-		this.messageQueue = new CircularFifoBuffer(capacity);
+		this.messages = new WithSeqnumWrapper[capacity];
+		this.seqnums = new long[capacity];
+		this.size = 0;
 	}
 	
-	public void add(WithSeqnumWrapper message) {
-		lastSeqnum = message.getSeqnum();
-		messageQueue.add(message);
+	/**
+	 * For implementations with own storage.
+	 */
+	protected SentMessagesBuffer() {
+		this.lastSeqnum = 0;
+		this.capacity = 0;
+		this.messages = null;
+		this.seqnums = null;
+		this.size = 0;
+	}
+	
+	/**
+	 * @return resend buffer of type selected by settings
+	 */
+	public static SentMessagesBuffer create(ChannelSettings settings, AbstractMessageFactory messageFactory) {
+		ResendBufferType type = settings.getResendBufferType();
+		if (type == ResendBufferType.DIRECT || type == ResendBufferType.MAPPED) {
+			return OffHeapSentMessagesBuffer.create(settings.getResendBufferSize(), settings.getResendJournalSize(), 
+					type == ResendBufferType.MAPPED, messageFactory);
+		}
+		return new SentMessagesBuffer(settings.getResendBufferSize());
+	}
+	
+	/**
+	 * Adds sent message, message with seqnum of stored one replaces it.
+	 * Message older than buffer window is not stored.
+	 * 
+	 * @return wrapper evicted from buffer or null
+	 */
+	public WithSeqnumWrapper add(WithSeqnumWrapper message) {
+		long seqnum = message.getSeqnum();
+		if (seqnum <= lastSeqnum - capacity) {
+			return null;
+		}
+		// Messages in slots of skipped seqnums fall out of window
+		for (long skipped = Math.max(lastSeqnum + 1, seqnum - capacity + 1); skipped < seqnum; skipped++) {
+			int slot = slot(skipped);
+			if (messages[slot] != null) {
+				messages[slot] = null;
+				size--;
+			}
+		}
+		int slot = slot(seqnum);
+		WithSeqnumWrapper evicted = messages[slot];
+		if (evicted != null) {
+			size--;
+		}
+		messages[slot] = message;
+		seqnums[slot] = seqnum;
+		size++;
+		lastSeqnum = Math.max(lastSeqnum, seqnum);
+		return evicted;
 	}
 
+	/**
+	 * @return view of buffered messages with seqnums in range [from, to), 
+	 * valid until next message is added
+	 */
 	public List<WithSeqnumWrapper> get(long from, long to) throws RecoverException {
-		long firstSeqnum = lastSeqnum - capacity;
+		long firstSeqnum = lastSeqnum - capacity + 1;
 		if (from < firstSeqnum || to > lastSeqnum) {
 			throw new RecoverException("Failed to resend messages from " + from + " to " + to);
 		}
-		List<WithSeqnumWrapper> list = new ArrayList<WithSeqnumWrapper>();
-		for (Object object : messageQueue) {
-			WithSeqnumWrapper wrapper = (WithSeqnumWrapper) object;
-			if (wrapper.getSeqnum() >= from && wrapper.getSeqnum() < to) {
-				list.add(wrapper);
+		for (long seqnum = from; seqnum < to; seqnum++) {
+			if (!contains(seqnum)) {
+				throw new RecoverException("Failed to resend messages from " + from + " to " + to 
+						+ ", message " + seqnum + " is not buffered");
+			}
+		}
+		return new RangeView(from, Math.max(from, to));
+	}
+	
+	/**
+	 * Adds buffered messages with seqnums in range [from, to) to list.
+	 */
+	public void collect(long from, long to, List<WithSeqnumWrapper> list) {
+		long end = Math.min(to, lastSeqnum + 1);
+		for (long seqnum = Math.max(from, lastSeqnum - capacity + 1); seqnum < end; seqnum++) {
+			if (contains(seqnum)) {
+				list.add(messages[slot(seqnum)]);
 			}
 		}
-		return list;
 	}
 
 	public void clear() {
-		messageQueue.clear();
+		for (int i = 0; i < capacity; i++) {
+			messages[i] = null;
+		}
+		size = 0;
+		lastSeqnum = 0;
+	}
+	
+	/**
+	 * Drops buffered messages and storage of closed channel.
+	 */
+	public void release() {
+		clear();
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * @return number of buffered messages
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	private boolean contains(long seqnum) {
+		int slot = slot(seqnum);
+		return seqnum > 0 && messages[slot] != null && seqnums[slot] == seqnum;
+	}
+	
+	private int slot(long seqnum) {
+		return (int) (seqnum % capacity);
 	}
 	
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("MessageBuffer[messageQueueSize=");
-		builder.append(messageQueue.size());
+		builder.append(size);
 		builder.append("]");
 		return builder.toString();
 	}
+	
+	private class RangeView extends AbstractList<WithSeqnumWrapper> implements RandomAccess {
+		
+		private final long from;
+		
+		private final int length;
+		
+		private RangeView(long from, long to) {
+			this.from = from;
+			this.length = (int) (to - from);
+		}
+
+		@Override
+		public WithSeqnumWrapper get(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + length);
+			}
+			return messages[slot(from + index)];
+		}
+
+		@Override
+		public int size() {
+			return length;
+		}
+		
+	}
 
 }
@@ -22,6 +22,8 @@ public class SessionConfig {
 
 	public static final String COMPRESSION_ENABLED = "COMPRESSION_ENABLED";
 
+	public static final String BINARY_ENABLED = "BINARY_ENABLED";
+
 	public static final String POLLING_INTERVAL = "POLLING_INTERVAL";
 
 	public static final String HEARTBEAT_INTERVAL = "HEARTBEAT_INTERVAL";
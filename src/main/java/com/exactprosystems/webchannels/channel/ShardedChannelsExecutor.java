@@ -0,0 +1,280 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 
+ * Executor with fixed set of single-threaded event loops (shards). Every channel
+ * is permanently bound to one shard by channel id hash, so channel state is
+ * touched by a single thread only. Producers link execution task of channel 
+ * with pending events into intrusive run queue of the shard, so scheduling 
+ * does not allocate. Shard thread drains ready channels in round-robin loop.
+ *
+ */
+public class ShardedChannelsExecutor implements Executor {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ShardedChannelsExecutor.class);
+	
+	private final Shard[] shards;
+	
+	private int nextShard;
+	
+	public ShardedChannelsExecutor(int shardCount, Thread.UncaughtExceptionHandler handler) {
+		
+		if (shardCount <= 0) {
+			throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+		}
+		
+		this.shards = new Shard[shardCount];
+		this.nextShard = 0;
+		
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard("Channels-shard-" + i, handler);
+			shards[i].start();
+		}
+		
+	}
+	
+	/**
+	 * Executes arbitrary task on one of the shards. Channels do not use this 
+	 * method, they are scheduled through {@link #getShard(String)}.
+	 */
+	@Override
+	public void execute(Runnable command) {
+		if (command instanceof ExecutionTask) {
+			ExecutionTask task = (ExecutionTask) command;
+			getShard(task.getChannel().getID()).schedule(task);
+		} else {
+			// Benign race, any shard is fine for foreign tasks
+			int index = nextShard;
+			nextShard = (index + 1) % shards.length;
+			shards[index].execute(command);
+		}
+	}
+	
+	public int getShardCount() {
+		return shards.length;
+	}
+	
+	public void shutdown() {
+		for (Shard shard : shards) {
+			shard.shutdown();
+		}
+	}
+	
+	Shard getShard(String channelId) {
+		return shards[shardIndex(channelId, shards.length)];
+	}
+	
+	static int shardIndex(String channelId, int shardCount) {
+		int hash = channelId == null ? 0 : channelId.hashCode();
+		// spread bits as channel ids usually share prefix
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % shardCount;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("ShardedChannelsExecutor[shards=");
+		builder.append(shards.length);
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	static final class Shard implements Runnable {
+		
+		private final Thread thread;
+		
+		/**
+		 * Marks end of run queue, so the last task can be polled while producers link new ones.
+		 */
+		private final ExecutionTask stub;
+		
+		private final AtomicReference<ExecutionTask> tail;
+		
+		private ExecutionTask head;
+		
+		private final Queue<Runnable> tasks;
+		
+		private volatile boolean parked;
+		
+		private volatile boolean running;
+		
+		private Shard(String name, Thread.UncaughtExceptionHandler handler) {
+			this.stub = new ExecutionTask(null, null);
+			this.tail = new AtomicReference<ExecutionTask>(stub);
+			this.head = stub;
+			this.tasks = new ConcurrentLinkedQueue<Runnable>();
+			this.parked = false;
+			this.running = true;
+			this.thread = new Thread(this, name);
+			this.thread.setDaemon(true);
+			this.thread.setUncaughtExceptionHandler(handler);
+		}
+		
+		private void start() {
+			thread.start();
+		}
+		
+		private void shutdown() {
+			running = false;
+			LockSupport.unpark(thread);
+		}
+		
+		/**
+		 * Signals that channel has new events. Task is linked into run queue 
+		 * only by the first signal after shard released it.
+		 */
+		void schedule(ExecutionTask task) {
+			if (task.signal()) {
+				push(task);
+				wakeup();
+			}
+		}
+		
+		private void execute(Runnable task) {
+			tasks.offer(task);
+			wakeup();
+		}
+		
+		private void wakeup() {
+			if (parked) {
+				parked = false;
+				LockSupport.unpark(thread);
+			}
+		}
+		
+		@Override
+		public void run() {
+			
+			while (running) {
+				
+				Runnable command;
+				while ((command = tasks.poll()) != null) {
+					try {
+						command.run();
+					} catch (Throwable e) {
+						logger.error("Error during execution of task " + command, e);
+					}
+				}
+				
+				ExecutionTask task = poll();
+				
+				if (task != null) {
+					drain(task);
+				} else {
+					parked = true;
+					if (isEmpty() && tasks.isEmpty() && running) {
+						LockSupport.park(this);
+					}
+					parked = false;
+				}
+				
+			}
+			
+		}
+		
+		private void drain(ExecutionTask task) {
+			
+			AbstractChannel channel = task.getChannel();
+			// Events of counted signals are already in the queue
+			int signals = task.getSignals();
+			
+			if (channel.drainTaskQueue()) {
+				// Channel is still owned by this shard, just give others a chance
+				channel.adaptBatchSize(!isEmpty());
+				// Handled signals are dropped to keep counter bounded, task stays owned
+				task.release(signals - 1);
+				push(task);
+			} else {
+				channel.updateDeadline();
+				// Signal which came during drain keeps the channel scheduled
+				if (task.release(signals)) {
+					push(task);
+				}
+			}
+			
+		}
+		
+		private void push(ExecutionTask task) {
+			task.setNext(null);
+			tail.getAndSet(task).setNext(task);
+		}
+		
+		/**
+		 * @return next task or null if run queue is empty or producer has not linked task yet
+		 */
+		private ExecutionTask poll() {
+			
+			ExecutionTask first = head;
+			ExecutionTask next = first.getNext();
+			
+			if (first == stub) {
+				if (next == null) {
+					return null;
+				}
+				head = next;
+				first = next;
+				next = next.getNext();
+			}
+			
+			if (next != null) {
+				head = next;
+				return first;
+			}
+			
+			if (first != tail.get()) {
+				return null;
+			}
+			
+			// Stub becomes the last node, so the first one can be unlinked
+			push(stub);
+			next = first.getNext();
+			if (next != null) {
+				head = next;
+				return first;
+			}
+			
+			return null;
+			
+		}
+		
+		private boolean isEmpty() {
+			return head == stub && tail.get() == stub;
+		}
+		
+		@Override
+		public String toString() {
+			return "Shard[" + thread.getName() + "]";
+		}
+		
+	}
+
+}
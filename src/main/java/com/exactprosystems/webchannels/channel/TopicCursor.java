@@ -0,0 +1,117 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.exactprosystems.webchannels.enums.ChannelStatus;
+
+/**
+ * 
+ * Read position of channel in {@link TopicLog}. Position is moved by channel
+ * processing only.
+ *
+ */
+public final class TopicCursor {
+	
+	private final TopicLog topic;
+	
+	private final AbstractChannel channel;
+	
+	private final AtomicBoolean pending;
+	
+	private long position;
+	
+	private volatile boolean closed;
+	
+	TopicCursor(TopicLog topic, AbstractChannel channel, long position) {
+		this.topic = topic;
+		this.channel = channel;
+		this.pending = new AtomicBoolean(false);
+		this.position = position;
+		this.closed = false;
+	}
+	
+	/**
+	 * Notifies channel about new messages. Notifications are coalesced until 
+	 * channel picks them up. Cursor of closed channel is closed instead, 
+	 * channel does not attach cursors after it is closed.
+	 */
+	void signal() {
+		if (channel.getStatus() == ChannelStatus.CLOSED) {
+			close();
+			return;
+		}
+		if (!pending.get() && pending.compareAndSet(false, true)) {
+			channel.onTopicUpdate(this);
+		}
+	}
+	
+	void clearPending() {
+		pending.set(false);
+	}
+	
+	/**
+	 * Stops delivery of topic messages to channel.
+	 */
+	public void close() {
+		closed = true;
+		topic.unsubscribe(this);
+	}
+	
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	public TopicLog getTopic() {
+		return topic;
+	}
+	
+	public AbstractChannel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * @return topic seqnum of the next message to read
+	 */
+	long getPosition() {
+		return position;
+	}
+	
+	void setPosition(long position) {
+		this.position = position;
+	}
+	
+	boolean hasPending() {
+		return !closed && position <= topic.getLastSeqnum();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("TopicCursor[topic=");
+		builder.append(topic.getName());
+		builder.append(",position=");
+		builder.append(position);
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
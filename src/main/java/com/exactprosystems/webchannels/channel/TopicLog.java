@@ -0,0 +1,153 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+/**
+ * 
+ * Append-only ring log of messages shared by all channels subscribed to topic.
+ * Channel keeps only a read cursor, so flushes and resends of topic messages
+ * are served from the log instead of per-channel copies.
+ *
+ */
+public class TopicLog {
+	
+	private final String name;
+	
+	private final Entry[] entries;
+	
+	private final int mask;
+	
+	private final CopyOnWriteArrayList<TopicCursor> cursors;
+	
+	private volatile long lastSeqnum;
+	
+	public TopicLog(String name, int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.name = name;
+		this.entries = new Entry[size];
+		this.mask = size - 1;
+		this.cursors = new CopyOnWriteArrayList<TopicCursor>();
+		this.lastSeqnum = 0L;
+	}
+	
+	/**
+	 * Appends message to the log and notifies subscribed channels.
+	 * 
+	 * @return topic seqnum of message
+	 */
+	public long append(AbstractMessage message) {
+		
+		long seqnum;
+		synchronized (this) {
+			seqnum = lastSeqnum + 1;
+			entries[(int) (seqnum & mask)] = new Entry(seqnum, message);
+			lastSeqnum = seqnum;
+		}
+		
+		for (TopicCursor cursor : cursors) {
+			cursor.signal();
+		}
+		
+		return seqnum;
+		
+	}
+	
+	/**
+	 * Subscribes channel to messages appended after this call.
+	 */
+	public TopicCursor subscribe(AbstractChannel channel) {
+		TopicCursor cursor;
+		synchronized (this) {
+			cursor = new TopicCursor(this, channel, lastSeqnum + 1);
+			cursors.add(cursor);
+		}
+		cursor.signal();
+		return cursor;
+	}
+	
+	void unsubscribe(TopicCursor cursor) {
+		cursors.remove(cursor);
+	}
+	
+	/**
+	 * @return message with given topic seqnum or null if it is overwritten or not appended yet
+	 */
+	AbstractMessage get(long seqnum) {
+		Entry entry = entries[(int) (seqnum & mask)];
+		if (entry == null || entry.seqnum != seqnum) {
+			return null;
+		}
+		return entry.message;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getCapacity() {
+		return entries.length;
+	}
+	
+	public long getLastSeqnum() {
+		return lastSeqnum;
+	}
+	
+	/**
+	 * @return seqnum of the oldest message still kept in the log
+	 */
+	public long getFirstSeqnum() {
+		return Math.max(1L, lastSeqnum - entries.length + 1);
+	}
+	
+	public int getSubscriberCount() {
+		return cursors.size();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("TopicLog[name=");
+		builder.append(name);
+		builder.append(",lastSeqnum=");
+		builder.append(lastSeqnum);
+		builder.append(",subscribers=");
+		builder.append(cursors.size());
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	private static final class Entry {
+		
+		private final long seqnum;
+		
+		private final AbstractMessage message;
+		
+		private Entry(long seqnum, AbstractMessage message) {
+			this.seqnum = seqnum;
+			this.message = message;
+		}
+		
+	}
+
+}
@@ -0,0 +1,296 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.channel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+/**
+ * 
+ * Topic cursors of channel. Topic messages get channel seqnums when they are
+ * flushed, channel remembers only seqnum ranges mapped to topic logs to serve resends.
+ * Must be used from channel processing only.
+ *
+ */
+public class TopicSubscriptions {
+	
+	private static final int WRAPPER_POOL_SIZE = 64;
+	
+	private static final Comparator<WithSeqnumWrapper> SEQNUM_ORDER = new Comparator<WithSeqnumWrapper>() {
+		@Override
+		public int compare(WithSeqnumWrapper first, WithSeqnumWrapper second) {
+			return Long.compare(first.getSeqnum(), second.getSeqnum());
+		}
+	};
+	
+	private final List<TopicCursor> cursors;
+	
+	private final ArrayDeque<Range> ranges;
+	
+	private final ArrayDeque<WithSeqnumWrapper> wrapperPool;
+	
+	private final int maxRanges;
+	
+	private long lost;
+	
+	public TopicSubscriptions(int maxRanges) {
+		this.cursors = new ArrayList<TopicCursor>();
+		this.ranges = new ArrayDeque<Range>();
+		this.wrapperPool = new ArrayDeque<WithSeqnumWrapper>(WRAPPER_POOL_SIZE);
+		this.maxRanges = Math.max(maxRanges, 1);
+		this.lost = 0L;
+	}
+	
+	public void attach(TopicCursor cursor) {
+		cursor.clearPending();
+		if (!cursor.isClosed() && !cursors.contains(cursor)) {
+			cursors.add(cursor);
+		}
+	}
+	
+	public boolean isEmpty() {
+		return cursors.isEmpty() && ranges.isEmpty();
+	}
+	
+	/**
+	 * @return true if some topic has messages not flushed to channel yet
+	 */
+	public boolean hasPending() {
+		for (int i = 0; i < cursors.size(); i++) {
+			if (cursors.get(i).hasPending()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Reads up to max topic messages into batch, assigning channel seqnums 
+	 * starting from firstSeqnum.
+	 * 
+	 * @return number of messages added to batch
+	 */
+	public int drainTo(List<WithSeqnumWrapper> batch, long firstSeqnum, int max) {
+		
+		int count = 0;
+		Iterator<TopicCursor> iterator = cursors.iterator();
+		
+		while (iterator.hasNext() && count < max) {
+			
+			TopicCursor cursor = iterator.next();
+			if (cursor.isClosed()) {
+				iterator.remove();
+				continue;
+			}
+			
+			TopicLog topic = cursor.getTopic();
+			long first = topic.getFirstSeqnum();
+			if (cursor.getPosition() < first) {
+				// Channel is too slow, overwritten messages are lost for it
+				lost += first - cursor.getPosition();
+				cursor.setPosition(first);
+			}
+			
+			while (count < max) {
+				long position = cursor.getPosition();
+				AbstractMessage message = topic.get(position);
+				if (message == null) {
+					break;
+				}
+				long seqnum = firstSeqnum + count;
+				batch.add(wrap(seqnum, message));
+				record(cursor, seqnum, position);
+				cursor.setPosition(position + 1);
+				count++;
+			}
+			
+		}
+		
+		return count;
+		
+	}
+	
+	/**
+	 * Returns topic messages of failed batch starting from given index back to topics.
+	 * 
+	 * @return number of messages removed from batch
+	 */
+	public int rollback(List<WithSeqnumWrapper> batch, int from) {
+		int count = 0;
+		for (int i = batch.size() - 1; i >= from; i--) {
+			Range range = ranges.peekLast();
+			if (range == null) {
+				break;
+			}
+			range.cursor.setPosition(range.topicSeqnum + range.count - 1);
+			if (--range.count == 0) {
+				ranges.pollLast();
+			}
+			recycle(batch.remove(i));
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns wrappers of sent topic messages starting from given index to pool.
+	 */
+	public void release(List<WithSeqnumWrapper> batch, int from) {
+		for (int i = from; i < batch.size(); i++) {
+			recycle(batch.get(i));
+		}
+	}
+	
+	/**
+	 * Collects messages for resend from resend buffer and topic logs.
+	 */
+	public List<WithSeqnumWrapper> recover(SentMessagesBuffer sent, long from, long to) throws RecoverException {
+		
+		if (ranges.isEmpty()) {
+			return sent.get(from, to);
+		}
+		
+		List<WithSeqnumWrapper> list = new ArrayList<WithSeqnumWrapper>();
+		collect(sent, from, to, list);
+		
+		if (list.size() != to - from) {
+			throw new RecoverException("Failed to resend messages from " + from + " to " + to);
+		}
+		
+		return list;
+		
+	}
+	
+	/**
+	 * Adds sent and topic messages with seqnums in range [from, to) which are 
+	 * still available to list in seqnum order.
+	 */
+	public void collect(SentMessagesBuffer sent, long from, long to, List<WithSeqnumWrapper> list) {
+		
+		int offset = list.size();
+		sent.collect(from, to, list);
+		
+		for (Range range : ranges) {
+			long start = Math.max(from, range.seqnum);
+			long end = Math.min(to, range.seqnum + range.count);
+			for (long seqnum = start; seqnum < end; seqnum++) {
+				AbstractMessage message = range.cursor.getTopic().get(range.topicSeqnum + seqnum - range.seqnum);
+				if (message != null) {
+					list.add(new WithSeqnumWrapper(seqnum, message));
+				}
+			}
+		}
+		
+		Collections.sort(list.subList(offset, list.size()), SEQNUM_ORDER);
+		
+	}
+	
+	/**
+	 * @return number of topic messages overwritten before channel read them
+	 */
+	public long getLostCount() {
+		return lost;
+	}
+	
+	public void clear() {
+		for (TopicCursor cursor : cursors) {
+			cursor.close();
+		}
+		cursors.clear();
+		ranges.clear();
+		wrapperPool.clear();
+	}
+	
+	private void record(TopicCursor cursor, long seqnum, long topicSeqnum) {
+		
+		Range last = ranges.peekLast();
+		if (last != null && last.cursor == cursor && last.seqnum + last.count == seqnum 
+				&& last.topicSeqnum + last.count == topicSeqnum) {
+			last.count++;
+			return;
+		}
+		
+		ranges.offerLast(new Range(cursor, seqnum, topicSeqnum));
+		
+		// Forget ranges which are out of resend window or overwritten in topic log
+		Range first;
+		while ((first = ranges.peekFirst()) != null && (ranges.size() > maxRanges 
+				|| first.topicSeqnum + first.count <= first.cursor.getTopic().getFirstSeqnum())) {
+			ranges.pollFirst();
+		}
+		
+	}
+	
+	private WithSeqnumWrapper wrap(long seqnum, AbstractMessage message) {
+		WithSeqnumWrapper wrapper = wrapperPool.poll();
+		if (wrapper == null) {
+			return new WithSeqnumWrapper(seqnum, message);
+		}
+		wrapper.reset(seqnum, message);
+		return wrapper;
+	}
+	
+	private void recycle(WithSeqnumWrapper wrapper) {
+		if (wrapperPool.size() < WRAPPER_POOL_SIZE) {
+			wrapper.reset(0L, null);
+			wrapperPool.offer(wrapper);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("TopicSubscriptions[cursors=");
+		builder.append(cursors);
+		builder.append(",ranges=");
+		builder.append(ranges.size());
+		builder.append(",lost=");
+		builder.append(lost);
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	private static final class Range {
+		
+		private final TopicCursor cursor;
+		
+		private final long seqnum;
+		
+		private final long topicSeqnum;
+		
+		private int count;
+		
+		private Range(TopicCursor cursor, long seqnum, long topicSeqnum) {
+			this.cursor = cursor;
+			this.seqnum = seqnum;
+			this.topicSeqnum = topicSeqnum;
+			this.count = 1;
+		}
+		
+	}
+
+}
@@ -1,43 +0,0 @@
-/*
- * *****************************************************************************
- *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
- *
- *  Licensed under the Apache License, Version 2.0 (the "License");
- *  you may not use this file except in compliance with the License.
- *  You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- *  Unless required by applicable law or agreed to in writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
- * ****************************************************************************
- */
-
-package com.exactprosystems.webchannels.channel;
-
-public class UnbindContextEvent {
-
-	private final Object context;
-	
-	public UnbindContextEvent(Object context) {
-		super();
-		this.context = context;
-	}
-
-	public Object getContext() {
-		return context;
-	}
-
-	@Override
-	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		builder.append("UnbindContextMessage[context=");
-		builder.append(context);
-		builder.append("]");
-		return builder.toString();
-	}
-
-}
@@ -19,6 +19,7 @@
 package com.exactprosystems.webchannels.channel;
 
 import com.exactprosystems.webchannels.enums.ChannelStatus;
+import com.exactprosystems.webchannels.exceptions.EncodingException;
 import com.exactprosystems.webchannels.exceptions.RecoverException;
 import com.exactprosystems.webchannels.messages.AbstractMessage;
 import com.exactprosystems.webchannels.messages.AdminMessage;
@@ -28,23 +29,38 @@ import com.exactprosystems.webchannels.messages.ResendRequest;
 import com.exactprosystems.webchannels.messages.TestRequest;
 
 import javax.servlet.http.HttpSession;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.zip.DeflaterOutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class WebSocketChannel extends AbstractChannel {
 	
-	private OutputMessagesBuffer outputMessageQueue;
+	/**
+	 * Timeout of blocking sends, honored by Tomcat and ignored by other containers.
+	 */
+	private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+	
+	private static final ThreadPoolExecutor closeExecutor = createCloseExecutor();
 	
 	private InputMessagesBuffer inputMessageQueue;
 	
-	private SentMessagesBuffer sentMessageQueue;
+	private final ArrayDeque<AsyncSend> inFlightSends;
 	
 	private long created;
 	
@@ -58,10 +74,6 @@ public class WebSocketChannel extends AbstractChannel {
 	
 	private Session socketContext;
 	
-	private long inputSeqnum;
-	
-	private long outputSeqnum;
-	
 	private SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss.SSS");
 
 	private long lastResendRequestTime;
@@ -71,14 +83,11 @@ public class WebSocketChannel extends AbstractChannel {
 		
 		super(handler, channelId, settings, messageFactory, executor, httpSession);
 		
-		outputMessageQueue = new OutputMessagesBuffer();
-		inputMessageQueue = new InputMessagesBuffer();
-		sentMessageQueue = new SentMessagesBuffer(settings.getResendBufferSize());
+		inputMessageQueue = new InputMessagesBuffer(settings.getMaxRecoveryWindow());
+		inFlightSends = new ArrayDeque<AsyncSend>();
 		lastSendTime = System.currentTimeMillis();
 		lastReceiveTime = lastSendTime;
 		awaitHeartbeat = false;
-		inputSeqnum = 0;
-		outputSeqnum = 1;
 		socketContext = null;
 		logger.info("Create {}", this);
 		
@@ -92,7 +101,44 @@ public class WebSocketChannel extends AbstractChannel {
 	
 	@Override
 	protected ChannelStats getChannelStats() {
-		return new ChannelStats(getID(), getStatus(), created, closed, outputSeqnum, inputSeqnum, lastSendTime, lastReceiveTime);
+		return getStatsBuilder()
+				.setCreated(created)
+				.setClosed(closed)
+				.setLastSend(lastSendTime)
+				.setLastReceive(lastReceiveTime)
+				.setGaps(inputMessageQueue.getGapCount())
+				.setMissing(inputMessageQueue.getMissingCount())
+				.build();
+	}
+	
+	@Override
+	protected long getNextPollTime() {
+		
+		long heartBeatInterval = this.getChannelSettings().getHeartBeatInterval();
+		long disconnectTimeout = this.getChannelSettings().getDisconnectTimeout();
+		
+		long nextPollTime = lastReceiveTime + disconnectTimeout + 1;
+		
+		if (!awaitHeartbeat) {
+			nextPollTime = Math.min(nextPollTime, lastReceiveTime + heartBeatInterval * 2 + 1);
+		}
+		
+		if (socketContext != null) {
+			if (!hasPendingOutput()) {
+				nextPollTime = Math.min(nextPollTime, lastSendTime + heartBeatInterval + 1);
+			} else {
+				nextPollTime = 0L;
+			}
+			AsyncSend oldest = inFlightSends.peekFirst();
+			if (oldest != null) {
+				nextPollTime = Math.min(nextPollTime, oldest.getStarted() + this.getChannelSettings().getSendTimeout() + 1);
+			}
+		} else {
+			nextPollTime = Math.min(nextPollTime, lastSendTime + disconnectTimeout + 1);
+		}
+		
+		return nextPollTime;
+		
 	}
 	
 	@Override
@@ -116,10 +162,21 @@ public class WebSocketChannel extends AbstractChannel {
 			}
 		}
 		
+		// Completions of writes to previous context are ignored
+		inFlightSends.clear();
 		socketContext = session;
+		if (this.getChannelSettings().isAsyncSendEnabled()) {
+			session.getAsyncRemote().setSendTimeout(this.getChannelSettings().getSendTimeout());
+		} else {
+			session.getUserProperties().put(BLOCKING_SEND_TIMEOUT, this.getChannelSettings().getSendTimeout());
+		}
 		this.setStatus(ChannelStatus.OPENED);
 		logger.trace("Bind context {} for {}", session, this);
 		
+		if (hasPendingOutput()) {
+			this.requestFlush();
+		}
+		
 	}
 	
 	@Override
@@ -147,40 +204,39 @@ public class WebSocketChannel extends AbstractChannel {
 	}
 
 	@Override
-	protected void processInputMessage(WithSeqnumWrapper wrapper) {
+	protected void processSequencedMessage(WithSeqnumWrapper wrapper) {
 
 		AbstractMessage message = wrapper.getMessage();
 		long seqnum = wrapper.getSeqnum();
-		long expectedSeqnum = inputSeqnum + 1;
-		
-		if (message instanceof AdminMessage) {
-			
-			handleAdminMessage((AdminMessage) message, expectedSeqnum);
-			
-		}
+		long expectedSeqnum = getInputSeqnum() + 1;
 		
 		if (seqnum == expectedSeqnum) {
 		
 			if (inputMessageQueue.isRecovered()) {
-				//if (message instanceof BusinessMessage) {
-					handleBusinessMessage(message, seqnum);
-				//}
-			} else {
-				logger.info("Stash message with seqnum {} on {}", seqnum, this);
-				inputMessageQueue.add(wrapper);
+				handleBusinessMessage(message, seqnum);
+			} else if (!stash(wrapper)) {
+				return;
 			}
 			
 		} else	if (seqnum > expectedSeqnum) {
 				
 			logger.error("Missed messages from {} to {} on {}", expectedSeqnum, seqnum, this);
-			this.sendMessage(new ResendRequest("Resend", expectedSeqnum, seqnum));
-			this.lastResendRequestTime = System.currentTimeMillis();
 			
 			logger.info("Init recover on {}", this);
-			inputMessageQueue.recover(expectedSeqnum, seqnum);
+			try {
+				inputMessageQueue.recover(expectedSeqnum, seqnum);
+			} catch (RecoverException e) {
+				logger.error("Failed to recover messages on " + this, e);
+				onClose();
+				return;
+			}
 			
-			logger.info("Stash message with seqnum {} on {}", seqnum, this);
-			inputMessageQueue.add(wrapper);
+			this.sendMessage(new ResendRequest("Resend", expectedSeqnum, seqnum));
+			this.lastResendRequestTime = System.currentTimeMillis();
+			
+			if (!stash(wrapper)) {
+				return;
+			}
 		
 		} else if (seqnum < expectedSeqnum) {
 			
@@ -190,14 +246,13 @@ public class WebSocketChannel extends AbstractChannel {
 				
 			} else {
 				
-				logger.info("Stash message with seqnum {} on {}", seqnum, this);
-				inputMessageQueue.add(wrapper);
+				if (!stash(wrapper)) {
+					return;
+				}
 				
 				List<WithSeqnumWrapper> messages = inputMessageQueue.tryRecover();
 				for (WithSeqnumWrapper restored : messages) {
-					//if (restored.getMessage() instanceof BusinessMessage) {
-						handleBusinessMessage(restored.getMessage(), restored.getSeqnum());
-					//}
+					handleBusinessMessage(restored.getMessage(), restored.getSeqnum());
 				}
 				
 				if (inputMessageQueue.isRecovered()) {
@@ -208,9 +263,7 @@ public class WebSocketChannel extends AbstractChannel {
 			
 		}
 		
-		if (seqnum > inputSeqnum) {
-			inputSeqnum = seqnum;
-		}
+		updateInputSeqnum(seqnum);
 		
 		if (inputMessageQueue.isRecovered()) {
 			lastReceiveTime = System.currentTimeMillis();
@@ -224,6 +277,23 @@ public class WebSocketChannel extends AbstractChannel {
 		
 	}
 	
+	/**
+	 * Stashes message received during recovery, channel is closed if message 
+	 * does not fit into recovery window.
+	 * 
+	 * @return false if channel is closed
+	 */
+	private boolean stash(WithSeqnumWrapper wrapper) {
+		logger.info("Stash message with seqnum {} on {}", wrapper.getSeqnum(), this);
+		if (!inputMessageQueue.add(wrapper)) {
+			logger.error("Message with seqnum {} exceeds recovery window {} from {} on {}", 
+					wrapper.getSeqnum(), inputMessageQueue.getMaxWindow(), inputMessageQueue.getFrom(), this);
+			onClose();
+			return false;
+		}
+		return true;
+	}
+	
 	private void handleBusinessMessage(AbstractMessage message, long seqnum) {
         AbstractMessage response = this.getHandler().onReceive(message, seqnum);
 		if (response != null) {
@@ -231,7 +301,8 @@ public class WebSocketChannel extends AbstractChannel {
 		}
 	}
 	
-	private void handleAdminMessage(AdminMessage message, long seqnum) {
+	@Override
+	protected void processAdminMessage(AdminMessage message) {
 		// Handle admin message
     	if (message instanceof TestRequest) {
 			logger.warn("TestRequest received on {}", this);
@@ -243,17 +314,7 @@ public class WebSocketChannel extends AbstractChannel {
 			}
 		} else if (message instanceof ResendRequest) {
 			logger.error("ResendRequest {} received on {}", message, this);
-			ResendRequest resendRequest = (ResendRequest) message;
-            try {
-                List<WithSeqnumWrapper> messages = sentMessageQueue.get(resendRequest.getFrom(), resendRequest.getTo());
-                for (WithSeqnumWrapper old : messages) {
-                	logger.info("Resend message {} on {}", old, this);
-                    outputMessageQueue.offer(old);
-                }
-            } catch (RecoverException e) {
-            	logger.error("Failed to handle ResendRequest", e);
-            	onClose();
-            }
+			handleResendRequest((ResendRequest) message);
         } else if (message instanceof CloseChannel) {
         	logger.debug("CloseChannel received on {}", this);
         	onClose();
@@ -264,20 +325,16 @@ public class WebSocketChannel extends AbstractChannel {
 	
 	@Override
 	protected void processOutputMessage(AbstractMessage message) {
-		
-		WithSeqnumWrapper wrapper = new WithSeqnumWrapper(outputSeqnum++, message);
-		outputMessageQueue.offer(wrapper);
-		sentMessageQueue.add(wrapper);
-		this.getHandler().onSend(wrapper.getMessage(), wrapper.getSeqnum());
-
-		// Schedule send message to reduce latency
-		this.schedule();
-		
+		super.processOutputMessage(message);
+		// Coalesce sends of message burst into one flush to reduce latency
+		this.requestFlush();
 	}
 	
 	@Override
 	protected void onPoll() {
 		
+		checkOutputRoom();
+		
 		long currentTime = System.currentTimeMillis();
 		
 		if (currentTime - lastReceiveTime > this.getChannelSettings().getDisconnectTimeout()) {
@@ -292,87 +349,16 @@ public class WebSocketChannel extends AbstractChannel {
 			awaitHeartbeat = true;
 		}
 		
+		if (socketContext != null && isSendTimedOut(currentTime)) {
+			abortSends();
+			return;
+		}
+		
 		if (socketContext != null) {
 			
-			if (!outputMessageQueue.isEmpty()) {
-					
-				if (socketContext.isOpen()) {
+			if (hasPendingOutput()) {
 				
-					List<WithSeqnumWrapper> messages = null;
-					
-					long sendStart = System.currentTimeMillis();
-					
-					try {
-					
-						logger.trace("Start sending messages for {}", this);
-						
-						messages = outputMessageQueue.poll(this.getChannelSettings().getMaxCountToSend());
-						
-						if (getChannelSettings().isCompressionEnabled()) {
-							try (OutputStream output = socketContext.getBasicRemote().getSendStream();
-									OutputStream gzipOutput = new DeflaterOutputStream(output)) {
-								this.getMessageFactory().encodeMessage(messages, gzipOutput);
-							}
-						} else {
-							try (Writer output = socketContext.getBasicRemote().getSendWriter()) {
-								this.getMessageFactory().encodeMessage(messages, output);
-							}
-						}
-						
-						lastSendTime = currentTime;
-						
-						logger.debug("Send {} messages through {}", messages.size(), this);
-						
-						long sendDuration = System.currentTimeMillis() - sendStart;
-						
-						if (sendDuration > 200L) {
-							logger.warn("Send messages via {} took {} ms", this, sendDuration);
-						} else {
-							logger.trace("Send messages via {} took {} ms", this, sendDuration);
-						}
-					
-					} catch (Exception e)	{
-						
-						if (messages != null) {
-							outputMessageQueue.offerFirst(messages);
-						}
-						
-						logger.error("Exception while processing queue for " + this, e);
-						this.getHandler().onException(e);
-						
-						Throwable[] suppressed = e.getSuppressed();
-						for (Throwable throwable : suppressed) {
-							logger.error("Suppressed exception during encoding in " + this, throwable);
-							this.getHandler().onException(throwable);
-						}
-						
-						try {
-							completeRequest(socketContext);
-						} catch (Exception e1) {
-							logger.error("Exception while closing context " + socketContext, e1);
-							this.getHandler().onException(e1);
-						} finally {
-							logger.trace("Unbind context {} for {}", socketContext, this);
-							this.setStatus(ChannelStatus.WAITING);
-							socketContext = null;
-						}
-						
-					}
-				
-				} else {
-					
-					//Invalidate context
-					try {
-						completeRequest(socketContext);	
-					} catch (Exception e) {
-						logger.error("Exception while closing context " + socketContext, e);
-						this.getHandler().onException(e);
-					} finally {
-						logger.trace("Unbind context {} for {}", socketContext, this);
-						socketContext = null;
-					}
-					
-				}
+				this.requestFlush();
 			
 			} else {
 				
@@ -407,15 +393,186 @@ public class WebSocketChannel extends AbstractChannel {
 		
 	}
 
+	@Override
+	protected void onFlush() {
+		
+		if (socketContext == null || !hasPendingOutput()) {
+			return;
+		}
+		
+		long currentTime = System.currentTimeMillis();
+		
+		if (this.getChannelSettings().isAsyncSendEnabled() 
+				&& inFlightSends.size() >= this.getChannelSettings().getMaxInFlightSends()) {
+			if (isSendTimedOut(currentTime)) {
+				abortSends();
+			} else {
+				// Completion of oldest write requests next flush
+				logger.trace("Wait for {} incomplete sends on {}", inFlightSends.size(), this);
+			}
+			return;
+		}
+		
+		if (socketContext.isOpen()) {
+			
+			if (flushOutput()) {
+				
+				lastSendTime = currentTime;
+				
+				if (hasPendingOutput()) {
+					this.requestFlush();
+				}
+				
+			} else {
+				
+				// Failed batch is queued again, earlier writes are not confirmed either
+				abortSends();
+				
+			}
+		
+		} else {
+			
+			//Invalidate context
+			try {
+				completeRequest(socketContext);	
+			} catch (Exception e) {
+				logger.error("Exception while closing context " + socketContext, e);
+				this.getHandler().onException(e);
+			} finally {
+				logger.trace("Unbind context {} for {}", socketContext, this);
+				socketContext = null;
+			}
+			
+		}
+		
+	}
+	
+	@Override
+	protected void writeBatch(List<WithSeqnumWrapper> messages) throws EncodingException, IOException {
+		if (getChannelSettings().isAsyncSendEnabled()) {
+			sendAsync(messages);
+		} else if (getChannelSettings().isCompressionEnabled()) {
+			try (OutputStream output = socketContext.getBasicRemote().getSendStream()) {
+				getCompressor().encodeMessage(this.getMessageFactory(), messages, output);
+			}
+		} else if (this.getMessageFactory().isBinary()) {
+			try (OutputStream output = socketContext.getBasicRemote().getSendStream()) {
+				this.getMessageFactory().encodeMessage(messages, output);
+			}
+		} else {
+			try (Writer output = socketContext.getBasicRemote().getSendWriter()) {
+				this.getMessageFactory().encodeMessage(messages, output);
+			}
+		}
+	}
+	
+	/**
+	 * Encodes batch on channel thread and hands it to container without waiting 
+	 * for network write, {@link #onWriteComplete(Object)} is called when write is done.
+	 */
+	private void sendAsync(List<WithSeqnumWrapper> messages) throws EncodingException, IOException {
+		
+		AsyncSend send = new AsyncSend(this, messages);
+		RemoteEndpoint.Async remote = socketContext.getAsyncRemote();
+		
+		if (getChannelSettings().isCompressionEnabled() || this.getMessageFactory().isBinary()) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			if (getChannelSettings().isCompressionEnabled()) {
+				getCompressor().encodeMessage(this.getMessageFactory(), messages, output);
+			} else {
+				this.getMessageFactory().encodeMessage(messages, output);
+			}
+			inFlightSends.add(send);
+			remote.sendBinary(ByteBuffer.wrap(output.toByteArray()), send);
+		} else {
+			StringWriter output = new StringWriter();
+			this.getMessageFactory().encodeMessage(messages, output);
+			inFlightSends.add(send);
+			remote.sendText(output.toString(), send);
+		}
+		
+	}
+	
+	@Override
+	protected void onWriteComplete(Object write) {
+		
+		AsyncSend send = (AsyncSend) write;
+		
+		if (!inFlightSends.contains(send)) {
+			logger.trace("Ignore {} of unbound context on {}", send, this);
+			return;
+		}
+		
+		if (send.getError() != null) {
+			logger.error("Exception while sending " + send + " for " + this, send.getError());
+			this.getHandler().onException(send.getError());
+			// Failed write is requeued with the rest of incomplete ones
+			abortSends();
+			return;
+		}
+		
+		inFlightSends.remove(send);
+		
+		long sendDuration = System.currentTimeMillis() - send.getStarted();
+		
+		if (sendDuration > 200L) {
+			logger.warn("{} via {} took {} ms", send, this, sendDuration);
+		} else {
+			logger.trace("{} via {} took {} ms", send, this, sendDuration);
+		}
+		
+		if (hasPendingOutput()) {
+			this.requestFlush();
+		}
+		
+	}
+	
+	private boolean isSendTimedOut(long currentTime) {
+		AsyncSend oldest = inFlightSends.peekFirst();
+		if (oldest != null && currentTime - oldest.getStarted() > this.getChannelSettings().getSendTimeout()) {
+			logger.error("{} is not completed in {} ms on {}", oldest, this.getChannelSettings().getSendTimeout(), this);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Unbinds context with failed or stuck writes. Messages of incomplete writes 
+	 * are queued again from resend buffer and sent after reconnect.
+	 */
+	private void abortSends() {
+		long from = Long.MAX_VALUE;
+		long to = Long.MIN_VALUE;
+		for (AsyncSend send : inFlightSends) {
+			from = Math.min(from, send.getFrom());
+			to = Math.max(to, send.getTo());
+		}
+		inFlightSends.clear();
+		if (from < to) {
+			requeueSent(from, to);
+		}
+		try {
+			completeRequest(socketContext);
+		} catch (Exception e) {
+			logger.error("Exception while closing context " + socketContext, e);
+			this.getHandler().onException(e);
+		} finally {
+			logger.trace("Unbind context {} for {}", socketContext, this);
+			this.setStatus(ChannelStatus.WAITING);
+			socketContext = null;
+		}
+	}
+	
 	@Override
 	protected void onClose() {
 		
 		logger.info("Close {}", this);
 		
+		journalClose();
 		this.closed = System.currentTimeMillis();
-		this.outputMessageQueue.clear();
-		this.sentMessageQueue.clear();
+		this.clearOutput();
 		this.inputMessageQueue.clear();
+		this.inFlightSends.clear();
 		this.setStatus(ChannelStatus.CLOSED);
 		this.getHandler().onClose();
 	
@@ -433,8 +590,39 @@ public class WebSocketChannel extends AbstractChannel {
 		
 	}
 	
-	private void completeRequest(Session socket) throws IOException {
-		socket.close();
+	/**
+	 * Closes session, in async send mode close is done on separate thread 
+	 * since it may block on flush of pending writes.
+	 */
+	private void completeRequest(final Session socket) throws IOException {
+		if (!this.getChannelSettings().isAsyncSendEnabled()) {
+			socket.close();
+			return;
+		}
+		closeExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					socket.close();
+				} catch (Exception e) {
+					logger.error("Exception while closing context " + socket, e);
+				}
+			}
+		});
+	}
+	
+	private static ThreadPoolExecutor createCloseExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "WebSocketClose");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
 	}
 
 	@Override
@@ -448,4 +636,81 @@ public class WebSocketChannel extends AbstractChannel {
 		return builder.toString();
 	}
 	
+	/**
+	 * Write handed to container, reports its result back to channel processing.
+	 */
+	private static final class AsyncSend implements SendHandler {
+		
+		private final AbstractChannel channel;
+		
+		private final int count;
+		
+		private final long from;
+		
+		private final long to;
+		
+		private final long started;
+		
+		private Throwable error;
+		
+		public AsyncSend(AbstractChannel channel, List<WithSeqnumWrapper> messages) {
+			long first = Long.MAX_VALUE;
+			long last = Long.MIN_VALUE;
+			for (WithSeqnumWrapper wrapper : messages) {
+				// Out of sequence admin messages are not resent
+				if (wrapper.getSeqnum() > 0) {
+					first = Math.min(first, wrapper.getSeqnum());
+					last = Math.max(last, wrapper.getSeqnum());
+				}
+			}
+			this.channel = channel;
+			this.count = messages.size();
+			this.from = first;
+			this.to = last == Long.MIN_VALUE ? last : last + 1;
+			this.started = System.currentTimeMillis();
+		}
+		
+		@Override
+		public void onResult(SendResult result) {
+			if (!result.isOK()) {
+				error = result.getException() != null ? result.getException() : new IOException("Send failed");
+			}
+			channel.completeWrite(this);
+		}
+		
+		public long getStarted() {
+			return started;
+		}
+		
+		/**
+		 * @return first seqnum of sent messages
+		 */
+		public long getFrom() {
+			return from;
+		}
+		
+		/**
+		 * @return seqnum next to last of sent messages
+		 */
+		public long getTo() {
+			return to;
+		}
+		
+		public Throwable getError() {
+			return error;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("AsyncSend[count=");
+			builder.append(count);
+			builder.append(",started=");
+			builder.append(started);
+			builder.append("]");
+			return builder.toString();
+		}
+		
+	}
+	
 }
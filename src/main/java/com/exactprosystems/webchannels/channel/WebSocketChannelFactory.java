@@ -27,9 +27,14 @@ public class WebSocketChannelFactory extends AbstractChannelFactory {
 		super(messageFactory, handlerFactory);
 	}
 	
+	public WebSocketChannelFactory(AbstractMessageFactory messageFactory, AbstractMessageFactory binaryMessageFactory, 
+			AbstractHandlerFactory handlerFactory) {
+		super(messageFactory, binaryMessageFactory, handlerFactory);
+	}
+	
 	@Override
 	public AbstractChannel createChannel(String channelId, ChannelSettings settings, Executor executor, HttpSession httpSession) {
-		return new WebSocketChannel(getHandlerFactory().createHandler(), channelId, settings, getMessageFactory(), executor, httpSession);
+		return new WebSocketChannel(getHandlerFactory().createHandler(), channelId, settings, getMessageFactory(settings), executor, httpSession);
 	}
 
 }
@@ -25,6 +25,7 @@ import javax.servlet.http.HttpSession;
 import javax.websocket.CloseReason;
 import javax.websocket.EndpointConfig;
 import javax.websocket.Session;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 public class WebSocketChannelProcessor extends AbstractChannelProcessor{
@@ -36,6 +37,17 @@ public class WebSocketChannelProcessor extends AbstractChannelProcessor{
 		
 	}
 	
+	/**
+	 * @param binaryMessageFactory factory for output messages of clients which support binary encoding
+	 */
+	public WebSocketChannelProcessor(AbstractHandlerFactory handlerFactory, AbstractMessageFactory messageFactory, 
+			AbstractMessageFactory binaryMessageFactory, ChannelSettings settings, Executor executorService) {
+		
+		super(handlerFactory, messageFactory, settings, 
+				new WebSocketChannelFactory(messageFactory, binaryMessageFactory, handlerFactory), executorService);
+		
+	}
+	
 	public void processWSRequest(Session session, EndpointConfig config) {
 		
 		String channelId = session.getRequestParameterMap().get("channelId").get(0);
@@ -48,15 +60,18 @@ public class WebSocketChannelProcessor extends AbstractChannelProcessor{
 		
 		if (channel == null) {
 			HttpSession httpSession = (HttpSession) config.getUserProperties().get(HttpSession.class.getName());
-			ChannelSettings settings = getSettings(httpSession);
+			List<String> binarySupported = session.getRequestParameterMap().get(RequestConfig.BINARY_SUPPORTED);
+			List<String> dictionaries = session.getRequestParameterMap().get(RequestConfig.COMPRESSION_DICTIONARIES);
+			ChannelSettings settings = getSettings(httpSession, 
+					binarySupported != null && Boolean.parseBoolean(binarySupported.get(0)),
+					dictionaries != null ? dictionaries.get(0) : null);
 			channel = channelFactory.createChannel(channelId, settings, executor, httpSession);
 			AbstractChannel prev = channels.putIfAbsent(channel.getID(), channel);
 			if (prev != null) {
 				channel.close();
 				channel = prev;
 			} else {
-				channel.initHandler();
-				SessionContrtoller.getInstance().registerChannel(channel, httpSession);
+				initChannel(channel, httpSession);
 			}
 		}
 		
@@ -93,14 +108,29 @@ public class WebSocketChannelProcessor extends AbstractChannelProcessor{
 
 
 	public ChannelSettings getSettings(HttpSession session) {
-		return new ChannelSettings(
-				getSaveValue((Long) session.getAttribute(SessionConfig.POLLING_INTERVAL), settings.getPollingInterval()),
-				getSaveValue((Long) session.getAttribute(SessionConfig.HEARTBEAT_INTERVAL), settings.getHeartBeatInterval()),
-				settings.getMaxCountToSend(),
-				settings.getExecutorBatchSize(),
-				getSaveValue((Long) session.getAttribute(SessionConfig.CONNECTION_TIMEOUT), settings.getDisconnectTimeout()),
-				settings.getResendBufferSize(),
-				getSaveValue((Boolean) session.getAttribute(SessionConfig.COMPRESSION_ENABLED), settings.isCompressionEnabled()));
+		return getSettings(session, false);
+	}
+	
+	/**
+	 * @param binarySupported client is able to decode binary messages
+	 */
+	public ChannelSettings getSettings(HttpSession session, boolean binarySupported) {
+		return getSettings(session, binarySupported, null);
+	}
+	
+	/**
+	 * @param dictionaries comma separated versions of compression dictionaries known by client
+	 */
+	public ChannelSettings getSettings(HttpSession session, boolean binarySupported, String dictionaries) {
+		Boolean binaryEnabled = getSaveValue((Boolean) session.getAttribute(SessionConfig.BINARY_ENABLED), settings.isBinaryEnabled());
+		return settings.toBuilder()
+				.setPollingInterval(getSaveValue((Long) session.getAttribute(SessionConfig.POLLING_INTERVAL), settings.getPollingInterval()))
+				.setHeartBeatInterval(getSaveValue((Long) session.getAttribute(SessionConfig.HEARTBEAT_INTERVAL), settings.getHeartBeatInterval()))
+				.setDisconnectTimeout(getSaveValue((Long) session.getAttribute(SessionConfig.CONNECTION_TIMEOUT), settings.getDisconnectTimeout()))
+				.setCompressionEnabled(getSaveValue((Boolean) session.getAttribute(SessionConfig.COMPRESSION_ENABLED), settings.isCompressionEnabled()))
+				.setBinaryEnabled(binaryEnabled && binarySupported)
+				.setCompressionDictionary(getCompressionDictionary(dictionaries))
+				.build();
 	}
 	
 	@Override
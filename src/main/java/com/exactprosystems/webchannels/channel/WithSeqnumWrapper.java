@@ -22,10 +22,21 @@ import com.exactprosystems.webchannels.messages.AbstractMessage;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class WithSeqnumWrapper {
+	
+	/**
+	 * Seqnum of admin message sent ahead of queued messages
+	 */
+	public static final long OUT_OF_SEQUENCE = 0L;
 
-	private final long seqnum;
+	private long seqnum;
 
-	private final AbstractMessage message;
+	private AbstractMessage message;
+	
+	private boolean queued;
+	
+	private int size;
+	
+	private long position;
 
 	public WithSeqnumWrapper(@JsonProperty("seqnum") long seqnum,
 			@JsonProperty("message") AbstractMessage message) {
@@ -41,6 +52,35 @@ public class WithSeqnumWrapper {
 	public AbstractMessage getMessage() {
 		return message;
 	}
+	
+	void reset(long seqnum, AbstractMessage message) {
+		this.seqnum = seqnum;
+		this.message = message;
+	}
+	
+	boolean isQueued() {
+		return queued;
+	}
+	
+	void setQueued(boolean queued) {
+		this.queued = queued;
+	}
+	
+	int getSize() {
+		return size;
+	}
+	
+	void setSize(int size) {
+		this.size = size;
+	}
+	
+	long getPosition() {
+		return position;
+	}
+	
+	void setPosition(long position) {
+		this.position = position;
+	}
 
 	@Override
 	public String toString() {
@@ -16,28 +16,30 @@
  * ****************************************************************************
  */
 
-package com.exactprosystems.webchannels.channel;
 
-public class BindContextEvent {
+package com.exactprosystems.webchannels.enums;
 
-	private final Object context;
-	
-	public BindContextEvent(Object context) {
-		super();
-		this.context = context;
-	}
-
-	public Object getContext() {
-		return context;
-	}
-
-	@Override
-	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		builder.append("BindContextMessage[context=");
-		builder.append(context);
-		builder.append("]");
-		return builder.toString();
-	}
+/**
+ * 
+ * Threading model used to process channel task queues.
+ *
+ */
+public enum ExecutionMode {
 
+	/**
+	 * Shared {@link java.util.concurrent.ForkJoinPool}, any worker may drain any channel.
+	 */
+	FORK_JOIN,
+	
+	/**
+	 * New virtual thread for every channel drain. Requires JDK 21+, 
+	 * falls back to {@link #FORK_JOIN} on older JVMs.
+	 */
+	VIRTUAL_THREADS,
+	
+	/**
+	 * One single-threaded event loop per core, channel is hashed to one of them by id.
+	 */
+	THREAD_PER_CORE
+	
 }
@@ -16,23 +16,29 @@
  * ****************************************************************************
  */
 
-package com.exactprosystems.webchannels.channel;
 
-public class CreateChannelEvent {
+package com.exactprosystems.webchannels.enums;
 
-	private static final CreateChannelEvent instance = new CreateChannelEvent();
-	
-	private CreateChannelEvent() {
-		// TODO Auto-generated constructor stub
-	}
+/**
+ * 
+ * Behavior of channel when its output buffer is full.
+ *
+ */
+public enum OverflowPolicy {
 	
-	public static CreateChannelEvent getInstance() {
-		return instance;
-	}
+	/**
+	 * Message is not queued, producer is notified
+	 */
+	REJECT,
 	
-	@Override
-	public String toString() {
-		return "CreateChannelMessage[]";
-	}
+	/**
+	 * Oldest queued messages are dropped, client skips them by gap fill
+	 */
+	DROP_OLDEST,
 	
+	/**
+	 * Channel is closed
+	 */
+	CLOSE
+
 }
@@ -16,25 +16,29 @@
  * ****************************************************************************
  */
 
-package com.exactprosystems.webchannels.channel;
 
-public class PollEvent {
+package com.exactprosystems.webchannels.enums;
 
-	private final static PollEvent instance = new PollEvent();
+/**
+ * 
+ * Storage of messages kept by channel for resend.
+ *
+ */
+public enum ResendBufferType {
 	
-	private PollEvent() {
-		// TODO Auto-generated constructor stub
-	}
+	/**
+	 * Message wrappers are kept in heap
+	 */
+	HEAP,
 	
-	public static PollEvent getInstance() {
-		return instance;
-	}
+	/**
+	 * Encoded messages are kept in direct buffers
+	 */
+	DIRECT,
 	
-	@Override
-	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		builder.append("TickMessage[]");
-		return builder.toString();
-	}
+	/**
+	 * Encoded messages are kept in memory-mapped temporary files
+	 */
+	MAPPED
 
 }
@@ -16,28 +16,35 @@
  * ****************************************************************************
  */
 
-package com.exactprosystems.webchannels.channel;
 
-import com.exactprosystems.webchannels.messages.AbstractMessage;
+package com.exactprosystems.webchannels.messages;
 
-public class OutputMessageEvent {
+import com.fasterxml.jackson.annotation.JsonProperty;
 
-	private final AbstractMessage message;
+/**
+ * 
+ * Gap fill sent instead of dropped messages. Its seqnum is the last skipped 
+ * seqnum, messages from {@code from} up to it are not delivered.
+ *
+ */
+public class SequenceReset implements AdminMessage {
+
+	private final long from;
 
-	public OutputMessageEvent(AbstractMessage message) {
+	public SequenceReset(@JsonProperty("from") long from) {
 		super();
-		this.message = message;
+		this.from = from;
 	}
 
-	public AbstractMessage getMessage() {
-		return message;
+	public long getFrom() {
+		return from;
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
-		builder.append("MessageWrapper[message=");
-		builder.append(message);
+		builder.append("SequenceReset[from=");
+		builder.append(from);
 		builder.append("]");
 		return builder.toString();
 	}
@@ -0,0 +1,653 @@
+/*
+ * *****************************************************************************
+ *  Copyright 2009-2018 Exactpro (Exactpro Systems Limited)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * ****************************************************************************
+ */
+
+
+package com.exactprosystems.webchannels.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * 
+ * Generates {@code MessageCodec} for every public concrete class implementing 
+ * {@code AbstractMessage}. Properties are found the same way as Jackson does for 
+ * simple beans: public getters, constructor with {@code @JsonProperty} parameters 
+ * or no-arg constructor with setters. Only primitive, boxed and String properties 
+ * are supported, classes with other properties or Jackson annotations are left 
+ * to Jackson. Class must not depend on other project classes, it is compiled 
+ * before them.
+ *
+ */
+@SupportedAnnotationTypes("*")
+public class MessageCodecProcessor extends AbstractProcessor {
+	
+	private static final String ABSTRACT_MESSAGE = "com.exactprosystems.webchannels.messages.AbstractMessage";
+	
+	// Wrapper of pre-encoded message, written by its own serializer
+	private static final String ENCODED_MESSAGE = "com.exactprosystems.webchannels.channel.EncodedMessage";
+	
+	private static final String JACKSON_PACKAGE = "com.fasterxml.jackson.";
+	
+	private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+	
+	private static final String JSON_IGNORE = "com.fasterxml.jackson.annotation.JsonIgnore";
+	
+	private final Set<String> generated = new HashSet<String>();
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		
+		TypeElement messageElement = processingEnv.getElementUtils().getTypeElement(ABSTRACT_MESSAGE);
+		if (messageElement == null) {
+			return false;
+		}
+		
+		List<TypeElement> types = new ArrayList<TypeElement>();
+		collectTypes(ElementFilter.typesIn(roundEnv.getRootElements()), types);
+		
+		for (TypeElement type : types) {
+			if (isMessage(type, messageElement.asType())) {
+				generate(type);
+			}
+		}
+		
+		return false;
+		
+	}
+	
+	private void collectTypes(Iterable<TypeElement> elements, List<TypeElement> types) {
+		for (TypeElement element : elements) {
+			types.add(element);
+			collectTypes(ElementFilter.typesIn(element.getEnclosedElements()), types);
+		}
+	}
+	
+	private boolean isMessage(TypeElement type, TypeMirror messageType) {
+		
+		if (type.getKind() != ElementKind.CLASS || !type.getModifiers().contains(Modifier.PUBLIC)
+				|| type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+			return false;
+		}
+		
+		if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+			return false;
+		}
+		
+		if (type.getNestingKind() != NestingKind.TOP_LEVEL && type.getNestingKind() != NestingKind.MEMBER) {
+			return false;
+		}
+		
+		if (type.getQualifiedName().contentEquals(ENCODED_MESSAGE)) {
+			return false;
+		}
+		
+		return processingEnv.getTypeUtils().isAssignable(type.asType(), messageType);
+		
+	}
+	
+	private void generate(TypeElement type) {
+		
+		String className = type.getQualifiedName().toString();
+		if (!generated.add(className)) {
+			return;
+		}
+		
+		for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+			if (annotationName(annotation).startsWith(JACKSON_PACKAGE)) {
+				note(type, "Jackson annotations are used, codec is not generated");
+				return;
+			}
+		}
+		
+		List<Property> properties = findProperties(type);
+		if (properties == null) {
+			return;
+		}
+		
+		ExecutableElement creator = findCreator(type, properties);
+		if (creator != null) {
+			for (Property property : properties) {
+				if (!property.creator && property.setter == null) {
+					note(type, "Property " + property.jsonName + " cannot be set, codec is used for encoding only");
+					creator = null;
+					break;
+				}
+			}
+		}
+		
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = packageElement.getQualifiedName().toString();
+		String codecName = codecName(type, packageName);
+		
+		try (Writer writer = processingEnv.getFiler().createSourceFile(
+				packageName.isEmpty() ? codecName : packageName + "." + codecName, type).openWriter()) {
+			writer.write(new CodecWriter(packageName, className, codecName, properties, creator).toString());
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write codec: " + e.getMessage(), type);
+		}
+		
+	}
+	
+	private String codecName(TypeElement type, String packageName) {
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		if (!packageName.isEmpty()) {
+			binaryName = binaryName.substring(packageName.length() + 1);
+		}
+		return binaryName.replace('$', '_') + "Codec";
+	}
+	
+	/**
+	 * @return properties in order of field declaration or null if some property is not supported
+	 */
+	private List<Property> findProperties(TypeElement type) {
+		
+		List<String> fieldNames = new ArrayList<String>();
+		for (TypeElement current = type; current != null; current = superclass(current)) {
+			List<String> names = new ArrayList<String>();
+			for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+				names.add(field.getSimpleName().toString());
+			}
+			fieldNames.addAll(0, names);
+		}
+		
+		Map<String, Property> properties = new LinkedHashMap<String, Property>();
+		for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			
+			String name = getterProperty(method);
+			if (name == null || isIgnored(type, method)) {
+				continue;
+			}
+			
+			String jsonName = annotationValue(method, JSON_PROPERTY);
+			Property property = new Property(jsonName != null && !jsonName.isEmpty() ? jsonName : name, 
+					name, method.getSimpleName().toString(), method.getReturnType());
+			if (property.kind == null) {
+				note(type, "Property " + name + " of type " + method.getReturnType() + " is not supported, codec is not generated");
+				return null;
+			}
+			properties.put(property.jsonName, property);
+			
+		}
+		
+		for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			String name = method.getSimpleName().toString();
+			if (name.length() > 3 && name.startsWith("set") && method.getParameters().size() == 1
+					&& method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC)) {
+				for (Property property : properties.values()) {
+					if (property.name.equals(decapitalize(name.substring(3)))
+							&& processingEnv.getTypeUtils().isSameType(property.type, method.getParameters().get(0).asType())) {
+						property.setter = name;
+					}
+				}
+			}
+		}
+		
+		List<Property> ordered = new ArrayList<Property>(properties.values());
+		List<Property> result = new ArrayList<Property>();
+		for (String fieldName : fieldNames) {
+			for (Property property : ordered) {
+				if (property.name.equals(fieldName) && !result.contains(property)) {
+					result.add(property);
+				}
+			}
+		}
+		for (Property property : ordered) {
+			if (!result.contains(property)) {
+				result.add(property);
+			}
+		}
+		
+		return result;
+		
+	}
+	
+	/**
+	 * Finds constructor with {@code @JsonProperty} parameters, moves its properties 
+	 * to the beginning as Jackson does. 
+	 * 
+	 * @return creator or no-arg constructor, null if message cannot be created
+	 */
+	private ExecutableElement findCreator(TypeElement type, List<Property> properties) {
+		
+		ExecutableElement defaultConstructor = null;
+		
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			
+			if (!constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				continue;
+			}
+			
+			if (constructor.getParameters().isEmpty()) {
+				defaultConstructor = constructor;
+				continue;
+			}
+			
+			List<Property> creatorProperties = new ArrayList<Property>();
+			for (VariableElement parameter : constructor.getParameters()) {
+				String name = annotationValue(parameter, JSON_PROPERTY);
+				Property property = null;
+				for (Property candidate : properties) {
+					if (candidate.jsonName.equals(name)
+							&& processingEnv.getTypeUtils().isSameType(candidate.type, parameter.asType())) {
+						property = candidate;
+					}
+				}
+				if (property == null) {
+					creatorProperties = null;
+					break;
+				}
+				creatorProperties.add(property);
+			}
+			
+			if (creatorProperties != null) {
+				properties.removeAll(creatorProperties);
+				properties.addAll(0, creatorProperties);
+				for (Property property : creatorProperties) {
+					property.creator = true;
+				}
+				return constructor;
+			}
+			
+		}
+		
+		if (defaultConstructor == null) {
+			note(type, "No constructor for decoding, codec is used for encoding only");
+		}
+		
+		return defaultConstructor;
+		
+	}
+	
+	private TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		return (TypeElement) processingEnv.getTypeUtils().asElement(superclass);
+	}
+	
+	private String getterProperty(ExecutableElement method) {
+		
+		if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)
+				|| !method.getParameters().isEmpty() || !method.getTypeParameters().isEmpty()) {
+			return null;
+		}
+		
+		String name = method.getSimpleName().toString();
+		TypeKind kind = method.getReturnType().getKind();
+		
+		if (name.equals("getClass") || kind == TypeKind.VOID) {
+			return null;
+		}
+		if (name.length() > 3 && name.startsWith("get")) {
+			return decapitalize(name.substring(3));
+		}
+		if (name.length() > 2 && name.startsWith("is") && kind == TypeKind.BOOLEAN) {
+			return decapitalize(name.substring(2));
+		}
+		
+		return null;
+		
+	}
+	
+	/**
+	 * Getter is ignored if it or any overridden method has {@code @JsonIgnore}.
+	 */
+	private boolean isIgnored(TypeElement type, ExecutableElement method) {
+		
+		if (annotationValue(method, JSON_IGNORE) != null) {
+			return true;
+		}
+		
+		for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type.asType())) {
+			TypeElement element = (TypeElement) processingEnv.getTypeUtils().asElement(supertype);
+			for (ExecutableElement candidate : ElementFilter.methodsIn(element.getEnclosedElements())) {
+				if (candidate.getSimpleName().equals(method.getSimpleName()) && candidate.getParameters().isEmpty()
+						&& annotationValue(candidate, JSON_IGNORE) != null) {
+					return true;
+				}
+			}
+			if (isIgnored(element, method)) {
+				return true;
+			}
+		}
+		
+		return false;
+		
+	}
+	
+	/**
+	 * @return value of annotation, empty string if annotation has no value, null if there is no annotation
+	 */
+	private String annotationValue(Element element, String annotationName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (annotationName(annotation).equals(annotationName)) {
+				for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+					if (entry.getKey().getSimpleName().contentEquals("value")) {
+						return String.valueOf(entry.getValue().getValue());
+					}
+				}
+				return "";
+			}
+		}
+		return null;
+	}
+	
+	private static String annotationName(AnnotationMirror annotation) {
+		return ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+	}
+	
+	private static String decapitalize(String name) {
+		if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+			// Jackson lowercases leading uppercase letters
+			StringBuilder builder = new StringBuilder(name);
+			for (int i = 0; i < builder.length() && Character.isUpperCase(builder.charAt(i)); i++) {
+				builder.setCharAt(i, Character.toLowerCase(builder.charAt(i)));
+			}
+			return builder.toString();
+		}
+		return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+	}
+	
+	private void note(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+	}
+	
+	/**
+	 * 
+	 * Kinds of supported property types.
+	 *
+	 */
+	private enum Kind {
+		
+		BOOLEAN("boolean", "Boolean", "generator.writeBooleanField(%s, %s)", "parser.getValueAsBoolean()"),
+		
+		BYTE("byte", "Byte", "generator.writeNumberField(%s, (int) %s)", "(byte) parser.getValueAsInt()"),
+		
+		SHORT("short", "Short", "generator.writeNumberField(%s, (int) %s)", "(short) parser.getValueAsInt()"),
+		
+		INT("int", "Integer", "generator.writeNumberField(%s, %s)", "parser.getValueAsInt()"),
+		
+		LONG("long", "Long", "generator.writeNumberField(%s, %s)", "parser.getValueAsLong()"),
+		
+		FLOAT("float", "Float", "generator.writeNumberField(%s, %s)", "(float) parser.getValueAsDouble()"),
+		
+		DOUBLE("double", "Double", "generator.writeNumberField(%s, %s)", "parser.getValueAsDouble()"),
+		
+		STRING(null, "String", "generator.writeStringField(%s, %s)", "parser.getValueAsString()");
+		
+		private final String primitive;
+		
+		private final String boxed;
+		
+		private final String write;
+		
+		private final String read;
+		
+		private Kind(String primitive, String boxed, String write, String read) {
+			this.primitive = primitive;
+			this.boxed = boxed;
+			this.write = write;
+			this.read = read;
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * Message property found by getter.
+	 *
+	 */
+	private static final class Property {
+		
+		private final String jsonName;
+		
+		private final String name;
+		
+		private final String getter;
+		
+		private final TypeMirror type;
+		
+		private final Kind kind;
+		
+		private final boolean primitive;
+		
+		private String setter;
+		
+		private boolean creator;
+		
+		private Property(String jsonName, String name, String getter, TypeMirror type) {
+			
+			this.jsonName = jsonName;
+			this.name = name;
+			this.getter = getter;
+			this.type = type;
+			
+			String typeName = type.toString();
+			Kind found = null;
+			boolean primitive = false;
+			for (Kind kind : Kind.values()) {
+				if (typeName.equals(kind.primitive)) {
+					found = kind;
+					primitive = true;
+				} else if (typeName.equals("java.lang." + kind.boxed)) {
+					found = kind;
+				}
+			}
+			
+			this.kind = found;
+			this.primitive = primitive;
+			
+		}
+		
+		private String typeName() {
+			return primitive ? kind.primitive : "java.lang." + kind.boxed;
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * Builds source of codec.
+	 *
+	 */
+	private static final class CodecWriter {
+		
+		private final StringBuilder source;
+		
+		private CodecWriter(String packageName, String className, String codecName, List<Property> properties, 
+				ExecutableElement creator) {
+			
+			this.source = new StringBuilder();
+			
+			if (!packageName.isEmpty()) {
+				line(0, "package " + packageName + ";");
+				line(0, "");
+			}
+			line(0, "import java.io.IOException;");
+			line(0, "");
+			line(0, "import com.exactprosystems.webchannels.channel.MessageCodec;");
+			line(0, "import com.fasterxml.jackson.core.JsonGenerator;");
+			line(0, "import com.fasterxml.jackson.core.JsonParser;");
+			line(0, "import com.fasterxml.jackson.core.JsonToken;");
+			line(0, "");
+			line(0, "/**");
+			line(0, " * Generated by " + MessageCodecProcessor.class.getName() + ", do not edit.");
+			line(0, " */");
+			line(0, "public final class " + codecName + " implements MessageCodec<" + className + "> {");
+			line(0, "");
+			
+			line(1, "@Override");
+			line(1, "public Class<" + className + "> getMessageClass() {");
+			line(2, "return " + className + ".class;");
+			line(1, "}");
+			line(0, "");
+			
+			line(1, "@Override");
+			line(1, "public void write(" + className + " message, JsonGenerator generator) throws IOException {");
+			for (Property property : properties) {
+				String name = quote(property.jsonName);
+				String value = "message." + property.getter + "()";
+				if (property.primitive) {
+					line(2, String.format(property.kind.write, name, value) + ";");
+				} else {
+					line(2, "{");
+					line(3, property.typeName() + " value = " + value + ";");
+					line(3, "if (value == null) {");
+					line(4, "generator.writeNullField(" + name + ");");
+					line(3, "} else {");
+					line(4, String.format(property.kind.write, name, "value") + ";");
+					line(3, "}");
+					line(2, "}");
+				}
+			}
+			line(1, "}");
+			line(0, "");
+			
+			line(1, "@Override");
+			line(1, "public boolean isReadable() {");
+			line(2, "return " + (creator != null) + ";");
+			line(1, "}");
+			line(0, "");
+			
+			line(1, "@Override");
+			line(1, "public " + className + " read(JsonParser parser) throws IOException {");
+			if (creator == null) {
+				line(2, "throw new UnsupportedOperationException(\"" + className + " cannot be decoded by codec\");");
+			} else {
+				writeRead(className, properties, creator);
+			}
+			line(1, "}");
+			line(0, "");
+			
+			line(0, "}");
+			
+		}
+		
+		private void writeRead(String className, List<Property> properties, ExecutableElement creator) {
+			
+			List<Property> readable = new ArrayList<Property>();
+			for (Property property : properties) {
+				if (property.creator || property.setter != null) {
+					readable.add(property);
+				}
+			}
+			
+			for (int i = 0; i < readable.size(); i++) {
+				Property property = readable.get(i);
+				String initial = !property.primitive ? "null" : property.kind == Kind.BOOLEAN ? "false" : "(" + property.kind.primitive + ") 0";
+				line(2, property.typeName() + " value" + i + " = " + initial + ";");
+				if (property.setter != null && !property.creator) {
+					line(2, "boolean present" + i + " = false;");
+				}
+			}
+			
+			line(2, "while (parser.nextToken() == JsonToken.FIELD_NAME) {");
+			line(3, "String name = parser.getCurrentName();");
+			line(3, "JsonToken token = parser.nextToken();");
+			line(3, "switch (name) {");
+			for (int i = 0; i < readable.size(); i++) {
+				Property property = readable.get(i);
+				line(4, "case " + quote(property.jsonName) + ":");
+				String read = property.kind.read;
+				if (!property.primitive && property.kind != Kind.STRING) {
+					read = "token == JsonToken.VALUE_NULL ? null : " + property.kind.boxed + ".valueOf(" + read + ")";
+				}
+				line(5, "value" + i + " = " + read + ";");
+				if (property.setter != null && !property.creator) {
+					line(5, "present" + i + " = true;");
+				}
+				line(5, "break;");
+			}
+			line(4, "default:");
+			line(5, "parser.skipChildren();");
+			line(5, "break;");
+			line(3, "}");
+			line(2, "}");
+			
+			StringBuilder arguments = new StringBuilder();
+			for (int p = 0; p < creator.getParameters().size(); p++) {
+				if (p > 0) {
+					arguments.append(", ");
+				}
+				arguments.append("value").append(readable.indexOf(properties.get(p)));
+			}
+			line(2, className + " message = new " + className + "(" + arguments + ");");
+			
+			for (int i = 0; i < readable.size(); i++) {
+				Property property = readable.get(i);
+				if (!property.creator) {
+					line(2, "if (present" + i + ") {");
+					line(3, "message." + property.setter + "(value" + i + ");");
+					line(2, "}");
+				}
+			}
+			
+			line(2, "return message;");
+			
+		}
+		
+		private void line(int indent, String text) {
+			for (int i = 0; i < indent; i++) {
+				source.append('\t');
+			}
+			source.append(text).append('\n');
+		}
+		
+		private static String quote(String text) {
+			return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+		}
+		
+		@Override
+		public String toString() {
+			return source.toString();
+		}
+		
+	}
+
+}
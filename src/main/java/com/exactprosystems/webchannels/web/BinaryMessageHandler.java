@@ -19,8 +19,6 @@
 package com.exactprosystems.webchannels.web;
 
 import java.io.InputStream;
-import java.util.List;
-import java.util.zip.InflaterInputStream;
 
 import javax.websocket.MessageHandler;
 
@@ -29,6 +27,8 @@ import org.slf4j.LoggerFactory;
 
 import com.exactprosystems.webchannels.channel.AbstractMessageFactory;
 import com.exactprosystems.webchannels.channel.AbstractChannel;
+import com.exactprosystems.webchannels.channel.MessageCompressor;
+import com.exactprosystems.webchannels.channel.MessageConsumer;
 import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
 
 public class BinaryMessageHandler implements MessageHandler.Whole<InputStream> {
@@ -39,22 +39,28 @@ public class BinaryMessageHandler implements MessageHandler.Whole<InputStream> {
 	
 	private final AbstractChannel channel;
 	
+	private final MessageConsumer consumer;
+	
 	public BinaryMessageHandler(AbstractMessageFactory messageFactory, AbstractChannel channel) {
 		
 		logger.info("Creating MessageHandler {} for channel {}", this, channel);
 		
 		this.messageFactory = messageFactory;
 		this.channel = channel;
+		this.consumer = new MessageConsumer() {
+			@Override
+			public void accept(WithSeqnumWrapper request) {
+				dispatch(request);
+			}
+		};
 		
 	}
 
 	@Override
 	public void onMessage(InputStream input) {
 		
-		List<WithSeqnumWrapper> list = null;
-		
-		try (InputStream gzipInput = new InflaterInputStream(input)) {
-			list = messageFactory.decodeMessage(gzipInput);
+		try (InputStream gzipInput = MessageCompressor.inflate(input)) {
+			messageFactory.decodeMessage(gzipInput, consumer);
 		} catch (Exception e) {
 			logger.error("Exception while decoding input messages", e);
 			Throwable[] suppressed = e.getSuppressed();
@@ -63,13 +69,11 @@ public class BinaryMessageHandler implements MessageHandler.Whole<InputStream> {
 			}
 		}
 		
-		if (list != null) {
-			for (WithSeqnumWrapper request : list) {
-				logger.trace("MessageHandler {} onMessage() {} for {}", this, request, channel);
-				channel.handleRequest(request);
-			}
-		}
-		
+	}
+
+	private void dispatch(WithSeqnumWrapper request) {
+		logger.trace("MessageHandler {} onMessage() {} for {}", this, request, channel);
+		channel.handleRequest(request);
 	}
 
 	@Override
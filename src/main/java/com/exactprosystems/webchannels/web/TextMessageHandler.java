@@ -19,7 +19,6 @@
 package com.exactprosystems.webchannels.web;
 
 import java.io.Reader;
-import java.util.List;
 
 import javax.websocket.MessageHandler;
 
@@ -28,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import com.exactprosystems.webchannels.channel.AbstractMessageFactory;
 import com.exactprosystems.webchannels.channel.AbstractChannel;
+import com.exactprosystems.webchannels.channel.MessageConsumer;
 import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
 
 public class TextMessageHandler implements MessageHandler.Whole<Reader> {
@@ -38,22 +38,28 @@ public class TextMessageHandler implements MessageHandler.Whole<Reader> {
 	
 	private final AbstractChannel channel;
 	
+	private final MessageConsumer consumer;
+	
 	public TextMessageHandler(AbstractMessageFactory messageFactory, AbstractChannel channel) {
 		
 		logger.info("Create {} for {}", this, channel);
 		
 		this.messageFactory = messageFactory;
 		this.channel = channel;
+		this.consumer = new MessageConsumer() {
+			@Override
+			public void accept(WithSeqnumWrapper request) {
+				dispatch(request);
+			}
+		};
 		
 	}
 
 	@Override
 	public void onMessage(Reader input) {
 		
-		List<WithSeqnumWrapper> list = null;
-		
 		try {
-			list = messageFactory.decodeMessage(input);
+			messageFactory.decodeMessage(input, consumer);
 		} catch (Exception e) {
 			logger.error("Exception while decoding input messages", e);
 			Throwable[] suppressed = e.getSuppressed();
@@ -62,13 +68,11 @@ public class TextMessageHandler implements MessageHandler.Whole<Reader> {
 			}
 		}
 		
-		if (list != null) {
-			for (WithSeqnumWrapper request : list) {
-				logger.trace("MessageHandler {} onMessage() {} for {}", this, request, channel);
-				channel.handleRequest(request);
-			}
-		}
-		
+	}
+
+	private void dispatch(WithSeqnumWrapper request) {
+		logger.trace("MessageHandler {} onMessage() {} for {}", this, request, channel);
+		channel.handleRequest(request);
 	}
 
 	@Override
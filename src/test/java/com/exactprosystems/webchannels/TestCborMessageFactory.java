@@ -0,0 +1,112 @@
+package com.exactprosystems.webchannels;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.channel.CborMessageFactory;
+import com.exactprosystems.webchannels.channel.EncodedMessage;
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+import static org.junit.Assert.*;
+
+public class TestCborMessageFactory {
+	
+	private byte[] encode(CborMessageFactory messageFactory, AbstractMessage message) throws Exception {
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(3, message));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		messageFactory.encodeMessage(list, output);
+		return output.toByteArray();
+	}
+	
+	@Test
+	public void testEncodeDecode() throws Exception {
+		
+		CborMessageFactory messageFactory = new CborMessageFactory();
+		assertTrue(messageFactory.isBinary());
+		
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(1, new HeartBeat()));
+		list.add(new WithSeqnumWrapper(2, new ResendRequest("id", 1, 5)));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		messageFactory.encodeMessage(list, output);
+		
+		List<WithSeqnumWrapper> decoded = messageFactory.decodeMessage(new ByteArrayInputStream(output.toByteArray()));
+		assertEquals(2, decoded.size());
+		assertEquals(1, decoded.get(0).getSeqnum());
+		assertTrue(decoded.get(0).getMessage() instanceof HeartBeat);
+		
+		ResendRequest request = (ResendRequest) decoded.get(1).getMessage();
+		assertEquals(1, request.getFrom());
+		assertEquals(5, request.getTo());
+		
+	}
+	
+	@Test
+	public void testPreEncodedMessage() throws Exception {
+		
+		CborMessageFactory messageFactory = new CborMessageFactory();
+		
+		ResendRequest request = new ResendRequest("id", 1, 5);
+		AbstractMessage encoded = new JsonMessageFactory().preEncodeMessage(request);
+		AbstractMessage restored = new EncodedMessage(null, ((EncodedMessage) encoded).getEncoded().getValue());
+		
+		byte[] expected = encode(messageFactory, request);
+		assertArrayEquals(expected, encode(messageFactory, encoded));
+		assertArrayEquals(expected, encode(messageFactory, restored));
+		assertArrayEquals(expected, encode(messageFactory, restored));
+		
+		// Cached form is followed by other messages of batch
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(1, encoded));
+		list.add(new WithSeqnumWrapper(2, new HeartBeat()));
+		list.add(new WithSeqnumWrapper(3, restored));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		messageFactory.encodeMessage(list, output);
+		
+		List<WithSeqnumWrapper> decoded = messageFactory.decodeMessage(new ByteArrayInputStream(output.toByteArray()));
+		assertEquals(3, decoded.size());
+		assertEquals(3, decoded.get(2).getSeqnum());
+		assertEquals(5, ((ResendRequest) decoded.get(2).getMessage()).getTo());
+		
+	}
+	
+	@Test
+	public void testPreEncodedMessageSerializedOnce() throws Exception {
+		
+		CborMessageFactory messageFactory = new CborMessageFactory();
+		
+		CountingMessage message = new CountingMessage();
+		AbstractMessage encoded = new JsonMessageFactory().preEncodeMessage(message);
+		assertEquals(1, message.reads);
+		
+		// Channels after the first one copy cached CBOR form
+		byte[] first = encode(messageFactory, encoded);
+		assertArrayEquals(first, encode(messageFactory, encoded));
+		assertArrayEquals(first, encode(new CborMessageFactory(), encoded));
+		assertEquals(3, message.reads);
+		
+		assertArrayEquals(encode(messageFactory, message), first);
+		
+	}
+	
+	public static class CountingMessage implements AbstractMessage {
+		
+		private int reads;
+		
+		public String getValue() {
+			reads++;
+			return "value";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,170 @@
+package com.exactprosystems.webchannels;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.channel.AbstractMessageFactory;
+import com.exactprosystems.webchannels.channel.EncodedMessage;
+import com.exactprosystems.webchannels.channel.GeneratedMessageFactory;
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.MessageConsumer;
+import com.exactprosystems.webchannels.channel.MessageFactoryConfigurator;
+import com.exactprosystems.webchannels.channel.TestBusinessMessage;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.exceptions.DecodingException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.CloseChannel;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+import com.exactprosystems.webchannels.messages.TestRequest;
+
+import static org.junit.Assert.*;
+
+public class TestGeneratedMessageFactory {
+	
+	private static List<WithSeqnumWrapper> createMessages() {
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(1, new HeartBeat()));
+		list.add(new WithSeqnumWrapper(2, new TestRequest()));
+		list.add(new WithSeqnumWrapper(3, new ResendRequest("id", 1, 2)));
+		list.add(new WithSeqnumWrapper(4, new TestBusinessMessage()));
+		list.add(new WithSeqnumWrapper(5, new CloseChannel()));
+		return list;
+	}
+	
+	private static String encode(AbstractMessageFactory messageFactory, List<WithSeqnumWrapper> list) throws Exception {
+		StringWriter writer = new StringWriter();
+		messageFactory.encodeMessage(list, writer);
+		return writer.toString();
+	}
+	
+	@Test
+	public void testSameEncoding() throws Exception {
+		
+		List<WithSeqnumWrapper> list = createMessages();
+		String expected = encode(new JsonMessageFactory(), list);
+		
+		GeneratedMessageFactory messageFactory = new GeneratedMessageFactory();
+		assertEquals(expected, encode(messageFactory, list));
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		messageFactory.encodeMessage(list, bytes);
+		assertEquals(expected, bytes.toString("UTF-8"));
+		
+	}
+	
+	@Test
+	public void testRegisteredTypes() throws Exception {
+		
+		MessageFactoryConfigurator configurator = new MessageFactoryConfigurator();
+		configurator.registerMessage(TestBusinessMessage.class);
+		
+		List<WithSeqnumWrapper> list = createMessages();
+		String expected = encode(new JsonMessageFactory(configurator), list);
+		
+		GeneratedMessageFactory messageFactory = new GeneratedMessageFactory(configurator);
+		String encoded = encode(messageFactory, list);
+		assertEquals(expected, encoded);
+		
+		List<WithSeqnumWrapper> decoded = messageFactory.decodeMessage(new StringReader(encoded));
+		assertEquals(list.size(), decoded.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertEquals(list.get(i).getSeqnum(), decoded.get(i).getSeqnum());
+			assertEquals(list.get(i).getMessage().getClass(), decoded.get(i).getMessage().getClass());
+		}
+		
+	}
+	
+	@Test
+	public void testDecode() throws Exception {
+		
+		GeneratedMessageFactory messageFactory = new GeneratedMessageFactory();
+		String encoded = encode(messageFactory, createMessages());
+		
+		List<WithSeqnumWrapper> list = messageFactory.decodeMessage(new ByteArrayInputStream(encoded.getBytes("UTF-8")));
+		assertEquals(5, list.size());
+		assertTrue(list.get(0).getMessage() instanceof HeartBeat);
+		assertTrue(list.get(3).getMessage() instanceof TestBusinessMessage);
+		
+		ResendRequest request = (ResendRequest) list.get(2).getMessage();
+		assertEquals("id", request.getRequestId());
+		assertEquals(1, request.getFrom());
+		assertEquals(2, request.getTo());
+		
+		// Type id is not the first property, message is decoded by Jackson
+		list = messageFactory.decodeMessage(new StringReader("[{\"message\":{\"to\":7,\"from\":3,"
+				+ "\"messageType\":\"com.exactprosystems.webchannels.messages.ResendRequest\",\"requestId\":\"r\"},\"seqnum\":9}]"));
+		request = (ResendRequest) list.get(0).getMessage();
+		assertEquals(9, list.get(0).getSeqnum());
+		assertEquals(3, request.getFrom());
+		assertEquals(7, request.getTo());
+		
+	}
+	
+	@Test
+	public void testStreamingDecode() throws Exception {
+		
+		GeneratedMessageFactory messageFactory = new GeneratedMessageFactory();
+		String encoded = encode(messageFactory, createMessages());
+		
+		final List<WithSeqnumWrapper> list = new ArrayList<>();
+		MessageConsumer consumer = new MessageConsumer() {
+			@Override
+			public void accept(WithSeqnumWrapper message) {
+				list.add(message);
+			}
+		};
+		
+		messageFactory.decodeMessage(new StringReader(encoded), consumer);
+		assertEquals(5, list.size());
+		assertTrue(list.get(4).getMessage() instanceof CloseChannel);
+		
+		list.clear();
+		try {
+			messageFactory.decodeMessage(new StringReader(encoded.substring(0, encoded.length() / 2)), consumer);
+			fail("Broken message is decoded");
+		} catch (DecodingException e) {
+			assertFalse(list.isEmpty());
+			assertTrue(list.get(0).getMessage() instanceof HeartBeat);
+		}
+		
+	}
+	
+	@Test
+	public void testPreEncodedMessage() throws Exception {
+		
+		GeneratedMessageFactory messageFactory = new GeneratedMessageFactory();
+		
+		ResendRequest request = new ResendRequest("id", 1, 5);
+		AbstractMessage encoded = messageFactory.preEncodeMessage(request);
+		assertTrue(encoded instanceof EncodedMessage);
+		
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(7, request));
+		String expected = encode(messageFactory, list);
+		
+		list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(7, encoded));
+		assertEquals(expected, encode(messageFactory, list));
+		
+	}
+	
+	@Test(expected = DecodingException.class)
+	public void testUnknownTypeId() throws Exception {
+		GeneratedMessageFactory messageFactory = new GeneratedMessageFactory(new MessageFactoryConfigurator());
+		messageFactory.decodeMessage(new StringReader("[{\"seqnum\":1,\"message\":{\"messageType\":\"42\"}}]"));
+	}
+	
+	@Test(expected = DecodingException.class)
+	public void testUnknownClass() throws Exception {
+		GeneratedMessageFactory messageFactory = new GeneratedMessageFactory();
+		messageFactory.decodeMessage(new StringReader("[{\"seqnum\":1,\"message\":{\"messageType\":\"java.lang.String\"}}]"));
+	}
+	
+}
@@ -1,5 +1,8 @@
 package com.exactprosystems.webchannels;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
@@ -7,15 +10,34 @@ import java.util.List;
 
 import org.junit.Test;
 
+import com.exactprosystems.webchannels.channel.EncodedMessage;
 import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.MessageConsumer;
 import com.exactprosystems.webchannels.channel.MessageFactoryConfigurator;
+import com.exactprosystems.webchannels.channel.TestBusinessMessage;
 import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
 import com.exactprosystems.webchannels.exceptions.DecodingException;
 import com.exactprosystems.webchannels.exceptions.EncodingException;
 import com.exactprosystems.webchannels.messages.AbstractMessage;
 import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
 import com.exactprosystems.webchannels.messages.TestRequest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.cfg.HandlerInstantiator;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+
 import static org.junit.Assert.*;
 
 public class TestJsonMessageFactory {
@@ -52,4 +74,180 @@ public class TestJsonMessageFactory {
 		
 	}
 	
+	@Test
+	public void testPreEncodedMessage() throws Exception {
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		
+		ResendRequest request = new ResendRequest("id", 1, 5);
+		AbstractMessage encoded = messageFactory.preEncodeMessage(request);
+		assertTrue(encoded instanceof EncodedMessage);
+		
+		StringWriter expected = new StringWriter();
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(7, request));
+		messageFactory.encodeMessage(list, expected);
+		
+		StringWriter actual = new StringWriter();
+		list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(7, encoded));
+		messageFactory.encodeMessage(list, actual);
+		
+		assertEquals(expected.toString(), actual.toString());
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		messageFactory.encodeMessage(list, bytes);
+		
+		assertEquals(expected.toString(), bytes.toString("UTF-8"));
+		
+	}
+	
+	@Test
+	public void testRegisteredTypes() throws Exception {
+		
+		MessageFactoryConfigurator configurator = new MessageFactoryConfigurator();
+		configurator.registerMessage(TestBusinessMessage.class);
+		assertEquals(TestBusinessMessage.class.getName(), configurator.getTypeIds().get("6"));
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory(configurator);
+		
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(new WithSeqnumWrapper(1, new HeartBeat()));
+		list.add(new WithSeqnumWrapper(2, new TestBusinessMessage()));
+		list.add(new WithSeqnumWrapper(3, new ResendRequest("id", 1, 2)));
+		StringWriter writer = new StringWriter();
+		messageFactory.encodeMessage(list, writer);
+		
+		assertEquals("[{\"seqnum\":1,\"message\":{\"messageType\":\"0\"}},"
+				+ "{\"seqnum\":2,\"message\":{\"messageType\":\"6\"}},"
+				+ "{\"seqnum\":3,\"message\":{\"messageType\":\"2\",\"requestId\":\"id\",\"from\":1,\"to\":2}}]", 
+				writer.toString());
+		
+		list = messageFactory.decodeMessage(new StringReader(writer.toString()));
+		assertTrue(list.get(0).getMessage() instanceof HeartBeat);
+		assertTrue(list.get(1).getMessage() instanceof TestBusinessMessage);
+		assertEquals(2, ((ResendRequest) list.get(2).getMessage()).getTo());
+		
+		// Class names of registered types are accepted
+		list = messageFactory.decodeMessage(new StringReader(
+				"[{\"seqnum\":1,\"message\":{\"messageType\":\"com.exactprosystems.webchannels.messages.TestRequest\"}}]"));
+		assertTrue(list.get(0).getMessage() instanceof TestRequest);
+		
+	}
+	
+	@Test
+	public void testConfiguredInstantiatorIsKept() throws Exception {
+		
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.setHandlerInstantiator(new HandlerInstantiator() {
+			
+			@Override
+			public JsonDeserializer<?> deserializerInstance(DeserializationConfig config, Annotated annotated, 
+					Class<?> deserClass) {
+				return null;
+			}
+			
+			@Override
+			public KeyDeserializer keyDeserializerInstance(DeserializationConfig config, Annotated annotated, 
+					Class<?> keyDeserClass) {
+				return null;
+			}
+			
+			@Override
+			public JsonSerializer<?> serializerInstance(SerializationConfig config, Annotated annotated, 
+					Class<?> serClass) {
+				return serClass == PrefixSerializer.class ? new PrefixSerializer("EUR ") : null;
+			}
+			
+			@Override
+			public TypeResolverBuilder<?> typeResolverBuilderInstance(MapperConfig<?> config, Annotated annotated, 
+					Class<?> builderClass) {
+				return null;
+			}
+			
+			@Override
+			public TypeIdResolver typeIdResolverInstance(MapperConfig<?> config, Annotated annotated, 
+					Class<?> resolverClass) {
+				return null;
+			}
+			
+		});
+		
+		new MessageFactoryConfigurator().configure(mapper);
+		
+		assertEquals("\"EUR 5\"", mapper.writeValueAsString(new Amount(5)));
+		assertEquals("{\"messageType\":\"0\"}", mapper.writeValueAsString(new HeartBeat()));
+		
+	}
+	
+	@JsonSerialize(using = PrefixSerializer.class)
+	private static class Amount {
+		
+		private final int value;
+		
+		public Amount(int value) {
+			this.value = value;
+		}
+		
+	}
+	
+	private static class PrefixSerializer extends JsonSerializer<Amount> {
+		
+		private final String prefix;
+		
+		public PrefixSerializer(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public void serialize(Amount value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+			gen.writeString(prefix + value.value);
+		}
+		
+	}
+	
+	@Test
+	public void testStreamingDecode() throws Exception {
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		final List<WithSeqnumWrapper> list = new ArrayList<>();
+		MessageConsumer consumer = new MessageConsumer() {
+			@Override
+			public void accept(WithSeqnumWrapper message) {
+				list.add(message);
+			}
+		};
+		
+		messageFactory.decodeMessage(new StringReader("[{\"seqnum\":1,\"message\":{\"messageType\":\"com.exactprosystems.webchannels.messages.HeartBeat\"}},"
+				+ "{\"seqnum\":2,\"message\":{\"messageType\":\"com.exactprosystems.webchannels.messages.TestRequest\"}}]"), consumer);
+		assertEquals(2, list.size());
+		assertEquals(2, list.get(1).getSeqnum());
+		assertTrue(list.get(1).getMessage() instanceof TestRequest);
+		
+		// Messages before broken one are consumed
+		list.clear();
+		try {
+			messageFactory.decodeMessage(new ByteArrayInputStream(("[{\"seqnum\":1,\"message\":{\"messageType\":\"com.exactprosystems.webchannels.messages.HeartBeat\"}},"
+					+ "{\"seqnum\":2,\"mess").getBytes("UTF-8")), consumer);
+			fail("Broken message is decoded");
+		} catch (DecodingException e) {
+			assertEquals(1, list.size());
+			assertTrue(list.get(0).getMessage() instanceof HeartBeat);
+		}
+		
+	}
+	
+	@Test(expected = DecodingException.class)
+	public void testUnknownTypeId() throws Exception {
+		JsonMessageFactory messageFactory = new JsonMessageFactory(new MessageFactoryConfigurator());
+		messageFactory.decodeMessage(new StringReader("[{\"seqnum\":1,\"message\":{\"messageType\":\"42\"}}]"));
+	}
+	
+	@Test(expected = DecodingException.class)
+	public void testUnregisteredType() throws Exception {
+		JsonMessageFactory messageFactory = new JsonMessageFactory(new MessageFactoryConfigurator());
+		messageFactory.decodeMessage(new StringReader(
+				"[{\"seqnum\":1,\"message\":{\"messageType\":\"" + TestBusinessMessage.class.getName() + "\"}}]"));
+	}
+	
 }
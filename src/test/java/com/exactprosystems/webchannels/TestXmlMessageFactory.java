@@ -0,0 +1,38 @@
+package com.exactprosystems.webchannels;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.channel.MessageConsumer;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.channel.XmlMessageFactory;
+
+import static org.junit.Assert.*;
+
+public class TestXmlMessageFactory {
+
+	@Test
+	public void testStreamingDecodeWithoutMessages() throws Exception {
+
+		XmlMessageFactory messageFactory = new XmlMessageFactory();
+		final List<WithSeqnumWrapper> consumed = new ArrayList<>();
+		MessageConsumer consumer = new MessageConsumer() {
+			@Override
+			public void accept(WithSeqnumWrapper message) {
+				consumed.add(message);
+			}
+		};
+
+		// Factory without decoding support returns null batch
+		messageFactory.decodeMessage(new StringReader("<messages/>"), consumer);
+		messageFactory.decodeMessage(new ByteArrayInputStream(new byte[0]), consumer);
+
+		assertTrue(consumed.isEmpty());
+
+	}
+
+}
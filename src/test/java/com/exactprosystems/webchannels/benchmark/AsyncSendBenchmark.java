@@ -0,0 +1,244 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.AbstractChannel;
+import com.exactprosystems.webchannels.channel.AbstractMessageFactory;
+import com.exactprosystems.webchannels.channel.ChannelSettings;
+import com.exactprosystems.webchannels.channel.IChannelHandler;
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.WebSocketChannel;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+
+/**
+ *
+ * Compares delivery throughput of WebSocket channels sharing one executor thread
+ * when every network write takes {@code writeMicros}, with blocking and asynchronous sends.
+ * Run with {@code java -cp <test classpath> com.exactprosystems.webchannels.benchmark.AsyncSendBenchmark}.
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncSendBenchmark {
+
+	private static final int CHANNEL_COUNT = 100;
+
+	private static final AbstractMessage MESSAGE = new HeartBeat();
+
+	@Param({"false", "true"})
+	public boolean asyncSend;
+
+	@Param({"200"})
+	public long writeMicros;
+
+	private ExecutorService executor;
+
+	private ScheduledExecutorService container;
+
+	private WebSocketChannel[] channels;
+
+	private AtomicLong delivered;
+
+	private long sent;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		executor = Executors.newSingleThreadExecutor();
+		container = Executors.newScheduledThreadPool(4);
+		delivered = new AtomicLong(0);
+		sent = 0;
+		ChannelSettings settings = ChannelSettings.builder()
+				.setHeartBeatInterval(60000)
+				.setDisconnectTimeout(600000)
+				.setAsyncSendEnabled(asyncSend)
+				.setSendTimeout(60000)
+				.build();
+		AbstractMessageFactory messageFactory = new JsonMessageFactory();
+		channels = new WebSocketChannel[CHANNEL_COUNT];
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			channels[i] = new WebSocketChannel(new NullHandler(), "channel-" + i, settings, messageFactory, executor, null);
+			channels[i].bind(new SlowSession(container, delivered, writeMicros).getSession());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdownNow();
+		container.shutdownNow();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(CHANNEL_COUNT)
+	public void deliver() {
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			channels[i].sendMessage(MESSAGE);
+		}
+		sent += CHANNEL_COUNT;
+		while (delivered.get() < sent) {
+			Thread.yield();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(AsyncSendBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+
+	/**
+	 * Session which spends {@code writeMicros} on every write, either on calling
+	 * thread or on container thread before write completion is reported.
+	 */
+	private static class SlowSession implements InvocationHandler {
+
+		private final ScheduledExecutorService container;
+
+		private final AtomicLong delivered;
+
+		private final long writeMicros;
+
+		private final Map<String, Object> userProperties = new HashMap<String, Object>();
+
+		public SlowSession(ScheduledExecutorService container, AtomicLong delivered, long writeMicros) {
+			this.container = container;
+			this.delivered = delivered;
+			this.writeMicros = writeMicros;
+		}
+
+		public Session getSession() {
+			return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "getAsyncRemote":
+					return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RemoteEndpoint.Async.class }, this);
+				case "getBasicRemote":
+					return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RemoteEndpoint.Basic.class }, this);
+				case "getSendWriter":
+					return new StringWriter() {
+						private boolean closed;
+						@Override
+						public void close() {
+							// Message factory closes writer too
+							if (!closed) {
+								closed = true;
+								LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(writeMicros));
+								delivered.addAndGet(count(toString()));
+							}
+						}
+					};
+				case "sendText":
+					final String text = (String) args[0];
+					final SendHandler handler = (SendHandler) args[1];
+					container.schedule(new Runnable() {
+						@Override
+						public void run() {
+							delivered.addAndGet(count(text));
+							handler.onResult(new SendResult());
+						}
+					}, writeMicros, TimeUnit.MICROSECONDS);
+					return null;
+				case "setSendTimeout":
+					return null;
+				case "getUserProperties":
+					return userProperties;
+				case "isOpen":
+					return Boolean.TRUE;
+				case "close":
+					return null;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				case "toString":
+					return "SlowSession";
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+
+		private static int count(String batch) {
+			int count = 0;
+			for (int i = batch.indexOf("\"seqnum\""); i >= 0; i = batch.indexOf("\"seqnum\"", i + 1)) {
+				count++;
+			}
+			return count;
+		}
+
+	}
+
+	private static class NullHandler implements IChannelHandler {
+
+		@Override
+		public void onCreate(AbstractChannel channel) {
+
+		}
+
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			return null;
+		}
+
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+
+		}
+
+		@Override
+		public void onClose() {
+
+		}
+
+		@Override
+		public void onException(Throwable t) {
+
+		}
+
+		@Override
+		public void onIdle() {
+
+		}
+
+	}
+
+}
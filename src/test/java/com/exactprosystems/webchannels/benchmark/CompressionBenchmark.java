@@ -0,0 +1,104 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.MessageCompressor;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+/**
+ * 
+ * Compares new {@link DeflaterOutputStream} per flush with pooled deflater 
+ * of {@link MessageCompressor}. Ratio and CPU time per flush are printed by main().
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+	
+	@Param({"1", "10", "250"})
+	private int batchSize;
+	
+	private JsonMessageFactory messageFactory;
+	
+	private MessageCompressor compressor;
+	
+	private List<WithSeqnumWrapper> batch;
+	
+	private ByteArrayOutputStream output;
+	
+	@Setup
+	public void setup() {
+		messageFactory = new JsonMessageFactory();
+		compressor = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0);
+		batch = new ArrayList<>(batchSize);
+		for (int i = 1; i <= batchSize; i++) {
+			batch.add(new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 1)));
+		}
+		output = new ByteArrayOutputStream(64 * 1024);
+	}
+	
+	@Benchmark
+	public int stream() throws Exception {
+		output.reset();
+		try (OutputStream gzipOutput = new DeflaterOutputStream(output)) {
+			messageFactory.encodeMessage(batch, gzipOutput);
+		}
+		return output.size();
+	}
+	
+	@Benchmark
+	public int pooled() throws Exception {
+		output.reset();
+		compressor.encodeMessage(messageFactory, batch, output);
+		return output.size();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		
+		for (int batchSize : new int[] {1, 10, 250}) {
+			CompressionBenchmark benchmark = new CompressionBenchmark();
+			benchmark.batchSize = batchSize;
+			benchmark.setup();
+			for (int i = 0; i < 1000; i++) {
+				benchmark.pooled();
+			}
+			System.out.printf("batchSize=%d: ratio %.3f, %d ns CPU per flush%n", batchSize,
+					(double) benchmark.compressor.getCompressedBytes() / benchmark.compressor.getUncompressedBytes(),
+					benchmark.compressor.getCompressionTime() / benchmark.compressor.getFlushes());
+		}
+		
+		new Runner(new OptionsBuilder()
+				.include(CompressionBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+		
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.benchmark.MessageCodecBenchmark.Quote;
+import com.exactprosystems.webchannels.channel.CompressionDictionary;
+import com.exactprosystems.webchannels.channel.DictionaryTrainer;
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.MessageCompressor;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+/**
+ * 
+ * Compares compression of small batches without and with preset dictionary 
+ * trained on separate sample of traffic. Compression ratio is printed by main().
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DictionaryBenchmark {
+	
+	private static final String[] SYMBOLS = {"EUR/USD", "GBP/USD", "USD/JPY", "USD/CHF", "AUD/USD"};
+	
+	@Param({"1", "4"})
+	private int batchSize;
+	
+	@Param({"false", "true"})
+	private boolean dictionary;
+	
+	private JsonMessageFactory messageFactory;
+	
+	private MessageCompressor compressor;
+	
+	private List<WithSeqnumWrapper> batch;
+	
+	private ByteArrayOutputStream output;
+	
+	@Setup
+	public void setup() throws Exception {
+		messageFactory = new JsonMessageFactory();
+		compressor = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0,
+				dictionary ? train(messageFactory) : null);
+		batch = createBatch(new Random(1), batchSize);
+		output = new ByteArrayOutputStream(4096);
+	}
+	
+	private static List<WithSeqnumWrapper> createBatch(Random random, int size) {
+		List<WithSeqnumWrapper> batch = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			long seqnum = random.nextInt(100000);
+			switch (random.nextInt(8)) {
+				case 0:
+					batch.add(new WithSeqnumWrapper(seqnum, new HeartBeat()));
+					break;
+				case 1:
+					batch.add(new WithSeqnumWrapper(seqnum, new ResendRequest("Resend", seqnum, seqnum + random.nextInt(10))));
+					break;
+				default:
+					double price = 1 + random.nextInt(10000) / 10000.0;
+					batch.add(new WithSeqnumWrapper(seqnum, new Quote(SYMBOLS[random.nextInt(SYMBOLS.length)], 
+							price, price + 0.0002, random.nextInt(1000000), 1500000000000L + random.nextInt())));
+					break;
+			}
+		}
+		return batch;
+	}
+	
+	/**
+	 * @return dictionary trained on traffic which differs from measured one
+	 */
+	private static CompressionDictionary train(JsonMessageFactory messageFactory) throws Exception {
+		DictionaryTrainer trainer = new DictionaryTrainer();
+		trainer.addType(HeartBeat.class);
+		trainer.addType(ResendRequest.class);
+		trainer.addType(Quote.class);
+		MessageCompressor sampled = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0);
+		sampled.setTrainer(trainer);
+		Random random = new Random(2);
+		for (int i = 0; i < 2000; i++) {
+			sampled.encodeMessage(messageFactory, createBatch(random, 1 + random.nextInt(8)), new ByteArrayOutputStream());
+		}
+		return trainer.build("1");
+	}
+	
+	@Benchmark
+	public int compress() throws Exception {
+		output.reset();
+		compressor.encodeMessage(messageFactory, batch, output);
+		return output.size();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		CompressionDictionary trained = train(messageFactory);
+		System.out.println(trained);
+		
+		for (int size : new int[] {1, 2, 4, 8}) {
+			MessageCompressor plain = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0);
+			MessageCompressor preset = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0, trained);
+			Random random = new Random(3);
+			for (int i = 0; i < 1000; i++) {
+				List<WithSeqnumWrapper> batch = createBatch(random, size);
+				plain.encodeMessage(messageFactory, batch, new ByteArrayOutputStream());
+				preset.encodeMessage(messageFactory, batch, new ByteArrayOutputStream());
+			}
+			System.out.printf("batchSize=%d: %.0f bytes, ratio %.3f without dictionary, %.3f with dictionary%n", size, 
+					(double) plain.getUncompressedBytes() / plain.getFlushes(),
+					(double) plain.getCompressedBytes() / plain.getUncompressedBytes(),
+					(double) preset.getCompressedBytes() / preset.getUncompressedBytes());
+		}
+		
+		new Runner(new OptionsBuilder()
+				.include(DictionaryBenchmark.class.getSimpleName())
+				.build()).run();
+		
+	}
+
+}
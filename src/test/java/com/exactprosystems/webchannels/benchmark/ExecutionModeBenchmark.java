@@ -0,0 +1,211 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.AbstractChannel;
+import com.exactprosystems.webchannels.channel.ChannelSettings;
+import com.exactprosystems.webchannels.channel.ChannelStats;
+import com.exactprosystems.webchannels.channel.ChannelsExecutor;
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.ShardedChannelsExecutor;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.enums.ExecutionMode;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.AdminMessage;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+
+/**
+ * 
+ * Compares throughput and p99 latency of channel execution modes.
+ * Run with {@code java -cp <test classpath> com.exactprosystems.webchannels.benchmark.ExecutionModeBenchmark}.
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+	private static final int CHANNEL_COUNT = 1000;
+	
+	private static final int BURST_SIZE = 1000;
+	
+	private static final AbstractMessage MESSAGE = new HeartBeat();
+	
+	@Param({"FORK_JOIN", "VIRTUAL_THREADS", "THREAD_PER_CORE"})
+	public ExecutionMode mode;
+	
+	/**
+	 * Simulated blocking send time per message
+	 */
+	@Param({"0", "50"})
+	public long ioMicros;
+	
+	private Executor executor;
+	
+	private CountingChannel[] channels;
+	
+	private AtomicLong processed;
+	
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		executor = ChannelsExecutor.create(mode, 0);
+		processed = new AtomicLong(0);
+		channels = new CountingChannel[CHANNEL_COUNT];
+		ChannelSettings settings = new ChannelSettings();
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			channels[i] = new CountingChannel("channel-" + i, settings, messageFactory, executor, processed, ioMicros);
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdownNow();
+		} else if (executor instanceof ShardedChannelsExecutor) {
+			((ShardedChannelsExecutor) executor).shutdown();
+		}
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(BURST_SIZE)
+	public void throughput() {
+		long target = processed.get() + BURST_SIZE;
+		for (int i = 0; i < BURST_SIZE; i++) {
+			nextChannel().sendMessage(MESSAGE);
+		}
+		await(target);
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void latency() {
+		long target = processed.get() + 1;
+		nextChannel().sendMessage(MESSAGE);
+		await(target);
+	}
+	
+	private CountingChannel nextChannel() {
+		next = (next + 1) % CHANNEL_COUNT;
+		return channels[next];
+	}
+	
+	private void await(long target) {
+		while (processed.get() < target) {
+			Thread.yield();
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(ExecutionModeBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+	
+	private static class CountingChannel extends AbstractChannel {
+		
+		private final AtomicLong processed;
+		
+		private final long ioNanos;
+
+		public CountingChannel(String channelId, ChannelSettings settings, JsonMessageFactory messageFactory, 
+				Executor executor, AtomicLong processed, long ioMicros) {
+			super(null, channelId, settings, messageFactory, executor, null);
+			this.processed = processed;
+			this.ioNanos = TimeUnit.MICROSECONDS.toNanos(ioMicros);
+		}
+
+		@Override
+		protected void processOutputMessage(AbstractMessage message) {
+			if (ioNanos > 0) {
+				LockSupport.parkNanos(ioNanos);
+			}
+			processed.incrementAndGet();
+		}
+
+		@Override
+		protected long getNextPollTime() {
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		protected ChannelStats getChannelStats() {
+			return null;
+		}
+
+		@Override
+		protected void onUnbind(Object context) {
+			
+		}
+
+		@Override
+		protected void onPoll() {
+			
+		}
+
+		@Override
+		protected void onFlush() {
+			
+		}
+
+		@Override
+		protected void writeBatch(List<WithSeqnumWrapper> messages) {
+			
+		}
+
+		@Override
+		protected void processAdminMessage(AdminMessage message) {
+			
+		}
+		
+		@Override
+		protected void processSequencedMessage(WithSeqnumWrapper message) {
+			
+		}
+
+		@Override
+		protected void onClose() {
+			
+		}
+
+		@Override
+		protected void onCreate() {
+			
+		}
+
+		@Override
+		protected void onBind(Object context) {
+			
+		}
+		
+	}
+	
+}
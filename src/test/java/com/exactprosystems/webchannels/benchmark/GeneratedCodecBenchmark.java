@@ -0,0 +1,139 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.benchmark.MessageCodecBenchmark.Quote;
+import com.exactprosystems.webchannels.channel.GeneratedMessageFactory;
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+/**
+ * 
+ * Compares Jackson serialization with generated codecs. Throughput is measured 
+ * on warmed up factory, first message latency includes factory creation and 
+ * first batch in fresh JVM.
+ *
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeneratedCodecBenchmark {
+	
+	private static final int BATCH_SIZE = 100;
+	
+	/**
+	 * Batch of messages, factory is not touched before measurement.
+	 */
+	@State(Scope.Thread)
+	public static class Cold {
+		
+		@Param({"false", "true"})
+		private boolean generated;
+		
+		private List<WithSeqnumWrapper> batch;
+		
+		@Setup
+		public void setup() throws Exception {
+			batch = createBatch();
+		}
+		
+		protected List<WithSeqnumWrapper> getBatch() {
+			return batch;
+		}
+		
+		protected JsonMessageFactory createFactory() {
+			return generated ? new GeneratedMessageFactory() : new JsonMessageFactory();
+		}
+		
+	}
+	
+	/**
+	 * Batch of messages and factory which has already encoded it.
+	 */
+	@State(Scope.Thread)
+	public static class Warm extends Cold {
+		
+		private JsonMessageFactory messageFactory;
+		
+		private String json;
+		
+		@Override
+		@Setup
+		public void setup() throws Exception {
+			super.setup();
+			messageFactory = createFactory();
+			StringWriter writer = new StringWriter(8192);
+			messageFactory.encodeMessage(getBatch(), writer);
+			json = writer.toString();
+		}
+		
+	}
+	
+	private static List<WithSeqnumWrapper> createBatch() {
+		List<WithSeqnumWrapper> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 1; i <= BATCH_SIZE; i++) {
+			if (i % 10 == 0) {
+				batch.add(new WithSeqnumWrapper(i, new HeartBeat()));
+			} else if (i % 10 == 5) {
+				batch.add(new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 1)));
+			} else {
+				batch.add(new WithSeqnumWrapper(i, new Quote("EUR/USD", 1.1 + i, 1.2 + i, i * 1000, 1500000000000L + i)));
+			}
+		}
+		return batch;
+	}
+	
+	@Benchmark
+	public String encode(Warm state) throws Exception {
+		StringWriter writer = new StringWriter(8192);
+		state.messageFactory.encodeMessage(state.getBatch(), writer);
+		return writer.toString();
+	}
+	
+	@Benchmark
+	public List<WithSeqnumWrapper> decode(Warm state) throws Exception {
+		return state.messageFactory.decodeMessage(new StringReader(state.json));
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public List<WithSeqnumWrapper> firstMessage(Cold state) throws Exception {
+		JsonMessageFactory messageFactory = state.createFactory();
+		StringWriter writer = new StringWriter(8192);
+		messageFactory.encodeMessage(state.getBatch(), writer);
+		return messageFactory.decodeMessage(new StringReader(writer.toString()));
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(GeneratedCodecBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.CborMessageFactory;
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.messages.BusinessMessage;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 
+ * Compares encode and decode throughput of JSON and CBOR message factories
+ * for a typical output batch. Encoded size per message is printed by main().
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageCodecBenchmark {
+	
+	private static final int BATCH_SIZE = 100;
+	
+	private JsonMessageFactory jsonFactory;
+	
+	private CborMessageFactory cborFactory;
+	
+	private List<WithSeqnumWrapper> batch;
+	
+	private String json;
+	
+	private byte[] cbor;
+	
+	@Setup
+	public void setup() throws Exception {
+		jsonFactory = new JsonMessageFactory();
+		cborFactory = new CborMessageFactory();
+		batch = createBatch();
+		json = encodeJson();
+		cbor = encodeCbor();
+	}
+	
+	@Benchmark
+	public String encodeJson() throws Exception {
+		StringWriter writer = new StringWriter(8192);
+		jsonFactory.encodeMessage(batch, writer);
+		return writer.toString();
+	}
+	
+	@Benchmark
+	public byte[] encodeCbor() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+		cborFactory.encodeMessage(batch, output);
+		return output.toByteArray();
+	}
+	
+	@Benchmark
+	public List<WithSeqnumWrapper> decodeJson() throws Exception {
+		return jsonFactory.decodeMessage(new StringReader(json));
+	}
+	
+	@Benchmark
+	public List<WithSeqnumWrapper> decodeCbor() throws Exception {
+		return cborFactory.decodeMessage(new ByteArrayInputStream(cbor));
+	}
+	
+	private static List<WithSeqnumWrapper> createBatch() {
+		List<WithSeqnumWrapper> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 1; i <= BATCH_SIZE; i++) {
+			if (i % 10 == 0) {
+				batch.add(new WithSeqnumWrapper(i, new HeartBeat()));
+			} else if (i % 10 == 5) {
+				batch.add(new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 10)));
+			} else {
+				batch.add(new WithSeqnumWrapper(i, new Quote("EUR/USD", 1.1050 + i * 0.0001, 1.1052 + i * 0.0001, 
+						1000000L * i, 1500000000000L + i)));
+			}
+		}
+		return batch;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		
+		MessageCodecBenchmark benchmark = new MessageCodecBenchmark();
+		benchmark.setup();
+		System.out.printf("JSON: %.1f bytes per message%n", (double) benchmark.json.getBytes("UTF-8").length / BATCH_SIZE);
+		System.out.printf("CBOR: %.1f bytes per message%n", (double) benchmark.cbor.length / BATCH_SIZE);
+		
+		new Runner(new OptionsBuilder()
+				.include(MessageCodecBenchmark.class.getSimpleName())
+				.build()).run();
+		
+	}
+	
+	public static class Quote implements BusinessMessage {
+		
+		private String symbol;
+		
+		private double bid;
+		
+		private double ask;
+		
+		private long volume;
+		
+		private long time;
+		
+		public Quote() {
+			
+		}
+		
+		public Quote(@JsonProperty("symbol") String symbol, @JsonProperty("bid") double bid, 
+				@JsonProperty("ask") double ask, @JsonProperty("volume") long volume, @JsonProperty("time") long time) {
+			this.symbol = symbol;
+			this.bid = bid;
+			this.ask = ask;
+			this.volume = volume;
+			this.time = time;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+
+		public double getBid() {
+			return bid;
+		}
+
+		public double getAsk() {
+			return ask;
+		}
+
+		public long getVolume() {
+			return volume;
+		}
+
+		public long getTime() {
+			return time;
+		}
+		
+	}
+
+}
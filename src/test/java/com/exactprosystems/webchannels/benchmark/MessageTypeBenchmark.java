@@ -0,0 +1,103 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.MessageFactoryConfigurator;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+import com.exactprosystems.webchannels.messages.TestRequest;
+
+/**
+ * 
+ * Compares class name type ids with ids of {@link MessageFactoryConfigurator}
+ * for batch of small messages. Encoded size per message is printed by main().
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageTypeBenchmark {
+	
+	private static final int BATCH_SIZE = 100;
+	
+	@Param({"false", "true"})
+	private boolean registry;
+	
+	private JsonMessageFactory messageFactory;
+	
+	private List<WithSeqnumWrapper> batch;
+	
+	private String json;
+	
+	@Setup
+	public void setup() throws Exception {
+		messageFactory = registry ? new JsonMessageFactory(new MessageFactoryConfigurator()) : new JsonMessageFactory();
+		batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 1; i <= BATCH_SIZE; i++) {
+			switch (i % 3) {
+				case 0:
+					batch.add(new WithSeqnumWrapper(i, new HeartBeat()));
+					break;
+				case 1:
+					batch.add(new WithSeqnumWrapper(i, new TestRequest()));
+					break;
+				default:
+					batch.add(new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 1)));
+					break;
+			}
+		}
+		json = encode();
+	}
+	
+	@Benchmark
+	public String encode() throws Exception {
+		StringWriter writer = new StringWriter(8192);
+		messageFactory.encodeMessage(batch, writer);
+		return writer.toString();
+	}
+	
+	@Benchmark
+	public List<WithSeqnumWrapper> decode() throws Exception {
+		return messageFactory.decodeMessage(new StringReader(json));
+	}
+	
+	public static void main(String[] args) throws Exception {
+		
+		for (boolean registry : new boolean[] {false, true}) {
+			MessageTypeBenchmark benchmark = new MessageTypeBenchmark();
+			benchmark.registry = registry;
+			benchmark.setup();
+			System.out.printf("registry=%s: %.1f bytes per message%n", registry, 
+					(double) benchmark.json.length() / BATCH_SIZE);
+		}
+		
+		new Runner(new OptionsBuilder()
+				.include(MessageTypeBenchmark.class.getSimpleName())
+				.build()).run();
+		
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.SentMessagesBuffer;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+
+/**
+ * 
+ * Compares seqnum indexed resend buffer with previously used scan of 
+ * circular FIFO buffer for typical ResendRequest of recent messages.
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SentMessagesBufferBenchmark {
+	
+	private static final int RESEND_RANGE = 100;
+	
+	@Param({"1024", "65536", "1048576"})
+	private int capacity;
+	
+	private SentMessagesBuffer ringBuffer;
+	
+	private ScanBuffer scanBuffer;
+	
+	private long lastSeqnum;
+	
+	@Setup
+	public void setup() {
+		ringBuffer = new SentMessagesBuffer(capacity);
+		scanBuffer = new ScanBuffer(capacity);
+		HeartBeat message = new HeartBeat();
+		for (lastSeqnum = 1; lastSeqnum <= capacity; lastSeqnum++) {
+			WithSeqnumWrapper wrapper = new WithSeqnumWrapper(lastSeqnum, message);
+			ringBuffer.add(wrapper);
+			scanBuffer.add(wrapper);
+		}
+		lastSeqnum--;
+	}
+	
+	@Benchmark
+	public void ringResend(Blackhole blackhole) throws RecoverException {
+		for (WithSeqnumWrapper wrapper : ringBuffer.get(lastSeqnum - RESEND_RANGE, lastSeqnum)) {
+			blackhole.consume(wrapper);
+		}
+	}
+	
+	@Benchmark
+	public void scanResend(Blackhole blackhole) {
+		for (WithSeqnumWrapper wrapper : scanBuffer.get(lastSeqnum - RESEND_RANGE, lastSeqnum)) {
+			blackhole.consume(wrapper);
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(SentMessagesBufferBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+	
+	private static final class ScanBuffer {
+		
+		private final ArrayDeque<WithSeqnumWrapper> queue;
+		
+		private final int capacity;
+		
+		private ScanBuffer(int capacity) {
+			this.queue = new ArrayDeque<WithSeqnumWrapper>(capacity);
+			this.capacity = capacity;
+		}
+		
+		private void add(WithSeqnumWrapper wrapper) {
+			if (queue.size() == capacity) {
+				queue.poll();
+			}
+			queue.offer(wrapper);
+		}
+		
+		private List<WithSeqnumWrapper> get(long from, long to) {
+			List<WithSeqnumWrapper> list = new ArrayList<WithSeqnumWrapper>();
+			for (WithSeqnumWrapper wrapper : queue) {
+				if (wrapper.getSeqnum() >= from && wrapper.getSeqnum() < to) {
+					list.add(wrapper);
+				}
+			}
+			return list;
+		}
+		
+	}
+
+}
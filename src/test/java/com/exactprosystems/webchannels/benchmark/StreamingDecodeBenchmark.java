@@ -0,0 +1,112 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.JsonMessageFactory;
+import com.exactprosystems.webchannels.channel.MessageConsumer;
+import com.exactprosystems.webchannels.channel.WithSeqnumWrapper;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+/**
+ * 
+ * Compares decoding of whole batch into list with streaming decode. 
+ * firstMessage stops as soon as the first message reaches consumer.
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreamingDecodeBenchmark {
+	
+	private static final RuntimeException STOP = new RuntimeException("Stop", null, false, false) {
+		private static final long serialVersionUID = 1L;
+	};
+	
+	@Param({"10", "1000"})
+	private int batchSize;
+	
+	@Param({"false", "true"})
+	private boolean streaming;
+	
+	private JsonMessageFactory messageFactory;
+	
+	private String json;
+	
+	@Setup
+	public void setup() throws Exception {
+		messageFactory = new JsonMessageFactory();
+		List<WithSeqnumWrapper> batch = new ArrayList<>(batchSize);
+		for (int i = 1; i <= batchSize; i++) {
+			batch.add(new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 1)));
+		}
+		StringWriter writer = new StringWriter();
+		messageFactory.encodeMessage(batch, writer);
+		json = writer.toString();
+	}
+	
+	@Benchmark
+	public void decode(final Blackhole blackhole) throws Exception {
+		if (streaming) {
+			messageFactory.decodeMessage(new StringReader(json), new MessageConsumer() {
+				@Override
+				public void accept(WithSeqnumWrapper message) {
+					blackhole.consume(message);
+				}
+			});
+		} else {
+			for (WithSeqnumWrapper message : messageFactory.decodeMessage(new StringReader(json))) {
+				blackhole.consume(message);
+			}
+		}
+	}
+	
+	@Benchmark
+	public void firstMessage(final Blackhole blackhole) throws Exception {
+		if (streaming) {
+			try {
+				messageFactory.decodeMessage(new StringReader(json), new MessageConsumer() {
+					@Override
+					public void accept(WithSeqnumWrapper message) {
+						blackhole.consume(message);
+						throw STOP;
+					}
+				});
+			} catch (Exception e) {
+				// Expected after first message
+			}
+		} else {
+			blackhole.consume(messageFactory.decodeMessage(new StringReader(json)).get(0));
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(StreamingDecodeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
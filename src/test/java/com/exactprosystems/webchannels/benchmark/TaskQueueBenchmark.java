@@ -0,0 +1,190 @@
+package com.exactprosystems.webchannels.benchmark;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.exactprosystems.webchannels.channel.ChannelTaskQueue;
+
+/**
+ * 
+ * Compares channel task queue with previously used ConcurrentLinkedQueue 
+ * of event objects dispatched by instanceof chain.
+ *
+ */
+@State(Scope.Group)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskQueueBenchmark {
+	
+	private static final int BATCH_SIZE = 100;
+	
+	private static final int EVENT_KINDS = 4;
+	
+	private final Queue<Object> linkedQueue = new ConcurrentLinkedQueue<Object>();
+	
+	private final ChannelTaskQueue ringQueue = new ChannelTaskQueue();
+	
+	private final Object payload = new Object();
+	
+	@Benchmark
+	@Group("linkedRoundTrip")
+	@BenchmarkMode(Mode.Throughput)
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void linkedRoundTrip(Blackhole blackhole) {
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			linkedQueue.offer(newEvent(i % EVENT_KINDS, payload));
+		}
+		Object event;
+		while ((event = linkedQueue.poll()) != null) {
+			blackhole.consume(dispatch(event));
+		}
+	}
+	
+	@Benchmark
+	@Group("ringRoundTrip")
+	@BenchmarkMode(Mode.Throughput)
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void ringRoundTrip(Blackhole blackhole) {
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			ringQueue.offer(i % EVENT_KINDS, payload);
+		}
+		int kind;
+		while ((kind = ringQueue.peekKind()) != ChannelTaskQueue.EMPTY) {
+			Object value = ringQueue.peekPayload();
+			ringQueue.remove();
+			blackhole.consume(dispatch(kind, value));
+		}
+	}
+	
+	@Benchmark
+	@Group("linked")
+	@GroupThreads(3)
+	@BenchmarkMode(Mode.Throughput)
+	public void linkedOffer() {
+		linkedQueue.offer(newEvent(0, payload));
+	}
+	
+	@Benchmark
+	@Group("linked")
+	@GroupThreads(1)
+	@BenchmarkMode(Mode.Throughput)
+	public Object linkedPoll() {
+		Object event = linkedQueue.poll();
+		return event == null ? null : dispatch(event);
+	}
+	
+	@Benchmark
+	@Group("ring")
+	@GroupThreads(3)
+	@BenchmarkMode(Mode.Throughput)
+	public void ringOffer() {
+		ringQueue.offer(0, payload);
+	}
+	
+	@Benchmark
+	@Group("ring")
+	@GroupThreads(1)
+	@BenchmarkMode(Mode.Throughput)
+	public Object ringPoll() {
+		int kind = ringQueue.peekKind();
+		if (kind == ChannelTaskQueue.EMPTY) {
+			return null;
+		}
+		Object value = ringQueue.peekPayload();
+		ringQueue.remove();
+		return dispatch(kind, value);
+	}
+	
+	private static Object newEvent(int kind, Object payload) {
+		switch (kind) {
+			case 0:
+				return new FirstEvent(payload);
+			case 1:
+				return new SecondEvent(payload);
+			case 2:
+				return new ThirdEvent(payload);
+			default:
+				return new FourthEvent(payload);
+		}
+	}
+	
+	private static Object dispatch(Object event) {
+		if (event instanceof FirstEvent) {
+			return ((FirstEvent) event).payload;
+		} else if (event instanceof SecondEvent) {
+			return ((SecondEvent) event).payload;
+		} else if (event instanceof ThirdEvent) {
+			return ((ThirdEvent) event).payload;
+		} else if (event instanceof FourthEvent) {
+			return ((FourthEvent) event).payload;
+		} else {
+			throw new RuntimeException("Unexpected event: " + event);
+		}
+	}
+	
+	private static Object dispatch(int kind, Object payload) {
+		switch (kind) {
+			case 0:
+			case 1:
+			case 2:
+			case 3:
+				return payload;
+			default:
+				throw new RuntimeException("Unexpected event kind: " + kind);
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(TaskQueueBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+	
+	private static final class FirstEvent {
+		private final Object payload;
+		private FirstEvent(Object payload) {
+			this.payload = payload;
+		}
+	}
+	
+	private static final class SecondEvent {
+		private final Object payload;
+		private SecondEvent(Object payload) {
+			this.payload = payload;
+		}
+	}
+	
+	private static final class ThirdEvent {
+		private final Object payload;
+		private ThirdEvent(Object payload) {
+			this.payload = payload;
+		}
+	}
+	
+	private static final class FourthEvent {
+		private final Object payload;
+		private FourthEvent(Object payload) {
+			this.payload = payload;
+		}
+	}
+
+}
@@ -0,0 +1,298 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.enums.ExecutionMode;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+/**
+ * Measures allocation of all threads while business messages pass through 
+ * HttpChannel on production executors. Encoding of flushed batches is done 
+ * between measured bursts, wheel deadlines are armed once per polling interval.
+ */
+public class TestAllocationRate {
+	
+	private static final int BURST_SIZE = 1000;
+	
+	private static final int WARMUP_ROUNDS = 300;
+	
+	private static final int MEASURED_ROUNDS = 100;
+	
+	private static final double MAX_BYTES_PER_MESSAGE = 0.5;
+	
+	private com.sun.management.ThreadMXBean threadBean;
+	
+	private Executor executor;
+	
+	private HashedWheelScheduler scheduler;
+	
+	private CountingHandler handler;
+	
+	private HttpChannel channel;
+	
+	@Before
+	public void init() {
+		
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		
+		threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		
+		scheduler = new HashedWheelScheduler("AllocationRate", new IDeadlineHandler() {
+			@Override
+			public void onDeadline(AbstractChannel channel) {
+				channel.schedule();
+			}
+		}, 10L, 512);
+		scheduler.start();
+		
+	}
+	
+	@After
+	public void destroy() {
+		scheduler.stop();
+		if (executor instanceof ShardedChannelsExecutor) {
+			((ShardedChannelsExecutor) executor).shutdown();
+		} else if (executor != null) {
+			((ExecutorService) executor).shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testOutputMessagesPath() {
+		createChannel(ExecutionMode.FORK_JOIN);
+		checkOutputMessagesPath();
+	}
+	
+	@Test
+	public void testInputMessagesPath() {
+		createChannel(ExecutionMode.FORK_JOIN);
+		checkInputMessagesPath();
+	}
+	
+	@Test
+	public void testShardedMessagesPath() {
+		createChannel(ExecutionMode.THREAD_PER_CORE);
+		checkOutputMessagesPath();
+		checkInputMessagesPath();
+	}
+	
+	private void createChannel(ExecutionMode mode) {
+		ChannelSettings settings = ChannelSettings.builder()
+				.setMaxOutputMessages(BURST_SIZE * 2)
+				.setMaxCountToSend(BURST_SIZE * 2)
+				.build();
+		executor = ChannelsExecutor.create(mode, 1);
+		handler = new CountingHandler();
+		channel = new HttpChannel(handler, "allocation", settings, new JsonMessageFactory(), executor, null);
+		channel.setScheduler(scheduler);
+	}
+	
+	private void checkOutputMessagesPath() {
+		
+		AbstractMessage message = new TestBusinessMessage();
+		
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sendBurst(message);
+			flush();
+		}
+		
+		long allocated = 0L;
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			long[] threadIds = threadBean.getAllThreadIds();
+			long before = sum(threadBean.getThreadAllocatedBytes(threadIds));
+			sendBurst(message);
+			allocated += sum(threadBean.getThreadAllocatedBytes(threadIds)) - before;
+			flush();
+		}
+		
+		double perMessage = (double) allocated / (MEASURED_ROUNDS * BURST_SIZE);
+		
+		assertEquals((long) (WARMUP_ROUNDS + MEASURED_ROUNDS) * BURST_SIZE, handler.sent.get());
+		assertTrue("Allocated " + perMessage + " bytes per message", perMessage < MAX_BYTES_PER_MESSAGE);
+		
+	}
+	
+	private void checkInputMessagesPath() {
+		
+		WithSeqnumWrapper[] wrappers = new WithSeqnumWrapper[(WARMUP_ROUNDS + MEASURED_ROUNDS) * BURST_SIZE];
+		for (int i = 0; i < wrappers.length; i++) {
+			wrappers[i] = new WithSeqnumWrapper(i + 1, new TestBusinessMessage());
+		}
+		
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			receiveBurst(wrappers, i);
+		}
+		
+		long allocated = 0L;
+		for (int i = WARMUP_ROUNDS; i < WARMUP_ROUNDS + MEASURED_ROUNDS; i++) {
+			long[] threadIds = threadBean.getAllThreadIds();
+			long before = sum(threadBean.getThreadAllocatedBytes(threadIds));
+			receiveBurst(wrappers, i);
+			allocated += sum(threadBean.getThreadAllocatedBytes(threadIds)) - before;
+		}
+		
+		double perMessage = (double) allocated / (MEASURED_ROUNDS * BURST_SIZE);
+		
+		assertEquals((long) (WARMUP_ROUNDS + MEASURED_ROUNDS) * BURST_SIZE, handler.received.get());
+		assertTrue("Allocated " + perMessage + " bytes per message", perMessage < MAX_BYTES_PER_MESSAGE);
+		
+	}
+	
+	private void sendBurst(AbstractMessage message) {
+		long expected = handler.sent.get() + BURST_SIZE;
+		for (int i = 0; i < BURST_SIZE; i++) {
+			channel.sendMessage(message);
+		}
+		await(handler.sent, expected);
+	}
+	
+	private void receiveBurst(WithSeqnumWrapper[] wrappers, int round) {
+		long expected = handler.received.get() + BURST_SIZE;
+		for (int i = round * BURST_SIZE; i < (round + 1) * BURST_SIZE; i++) {
+			channel.handleRequest(wrappers[i]);
+		}
+		await(handler.received, expected);
+	}
+	
+	private void flush() {
+		TestContext context = new TestContext();
+		channel.bind(context.getContext());
+		channel.schedule();
+		await(context.completed, 1L);
+	}
+	
+	private static void await(AtomicLong counter, long expected) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (counter.get() < expected) {
+			assertTrue("Channel did not process messages in time", System.nanoTime() < deadline);
+			Thread.yield();
+		}
+	}
+	
+	private static long sum(long[] values) {
+		long sum = 0L;
+		for (long value : values) {
+			if (value > 0) {
+				sum += value;
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Polling context which discards written response.
+	 */
+	private static class TestContext implements InvocationHandler {
+		
+		private final AtomicLong completed = new AtomicLong();
+		
+		public AsyncContext getContext() {
+			return (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncContext.class }, this);
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "getResponse":
+					return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class }, this);
+				case "getWriter":
+					return new PrintWriter(new NullWriter());
+				case "setHeader":
+					return null;
+				case "complete":
+					completed.incrementAndGet();
+					return null;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				case "toString":
+					return "TestContext";
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+		
+	}
+	
+	private static class NullWriter extends Writer {
+		
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			
+		}
+		
+		@Override
+		public void flush() {
+			
+		}
+		
+		@Override
+		public void close() {
+			
+		}
+		
+	}
+	
+	private static class CountingHandler implements IChannelHandler {
+		
+		private final AtomicLong sent = new AtomicLong();
+		
+		private final AtomicLong received = new AtomicLong();
+		
+		@Override
+		public void onCreate(AbstractChannel channel) {
+			
+		}
+		
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			received.incrementAndGet();
+			return null;
+		}
+		
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+			sent.incrementAndGet();
+		}
+		
+		@Override
+		public void onClose() {
+			
+		}
+		
+		@Override
+		public void onException(Throwable t) {
+			
+		}
+		
+		@Override
+		public void onIdle() {
+			
+		}
+		
+	}
+
+}
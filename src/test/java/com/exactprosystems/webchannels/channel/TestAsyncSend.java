@@ -0,0 +1,227 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.enums.ChannelStatus;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+public class TestAsyncSend {
+
+	private DeferredExecutor executor;
+
+	private TestSession session;
+
+	@Before
+	public void init() {
+		executor = new DeferredExecutor();
+		session = new TestSession();
+	}
+
+	@Test
+	public void testInFlightLimit() {
+
+		WebSocketChannel channel = createChannel(1, 60000L);
+		channel.bind(session.getSession());
+		channel.sendMessage(new TestBusinessMessage());
+		executor.runPending();
+
+		assertEquals(1, session.handlers.size());
+
+		channel.sendMessage(new TestBusinessMessage());
+		channel.sendMessage(new TestBusinessMessage());
+		executor.runPending();
+
+		// Next batch waits for completion of the first write
+		assertEquals(1, session.handlers.size());
+
+		session.handlers.get(0).onResult(new SendResult());
+		executor.runPending();
+
+		assertEquals(2, session.handlers.size());
+		assertTrue(session.payloads.get(1).contains("\"seqnum\":3"));
+		assertEquals(1, session.closed.getCount());
+		assertEquals(ChannelStatus.OPENED, channel.getStatus());
+
+	}
+
+	@Test
+	public void testSendFailure() throws Exception {
+
+		WebSocketChannel channel = createChannel(2, 60000L);
+		channel.bind(session.getSession());
+		channel.sendMessage(new TestBusinessMessage());
+		executor.runPending();
+
+		session.handlers.get(0).onResult(new SendResult(new IOException("Connection reset")));
+		executor.runPending();
+
+		assertTrue(session.awaitClosed());
+		assertEquals(ChannelStatus.WAITING, channel.getStatus());
+
+		// Message of failed write is sent again after reconnect
+		TestSession next = new TestSession();
+		channel.bind(next.getSession());
+		executor.runPending();
+
+		assertEquals(1, next.payloads.size());
+		assertTrue(next.payloads.get(0).contains("\"seqnum\":1"));
+
+	}
+
+	@Test
+	public void testSendTimeout() throws Exception {
+
+		WebSocketChannel channel = createChannel(2, 10L);
+		channel.bind(session.getSession());
+		channel.sendMessage(new TestBusinessMessage());
+		executor.runPending();
+
+		assertEquals(10L, session.sendTimeout);
+
+		Thread.sleep(50L);
+		channel.schedule();
+		executor.runPending();
+
+		assertTrue(session.awaitClosed());
+		assertEquals(ChannelStatus.WAITING, channel.getStatus());
+
+		// Late completion of aborted write is ignored
+		TestSession next = new TestSession();
+		channel.bind(next.getSession());
+		session.handlers.get(0).onResult(new SendResult());
+		executor.runPending();
+
+		assertEquals(ChannelStatus.OPENED, channel.getStatus());
+
+	}
+
+	private WebSocketChannel createChannel(int maxInFlightSends, long sendTimeout) {
+		ChannelSettings settings = ChannelSettings.builder()
+				.setAsyncSendEnabled(true)
+				.setMaxInFlightSends(maxInFlightSends)
+				.setSendTimeout(sendTimeout)
+				.build();
+		return new WebSocketChannel(new TestHandler(), "async", settings, new JsonMessageFactory(), executor, null);
+	}
+
+	private static class TestSession implements InvocationHandler {
+
+		private final List<String> payloads = new ArrayList<String>();
+
+		private final List<SendHandler> handlers = new ArrayList<SendHandler>();
+
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		private long sendTimeout;
+
+		public boolean awaitClosed() throws InterruptedException {
+			// Session is closed on separate thread
+			return closed.await(5, TimeUnit.SECONDS);
+		}
+
+		public Session getSession() {
+			return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "getAsyncRemote":
+					return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RemoteEndpoint.Async.class }, this);
+				case "setSendTimeout":
+					sendTimeout = (Long) args[0];
+					return null;
+				case "sendText":
+					payloads.add((String) args[0]);
+					handlers.add((SendHandler) args[1]);
+					return null;
+				case "isOpen":
+					return closed.getCount() > 0;
+				case "close":
+					closed.countDown();
+					return null;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				case "toString":
+					return "TestSession";
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+
+	}
+
+	private static class TestHandler implements IChannelHandler {
+
+		@Override
+		public void onCreate(AbstractChannel channel) {
+
+		}
+
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			return null;
+		}
+
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+
+		}
+
+		@Override
+		public void onClose() {
+
+		}
+
+		@Override
+		public void onException(Throwable t) {
+
+		}
+
+		@Override
+		public void onIdle() {
+
+		}
+
+	}
+
+	private static class DeferredExecutor implements Executor {
+
+		private Runnable pending;
+
+		@Override
+		public void execute(Runnable command) {
+			pending = command;
+		}
+
+		public void runPending() {
+			Runnable task;
+			while ((task = pending) != null) {
+				pending = null;
+				task.run();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+public class TestBatchSize {
+	
+	private static final int BATCH_SIZE = 4;
+	
+	@Test
+	public void testDrainLimitedByBatch() {
+		
+		AbstractChannel channel = createChannel();
+		offer(channel, 10);
+		
+		assertTrue(channel.drainTaskQueue());
+		assertEquals(10 - BATCH_SIZE, channel.getTaskQueueSize());
+		
+	}
+	
+	@Test
+	public void testBatchGrowsWhileAlone() {
+		
+		AbstractChannel channel = createChannel();
+		offer(channel, 1000);
+		
+		channel.adaptBatchSize(false);
+		assertEquals(BATCH_SIZE * 2, channel.getBatchSize());
+		
+		// Growth is capped
+		for (int i = 0; i < 10; i++) {
+			channel.adaptBatchSize(false);
+		}
+		assertEquals(BATCH_SIZE * 16, channel.getBatchSize());
+		
+		assertTrue(channel.drainTaskQueue());
+		assertEquals(1000 - BATCH_SIZE * 16, channel.getTaskQueueSize());
+		
+	}
+	
+	@Test
+	public void testBatchKeptForShallowQueue() {
+		
+		AbstractChannel channel = createChannel();
+		offer(channel, BATCH_SIZE);
+		
+		// Queue which fits into batch does not need larger one
+		channel.adaptBatchSize(false);
+		assertEquals(BATCH_SIZE, channel.getBatchSize());
+		
+	}
+	
+	@Test
+	public void testBatchShrinksWhenOthersWait() {
+		
+		AbstractChannel channel = createChannel();
+		offer(channel, 1000);
+		for (int i = 0; i < 3; i++) {
+			channel.adaptBatchSize(false);
+		}
+		assertEquals(BATCH_SIZE * 8, channel.getBatchSize());
+		
+		channel.adaptBatchSize(true);
+		assertEquals(BATCH_SIZE * 4, channel.getBatchSize());
+		
+		// Batch is not smaller than configured one
+		for (int i = 0; i < 5; i++) {
+			channel.adaptBatchSize(true);
+		}
+		assertEquals(BATCH_SIZE, channel.getBatchSize());
+		
+	}
+	
+	@Test
+	public void testWaitingTasks() throws Exception {
+		
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			
+			assertFalse(ChannelsExecutor.hasWaitingTasks(executor));
+			
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					
+				}
+			});
+			
+			// Second task waits for the busy worker
+			assertTrue(ChannelsExecutor.hasWaitingTasks(executor));
+			release.countDown();
+			
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		
+		assertFalse(ChannelsExecutor.hasWaitingTasks(new ManualExecutor()));
+		
+	}
+	
+	private static AbstractChannel createChannel() {
+		ChannelSettings settings = ChannelSettings.builder()
+				.setExecutorBatchSize(BATCH_SIZE)
+				.setMaxOutputMessages(10000)
+				.build();
+		return new HttpChannel(new TestHandler(), "batch", settings,
+				new JsonMessageFactory(), new ManualExecutor(), null);
+	}
+	
+	private static void offer(AbstractChannel channel, int count) {
+		for (int i = 0; i < count; i++) {
+			channel.sendMessage(new TestBusinessMessage());
+		}
+		assertEquals(count, channel.getTaskQueueSize());
+	}
+	
+	private static class ManualExecutor implements Executor {
+		
+		@Override
+		public void execute(Runnable command) {
+			// Task queue is processed by test
+		}
+		
+	}
+	
+	private static class TestHandler implements IChannelHandler {
+		
+		@Override
+		public void onCreate(AbstractChannel channel) {
+			
+		}
+		
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			return null;
+		}
+		
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+			
+		}
+		
+		@Override
+		public void onClose() {
+			
+		}
+		
+		@Override
+		public void onException(Throwable t) {
+			
+		}
+		
+		@Override
+		public void onIdle() {
+			
+		}
+		
+	}
+	
+}
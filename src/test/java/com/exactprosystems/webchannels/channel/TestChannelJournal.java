@@ -0,0 +1,134 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+public class TestChannelJournal {
+	
+	private final JsonMessageFactory messageFactory = new JsonMessageFactory();
+	
+	private File createDirectory() {
+		File directory = new File(System.getProperty("java.io.tmpdir"), "journal-" + System.nanoTime());
+		directory.deleteOnExit();
+		return directory;
+	}
+	
+	@Test
+	public void testRestore() throws Exception {
+		
+		File directory = createDirectory();
+		
+		ChannelJournal journal = new ChannelJournal(directory, messageFactory, 4, 1L << 20, 60000L);
+		journal.start();
+		
+		ChannelJournal.Handle first = journal.attach("first");
+		ChannelJournal.Handle second = journal.attach("second");
+		for (int i = 1; i <= 10; i++) {
+			first.output(i, new ResendRequest("Resend", i, i + 1));
+		}
+		// Conflated message keeps its seqnum
+		first.output(10, new ResendRequest("Resend", 100, 101));
+		first.progress(5L, 11L);
+		second.progress(3L, 1L);
+		second.close();
+		
+		journal.stop();
+		
+		journal = new ChannelJournal(directory, messageFactory, 4, 1L << 20, 60000L);
+		
+		assertEquals(1, journal.getRestorableCount());
+		assertNull(journal.restore("second"));
+		
+		ChannelJournal.State state = journal.restore("first");
+		assertEquals(5L, state.getInputSeqnum());
+		assertEquals(11L, state.getOutputSeqnum());
+		
+		List<WithSeqnumWrapper> messages = state.getSentMessages();
+		assertEquals(4, messages.size());
+		assertEquals(7L, messages.get(0).getSeqnum());
+		assertEquals(10L, messages.get(3).getSeqnum());
+		assertTrue(((EncodedMessage) messages.get(3).getMessage()).getEncoded().getValue().contains("100"));
+		
+		assertNull(journal.restore("first"));
+		
+		journal.start();
+		journal.stop();
+		
+	}
+	
+	@Test
+	public void testRotation() throws Exception {
+		
+		File directory = createDirectory();
+		
+		ChannelJournal journal = new ChannelJournal(directory, messageFactory, 2, 256L, 60000L);
+		journal.start();
+		
+		ChannelJournal.Handle handle = journal.attach("channel");
+		for (int i = 1; i <= 100; i++) {
+			handle.output(i, new ResendRequest("Resend", i, i + 1));
+			handle.progress(i, i + 1);
+		}
+		
+		journal.stop();
+		
+		assertTrue(new File(directory, "channels.journal").length() < 1024L);
+		
+		journal = new ChannelJournal(directory, messageFactory, 2, 256L, 60000L);
+		ChannelJournal.State state = journal.restore("channel");
+		assertEquals(100L, state.getInputSeqnum());
+		assertEquals(101L, state.getOutputSeqnum());
+		assertEquals(2, state.getSentMessages().size());
+		
+	}
+	
+	@Test
+	public void testRestoreAfterRotations() throws Exception {
+		
+		File directory = createDirectory();
+		
+		ChannelJournal journal = new ChannelJournal(directory, messageFactory, 4, 128L, 60000L);
+		ChannelJournal.Handle handle = journal.attach("channel");
+		for (int i = 1; i <= 4; i++) {
+			handle.output(i, new ResendRequest("Resend", i, i + 1));
+		}
+		handle.progress(2L, 5L);
+		// Records of other channels rotate journal several times after the last output
+		for (int i = 0; i < 4; i++) {
+			journal.attach("other-" + i);
+		}
+		journal.start();
+		journal.stop();
+		
+		journal = new ChannelJournal(directory, messageFactory, 4, 128L, 60000L);
+		ChannelJournal.State state = journal.restore("channel");
+		assertEquals(2L, state.getInputSeqnum());
+		assertEquals(5L, state.getOutputSeqnum());
+		List<WithSeqnumWrapper> messages = state.getSentMessages();
+		assertEquals(4, messages.size());
+		assertEquals(1L, messages.get(0).getSeqnum());
+		
+	}
+	
+	@Test
+	public void testRetention() throws Exception {
+		
+		File directory = createDirectory();
+		
+		ChannelJournal journal = new ChannelJournal(directory, messageFactory, 2, 1L << 20, 60000L);
+		journal.start();
+		journal.attach("channel").progress(1L, 2L);
+		journal.stop();
+		
+		journal = new ChannelJournal(directory, messageFactory, 2, 1L << 20, -1L);
+		assertNull(journal.restore("channel"));
+		
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class TestChannelTaskQueue {
+	
+	@Test
+	public void testFifoOrderWithGrowth() {
+		
+		ChannelTaskQueue queue = new ChannelTaskQueue(2);
+		
+		assertTrue(queue.isEmpty());
+		assertEquals(ChannelTaskQueue.EMPTY, queue.peekKind());
+		
+		for (int i = 0; i < 5; i++) {
+			queue.offer(i, Integer.valueOf(i));
+		}
+		
+		assertEquals(5, queue.size());
+		assertEquals(8, queue.capacity());
+		
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, queue.peekKind());
+			assertEquals(Integer.valueOf(i), queue.peekPayload());
+			queue.remove();
+		}
+		
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.size());
+		
+	}
+	
+	@Test
+	public void testWrapAround() {
+		
+		ChannelTaskQueue queue = new ChannelTaskQueue(4);
+		
+		for (int i = 0; i < 100; i++) {
+			queue.offer(i, null);
+			queue.offer(i + 1, null);
+			assertEquals(i, queue.peekKind());
+			queue.remove();
+			assertEquals(i + 1, queue.peekKind());
+			queue.remove();
+		}
+		
+		assertEquals(4, queue.capacity());
+		
+	}
+	
+	@Test
+	public void testClear() {
+		
+		ChannelTaskQueue queue = new ChannelTaskQueue();
+		
+		queue.offer(1, "first");
+		queue.offer(2, "second");
+		queue.clear();
+		
+		assertTrue(queue.isEmpty());
+		assertNull(queue.peekPayload());
+		
+	}
+	
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		
+		final int producers = 4;
+		final int count = 100000;
+		final ChannelTaskQueue queue = new ChannelTaskQueue(2);
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads[p] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < count; i++) {
+						queue.offer(producer, Integer.valueOf(i));
+					}
+				}
+			});
+			threads[p].start();
+		}
+		
+		start.countDown();
+		
+		int[] expected = new int[producers];
+		int received = 0;
+		
+		while (received < producers * count) {
+			int kind = queue.peekKind();
+			if (kind == ChannelTaskQueue.EMPTY) {
+				continue;
+			}
+			Integer payload = (Integer) queue.peekPayload();
+			queue.remove();
+			assertEquals(expected[kind], payload.intValue());
+			expected[kind]++;
+			received++;
+		}
+		
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertTrue(queue.isEmpty());
+		
+	}
+
+}
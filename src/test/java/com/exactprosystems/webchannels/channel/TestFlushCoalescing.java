@@ -0,0 +1,194 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+public class TestFlushCoalescing {
+	
+	@Test
+	public void testBurstInOneFlush() {
+		
+		TestSession session = new TestSession();
+		WebSocketChannel channel = createChannel(100);
+		channel.bind(session.getSession());
+		drain(channel);
+		
+		for (int i = 0; i < 10; i++) {
+			channel.sendMessage(new TestBusinessMessage());
+		}
+		drain(channel);
+		
+		// Burst queued before processing is written as one frame
+		assertEquals(1, session.frames.size());
+		assertEquals(10, count(session.frames.get(0)));
+		
+	}
+	
+	@Test
+	public void testFlushRepeatedWhileOutputRemains() {
+		
+		TestSession session = new TestSession();
+		WebSocketChannel channel = createChannel(4);
+		channel.bind(session.getSession());
+		drain(channel);
+		
+		for (int i = 0; i < 10; i++) {
+			channel.sendMessage(new TestBusinessMessage());
+		}
+		drain(channel);
+		
+		// Flush sends up to maxCountToSend messages and requests next one
+		assertEquals(3, session.frames.size());
+		assertEquals(4, count(session.frames.get(0)));
+		assertEquals(4, count(session.frames.get(1)));
+		assertEquals(2, count(session.frames.get(2)));
+		assertTrue(session.frames.get(2).contains("\"seqnum\":10"));
+		
+	}
+	
+	@Test
+	public void testBindFlushesPendingOutput() {
+		
+		WebSocketChannel channel = createChannel(100);
+		channel.sendMessage(new TestBusinessMessage());
+		channel.sendMessage(new TestBusinessMessage());
+		drain(channel);
+		
+		// Output queued without session is sent on bind, not on next poll
+		TestSession session = new TestSession();
+		channel.bind(session.getSession());
+		drain(channel);
+		
+		assertEquals(1, session.frames.size());
+		assertEquals(2, count(session.frames.get(0)));
+		
+	}
+	
+	private static WebSocketChannel createChannel(int maxCountToSend) {
+		ChannelSettings settings = ChannelSettings.builder()
+				.setMaxCountToSend(maxCountToSend)
+				.build();
+		Executor manualExecutor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				// Task queue is processed by test
+			}
+		};
+		WebSocketChannel channel = new WebSocketChannel(new TestHandler(), "flush", settings,
+				new JsonMessageFactory(), manualExecutor, null);
+		channel.onCreate();
+		return channel;
+	}
+	
+	private static void drain(AbstractChannel channel) {
+		while (channel.processTaskQueue()) {
+			// drain
+		}
+	}
+	
+	private static int count(String frame) {
+		int count = 0;
+		for (int i = frame.indexOf("\"seqnum\""); i >= 0; i = frame.indexOf("\"seqnum\"", i + 1)) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Session which keeps frames written by blocking sends.
+	 */
+	private static class TestSession implements InvocationHandler {
+		
+		private final List<String> frames = new ArrayList<String>();
+		
+		private final Map<String, Object> userProperties = new HashMap<String, Object>();
+		
+		public Session getSession() {
+			return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class }, this);
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "getBasicRemote":
+					return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RemoteEndpoint.Basic.class }, this);
+				case "getSendWriter":
+					return new StringWriter() {
+						private boolean closed;
+						@Override
+						public void close() {
+							// Message factory closes writer too
+							if (!closed) {
+								closed = true;
+								frames.add(toString());
+							}
+						}
+					};
+				case "getUserProperties":
+					return userProperties;
+				case "isOpen":
+					return Boolean.TRUE;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				case "toString":
+					return "TestSession";
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+		
+	}
+	
+	private static class TestHandler implements IChannelHandler {
+		
+		@Override
+		public void onCreate(AbstractChannel channel) {
+			
+		}
+		
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			return null;
+		}
+		
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+			
+		}
+		
+		@Override
+		public void onClose() {
+			
+		}
+		
+		@Override
+		public void onException(Throwable t) {
+			
+		}
+		
+		@Override
+		public void onIdle() {
+			
+		}
+		
+	}
+	
+}
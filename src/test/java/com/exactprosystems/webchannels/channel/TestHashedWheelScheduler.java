@@ -0,0 +1,198 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class TestHashedWheelScheduler {
+	
+	private static final long TICK_DURATION = 10L;
+	
+	/** Allowed delay of deadline, covers tick and scheduling of worker thread */
+	private static final long MAX_DELAY = 150L;
+	
+	private HashedWheelScheduler scheduler;
+	
+	@After
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.stop();
+		}
+	}
+	
+	@Test
+	public void testDeadline() throws Exception {
+		
+		RecordingHandler handler = new RecordingHandler();
+		scheduler = new HashedWheelScheduler("test", handler, TICK_DURATION, 64);
+		scheduler.start();
+		
+		AbstractChannel channel = createChannel("test");
+		long deadline = System.currentTimeMillis() + 100L;
+		scheduler.schedule(channel, deadline);
+		
+		Long fired = handler.fired.poll(1, TimeUnit.SECONDS);
+		assertNotNull(fired);
+		assertTrue("Fired early: " + (fired - deadline), fired >= deadline);
+		assertTrue("Fired late: " + (fired - deadline), fired <= deadline + MAX_DELAY);
+		
+		// Fired deadline is disarmed, so channel can arm later one
+		assertNull(handler.fired.poll(200, TimeUnit.MILLISECONDS));
+		assertTrue(channel.armDeadline(deadline + 1000L));
+		
+	}
+	
+	@Test
+	public void testRescheduledDeadline() throws Exception {
+		
+		RecordingHandler handler = new RecordingHandler();
+		scheduler = new HashedWheelScheduler("test", handler, TICK_DURATION, 64);
+		scheduler.start();
+		
+		AbstractChannel channel = createChannel("test");
+		long now = System.currentTimeMillis();
+		scheduler.schedule(channel, now + 300L);
+		scheduler.schedule(channel, now + 50L);
+		// Later deadline is ignored while earlier one is armed
+		scheduler.schedule(channel, now + 200L);
+		
+		Long fired = handler.fired.poll(1, TimeUnit.SECONDS);
+		assertNotNull(fired);
+		assertTrue(fired < now + 200L);
+		
+		// Replaced deadline stays in the wheel but does not fire
+		assertNull(handler.fired.poll(500, TimeUnit.MILLISECONDS));
+		
+	}
+	
+	@Test
+	public void testCancelledDeadline() throws Exception {
+		
+		RecordingHandler handler = new RecordingHandler();
+		scheduler = new HashedWheelScheduler("test", handler, TICK_DURATION, 64);
+		scheduler.start();
+		
+		AbstractChannel channel = createChannel("test");
+		long deadline = System.currentTimeMillis() + 50L;
+		scheduler.schedule(channel, deadline);
+		assertTrue(channel.disarmDeadline(deadline));
+		
+		assertNull(handler.fired.poll(300, TimeUnit.MILLISECONDS));
+		
+	}
+	
+	@Test
+	public void testDeadlineAfterRotations() throws Exception {
+		
+		// Wheel rotation is 40 ms, deadline is five rotations ahead
+		RecordingHandler handler = new RecordingHandler();
+		scheduler = new HashedWheelScheduler("test", handler, TICK_DURATION, 4);
+		scheduler.start();
+		
+		AbstractChannel channel = createChannel("test");
+		long deadline = System.currentTimeMillis() + 200L;
+		scheduler.schedule(channel, deadline);
+		
+		Long fired = handler.fired.poll(1, TimeUnit.SECONDS);
+		assertNotNull(fired);
+		assertTrue("Fired early: " + (fired - deadline), fired >= deadline);
+		assertTrue("Fired late: " + (fired - deadline), fired <= deadline + MAX_DELAY);
+		
+	}
+	
+	@Test
+	public void testChannelIntervals() throws Exception {
+		
+		final AbstractChannel fast = createChannel("fast");
+		final AbstractChannel slow = createChannel("slow");
+		final Map<AbstractChannel, Long> intervals = new ConcurrentHashMap<>();
+		intervals.put(fast, 50L);
+		intervals.put(slow, 200L);
+		final Map<AbstractChannel, AtomicInteger> counts = new ConcurrentHashMap<>();
+		counts.put(fast, new AtomicInteger());
+		counts.put(slow, new AtomicInteger());
+		
+		// Channel arms next deadline after its own interval, as it does after poll
+		scheduler = new HashedWheelScheduler("test", new IDeadlineHandler() {
+			@Override
+			public void onDeadline(AbstractChannel channel) {
+				counts.get(channel).incrementAndGet();
+				scheduler.schedule(channel, System.currentTimeMillis() + intervals.get(channel));
+			}
+		}, TICK_DURATION, 8);
+		scheduler.start();
+		
+		long now = System.currentTimeMillis();
+		scheduler.schedule(fast, now + 50L);
+		scheduler.schedule(slow, now + 200L);
+		Thread.sleep(1000L);
+		
+		int fastCount = counts.get(fast).get();
+		int slowCount = counts.get(slow).get();
+		assertTrue("Fast channel fired " + fastCount + " times", fastCount >= 10 && fastCount <= 20);
+		assertTrue("Slow channel fired " + slowCount + " times", slowCount >= 3 && slowCount <= 5);
+		
+	}
+	
+	private static AbstractChannel createChannel(String id) {
+		return new HttpChannel(new TestHandler(), id, new ChannelSettings(),
+				new JsonMessageFactory(), MoreExecutors.sameThreadExecutor(), null);
+	}
+	
+	private static class RecordingHandler implements IDeadlineHandler {
+		
+		private final BlockingQueue<Long> fired = new LinkedBlockingQueue<>();
+		
+		@Override
+		public void onDeadline(AbstractChannel channel) {
+			fired.offer(System.currentTimeMillis());
+		}
+		
+	}
+	
+	private static class TestHandler implements IChannelHandler {
+		
+		@Override
+		public void onCreate(AbstractChannel channel) {
+			
+		}
+		
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			return null;
+		}
+		
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+			
+		}
+		
+		@Override
+		public void onClose() {
+			
+		}
+		
+		@Override
+		public void onException(Throwable t) {
+			
+		}
+		
+		@Override
+		public void onIdle() {
+			
+		}
+		
+	}
+	
+}
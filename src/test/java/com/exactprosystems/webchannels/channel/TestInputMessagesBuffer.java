@@ -0,0 +1,89 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+
+public class TestInputMessagesBuffer {
+	
+	private static WithSeqnumWrapper wrapper(long seqnum) {
+		return new WithSeqnumWrapper(seqnum, new TestBusinessMessage());
+	}
+	
+	@Test
+	public void testHoles() throws Exception {
+		
+		InputMessagesBuffer buffer = new InputMessagesBuffer(1000);
+		
+		// Received 5 while expected 2, then 8 while expected 6
+		buffer.recover(2, 5);
+		buffer.add(wrapper(5));
+		buffer.recover(6, 8);
+		buffer.add(wrapper(8));
+		
+		assertFalse(buffer.isRecovered());
+		assertEquals(2L, buffer.getFrom());
+		assertEquals(8L, buffer.getTo());
+		assertEquals(5L, buffer.getMissingCount());
+		
+		buffer.add(wrapper(3));
+		assertTrue(buffer.tryRecover().isEmpty());
+		
+		buffer.add(wrapper(2));
+		List<WithSeqnumWrapper> messages = buffer.tryRecover();
+		assertEquals(2, messages.size());
+		assertEquals(3L, messages.get(1).getSeqnum());
+		assertEquals(4L, buffer.getFrom());
+		
+		buffer.add(wrapper(6));
+		buffer.add(wrapper(7));
+		buffer.add(wrapper(4));
+		assertEquals(5, buffer.tryRecover().size());
+		assertTrue(buffer.isRecovered());
+		assertEquals(2L, buffer.getGapCount());
+		
+	}
+	
+	@Test
+	public void testGrowth() throws Exception {
+		
+		InputMessagesBuffer buffer = new InputMessagesBuffer(1000);
+		buffer.recover(1, 2);
+		
+		for (int i = 500; i >= 2; i--) {
+			assertTrue(buffer.add(wrapper(i)));
+		}
+		
+		buffer.add(wrapper(1));
+		List<WithSeqnumWrapper> messages = buffer.tryRecover();
+		assertEquals(500, messages.size());
+		for (int i = 0; i < 500; i++) {
+			assertEquals(i + 1L, messages.get(i).getSeqnum());
+		}
+		assertTrue(buffer.isRecovered());
+		
+	}
+	
+	@Test
+	public void testWindow() throws Exception {
+		
+		InputMessagesBuffer buffer = new InputMessagesBuffer(100);
+		buffer.recover(1, 50);
+		
+		assertFalse(buffer.add(wrapper(Integer.MAX_VALUE)));
+		assertEquals(49L, buffer.getMissingCount());
+		
+		try {
+			buffer.recover(51, 200);
+			fail("Gap out of window is accepted");
+		} catch (RecoverException e) {
+			// expected
+		}
+		
+	}
+
+}
@@ -0,0 +1,179 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+public class TestMessageCompressor {
+	
+	private static List<WithSeqnumWrapper> createMessages(int count) {
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			list.add(new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 1)));
+		}
+		return list;
+	}
+	
+	@Test
+	public void testCompression() throws Exception {
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		MessageCompressor compressor = new MessageCompressor(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, 256);
+		
+		List<WithSeqnumWrapper> messages = createMessages(50);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		compressor.encodeMessage(messageFactory, messages, output);
+		
+		byte[] compressed = output.toByteArray();
+		assertTrue(MessageCompressor.isCompressed(compressed[0], compressed[1]));
+		assertEquals(1, compressor.getFlushes());
+		assertEquals(compressed.length, compressor.getCompressedBytes());
+		assertTrue(compressor.getCompressedBytes() < compressor.getUncompressedBytes());
+		
+		try (InputStream input = MessageCompressor.inflate(new ByteArrayInputStream(compressed))) {
+			List<WithSeqnumWrapper> decoded = messageFactory.decodeMessage(input);
+			assertEquals(50, decoded.size());
+			assertEquals(50, ((ResendRequest) decoded.get(49).getMessage()).getFrom());
+		}
+		
+	}
+	
+	@Test
+	public void testThreshold() throws Exception {
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		MessageCompressor compressor = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 256);
+		
+		List<WithSeqnumWrapper> messages = new ArrayList<>();
+		messages.add(new WithSeqnumWrapper(1, new HeartBeat()));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		compressor.encodeMessage(messageFactory, messages, output);
+		
+		assertEquals('[', output.toByteArray()[0]);
+		assertEquals(0, compressor.getFlushes());
+		assertEquals(0, compressor.getUncompressedBytes());
+		
+		// Uncompressed input is passed as is
+		try (InputStream input = MessageCompressor.inflate(new ByteArrayInputStream(output.toByteArray()))) {
+			List<WithSeqnumWrapper> decoded = messageFactory.decodeMessage(input);
+			assertTrue(decoded.get(0).getMessage() instanceof HeartBeat);
+		}
+		
+	}
+	
+	@Test
+	public void testDictionary() throws Exception {
+		
+		MessageFactoryConfigurator configurator = new MessageFactoryConfigurator();
+		JsonMessageFactory messageFactory = new JsonMessageFactory(configurator);
+		
+		DictionaryTrainer trainer = new DictionaryTrainer(2048, 1, 1024 * 1024);
+		trainer.addTypes(configurator);
+		MessageCompressor sampled = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0);
+		sampled.setTrainer(trainer);
+		for (int i = 0; i < 20; i++) {
+			sampled.encodeMessage(messageFactory, createMessages(i % 5 + 1), new ByteArrayOutputStream());
+		}
+		assertEquals(20, trainer.getSampleCount());
+		
+		CompressionDictionary dictionary = trainer.build("1");
+		assertTrue(dictionary.getSize() <= 2048);
+		
+		MessageCompressor plain = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0);
+		MessageCompressor preset = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0, dictionary);
+		
+		List<WithSeqnumWrapper> messages = createMessages(2);
+		plain.encodeMessage(messageFactory, messages, new ByteArrayOutputStream());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		preset.encodeMessage(messageFactory, messages, output);
+		assertTrue(preset.getCompressedBytes() < plain.getCompressedBytes());
+		
+		// Header refers to dictionary by its checksum
+		byte[] compressed = output.toByteArray();
+		assertTrue(MessageCompressor.isCompressed(compressed[0], compressed[1]));
+		assertEquals(dictionary.getId(), ByteBuffer.wrap(compressed, 2, 4).getInt());
+		
+		Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+		byte[] decompressed = new byte[4096];
+		assertEquals(0, inflater.inflate(decompressed));
+		assertTrue(inflater.needsDictionary());
+		inflater.setDictionary(dictionary.toByteArray());
+		int length = inflater.inflate(decompressed);
+		inflater.end();
+		
+		List<WithSeqnumWrapper> decoded = messageFactory.decodeMessage(new ByteArrayInputStream(decompressed, 0, length));
+		assertEquals(2, decoded.size());
+		assertEquals(2, ((ResendRequest) decoded.get(1).getMessage()).getFrom());
+		
+	}
+	
+	@Test
+	public void testReuse() throws Exception {
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		MessageCompressor fast = new MessageCompressor(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, 0);
+		MessageCompressor huffman = new MessageCompressor(Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY, 0);
+		
+		List<WithSeqnumWrapper> messages = createMessages(20);
+		for (int i = 0; i < 3; i++) {
+			for (MessageCompressor compressor : new MessageCompressor[] {fast, huffman}) {
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				compressor.encodeMessage(messageFactory, messages, output);
+				try (InputStream input = MessageCompressor.inflate(new ByteArrayInputStream(output.toByteArray()))) {
+					assertEquals(20, messageFactory.decodeMessage(input).size());
+				}
+			}
+		}
+		
+		assertEquals(3, fast.getFlushes());
+		// Huffman only coding does not use repeated strings
+		assertTrue(fast.getCompressedBytes() < huffman.getCompressedBytes());
+		
+	}
+	
+	@Test
+	public void testInterleavedStreams() throws Exception {
+		
+		JsonMessageFactory messageFactory = new JsonMessageFactory();
+		MessageCompressor compressor = new MessageCompressor(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, 0);
+		
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		compressor.encodeMessage(messageFactory, createMessages(30), first);
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		compressor.encodeMessage(messageFactory, createMessages(40), second);
+		
+		// Streams opened by one thread do not share inflater
+		try (InputStream firstInput = MessageCompressor.inflate(new ByteArrayInputStream(first.toByteArray()));
+				InputStream secondInput = MessageCompressor.inflate(new ByteArrayInputStream(second.toByteArray()))) {
+			ByteArrayOutputStream firstOutput = new ByteArrayOutputStream();
+			ByteArrayOutputStream secondOutput = new ByteArrayOutputStream();
+			int firstRead = 0;
+			int secondRead = 0;
+			while (firstRead >= 0 || secondRead >= 0) {
+				if (firstRead >= 0 && (firstRead = firstInput.read()) >= 0) {
+					firstOutput.write(firstRead);
+				}
+				if (secondRead >= 0 && (secondRead = secondInput.read()) >= 0) {
+					secondOutput.write(secondRead);
+				}
+			}
+			assertEquals(30, messageFactory.decodeMessage(new ByteArrayInputStream(firstOutput.toByteArray())).size());
+			assertEquals(40, messageFactory.decodeMessage(new ByteArrayInputStream(secondOutput.toByteArray())).size());
+		}
+		
+	}
+
+}
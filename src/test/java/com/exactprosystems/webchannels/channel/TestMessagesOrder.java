@@ -3,13 +3,19 @@ package com.exactprosystems.webchannels.channel;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.exactprosystems.webchannels.enums.ChannelStatus;
 import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.CloseChannel;
+import com.exactprosystems.webchannels.messages.HeartBeat;
+import com.exactprosystems.webchannels.messages.TestRequest;
 import com.google.common.util.concurrent.MoreExecutors;
 
 public class TestMessagesOrder {
@@ -1047,4 +1053,222 @@ public class TestMessagesOrder {
 		
 	}
 	
+	@Test
+	public void testAdminPriority() {
+		
+		final List<AbstractMessage> sentMessages = new ArrayList<>();
+		final List<Long> sentSeqnums = new ArrayList<>();
+		
+		IChannelHandler handler = new IChannelHandler() {
+			
+			@Override
+			public void onSend(AbstractMessage message, long seqnum) {
+				sentMessages.add(message);
+				sentSeqnums.add(seqnum);
+			}
+			
+			@Override
+			public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+				return null;
+			}
+			
+			@Override
+			public void onIdle() {
+				
+			}
+			
+			@Override
+			public void onException(Throwable t) {
+				fail(t.getMessage());
+			}
+			
+			@Override
+			public void onCreate(AbstractChannel channel) {
+				
+			}
+			
+			@Override
+			public void onClose() {
+				
+			}
+			
+		};
+		
+		Executor manualExecutor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				// Task queue is processed by test
+			}
+		};
+		
+		HttpChannel channel = new HttpChannel(handler, "test1", settings, messageFactory, manualExecutor, null);
+		
+		channel.onCreate();
+		
+		channel.sendMessage(new TestBusinessMessage());
+		channel.sendMessage(new TestBusinessMessage());
+		channel.sendMessage(new HeartBeat());
+		
+		while (channel.processTaskQueue()) {
+			// drain
+		}
+		
+		// Admin message overtakes queued events and takes next seqnum
+		assertTrue(sentMessages.get(0) instanceof HeartBeat);
+		assertEquals(Arrays.asList(1L, 2L, 3L), sentSeqnums);
+		
+		channel.sendMessage(new TestRequest());
+		
+		while (channel.processTaskQueue()) {
+			// drain
+		}
+		
+		// Output buffer is not empty, so admin message is sent out of sequence
+		assertTrue(sentMessages.get(3) instanceof TestRequest);
+		assertEquals(WithSeqnumWrapper.OUT_OF_SEQUENCE, sentSeqnums.get(3).longValue());
+		
+	}
+	
+	@Test
+	public void testCloseAfterQueuedInput() {
+		
+		final List<Long> receivedSeqnums = new ArrayList<>();
+		final List<Long> closedAfter = new ArrayList<>();
+		
+		IChannelHandler handler = new IChannelHandler() {
+			
+			@Override
+			public void onSend(AbstractMessage message, long seqnum) {
+				
+			}
+			
+			@Override
+			public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+				if (message instanceof TestBusinessMessage) {
+					receivedSeqnums.add(seqnum);
+				}
+				return null;
+			}
+			
+			@Override
+			public void onIdle() {
+				
+			}
+			
+			@Override
+			public void onException(Throwable t) {
+				fail(t.getMessage());
+			}
+			
+			@Override
+			public void onCreate(AbstractChannel channel) {
+				
+			}
+			
+			@Override
+			public void onClose() {
+				closedAfter.add((long) receivedSeqnums.size());
+			}
+			
+		};
+		
+		Executor manualExecutor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				// Task queue is processed by test
+			}
+		};
+		
+		HttpChannel channel = new HttpChannel(handler, "test1", settings, messageFactory, manualExecutor, null);
+		
+		channel.onCreate();
+		
+		channel.handleRequest(new WithSeqnumWrapper(1, new TestBusinessMessage()));
+		channel.handleRequest(new WithSeqnumWrapper(2, new TestBusinessMessage()));
+		channel.handleRequest(new WithSeqnumWrapper(3, new CloseChannel()));
+		
+		while (channel.processTaskQueue()) {
+			// drain
+		}
+		
+		// Messages received before CloseChannel are delivered before channel is closed
+		assertEquals(Arrays.asList(1L, 2L), receivedSeqnums);
+		assertEquals(Arrays.asList(2L), closedAfter);
+		
+	}
+	
+	@Test
+	public void testRecoveryWindowOverflow() {
+		
+		final List<Long> receivedSeqnums = new ArrayList<>();
+		final List<Long> closedAfter = new ArrayList<>();
+		
+		IChannelHandler handler = new IChannelHandler() {
+			
+			@Override
+			public void onSend(AbstractMessage message, long seqnum) {
+				
+			}
+			
+			@Override
+			public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+				receivedSeqnums.add(seqnum);
+				return null;
+			}
+			
+			@Override
+			public void onIdle() {
+				
+			}
+			
+			@Override
+			public void onException(Throwable t) {
+				fail(t.getMessage());
+			}
+			
+			@Override
+			public void onCreate(AbstractChannel channel) {
+				
+			}
+			
+			@Override
+			public void onClose() {
+				closedAfter.add((long) receivedSeqnums.size());
+			}
+			
+		};
+		
+		ChannelSettings windowSettings = ChannelSettings.builder()
+				.setMaxRecoveryWindow(4)
+				.build();
+		
+		AbstractChannel[] channels = new AbstractChannel[] {
+			new HttpChannel(handler, "test1", windowSettings, messageFactory, executor, null),
+			new WebSocketChannel(handler, "test2", windowSettings, messageFactory, executor, null)
+		};
+		
+		for (AbstractChannel channel : channels) {
+			
+			receivedSeqnums.clear();
+			closedAfter.clear();
+			
+			channel.onCreate();
+			
+			// Gap from 2 to 3 starts recovery, in order messages are stashed behind it
+			for (long seqnum : new long[] {1, 3, 4, 5}) {
+				channel.processInputMessage(new WithSeqnumWrapper(seqnum, new TestBusinessMessage()));
+			}
+			assertTrue(closedAfter.isEmpty());
+			
+			// Message past recovery window is not dropped silently
+			channel.processInputMessage(new WithSeqnumWrapper(6, new TestBusinessMessage()));
+			
+			assertEquals(Arrays.asList(1L), receivedSeqnums);
+			assertEquals(Arrays.asList(1L), closedAfter);
+			assertEquals(ChannelStatus.CLOSED, channel.getStatus());
+			
+		}
+		
+	}
+	
 }
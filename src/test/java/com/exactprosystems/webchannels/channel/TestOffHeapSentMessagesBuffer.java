@@ -0,0 +1,115 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+
+public class TestOffHeapSentMessagesBuffer {
+	
+	private final JsonMessageFactory messageFactory = new JsonMessageFactory();
+	
+	private String encode(WithSeqnumWrapper wrapper) throws Exception {
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		list.add(wrapper);
+		StringWriter writer = new StringWriter();
+		messageFactory.encodeMessage(list, writer);
+		return writer.toString();
+	}
+	
+	@Test
+	public void testResend() throws Exception {
+		
+		File directory = new File(System.getProperty("java.io.tmpdir"));
+		SentMessagesBuffer buffer = new OffHeapSentMessagesBuffer(16, 4096, directory, messageFactory);
+		
+		List<WithSeqnumWrapper> sent = new ArrayList<>();
+		for (int i = 1; i <= 10; i++) {
+			WithSeqnumWrapper wrapper = new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 1));
+			sent.add(wrapper);
+			assertNull(buffer.add(wrapper));
+		}
+		
+		List<WithSeqnumWrapper> messages = buffer.get(3, 7);
+		assertEquals(4, messages.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(encode(sent.get(i + 2)), encode(messages.get(i)));
+		}
+		
+	}
+	
+	@Test
+	public void testOverwrite() throws Exception {
+		
+		// Journal keeps only few messages, although index has room for more
+		SentMessagesBuffer buffer = new OffHeapSentMessagesBuffer(64, 512, null, messageFactory);
+		for (int i = 1; i <= 40; i++) {
+			buffer.add(new WithSeqnumWrapper(i, new ResendRequest("Resend", i, i + 1)));
+		}
+		
+		assertEquals(1, buffer.get(39, 40).size());
+		
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		buffer.collect(1, 41, list);
+		assertTrue(list.size() < 40);
+		assertEquals(40L, list.get(list.size() - 1).getSeqnum());
+		
+		try {
+			buffer.get(1, 40);
+			fail("Overwritten messages are resent");
+		} catch (RecoverException e) {
+			// expected
+		}
+		
+	}
+	
+	@Test
+	public void testLazySegments() throws Exception {
+		
+		OffHeapSentMessagesBuffer buffer = new OffHeapSentMessagesBuffer(16, 4L * 1024 * 1024, null, messageFactory);
+		assertEquals(0L, buffer.getAllocatedSize());
+		
+		buffer.add(new WithSeqnumWrapper(1, new ResendRequest("Resend", 1, 2)));
+		assertTrue(buffer.getAllocatedSize() < buffer.getJournalSize());
+		
+		buffer.release();
+		assertEquals(0L, buffer.getAllocatedSize());
+		
+		// Released buffer does not allocate again
+		buffer.add(new WithSeqnumWrapper(2, new ResendRequest("Resend", 2, 3)));
+		assertEquals(0L, buffer.getAllocatedSize());
+		assertEquals(0, buffer.getSize());
+		
+	}
+	
+	@Test
+	public void testReplaceWithOversizedMessage() throws Exception {
+		
+		SentMessagesBuffer buffer = new OffHeapSentMessagesBuffer(16, 512, null, messageFactory);
+		buffer.add(new WithSeqnumWrapper(1, new ResendRequest("Resend", 1, 2)));
+		buffer.add(new WithSeqnumWrapper(2, new ResendRequest("Resend", 2, 3)));
+		assertEquals(2, buffer.getSize());
+		
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1024; i++) {
+			text.append('x');
+		}
+		buffer.add(new WithSeqnumWrapper(2, new ResendRequest(text.toString(), 2, 3)));
+		buffer.add(new WithSeqnumWrapper(3, new ResendRequest(text.toString(), 3, 4)));
+		
+		// Replaced message is dropped, not kept stale
+		assertEquals(1, buffer.getSize());
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		buffer.collect(1, 4, list);
+		assertEquals(1, list.size());
+		
+	}
+
+}
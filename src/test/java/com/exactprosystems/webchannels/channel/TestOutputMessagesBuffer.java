@@ -0,0 +1,233 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.messages.ConflatableMessage;
+import com.exactprosystems.webchannels.messages.SequenceReset;
+
+public class TestOutputMessagesBuffer {
+	
+	private static WithSeqnumWrapper wrapper(long seqnum, int size) {
+		WithSeqnumWrapper wrapper = new WithSeqnumWrapper(seqnum, new TestBusinessMessage());
+		wrapper.setSize(size);
+		return wrapper;
+	}
+	
+	@Test
+	public void testLimits() {
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer(2, 100L, null);
+		
+		assertTrue(buffer.hasRoom(60));
+		buffer.offer(wrapper(1, 60));
+		
+		assertFalse(buffer.hasRoom(60));
+		assertTrue(buffer.hasRoom(40));
+		buffer.offer(wrapper(2, 10));
+		
+		assertFalse(buffer.hasRoom(1));
+		
+		buffer.poll(1);
+		
+		assertEquals(10L, buffer.getBytes());
+		assertTrue(buffer.hasRoom(60));
+		
+	}
+	
+	@Test
+	public void testDropOldest() {
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer();
+		
+		for (int i = 1; i <= 5; i++) {
+			buffer.offer(wrapper(i, 10));
+		}
+		
+		for (int i = 1; i <= 3; i++) {
+			assertEquals(i, buffer.dropOldest().getSeqnum());
+		}
+		
+		assertEquals(3, buffer.size());
+		assertEquals(3L, buffer.getDroppedCount());
+		
+		List<WithSeqnumWrapper> messages = buffer.poll(10);
+		
+		// Messages 1 to 3 are skipped by single gap fill with seqnum 3
+		WithSeqnumWrapper gapFill = messages.get(0);
+		assertTrue(gapFill.getMessage() instanceof SequenceReset);
+		assertEquals(1L, ((SequenceReset) gapFill.getMessage()).getFrom());
+		assertEquals(3L, gapFill.getSeqnum());
+		assertEquals(4L, messages.get(1).getSeqnum());
+		assertEquals(5L, messages.get(2).getSeqnum());
+		
+	}
+	
+	@Test
+	public void testDropOldestStopsOnGap() {
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer();
+		
+		buffer.offer(wrapper(5, 10));
+		buffer.offer(wrapper(2, 10));
+		
+		assertNotNull(buffer.dropOldest());
+		assertNull(buffer.dropOldest());
+		assertEquals(2, buffer.size());
+		
+	}
+	
+	@Test
+	public void testBudget() {
+		
+		OutputMemoryBudget budget = new OutputMemoryBudget(250L);
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer(0, 0L, budget);
+		buffer.offer(wrapper(1, 100));
+		buffer.offer(wrapper(2, 100));
+		
+		assertEquals(200L, budget.getUsed());
+		assertFalse(buffer.hasRoom(100));
+		
+		buffer.poll(1);
+		assertEquals(100L, budget.getUsed());
+		assertTrue(buffer.hasRoom(100));
+		
+		buffer.clear();
+		assertEquals(0L, budget.getUsed());
+		
+	}
+
+	@Test
+	public void testConflation() {
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer(0, 0L, null, true);
+		
+		WithSeqnumWrapper first = new WithSeqnumWrapper(1, new Quote("A", 1));
+		buffer.offer(first);
+		buffer.offer(new WithSeqnumWrapper(2, new Quote("B", 1)));
+		
+		WithSeqnumWrapper queued = buffer.getConflated(new Quote("A", 2));
+		assertSame(first, queued);
+		assertNull(buffer.getConflated(new Quote("C", 1)));
+		
+		WithSeqnumWrapper replacement = new WithSeqnumWrapper(1, new Quote("A", 2));
+		buffer.replace(queued, replacement);
+		
+		// Replaced wrapper may be kept in resend buffer, so it is not changed
+		assertEquals(1, ((Quote) first.getMessage()).price);
+		assertFalse(first.isQueued());
+		
+		List<WithSeqnumWrapper> messages = buffer.poll(10);
+		assertEquals(2, messages.size());
+		assertSame(replacement, messages.get(0));
+		assertEquals(1L, buffer.getConflatedCount());
+		
+		// Sent message can not be replaced
+		assertNull(buffer.getConflated(new Quote("A", 3)));
+		
+	}
+	
+	@Test
+	public void testEncodedConflation() {
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer(0, 0L, null, true);
+		
+		buffer.offer(wrapper(1, 0));
+		buffer.offer(new WithSeqnumWrapper(2, new EncodedMessage(new Quote("A", 1), "{}")));
+		buffer.poll(1);
+		
+		Quote quote = new Quote("A", 2);
+		EncodedMessage encoded = new EncodedMessage(quote, "{\"price\":2}");
+		WithSeqnumWrapper replacement = new WithSeqnumWrapper(2, encoded);
+		replacement.setSize(encoded.getSize());
+		buffer.replace(buffer.getConflated(quote), replacement);
+		assertEquals(11L, buffer.getBytes());
+		assertSame(replacement, buffer.poll(1).get(0));
+		
+	}
+	
+	@Test
+	public void testDrainAndUnread() {
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer(0, 0L, null);
+		
+		for (int i = 1; i <= 40; i++) {
+			buffer.offer(wrapper(i, 10));
+		}
+		WithSeqnumWrapper urgent = wrapper(0, 5);
+		buffer.offerUrgent(urgent);
+		
+		List<WithSeqnumWrapper> batch = new ArrayList<>();
+		assertEquals(25, buffer.drainTo(batch, 25));
+		assertSame(urgent, batch.get(0));
+		assertEquals(24L, batch.get(24).getSeqnum());
+		assertEquals(160L, buffer.getBytes());
+		assertEquals(16, buffer.size());
+		
+		buffer.unread(batch);
+		assertEquals(405L, buffer.getBytes());
+		assertEquals(41, buffer.size());
+		
+		batch.clear();
+		assertEquals(41, buffer.drainTo(batch, 100));
+		assertSame(urgent, batch.get(0));
+		for (int i = 1; i <= 40; i++) {
+			assertEquals(i, batch.get(i).getSeqnum());
+		}
+		assertTrue(buffer.isEmpty());
+		
+	}
+	
+	@Test
+	public void testUnreadAfterOffer() {
+		
+		OutputMessagesBuffer buffer = new OutputMessagesBuffer(0, 0L, null);
+		
+		for (int i = 1; i <= 16; i++) {
+			buffer.offer(wrapper(i, 10));
+		}
+		
+		List<WithSeqnumWrapper> batch = new ArrayList<>();
+		assertEquals(16, buffer.drainTo(batch, 16));
+		
+		// New messages reuse slots of drained ones
+		for (int i = 17; i <= 40; i++) {
+			buffer.offer(wrapper(i, 10));
+		}
+		
+		buffer.unread(batch);
+		assertEquals(40, buffer.size());
+		assertEquals(400L, buffer.getBytes());
+		
+		batch.clear();
+		assertEquals(40, buffer.drainTo(batch, 100));
+		for (int i = 0; i < 40; i++) {
+			assertEquals(i + 1, batch.get(i).getSeqnum());
+		}
+		
+	}
+	
+	private static class Quote implements ConflatableMessage {
+		
+		private final String symbol;
+		
+		private final int price;
+		
+		private Quote(String symbol, int price) {
+			this.symbol = symbol;
+			this.price = price;
+		}
+		
+		@Override
+		public Object getConflationKey() {
+			return symbol;
+		}
+		
+	}
+	
+}
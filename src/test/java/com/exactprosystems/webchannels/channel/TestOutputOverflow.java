@@ -0,0 +1,158 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.enums.OverflowPolicy;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.exactprosystems.webchannels.messages.ResendRequest;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class TestOutputOverflow {
+
+	@Test
+	public void testResendOfDroppedMessages() {
+
+		ChannelSettings settings = ChannelSettings.builder()
+				.setMaxOutputMessages(2)
+				.setOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+				.build();
+		HttpChannel channel = new HttpChannel(new TestHandler(), "drop", settings,
+				new JsonMessageFactory(), MoreExecutors.sameThreadExecutor(), null);
+
+		for (int i = 0; i < 3; i++) {
+			channel.processOutputMessage(new TestBusinessMessage());
+		}
+		assertEquals(2L, channel.getChannelStats().getDropped());
+
+		TestContext context = new TestContext();
+		channel.onBind(context.getContext());
+		channel.onFlush();
+
+		// Messages 1 and 2 are skipped by one gap fill
+		assertEquals(2, count(context.getOutput(), "\"seqnum\""));
+		assertEquals(1, count(context.getOutput(), "SequenceReset"));
+
+		channel.processAdminMessage(new ResendRequest("Resend", 1, 3));
+		context = new TestContext();
+		channel.onBind(context.getContext());
+		channel.onFlush();
+
+		// Resend buffer keeps gap fills instead of dropped messages
+		assertEquals(2, count(context.getOutput(), "\"seqnum\""));
+		assertEquals(2, count(context.getOutput(), "SequenceReset"));
+
+	}
+
+	@Test
+	public void testRejectedMessages() {
+
+		ChannelSettings settings = ChannelSettings.builder()
+				.setMaxOutputMessages(1)
+				.setOverflowPolicy(OverflowPolicy.REJECT)
+				.build();
+		HttpChannel channel = new HttpChannel(new TestHandler(), "reject", settings,
+				new JsonMessageFactory(), MoreExecutors.sameThreadExecutor(), null);
+
+		channel.processOutputMessage(new TestBusinessMessage());
+		channel.processOutputMessage(new TestBusinessMessage());
+
+		assertFalse(channel.offerMessage(new TestBusinessMessage()));
+		channel.sendMessage(new TestBusinessMessage());
+
+		// Message which overflowed the buffer is rejected too
+		assertEquals(3L, channel.getChannelStats().getRejected());
+
+	}
+
+	private static int count(String output, String token) {
+		int count = 0;
+		for (int i = output.indexOf(token); i >= 0; i = output.indexOf(token, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Polling context which keeps written response.
+	 */
+	private static class TestContext implements InvocationHandler {
+
+		private final StringWriter output = new StringWriter();
+
+		public AsyncContext getContext() {
+			return (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncContext.class }, this);
+		}
+
+		public String getOutput() {
+			return output.toString();
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "getResponse":
+					return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class }, this);
+				case "getWriter":
+					return new PrintWriter(output);
+				case "setHeader":
+				case "complete":
+					return null;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				case "toString":
+					return "TestContext";
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+
+	}
+
+	private static class TestHandler implements IChannelHandler {
+
+		@Override
+		public void onCreate(AbstractChannel channel) {
+
+		}
+
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			return null;
+		}
+
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+
+		}
+
+		@Override
+		public void onClose() {
+
+		}
+
+		@Override
+		public void onException(Throwable t) {
+
+		}
+
+		@Override
+		public void onIdle() {
+
+		}
+
+	}
+
+}
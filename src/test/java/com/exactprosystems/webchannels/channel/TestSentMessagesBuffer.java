@@ -0,0 +1,117 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+
+public class TestSentMessagesBuffer {
+	
+	@Test
+	public void testRange() throws Exception {
+		
+		SentMessagesBuffer buffer = new SentMessagesBuffer(4);
+		
+		WithSeqnumWrapper first = new WithSeqnumWrapper(1, new TestBusinessMessage());
+		assertNull(buffer.add(first));
+		for (int i = 2; i <= 5; i++) {
+			WithSeqnumWrapper evicted = buffer.add(new WithSeqnumWrapper(i, new TestBusinessMessage()));
+			assertEquals(i == 5 ? first : null, evicted);
+		}
+		
+		List<WithSeqnumWrapper> messages = buffer.get(2, 5);
+		assertEquals(3, messages.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(2L + i, messages.get(i).getSeqnum());
+		}
+		
+		try {
+			buffer.get(1, 5);
+			fail("Evicted message is resent");
+		} catch (RecoverException e) {
+			// expected
+		}
+		
+	}
+	
+	@Test
+	public void testSparse() throws Exception {
+		
+		SentMessagesBuffer buffer = new SentMessagesBuffer(8);
+		buffer.add(new WithSeqnumWrapper(1, new TestBusinessMessage()));
+		buffer.add(new WithSeqnumWrapper(4, new TestBusinessMessage()));
+		buffer.add(new WithSeqnumWrapper(5, new TestBusinessMessage()));
+		
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		buffer.collect(1, 5, list);
+		assertEquals(2, list.size());
+		assertEquals(4L, list.get(1).getSeqnum());
+		
+		try {
+			buffer.get(1, 5);
+			fail("Range with gap is resent");
+		} catch (RecoverException e) {
+			// expected
+		}
+		
+		// Gap wider than capacity leaves only the new message
+		buffer.add(new WithSeqnumWrapper(20, new TestBusinessMessage()));
+		assertEquals(1, buffer.getSize());
+		
+	}
+	
+	@Test
+	public void testSizeAndClear() throws Exception {
+		
+		SentMessagesBuffer buffer = new SentMessagesBuffer(4);
+		for (int i = 1; i <= 10; i++) {
+			buffer.add(new WithSeqnumWrapper(i, new TestBusinessMessage()));
+		}
+		assertEquals(4, buffer.getSize());
+		
+		// Conflated message is stored again under its seqnum
+		buffer.add(new WithSeqnumWrapper(9, new TestBusinessMessage()));
+		assertEquals(4, buffer.getSize());
+		assertEquals(3, buffer.get(7, 10).size());
+		
+		buffer.clear();
+		assertEquals(0, buffer.getSize());
+		try {
+			buffer.get(7, 10);
+			fail("Cleared messages are resent");
+		} catch (RecoverException e) {
+			// expected
+		}
+		
+	}
+	
+	@Test
+	public void testReplace() throws Exception {
+		
+		SentMessagesBuffer buffer = new SentMessagesBuffer(4);
+		WithSeqnumWrapper queued = new WithSeqnumWrapper(2, new TestBusinessMessage());
+		buffer.add(new WithSeqnumWrapper(1, new TestBusinessMessage()));
+		buffer.add(queued);
+		buffer.add(new WithSeqnumWrapper(3, new TestBusinessMessage()));
+		
+		// Conflated value replaces queued one under the same seqnum
+		WithSeqnumWrapper replacement = new WithSeqnumWrapper(2, new TestBusinessMessage());
+		assertSame(queued, buffer.add(replacement));
+		assertSame(replacement, buffer.get(2, 3).get(0));
+		
+		WithSeqnumWrapper last = new WithSeqnumWrapper(6, new TestBusinessMessage());
+		buffer.add(last);
+		
+		// Message older than window does not take slot of newer one
+		assertNull(buffer.add(new WithSeqnumWrapper(2, new TestBusinessMessage())));
+		List<WithSeqnumWrapper> list = new ArrayList<>();
+		buffer.collect(6, 7, list);
+		assertSame(last, list.get(0));
+		
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+
+public class TestShardedChannelsExecutor {
+	
+	private static final int SHARD_COUNT = 2;
+	
+	private static final int CHANNEL_COUNT = 8;
+	
+	private static final int MESSAGE_COUNT = 5000;
+	
+	private ShardedChannelsExecutor executor;
+	
+	@Before
+	public void init() {
+		executor = new ShardedChannelsExecutor(SHARD_COUNT, null);
+	}
+	
+	@After
+	public void destroy() {
+		executor.shutdown();
+	}
+	
+	@Test
+	public void testShardIndex() {
+		
+		for (int i = 0; i < 100; i++) {
+			String id = "channel-" + i;
+			int index = ShardedChannelsExecutor.shardIndex(id, SHARD_COUNT);
+			assertTrue(index >= 0 && index < SHARD_COUNT);
+			assertEquals(index, ShardedChannelsExecutor.shardIndex(id, SHARD_COUNT));
+			assertSame(executor.getShard(id), executor.getShard(new String(id)));
+		}
+		
+		assertEquals(0, ShardedChannelsExecutor.shardIndex(null, SHARD_COUNT));
+		
+	}
+	
+	@Test
+	public void testChannelsBoundToShards() throws Exception {
+		
+		final CountDownLatch done = new CountDownLatch(CHANNEL_COUNT);
+		RecordingHandler[] handlers = new RecordingHandler[CHANNEL_COUNT];
+		final AbstractChannel[] channels = new AbstractChannel[CHANNEL_COUNT];
+		
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			handlers[i] = new RecordingHandler(done);
+			channels[i] = new HttpChannel(handlers[i], "channel-" + i, new ChannelSettings(),
+					new JsonMessageFactory(), executor, null);
+			channels[i].initHandler();
+		}
+		
+		// Producers of all channels link tasks into shard run queues concurrently
+		Thread[] producers = new Thread[CHANNEL_COUNT];
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			final AbstractChannel channel = channels[i];
+			producers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int seqnum = 1; seqnum <= MESSAGE_COUNT; seqnum++) {
+						channel.handleRequest(new WithSeqnumWrapper(seqnum, new TestBusinessMessage()));
+					}
+				}
+			});
+			producers[i].start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			RecordingHandler handler = handlers[i];
+			assertNull(handler.error.get());
+			assertEquals(MESSAGE_COUNT, handler.expectedSeqnum - 1);
+			// Every event of channel is processed by its own shard thread
+			int index = ShardedChannelsExecutor.shardIndex(channels[i].getID(), SHARD_COUNT);
+			assertEquals(Collections.singleton("Channels-shard-" + index), handler.threads);
+		}
+		
+	}
+	
+	@Test
+	public void testForeignTask() throws Exception {
+		
+		final CountDownLatch done = new CountDownLatch(SHARD_COUNT * 2);
+		final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		
+		for (int i = 0; i < SHARD_COUNT * 2; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					threads.add(Thread.currentThread().getName());
+					done.countDown();
+				}
+			});
+		}
+		
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		// Foreign tasks are spread over shards
+		assertEquals(SHARD_COUNT, threads.size());
+		
+	}
+	
+	/**
+	 * Checks order of messages and remembers threads which delivered them.
+	 */
+	private static class RecordingHandler implements IChannelHandler {
+		
+		private final CountDownLatch done;
+		
+		private final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		
+		private final AtomicReference<String> error = new AtomicReference<>();
+		
+		private volatile long expectedSeqnum = 1;
+		
+		public RecordingHandler(CountDownLatch done) {
+			this.done = done;
+		}
+		
+		@Override
+		public void onCreate(AbstractChannel channel) {
+			threads.add(Thread.currentThread().getName());
+		}
+		
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			threads.add(Thread.currentThread().getName());
+			if (seqnum != expectedSeqnum) {
+				error.compareAndSet(null, "Expected " + expectedSeqnum + " but was " + seqnum);
+			}
+			expectedSeqnum = seqnum + 1;
+			if (seqnum == MESSAGE_COUNT) {
+				done.countDown();
+			}
+			return null;
+		}
+		
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+			
+		}
+		
+		@Override
+		public void onClose() {
+			
+		}
+		
+		@Override
+		public void onException(Throwable t) {
+			error.compareAndSet(null, String.valueOf(t));
+		}
+		
+		@Override
+		public void onIdle() {
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,204 @@
+package com.exactprosystems.webchannels.channel;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.exactprosystems.webchannels.exceptions.RecoverException;
+import com.exactprosystems.webchannels.messages.AbstractMessage;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class TestTopicLog {
+	
+	@Test
+	public void testRing() {
+		
+		TopicLog topic = new TopicLog("test", 3);
+		assertEquals(4, topic.getCapacity());
+		
+		AbstractMessage first = new TestBusinessMessage();
+		assertEquals(1L, topic.append(first));
+		assertSame(first, topic.get(1L));
+		assertNull(topic.get(2L));
+		
+		for (int i = 0; i < 4; i++) {
+			topic.append(new TestBusinessMessage());
+		}
+		
+		assertEquals(5L, topic.getLastSeqnum());
+		assertEquals(2L, topic.getFirstSeqnum());
+		assertNull(topic.get(1L));
+		
+	}
+	
+	@Test
+	public void testDrainAndRecover() throws Exception {
+		
+		TopicLog topic = new TopicLog("test", 16);
+		TopicSubscriptions subscriptions = new TopicSubscriptions(16);
+		subscriptions.attach(new TopicCursor(topic, null, 1L));
+		
+		for (int i = 0; i < 3; i++) {
+			topic.append(new TestBusinessMessage());
+		}
+		
+		assertTrue(subscriptions.hasPending());
+		
+		// Seqnums 1 and 2 are direct messages of channel
+		SentMessagesBuffer sent = new SentMessagesBuffer(16);
+		sent.add(new WithSeqnumWrapper(1, new TestBusinessMessage()));
+		sent.add(new WithSeqnumWrapper(2, new TestBusinessMessage()));
+		
+		List<WithSeqnumWrapper> batch = new ArrayList<>();
+		assertEquals(3, subscriptions.drainTo(batch, 3L, 10));
+		assertEquals(5L, batch.get(2).getSeqnum());
+		assertSame(topic.get(3L), batch.get(2).getMessage());
+		assertFalse(subscriptions.hasPending());
+		
+		List<WithSeqnumWrapper> recovered = subscriptions.recover(sent, 2L, 5L);
+		assertEquals(3, recovered.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(2L + i, recovered.get(i).getSeqnum());
+		}
+		assertSame(topic.get(2L), recovered.get(2).getMessage());
+		
+	}
+	
+	@Test
+	public void testRollback() {
+		
+		TopicLog topic = new TopicLog("test", 16);
+		TopicSubscriptions subscriptions = new TopicSubscriptions(16);
+		subscriptions.attach(new TopicCursor(topic, null, 1L));
+		
+		topic.append(new TestBusinessMessage());
+		topic.append(new TestBusinessMessage());
+		
+		List<WithSeqnumWrapper> batch = new ArrayList<>();
+		batch.add(new WithSeqnumWrapper(1, new TestBusinessMessage()));
+		assertEquals(2, subscriptions.drainTo(batch, 2L, 10));
+		assertEquals(2, subscriptions.rollback(batch, 1));
+		assertEquals(1, batch.size());
+		
+		batch.clear();
+		assertEquals(2, subscriptions.drainTo(batch, 2L, 10));
+		assertSame(topic.get(1L), batch.get(0).getMessage());
+		
+	}
+	
+	@Test(expected = RecoverException.class)
+	public void testOverwritten() throws Exception {
+		
+		TopicLog topic = new TopicLog("test", 2);
+		TopicSubscriptions subscriptions = new TopicSubscriptions(16);
+		subscriptions.attach(new TopicCursor(topic, null, 1L));
+		
+		topic.append(new TestBusinessMessage());
+		subscriptions.drainTo(new ArrayList<WithSeqnumWrapper>(), 1L, 10);
+		
+		for (int i = 0; i < 4; i++) {
+			topic.append(new TestBusinessMessage());
+		}
+		
+		List<WithSeqnumWrapper> batch = new ArrayList<>();
+		assertEquals(2, subscriptions.drainTo(batch, 2L, 10));
+		assertEquals(2L, subscriptions.getLostCount());
+		
+		subscriptions.recover(new SentMessagesBuffer(16), 1L, 3L);
+		
+	}
+	
+	@Test
+	public void testWrapUnderCursor() {
+		
+		// Publisher wraps the log while channel reads the first message
+		TopicLog topic = new TopicLog("test", 2) {
+			private boolean wrapped;
+			@Override
+			AbstractMessage get(long seqnum) {
+				AbstractMessage message = super.get(seqnum);
+				if (!wrapped) {
+					wrapped = true;
+					for (int i = 0; i < 4; i++) {
+						append(new TestBusinessMessage());
+					}
+				}
+				return message;
+			}
+		};
+		TopicSubscriptions subscriptions = new TopicSubscriptions(16);
+		subscriptions.attach(new TopicCursor(topic, null, 1L));
+		topic.append(new TestBusinessMessage());
+		
+		List<WithSeqnumWrapper> batch = new ArrayList<>();
+		assertEquals(1, subscriptions.drainTo(batch, 1L, 1));
+		
+		// Range of message overwritten during read is forgotten
+		List<WithSeqnumWrapper> collected = new ArrayList<>();
+		subscriptions.collect(new SentMessagesBuffer(16), 1L, 2L, collected);
+		assertTrue(collected.isEmpty());
+		
+	}
+	
+	@Test
+	public void testClosedChannel() {
+		
+		TopicLog topic = new TopicLog("test", 16);
+		HttpChannel channel = new HttpChannel(new TestHandler(), "test", new ChannelSettings(), 
+				new JsonMessageFactory(), MoreExecutors.sameThreadExecutor(), null);
+		channel.onCreate();
+		
+		TopicCursor cursor = channel.subscribe(topic);
+		assertEquals(1, topic.getSubscriberCount());
+		
+		// Cursor is not attached to channel closed after subscription
+		channel.onClose();
+		topic.append(new TestBusinessMessage());
+		assertTrue(cursor.isClosed());
+		assertEquals(0, topic.getSubscriberCount());
+		
+		// Closed channel does not stay in the log
+		cursor = channel.subscribe(topic);
+		assertTrue(cursor.isClosed());
+		assertEquals(0, topic.getSubscriberCount());
+		
+	}
+	
+	private static class TestHandler implements IChannelHandler {
+		
+		@Override
+		public void onCreate(AbstractChannel channel) {
+			
+		}
+		
+		@Override
+		public AbstractMessage onReceive(AbstractMessage message, long seqnum) {
+			return null;
+		}
+		
+		@Override
+		public void onSend(AbstractMessage message, long seqnum) {
+			
+		}
+		
+		@Override
+		public void onClose() {
+			
+		}
+		
+		@Override
+		public void onException(Throwable t) {
+			
+		}
+		
+		@Override
+		public void onIdle() {
+			
+		}
+		
+	}
+
+}